@@ -5,28 +5,23 @@ import { PaymentStatus, PaymentType } from '@payflow/common';
 
 interface PaginatedResponse<T> {
   content: T[];
-  pageable: {
-    pageNumber: number;
-    pageSize: number;
-  };
   last: boolean;
-  totalPages: number;
-  totalElements: number;
   number: number;
+  nextCursor?: string;
 }
 
 export const useOutboundPayments = (statuses: PaymentStatus[], size: number = 5) => {
   return useInfiniteQuery<PaginatedResponse<PaymentType>, Error>({
     queryKey: ['outboundPayments', statuses],
-    initialPageParam: 0,
+    initialPageParam: undefined,
     getNextPageParam: (lastPage) => {
-      return lastPage.last ? undefined : lastPage.number + 1;
+      return lastPage.last ? undefined : lastPage.nextCursor;
     },
-    queryFn: ({ pageParam = 0 }) =>
+    queryFn: ({ pageParam }) =>
       axios
         .get<PaginatedResponse<PaymentType>>(`${API_URL}/api/payment/outbound`, {
           params: {
-            page: pageParam,
+            cursor: pageParam as string | undefined,
             size,
             statuses: statuses.join(',')
           },
@@ -44,16 +39,16 @@ export const useOutboundPayments = (statuses: PaymentStatus[], size: number = 5)
 export const useCompletedPayments = (identity: string, accessToken?: string, size: number = 25) => {
   return useInfiniteQuery<PaginatedResponse<PaymentType>, Error>({
     queryKey: ['completedPayments', identity],
-    initialPageParam: 0,
+    initialPageParam: undefined,
     getNextPageParam: (lastPage) => {
-      return lastPage.last ? undefined : lastPage.number + 1;
+      return lastPage.last ? undefined : lastPage.nextCursor;
     },
-    queryFn: ({ pageParam = 0 }) =>
+    queryFn: ({ pageParam }) =>
       axios
         .get<PaginatedResponse<PaymentType>>(`${API_URL}/api/payment/completed`, {
           params: {
             identity,
-            page: pageParam,
+            cursor: pageParam as string | undefined,
             size,
             ...(accessToken && { access_token: accessToken })
           },
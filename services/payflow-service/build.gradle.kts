@@ -1,5 +1,6 @@
 import com.netflix.graphql.dgs.codegen.gradle.GenerateJavaTask
 import org.springframework.boot.buildpack.platform.build.PullPolicy
+import org.springframework.boot.gradle.tasks.aot.ProcessAot
 import org.springframework.boot.gradle.tasks.bundling.BootBuildImage
 import org.springframework.boot.gradle.tasks.run.BootRun
 
@@ -10,6 +11,7 @@ plugins {
     id("com.google.cloud.artifactregistry.gradle-plugin") version "2.2.5"
     id("io.freefair.lombok") version "9.0.0"
     id("com.netflix.dgs.codegen") version "8.1.1"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 application {
@@ -21,6 +23,16 @@ version = "1.0.0"
 
 java.sourceCompatibility = JavaVersion.VERSION_25
 
+// fast start image for cloud run: ./gradlew bootBuildImage -Pgcp -PfastStart [-PaotProfiles=gcp,redis,fast-start]
+// bean definitions are generated ahead of time for the given profiles, conditions are evaluated at
+// build time, so the service has to run with the same SPRING_PROFILES_ACTIVE. the image also gets
+// a class data sharing archive from a training run of the app (cds-training profile, no database)
+val fastStart = project.hasProperty("fastStart")
+val aotProfiles = providers.gradleProperty("aotProfiles").getOrElse("gcp,redis,fast-start")
+if (fastStart) {
+    apply(plugin = "org.springframework.boot.aot")
+}
+
 repositories {
     mavenCentral()
 }
@@ -42,6 +54,19 @@ extra["siweVersion"] = "1.0.8"
 extra["lombokVersion"] = "1.18.42"
 extra["shedlockVersion"] = "6.10.0"
 extra["mapstructVersion"] = "1.6.3"
+extra["resilience4jVersion"] = "2.3.0"
+extra["mariaDB4jVersion"] = "3.3.1"
+extra["embeddedRedisVersion"] = "1.4.4"
+extra["lz4Version"] = "1.10.4"
+
+// end-to-end load tests (src/loadTest/java), boot the service against local upstream stubs
+val loadTest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[loadTest.implementationConfigurationName].extendsFrom(configurations.implementation.get())
+configurations[loadTest.runtimeOnlyConfigurationName].extendsFrom(configurations.runtimeOnly.get())
 
 dependencies {
     developmentOnly("org.springframework.boot:spring-boot-devtools")
@@ -55,6 +80,13 @@ dependencies {
     implementation("org.springframework.session:spring-session-jdbc")
     implementation("org.springframework.boot:spring-boot-starter-aop")
     implementation("org.springframework.cloud:spring-cloud-starter-openfeign")
+    // pooled http client behind the feign upstreams (UpstreamClientRegistry)
+    implementation("io.github.openfeign:feign-hc5")
+
+    // metrics scraping and optional tracing (exported only when an otlp endpoint is configured)
+    runtimeOnly("io.micrometer:micrometer-registry-prometheus")
+    implementation("io.micrometer:micrometer-tracing-bridge-otel")
+    implementation("io.opentelemetry:opentelemetry-exporter-otlp")
 
     implementation("io.hypersistence:hypersistence-utils-hibernate-63:${property("hypersistenceVersion")}")
     implementation("io.jsonwebtoken:jjwt:${property("jjwtVersion")}")
@@ -74,14 +106,25 @@ dependencies {
 
     // caching
     implementation("com.github.ben-manes.caffeine:caffeine")
+    // hibernate second-level cache (jcache backed by caffeine) and per-region statistics
+    implementation("org.hibernate.orm:hibernate-jcache")
+    implementation("com.github.ben-manes.caffeine:jcache")
+    implementation("org.hibernate.orm:hibernate-micrometer")
     implementation("org.springframework.boot:spring-boot-starter-json")
 
-    // redis
+    // redis, cache values are stored as lz4 compressed smile
     implementation("org.springframework.boot:spring-boot-starter-data-redis")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-smile")
+    implementation("at.yawk.lz4:lz4-java:${property("lz4Version")}")
 
     // retry
     implementation("org.springframework.retry:spring-retry")
 
+    // upstream http clients: bulkheads and circuit breakers
+    implementation("io.github.resilience4j:resilience4j-circuitbreaker:${property("resilience4jVersion")}")
+    implementation("io.github.resilience4j:resilience4j-bulkhead:${property("resilience4jVersion")}")
+    implementation("io.github.resilience4j:resilience4j-reactor:${property("resilience4jVersion")}")
+
     // db migration
     implementation("org.flywaydb:flyway-core:${property("flywayVersion")}")
     implementation("org.flywaydb:flyway-mysql:${property("flywayVersion")}")
@@ -129,6 +172,13 @@ dependencies {
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("org.junit.jupiter:junit-jupiter-api")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine")
+    // in-memory schema for repository and listing query tests
+    testRuntimeOnly("com.h2database:h2")
+
+    // load tests: containerless mysql-compatible db, optional redis stand-in, latency histograms
+    "loadTestImplementation"("ch.vorburger.mariaDB4j:mariaDB4j:${property("mariaDB4jVersion")}")
+    "loadTestImplementation"("com.github.codemonstur:embedded-redis:${property("embeddedRedisVersion")}")
+    "loadTestImplementation"("org.hdrhistogram:HdrHistogram")
 
     configurations.all {
         exclude(group = "org.slf4j", module = "slf4j-simple")
@@ -266,6 +316,18 @@ tasks.named<BootBuildImage>("bootBuildImage") {
     }
     pullPolicy.set(PullPolicy.IF_NOT_PRESENT)
     //publish.set(true)
+
+    if (fastStart) {
+        environment.put("BP_SPRING_AOT_ENABLED", "true")
+        environment.put("BP_JVM_CDS_ENABLED", "true")
+        environment.put("CDS_TRAINING_JAVA_TOOL_OPTIONS", "-Dspring.profiles.active=$aotProfiles,cds-training")
+    }
+}
+
+if (fastStart) {
+    tasks.named<ProcessAot>("processAot") {
+        args("--spring.profiles.active=$aotProfiles")
+    }
 }
 
 tasks.register<Copy>("copyTokensJson") {
@@ -311,4 +373,36 @@ tasks.test {
     )
 }
 
+// micro-benchmarks for cpu hot paths (src/jmh/java): ./gradlew jmh [-PjmhIncludes=Cast]
+// results are written as json, so runs can be compared between commits with any jmh result viewer
+jmh {
+    jmhVersion = "1.37"
+    includeTests = true
+    includes = listOf(providers.gradleProperty("jmhIncludes").getOrElse(".*"))
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    timeOnIteration = "2s"
+    warmup = "2s"
+    benchmarkMode = listOf("avgt")
+    timeUnit = "us"
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+}
 
+// ./gradlew loadTest [-PloadTestScenarios=bot-mentions,frame-funnel] [-Ploadtest.neynar.latency=200ms]
+// scenarios run one after another against a single booted service, results go to
+// build/reports/loadtest/report.json (throughput and p50/p99 per scenario step)
+tasks.register<JavaExec>("loadTest") {
+    description = "Runs end-to-end load scenarios against local upstream stubs"
+    group = "verification"
+    dependsOn("copyTokensJson")
+
+    classpath = loadTest.runtimeClasspath
+    mainClass.set("ua.sinaver.web3.payflow.loadtest.LoadTestRunner")
+    args(providers.gradleProperty("loadTestScenarios").getOrElse("all"))
+
+    systemProperties(providers.gradlePropertiesPrefixedBy("loadtest.").get())
+    systemProperty("loadtest.report", layout.buildDirectory.file("reports/loadtest/report.json").get().asFile.path)
+    jvmArgs("-XX:+EnableDynamicAgentLoading")
+}
@@ -0,0 +1,59 @@
+package ua.sinaver.web3.payflow;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.val;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.sinaver.web3.payflow.service.PaymentService;
+import ua.sinaver.web3.payflow.service.TokenService;
+import ua.sinaver.web3.payflow.service.TransactionService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// services under benchmark are wired by hand, a spring context would only add noise
+public final class BenchmarkFixtures {
+
+	private BenchmarkFixtures() {
+	}
+
+	public static TokenService tokenService() {
+		val tokenService = new TokenService();
+		ReflectionTestUtils.setField(tokenService, "tokensResource",
+				new ClassPathResource("generated/tokens.json"));
+		try {
+			tokenService.init();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return tokenService;
+	}
+
+	public static PaymentService paymentService(TokenService tokenService) {
+		val paymentService = new PaymentService();
+		ReflectionTestUtils.setField(paymentService, "tokenService", tokenService);
+		return paymentService;
+	}
+
+	public static TransactionService transactionService(TokenService tokenService) {
+		val transactionService = new TransactionService();
+		ReflectionTestUtils.setField(transactionService, "tokenService", tokenService);
+		ReflectionTestUtils.setField(transactionService, "paymentService", paymentService(tokenService));
+		return transactionService;
+	}
+
+	// same defaults as the object mapper spring boot configures for the application
+	public static ObjectMapper objectMapper() {
+		return Jackson2ObjectMapperBuilder.json().build();
+	}
+
+	public static String resource(String path) {
+		try {
+			return new ClassPathResource(path).getContentAsString(StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
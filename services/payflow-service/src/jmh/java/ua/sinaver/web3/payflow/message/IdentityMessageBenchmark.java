@@ -0,0 +1,82 @@
+package ua.sinaver.web3.payflow.message;
+
+import lombok.val;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ua.sinaver.web3.payflow.entity.Flow;
+import ua.sinaver.web3.payflow.entity.PreferredTokens;
+import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.entity.Wallet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// contact list conversion and ranking, done for every contacts request
+@State(Scope.Benchmark)
+public class IdentityMessageBenchmark {
+
+	@Param({ "100", "1000" })
+	private int contacts;
+
+	private List<String> identities;
+	private List<User> profiles;
+	private List<SocialMetadata> metadata;
+	private List<IdentityMessage> messages;
+
+	@Setup
+	public void setup() {
+		identities = new ArrayList<>(contacts);
+		profiles = new ArrayList<>(contacts);
+		metadata = new ArrayList<>(contacts);
+		messages = new ArrayList<>(contacts);
+
+		for (int i = 0; i < contacts; i++) {
+			val identity = String.format("0x%040x", i + 1);
+			identities.add(identity);
+
+			// every other contact has a payflow profile with a default flow on 3 chains
+			User profile = null;
+			if (i % 2 == 0) {
+				profile = new User(identity);
+				profile.setAllowed(true);
+				profile.setUsername("user" + i);
+				profile.setDisplayName("User " + i);
+				val flow = new Flow(i, "default", identity, "privy", "email", null, "safe", null);
+				flow.setWallets(List.of(
+						new Wallet(identity, 8453, "1.4.1", true),
+						new Wallet(identity, 10, "1.4.1", true),
+						new Wallet(identity, 42161, "1.4.1", false)));
+				profile.setDefaultFlow(flow);
+				val preferredTokens = new PreferredTokens();
+				preferredTokens.setTokenList(List.of("usdc", "eth", "degen"));
+				profile.setPreferredTokens(preferredTokens);
+			}
+			profiles.add(profile);
+
+			val socials = i % 3 == 0
+					? List.of(new SocialInfo("farcaster", "user" + i, "User " + i, i, null, 100 + i),
+					new SocialInfo("lens", "user" + i + ".lens", "User " + i, null, null, 10))
+					: List.<SocialInfo>of();
+			metadata.add(new SocialMetadata(i % 4 == 0 ? "user" + i + ".eth" : null, null, socials));
+		}
+
+		for (int i = 0; i < contacts; i++) {
+			messages.add(IdentityMessage.convert(identities.get(i), profiles.get(i), metadata.get(i)));
+		}
+	}
+
+	@Benchmark
+	public void convertContacts(Blackhole blackhole) {
+		for (int i = 0; i < contacts; i++) {
+			blackhole.consume(ContactMessage.convert(identities.get(i), profiles.get(i), metadata.get(i),
+					List.of("recent")));
+		}
+	}
+
+	@Benchmark
+	public void score(Blackhole blackhole) {
+		for (val message : messages) {
+			blackhole.consume(message.score());
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package ua.sinaver.web3.payflow.message.farcaster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.val;
+import org.openjdk.jmh.annotations.*;
+import ua.sinaver.web3.payflow.BenchmarkFixtures;
+
+// webhook payload parsing and conversation (agent context) round trips
+@State(Scope.Benchmark)
+public class CastJsonBenchmark {
+
+	private ObjectMapper objectMapper;
+	private String conversationJson;
+	private String castCreatedJson;
+	private CastConversationData conversation;
+	private CastCreatedMessage castCreated;
+
+	@Setup
+	public void setup() throws JsonProcessingException {
+		objectMapper = BenchmarkFixtures.objectMapper();
+		conversationJson = BenchmarkFixtures.resource("long_conversation.json");
+
+		// webhook body for the conversation root cast, same shape neynar sends on cast.created
+		val cast = objectMapper.readTree(conversationJson).path("conversation").path("cast");
+		val webhook = objectMapper.createObjectNode()
+				.put("created_at", 1735689600)
+				.put("type", "cast.created");
+		webhook.set("data", cast);
+		castCreatedJson = objectMapper.writeValueAsString(webhook);
+
+		conversation = objectMapper.readValue(conversationJson, CastConversationData.class);
+		castCreated = objectMapper.readValue(castCreatedJson, CastCreatedMessage.class);
+	}
+
+	@Benchmark
+	public CastConversationData readConversation() throws JsonProcessingException {
+		return objectMapper.readValue(conversationJson, CastConversationData.class);
+	}
+
+	@Benchmark
+	public String writeConversation() throws JsonProcessingException {
+		return objectMapper.writeValueAsString(conversation);
+	}
+
+	@Benchmark
+	public CastCreatedMessage readCastCreated() throws JsonProcessingException {
+		return objectMapper.readValue(castCreatedJson, CastCreatedMessage.class);
+	}
+
+	@Benchmark
+	public String writeCastCreated() throws JsonProcessingException {
+		return objectMapper.writeValueAsString(castCreated);
+	}
+}
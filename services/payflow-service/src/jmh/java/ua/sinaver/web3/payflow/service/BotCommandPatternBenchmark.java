@@ -0,0 +1,44 @@
+package ua.sinaver.web3.payflow.service;
+
+import lombok.val;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// command regexes applied to every cast mentioning the bot
+@State(Scope.Benchmark)
+public class BotCommandPatternBenchmark {
+
+	@Param({
+			"@payflow pay @sinaver 10 usdc",
+			"gm frens! loved the demo yesterday, here is something for the effort " +
+					"@payflow send @alice.eth 1.5k degen on base 🎩",
+			"@payflow jar \"Community fund for the next /payflow meetup in Lisbon\"",
+			"did you see \"@payflow pay @bob 5 usdc\"? that's how it works",
+			"long reply without any command, just chatting about farcaster frames, storage units, " +
+					"channels and how the new client renders casts with embeds and mentions of @payflow"
+	})
+	private String text;
+
+	@Benchmark
+	public void parseCommand(Blackhole blackhole) {
+		blackhole.consume(FarcasterBotService.QUOTED_MENTION_PATTERN.matcher(text).matches());
+
+		var matcher = FarcasterBotService.BOT_COMMAND_PATTERN.matcher(text);
+		if (!matcher.find()) {
+			return;
+		}
+		val command = matcher.group("command");
+		val remaining = matcher.group("remaining");
+		blackhole.consume(command);
+		if (remaining == null) {
+			return;
+		}
+
+		matcher = "jar".equals(command)
+				? FarcasterBotService.JAR_TITLE_PATTERN.matcher(remaining)
+				: FarcasterBotService.PAYMENT_COMMAND_PATTERN.matcher(remaining);
+		if (matcher.find()) {
+			blackhole.consume(matcher.group(1));
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package ua.sinaver.web3.payflow.service;
+
+import org.openjdk.jmh.annotations.*;
+import ua.sinaver.web3.payflow.BenchmarkFixtures;
+import ua.sinaver.web3.payflow.message.Token;
+
+import java.util.List;
+
+// token, chain and amount parsing done for every bot payment command
+@State(Scope.Benchmark)
+public class PaymentCommandParsingBenchmark {
+
+	@Param({
+			"usdc on base",
+			"degen thanks for the great thread!",
+			"eth on optimism 🙏",
+			"0x4ed4e862860bed51a9570b96d89af5e1b0efefed for the coffee",
+			"no token mentioned here, should fall back to the default one"
+	})
+	private String restText;
+
+	@Param({ "25", "1.5k", "0.0042", "2m" })
+	private String amount;
+
+	private PaymentService paymentService;
+
+	@Setup
+	public void setup() {
+		paymentService = BenchmarkFixtures.paymentService(BenchmarkFixtures.tokenService());
+	}
+
+	@Benchmark
+	public List<Token> parseCommandTokens() {
+		return paymentService.parseCommandTokens(restText);
+	}
+
+	@Benchmark
+	public String parseCommandChain() {
+		return paymentService.parseCommandChain(restText);
+	}
+
+	@Benchmark
+	public Double parseTokenAmount() {
+		return paymentService.parseTokenAmount(amount);
+	}
+}
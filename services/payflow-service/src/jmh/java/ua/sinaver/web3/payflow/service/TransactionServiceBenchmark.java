@@ -0,0 +1,32 @@
+package ua.sinaver.web3.payflow.service;
+
+import lombok.val;
+import org.openjdk.jmh.annotations.*;
+import ua.sinaver.web3.payflow.BenchmarkFixtures;
+import ua.sinaver.web3.payflow.entity.Payment;
+
+import java.util.Map;
+
+// transaction params for frame/bot payments, erc20 transfers go through web3j abi encoding
+@State(Scope.Benchmark)
+public class TransactionServiceBenchmark {
+
+	@Param({ "usdc", "degen", "eth" })
+	private String token;
+
+	private TransactionService transactionService;
+	private Payment payment;
+
+	@Setup
+	public void setup() {
+		transactionService = BenchmarkFixtures.transactionService(BenchmarkFixtures.tokenService());
+		payment = new Payment(Payment.PaymentType.FRAME, null, 8453, token);
+		payment.setReceiverAddress("0x587bbc6cdc5bd7fca4fc6a56f354ace36915596e");
+		payment.setTokenAmount("1234.56789");
+	}
+
+	@Benchmark
+	public Map<String, String> generateTxParams() {
+		return transactionService.generateTxParams(payment);
+	}
+}
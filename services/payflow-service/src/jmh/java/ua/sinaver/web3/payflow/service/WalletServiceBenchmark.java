@@ -0,0 +1,50 @@
+package ua.sinaver.web3.payflow.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.val;
+import org.openjdk.jmh.annotations.*;
+import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.entity.Wallet;
+import ua.sinaver.web3.payflow.entity.WalletSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// batched session intent payments sharing one wallet session, each with an approve + transfer call
+@State(Scope.Benchmark)
+public class WalletServiceBenchmark {
+
+	@Param({ "1", "10", "100" })
+	private int payments;
+
+	private List<Payment> batch;
+
+	@Setup
+	public void setup() {
+		val objectMapper = new ObjectMapper();
+		val session = new WalletSession();
+		session.setSessionId("0x" + "ab".repeat(32));
+		session.setSessionKey("0x" + "cd".repeat(32));
+		session.setWallet(new Wallet("0x587bbc6cdc5bd7fca4fc6a56f354ace36915596e", 8453, "1.4.1", true));
+
+		batch = new ArrayList<>(payments);
+		for (int i = 0; i < payments; i++) {
+			val payment = new Payment(Payment.PaymentType.SESSION_INTENT, null, 8453, "usdc");
+			payment.setWalletSession(session);
+			val calls = objectMapper.createArrayNode();
+			for (int c = 0; c < 2; c++) {
+				calls.addObject()
+						.put("to", "0x833589fcd6edb6e08f4c7c32d4f71b54bda02913")
+						.put("data", "0xa9059cbb" + "0".repeat(24) + String.format("%040x", i) + "0".repeat(63) + c)
+						.put("value", "0");
+			}
+			payment.setCalls(calls);
+			batch.add(payment);
+		}
+	}
+
+	@Benchmark
+	public WalletService.PaymentProcessingRequest createBatchPaymentRequest() {
+		return WalletService.createBatchPaymentRequest(batch);
+	}
+}
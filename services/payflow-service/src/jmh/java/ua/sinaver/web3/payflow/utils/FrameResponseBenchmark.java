@@ -0,0 +1,33 @@
+package ua.sinaver.web3.payflow.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+import ua.sinaver.web3.payflow.message.FrameButton;
+
+// frame html rendered on every frame interaction
+@State(Scope.Benchmark)
+public class FrameResponseBenchmark {
+
+	private FrameResponse frameResponse;
+
+	@Setup
+	public void setup() {
+		frameResponse = FrameResponse.builder()
+				.imageUrl("https://api.alpha.payflow.me/api/images/frames/payment/ab12cd34?step=confirm")
+				.postUrl("https://api.alpha.payflow.me/api/farcaster/frames/pay/ab12cd34/frame/command")
+				.textInput("Enter amount, e.g. 5 usdc")
+				.state("{\"step\":\"amount\",\"token\":\"usdc\",\"chainId\":8453}")
+				.button(FrameResponse.BACK_FRAME_BUTTON)
+				.button(new FrameButton("$1", FrameButton.ActionType.TX,
+						"https://api.alpha.payflow.me/api/farcaster/frames/pay/ab12cd34/frame/pay?amount=1"))
+				.button(new FrameButton("$5", FrameButton.ActionType.TX,
+						"https://api.alpha.payflow.me/api/farcaster/frames/pay/ab12cd34/frame/pay?amount=5"))
+				.button(new FrameButton("Custom", FrameButton.ActionType.POST, null))
+				.build();
+	}
+
+	@Benchmark
+	public ResponseEntity<String> toHtmlResponse() {
+		return frameResponse.toHtmlResponse();
+	}
+}
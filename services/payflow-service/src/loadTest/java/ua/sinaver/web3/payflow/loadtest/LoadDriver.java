@@ -0,0 +1,144 @@
+package ua.sinaver.web3.payflow.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// closed-loop driver: <concurrency> virtual threads run iterations back to back until the
+// iteration budget or the duration is used up, every step keeps its own latency histogram
+@Slf4j
+public class LoadDriver {
+	private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+	private final HttpClient httpClient = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(10))
+			.executor(Executors.newVirtualThreadPerTaskExecutor())
+			.build();
+
+	public List<StepResult> run(String scenario, int concurrency, int iterations, Duration duration,
+			Iteration iteration) throws InterruptedException {
+		val recorder = new Recorder(scenario);
+		val counter = new AtomicLong();
+		val deadline = System.nanoTime() + duration.toNanos();
+
+		log.info("Running {} with concurrency {}, iterations {}, duration {}", scenario, concurrency,
+				iterations > 0 ? iterations : "unbounded", duration);
+		try (val executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (int worker = 0; worker < concurrency; worker++) {
+				executor.submit(() -> {
+					while (System.nanoTime() < deadline) {
+						val index = counter.getAndIncrement();
+						if (iterations > 0 && index >= iterations) {
+							return;
+						}
+						try {
+							iteration.run(index, recorder);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						} catch (Exception e) {
+							log.debug("Iteration of {} failed", scenario, e);
+						}
+					}
+				});
+			}
+		}
+		return recorder.results();
+	}
+
+	public Recorder recorder(String scenario) {
+		return new Recorder(scenario);
+	}
+
+	@FunctionalInterface
+	public interface Iteration {
+		void run(long index, Recorder recorder) throws Exception;
+	}
+
+	@FunctionalInterface
+	public interface Step<T> {
+		T call() throws Exception;
+	}
+
+	public record StepResult(String scenario, String step, long count, long errors,
+			double throughput, double p50Millis, double p99Millis, double maxMillis) {
+	}
+
+	public class Recorder {
+		private final String scenario;
+		private final long startedAt = System.nanoTime();
+		private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+		private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+		private final List<String> steps = new CopyOnWriteArrayList<>();
+
+		private Recorder(String scenario) {
+			this.scenario = scenario;
+		}
+
+		// non-2xx responses are recorded as errors, the response is returned either way
+		public HttpResponse<String> send(String step, HttpRequest request) throws Exception {
+			val response = time(step, () -> httpClient.send(request, HttpResponse.BodyHandlers.ofString()));
+			if (response.statusCode() >= 300) {
+				error(step);
+				log.debug("{}/{} responded with {}: {}", scenario, step, response.statusCode(),
+						response.body());
+			}
+			return response;
+		}
+
+		public <T> T time(String step, Step<T> call) throws Exception {
+			val start = System.nanoTime();
+			try {
+				return call.call();
+			} catch (Exception e) {
+				error(step);
+				throw e;
+			} finally {
+				record(step, System.nanoTime() - start);
+			}
+		}
+
+		public void record(String step, long nanos) {
+			latencies.computeIfAbsent(step, key -> {
+						steps.add(key);
+						return new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+					})
+					.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_LATENCY_MICROS));
+		}
+
+		public void error(String step) {
+			errors.computeIfAbsent(step, key -> new LongAdder()).increment();
+		}
+
+		public List<StepResult> results() {
+			val elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+			val results = new ArrayList<StepResult>();
+			for (val step : steps) {
+				val histogram = latencies.get(step);
+				results.add(new StepResult(scenario, step,
+						histogram.getTotalCount(),
+						errors.getOrDefault(step, new LongAdder()).sum(),
+						histogram.getTotalCount() / elapsedSeconds,
+						histogram.getValueAtPercentile(50) / 1000.0,
+						histogram.getValueAtPercentile(99) / 1000.0,
+						histogram.getMaxValue() / 1000.0));
+			}
+			return results;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package ua.sinaver.web3.payflow.loadtest;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+import ua.sinaver.web3.payflow.Application;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// boots the service in-process against a containerless mariadb, an optional embedded redis
+// and one stub server per upstream, so scenarios exercise the real request paths end-to-end
+@Slf4j
+public class LoadTestEnvironment implements AutoCloseable {
+	public static final String ONCHAIN = "onchain";
+	public static final String NEYNAR = "neynar";
+	public static final String WARPCAST = "warpcast";
+	public static final String GLIDE = "glide";
+	public static final String COINGECKO = "coingecko";
+	public static final String GECKOTERMINAL = "geckoterminal";
+	public static final String EFP = "efp";
+	public static final String ANTHROPIC = "anthropic";
+	public static final String AIRSTACK = "airstack";
+	public static final String BANKR = "bankr";
+	public static final String RODEO = "rodeo";
+
+	private static final List<String> UPSTREAMS = List.of(ONCHAIN, NEYNAR, WARPCAST, GLIDE, COINGECKO,
+			GECKOTERMINAL, EFP, ANTHROPIC, AIRSTACK, BANKR, RODEO);
+	private static final String DATABASE = "payflow_db";
+
+	@Getter
+	private final LoadTestSettings settings;
+	@Getter
+	private final Map<String, UpstreamStub> stubs = new LinkedHashMap<>();
+	private DB database;
+	private RedisServer redis;
+	@Getter
+	private ConfigurableApplicationContext context;
+
+	public LoadTestEnvironment(LoadTestSettings settings) {
+		this.settings = settings;
+	}
+
+	public LoadTestEnvironment start() throws Exception {
+		for (val upstream : UPSTREAMS) {
+			stubs.put(upstream, new UpstreamStub(upstream, settings));
+		}
+
+		val dbConfig = DBConfigurationBuilder.newBuilder().setPort(0).build();
+		database = DB.newEmbeddedDB(dbConfig);
+		database.start();
+		database.createDB(DATABASE);
+		log.info("Started embedded mariadb on port {}", dbConfig.getPort());
+
+		val properties = new LinkedHashMap<String, String>();
+		properties.put("server.port", "0");
+		properties.put("management.server.port", "0");
+		properties.put("spring.datasource.url", String.format(
+				"jdbc:mysql://localhost:%d/%s?rewriteBatchedStatements=true", dbConfig.getPort(), DATABASE));
+		properties.put("spring.datasource.username", "root");
+		properties.put("spring.datasource.password", "");
+		properties.put("spring.datasource.hikari.maximum-pool-size",
+				settings.string("db.pool-size", "20"));
+
+		val redisEnabled = settings.bool("redis", false);
+		if (redisEnabled) {
+			val redisPort = freePort();
+			redis = new RedisServer(redisPort);
+			redis.start();
+			properties.put("spring.data.redis.host", "localhost");
+			properties.put("spring.data.redis.port", String.valueOf(redisPort));
+			log.info("Started embedded redis on port {}", redisPort);
+		}
+
+		properties.put("payflow.dapp.url", "http://localhost:5173");
+		properties.put("payflow.api.url", "http://localhost/api");
+		properties.put("payflow.frames.url", "http://localhost/frames");
+
+		properties.put("payflow.onchain.url", stubs.get(ONCHAIN).url());
+		properties.put("payflow.neynar.api.url", stubs.get(NEYNAR).url() + "/v2/farcaster");
+		properties.put("payflow.warpcast.api.url", stubs.get(WARPCAST).url());
+		properties.put("payflow.glide.api.url", stubs.get(GLIDE).url());
+		properties.put("payflow.coingecko.api.url", stubs.get(COINGECKO).url() + "/api/v3");
+		properties.put("payflow.geckoterminal.api.url", stubs.get(GECKOTERMINAL).url() + "/api/v2");
+		properties.put("payflow.efp.api.url", stubs.get(EFP).url() + "/api/v1");
+		properties.put("anthropic.api.url", stubs.get(ANTHROPIC).url() + "/v1/messages");
+		properties.put("payflow.airstack.api.url", stubs.get(AIRSTACK).url() + "/gql");
+		properties.put("payflow.bankr.api.url", stubs.get(BANKR).url());
+		properties.put("payflow.rodeo.api.url", stubs.get(RODEO).url());
+
+		properties.put("payflow.hub.api.key", "loadtest");
+		properties.put("payflow.airstack.api.key", "loadtest");
+		properties.put("payflow.glide.api.key", "loadtest");
+		properties.put("anthropic.api.key", "loadtest");
+		properties.put("payflow.farcaster.bot.cast.signer", "loadtest");
+		properties.put("payflow.farcaster.bot.messaging.secret", "loadtest");
+		properties.put("payflow.farcaster.webhooks.neynar.secret", webhookSecret());
+		properties.put("payflow.farcaster.webhooks.membership.secret", webhookSecret());
+
+		// command line arguments take precedence over application.properties
+		val args = properties.entrySet().stream()
+				.map(entry -> "--" + entry.getKey() + "=" + entry.getValue())
+				.toArray(String[]::new);
+		context = new SpringApplicationBuilder(Application.class)
+				.profiles(redisEnabled ? "redis" : "caffeine")
+				.run(args);
+		log.info("Service started on {}", apiUrl());
+		return this;
+	}
+
+	public String apiUrl() {
+		return String.format("http://localhost:%s/api",
+				context.getEnvironment().getProperty("local.server.port"));
+	}
+
+	public String webhookSecret() {
+		return settings.string("webhook-secret", "loadtest-webhook-secret");
+	}
+
+	public <T> T bean(Class<T> type) {
+		return context.getBean(type);
+	}
+
+	private static int freePort() throws IOException {
+		try (val socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		if (context != null) {
+			context.close();
+		}
+		if (redis != null) {
+			redis.stop();
+		}
+		if (database != null) {
+			database.stop();
+		}
+		stubs.values().forEach(UpstreamStub::close);
+	}
+}
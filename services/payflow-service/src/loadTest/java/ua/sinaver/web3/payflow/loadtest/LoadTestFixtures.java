@@ -0,0 +1,95 @@
+package ua.sinaver.web3.payflow.loadtest;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.RandomStringUtils;
+import ua.sinaver.web3.payflow.entity.Flow;
+import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.entity.Wallet;
+import ua.sinaver.web3.payflow.entity.WalletSession;
+import ua.sinaver.web3.payflow.entity.protocol.ClientApiKey;
+import ua.sinaver.web3.payflow.repository.ClientApiKeyRepository;
+import ua.sinaver.web3.payflow.repository.FlowRepository;
+import ua.sinaver.web3.payflow.repository.UserRepository;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+// users with access tokens and default flows, plus one protocol api key whose owner
+// holds the wallet sessions used by session intent payments
+@Slf4j
+@Getter
+public class LoadTestFixtures {
+	public static final int BASE_CHAIN_ID = 8453;
+
+	private final List<User> users = new ArrayList<>();
+	private final List<String> sessionIds = new ArrayList<>();
+	private ClientApiKey apiKey;
+
+	public static LoadTestFixtures seed(LoadTestEnvironment environment) {
+		val settings = environment.getSettings();
+		val userRepository = environment.bean(UserRepository.class);
+		val flowRepository = environment.bean(FlowRepository.class);
+		val apiKeyRepository = environment.bean(ClientApiKeyRepository.class);
+
+		val fixtures = new LoadTestFixtures();
+		val userCount = Math.max(1, settings.integer("fixtures.users", 100));
+		val sessionCount = Math.max(1, settings.integer("fixtures.sessions", 20));
+		for (int i = 0; i < userCount; i++) {
+			var user = new User(randomAddress());
+			user.setUsername("loadtest" + i);
+			user.setDisplayName("Load Test " + i);
+			user.setAllowed(true);
+			user.setAccessToken("loadtest-" + RandomStringUtils.secure().nextAlphanumeric(32));
+			user = userRepository.save(user);
+
+			val flow = new Flow(user.getId(), "loadtest", user.getIdentity(), "wallet", null, null,
+					"safe", null);
+			flow.setType(Flow.FlowType.REGULAR);
+			val wallet = new Wallet(randomAddress(), BASE_CHAIN_ID, "1.4.1", true);
+			wallet.setFlow(flow);
+			wallet.setSessions(new ArrayList<>());
+			flow.setWallets(new ArrayList<>(List.of(wallet)));
+
+			// sessions are only needed by the api key owner
+			if (i == 0) {
+				for (int s = 0; s < sessionCount; s++) {
+					val session = new WalletSession();
+					session.setSessionId(RandomStringUtils.secure().nextAlphanumeric(16));
+					session.setSessionKey("0x" + RandomStringUtils.secure().next(64, "0123456789abcdef"));
+					session.setExpiresAt(Instant.now().plus(1, ChronoUnit.DAYS));
+					session.setWallet(wallet);
+					wallet.getSessions().add(session);
+					fixtures.sessionIds.add(session.getSessionId());
+				}
+			}
+
+			user.setDefaultFlow(flowRepository.save(flow));
+			fixtures.users.add(userRepository.save(user));
+		}
+
+		val owner = fixtures.users.getFirst();
+		val apiKey = new ClientApiKey("loadtest", ClientApiKey.ClientType.ADDRESS, owner.getIdentity());
+		apiKey.setUserId(owner.getId());
+		fixtures.apiKey = apiKeyRepository.save(apiKey);
+
+		log.info("Seeded {} users, {} wallet sessions and an api key for {}", fixtures.users.size(),
+				fixtures.sessionIds.size(), owner.getIdentity());
+		return fixtures;
+	}
+
+	public static String randomAddress() {
+		return "0x" + RandomStringUtils.secure().next(40, "0123456789abcdef");
+	}
+
+	public User user(long index) {
+		return users.get((int) (index % users.size()));
+	}
+
+	public String sessionId(long index) {
+		return sessionIds.get((int) (index % sessionIds.size()));
+	}
+}
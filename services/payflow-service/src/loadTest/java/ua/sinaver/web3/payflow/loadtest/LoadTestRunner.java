@@ -0,0 +1,83 @@
+package ua.sinaver.web3.payflow.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import ua.sinaver.web3.payflow.loadtest.scenario.*;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// entry point of ./gradlew loadTest, the only argument is a comma separated list of
+// scenario names or "all"
+@Slf4j
+public class LoadTestRunner {
+	private static final List<Scenario> SCENARIOS = List.of(
+			new BotMentionStormScenario(),
+			new FramePaymentFunnelScenario(),
+			new ContactsScenario(),
+			new SessionIntentPaymentScenario(),
+			new GlideFulfillmentBacklogScenario());
+
+	public static void main(String[] args) throws Exception {
+		val selected = args.length == 0 || args[0].equals("all")
+				? SCENARIOS
+				: selectScenarios(args[0]);
+
+		val settings = new LoadTestSettings();
+		val results = new ArrayList<LoadDriver.StepResult>();
+		try (val environment = new LoadTestEnvironment(settings).start()) {
+			val fixtures = LoadTestFixtures.seed(environment);
+			val driver = new LoadDriver();
+			for (val scenario : selected) {
+				log.info("Starting scenario {}", scenario.name());
+				results.addAll(scenario.run(environment, fixtures, driver));
+			}
+			report(settings, environment, results);
+		}
+		System.exit(0);
+	}
+
+	private static List<Scenario> selectScenarios(String names) {
+		val byName = SCENARIOS.stream().collect(Collectors.toMap(Scenario::name, Function.identity()));
+		val requested = Arrays.stream(names.split(",")).map(String::trim).collect(Collectors.toSet());
+		requested.stream().filter(name -> !byName.containsKey(name)).findFirst().ifPresent(name -> {
+			throw new IllegalArgumentException(String.format("Unknown scenario %s, available: %s",
+					name, byName.keySet()));
+		});
+		return SCENARIOS.stream().filter(scenario -> requested.contains(scenario.name())).toList();
+	}
+
+	private static void report(LoadTestSettings settings, LoadTestEnvironment environment,
+			List<LoadDriver.StepResult> results) throws Exception {
+		val table = new StringBuilder(String.format("%n%-16s %-10s %9s %7s %10s %10s %10s %10s%n",
+				"scenario", "step", "count", "errors", "req/s", "p50 ms", "p99 ms", "max ms"));
+		results.forEach(result -> table.append(String.format("%-16s %-10s %9d %7d %10.1f %10.1f %10.1f %10.1f%n",
+				result.scenario(), result.step(), result.count(), result.errors(), result.throughput(),
+				result.p50Millis(), result.p99Millis(), result.maxMillis())));
+		log.info(table.toString());
+
+		val upstreams = new LinkedHashMap<String, Map<String, Long>>();
+		environment.getStubs().forEach((name, stub) -> upstreams.put(name, Map.of(
+				"requests", stub.getRequests().sum(),
+				"failures", stub.getFailures().sum())));
+
+		val reportFile = new File(settings.string("report", "build/reports/loadtest/report.json"));
+		reportFile.getParentFile().mkdirs();
+		new ObjectMapper()
+				.enable(SerializationFeature.INDENT_OUTPUT)
+				.writeValue(reportFile, Map.of(
+						"finishedAt", Instant.now().toString(),
+						"results", results,
+						"upstreams", upstreams));
+		log.info("Load test report written to {}", reportFile.getAbsolutePath());
+	}
+}
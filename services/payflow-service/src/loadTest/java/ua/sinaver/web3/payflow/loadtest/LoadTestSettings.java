@@ -0,0 +1,51 @@
+package ua.sinaver.web3.payflow.loadtest;
+
+import lombok.val;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Properties;
+
+// defaults come from loadtest.properties, any key can be overridden with -Ploadtest.<key>=...
+public class LoadTestSettings {
+	private static final String PREFIX = "loadtest.";
+
+	private final Properties properties = new Properties();
+
+	public LoadTestSettings() throws IOException {
+		try (val defaults = LoadTestSettings.class.getResourceAsStream("/loadtest.properties")) {
+			if (defaults != null) {
+				properties.load(defaults);
+			}
+		}
+		System.getProperties().stringPropertyNames().stream()
+				.filter(key -> key.startsWith(PREFIX))
+				.forEach(key -> properties.setProperty(key.substring(PREFIX.length()),
+						System.getProperty(key)));
+	}
+
+	public String string(String key, String defaultValue) {
+		return properties.getProperty(key, defaultValue);
+	}
+
+	public int integer(String key, int defaultValue) {
+		val value = properties.getProperty(key);
+		return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+	}
+
+	public double decimal(String key, double defaultValue) {
+		val value = properties.getProperty(key);
+		return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+	}
+
+	public boolean bool(String key, boolean defaultValue) {
+		val value = properties.getProperty(key);
+		return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+	}
+
+	public Duration duration(String key, Duration defaultValue) {
+		val value = properties.getProperty(key);
+		return value != null ? DurationStyle.detectAndParse(value.trim()) : defaultValue;
+	}
+}
@@ -0,0 +1,134 @@
+package ua.sinaver.web3.payflow.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// local stand-in for one upstream api: serves recorded payloads from
+// stubs/<upstream>/<METHOD>/<path>.json, the longest matching path wins, so
+// GET /sessions/abc is served by stubs/glide/GET/sessions.json
+// latency, jitter and error rate are configured per upstream, e.g. loadtest.neynar.latency=80ms
+@Slf4j
+public class UpstreamStub implements AutoCloseable {
+	private static final byte[] EMPTY_PAYLOAD = "{}".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] ERROR_PAYLOAD = "{\"message\":\"stubbed upstream failure\"}"
+			.getBytes(StandardCharsets.UTF_8);
+
+	@Getter
+	private final String name;
+	private final Duration latency;
+	private final Duration jitter;
+	private final double errorRate;
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final Map<String, Optional<byte[]>> payloads = new ConcurrentHashMap<>();
+
+	@Getter
+	private final LongAdder requests = new LongAdder();
+	@Getter
+	private final LongAdder failures = new LongAdder();
+
+	public UpstreamStub(String name, LoadTestSettings settings) throws IOException {
+		this.name = name;
+		this.latency = settings.duration(name + ".latency",
+				settings.duration("upstream.latency", Duration.ofMillis(50)));
+		this.jitter = settings.duration(name + ".latency-jitter",
+				settings.duration("upstream.latency-jitter", Duration.ZERO));
+		this.errorRate = settings.decimal(name + ".error-rate",
+				settings.decimal("upstream.error-rate", 0));
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+		log.info("Started {} upstream stub on {} (latency: {}, jitter: {}, error rate: {})",
+				name, url(), latency, jitter, errorRate);
+	}
+
+	public String url() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+			requests.increment();
+			delay();
+
+			if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+				failures.increment();
+				respond(exchange, 503, ERROR_PAYLOAD);
+				return;
+			}
+
+			respond(exchange, 200, payload(exchange.getRequestMethod(), exchange.getRequestURI().getPath()));
+		}
+	}
+
+	private void delay() {
+		var millis = latency.toMillis();
+		if (!jitter.isZero()) {
+			millis += ThreadLocalRandom.current().nextLong(jitter.toMillis() + 1);
+		}
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+	private byte[] payload(String method, String path) {
+		var resourcePath = path.replaceAll("/+$", "");
+		while (!resourcePath.isEmpty()) {
+			val payload = recorded(String.format("stubs/%s/%s%s.json", name, method, resourcePath));
+			if (payload.isPresent()) {
+				return payload.get();
+			}
+			resourcePath = resourcePath.substring(0, resourcePath.lastIndexOf('/'));
+		}
+		return recorded(String.format("stubs/%s/%s.json", name, method)).orElse(EMPTY_PAYLOAD);
+	}
+
+	private Optional<byte[]> recorded(String resource) {
+		return payloads.computeIfAbsent(resource, key -> {
+			try (val stream = UpstreamStub.class.getClassLoader().getResourceAsStream(key)) {
+				return stream != null ? Optional.of(stream.readAllBytes()) : Optional.empty();
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to read recorded payload " + key, e);
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+		log.info("Stopped {} upstream stub, served {} requests ({} injected failures)",
+				name, requests.sum(), failures.sum());
+	}
+}
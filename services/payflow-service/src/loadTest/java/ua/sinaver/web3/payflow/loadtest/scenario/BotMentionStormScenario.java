@@ -0,0 +1,87 @@
+package ua.sinaver.web3.payflow.loadtest.scenario;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.RandomStringUtils;
+import ua.sinaver.web3.payflow.loadtest.LoadDriver;
+import ua.sinaver.web3.payflow.loadtest.LoadTestEnvironment;
+import ua.sinaver.web3.payflow.loadtest.LoadTestFixtures;
+import ua.sinaver.web3.payflow.repository.PaymentBotJobRepository;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+
+// burst of signed neynar cast.created webhooks mentioning the bot, measures the webhook ack,
+// the queued jobs are picked up by the bot scheduler in the background
+@Slf4j
+public class BotMentionStormScenario implements Scenario {
+	private static final String CAST_CREATED = """
+			{
+			  "created_at": %d,
+			  "type": "cast.created",
+			  "data": {
+			    "object": "cast",
+			    "hash": "%s",
+			    "thread_hash": "%s",
+			    "author": {
+			      "object": "user",
+			      "fid": %d,
+			      "custody_address": "%s",
+			      "username": "%s",
+			      "display_name": "%s",
+			      "verifications": ["%s"],
+			      "verified_addresses": {"eth_addresses": ["%s"], "sol_addresses": []}
+			    },
+			    "text": "@payflow send @%s 5 usdc",
+			    "timestamp": "%s",
+			    "embeds": [],
+			    "mentioned_profiles": []
+			  }
+			}
+			""";
+
+	@Override
+	public String name() {
+		return "bot-mentions";
+	}
+
+	@Override
+	public List<LoadDriver.StepResult> run(LoadTestEnvironment environment, LoadTestFixtures fixtures,
+			LoadDriver driver) throws Exception {
+		val url = URI.create(environment.apiUrl() + "/farcaster/webhooks/bot");
+		val secret = environment.webhookSecret().getBytes(StandardCharsets.UTF_8);
+		val jobs = environment.bean(PaymentBotJobRepository.class);
+		val queuedBefore = jobs.count();
+
+		val results = drive(environment, driver, (index, recorder) -> {
+			val sender = fixtures.user(index);
+			val receiver = fixtures.user(index + 1);
+			val hash = "0x" + RandomStringUtils.secure().next(40, "0123456789abcdef");
+			val body = String.format(CAST_CREATED, Instant.now().getEpochSecond(), hash, hash,
+					100_000 + sender.getId(), sender.getIdentity(), sender.getUsername(),
+					sender.getDisplayName(), sender.getIdentity(), sender.getIdentity(),
+					receiver.getUsername(), Instant.now());
+
+			recorder.send("webhook", HttpRequest.newBuilder(url)
+					.header("Content-Type", "application/json")
+					.header("X-Neynar-Signature", sign(secret, body))
+					.POST(HttpRequest.BodyPublishers.ofString(body))
+					.build());
+		});
+
+		log.info("Webhook storm queued {} bot jobs", jobs.count() - queuedBefore);
+		return results;
+	}
+
+	private static String sign(byte[] secret, String body) throws Exception {
+		val mac = Mac.getInstance("HmacSHA512");
+		mac.init(new SecretKeySpec(secret, "HmacSHA512"));
+		return HexFormat.of().formatHex(mac.doFinal(body.getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,31 @@
+package ua.sinaver.web3.payflow.loadtest.scenario;
+
+import lombok.val;
+import ua.sinaver.web3.payflow.loadtest.LoadDriver;
+import ua.sinaver.web3.payflow.loadtest.LoadTestEnvironment;
+import ua.sinaver.web3.payflow.loadtest.LoadTestFixtures;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.List;
+
+// authenticated contact book loads, spread over all fixture users so the first request of
+// every user goes through the full social graph fan-out and the rest hit the contacts cache
+public class ContactsScenario implements Scenario {
+
+	@Override
+	public String name() {
+		return "contacts";
+	}
+
+	@Override
+	public List<LoadDriver.StepResult> run(LoadTestEnvironment environment, LoadTestFixtures fixtures,
+			LoadDriver driver) throws Exception {
+		val url = URI.create(environment.apiUrl() + "/user/me/contacts");
+		return drive(environment, driver, (index, recorder) -> recorder.send("contacts",
+				HttpRequest.newBuilder(url)
+						.header("Authorization", "Bearer " + fixtures.user(index).getAccessToken())
+						.GET()
+						.build()));
+	}
+}
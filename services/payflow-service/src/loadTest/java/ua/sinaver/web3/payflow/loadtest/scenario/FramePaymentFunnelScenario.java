@@ -0,0 +1,58 @@
+package ua.sinaver.web3.payflow.loadtest.scenario;
+
+import lombok.val;
+import org.apache.commons.lang3.RandomStringUtils;
+import ua.sinaver.web3.payflow.loadtest.LoadDriver;
+import ua.sinaver.web3.payflow.loadtest.LoadTestEnvironment;
+import ua.sinaver.web3.payflow.loadtest.LoadTestFixtures;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// frame payment funnel: the pay command frame (neynar validation, sender upsert, payment
+// creation) followed by the payment page load of the created payment
+public class FramePaymentFunnelScenario implements Scenario {
+	private static final Pattern CONFIRM_URL_PATTERN = Pattern.compile("/pay/([A-Za-z0-9]+)/frame/confirm");
+	private static final String FRAME_MESSAGE = """
+			{
+			  "untrustedData": {"fid": %d, "url": "https://frames.payflow.me", "buttonIndex": 1, "inputText": "5 usdc"},
+			  "trustedData": {"messageBytes": "%s"}
+			}
+			""";
+
+	@Override
+	public String name() {
+		return "frame-funnel";
+	}
+
+	@Override
+	public List<LoadDriver.StepResult> run(LoadTestEnvironment environment, LoadTestFixtures fixtures,
+			LoadDriver driver) throws Exception {
+		val apiUrl = environment.apiUrl();
+		return drive(environment, driver, (index, recorder) -> {
+			val receiver = fixtures.user(index);
+			val body = String.format(FRAME_MESSAGE, 100_000 + receiver.getId(),
+					RandomStringUtils.secure().next(256, "0123456789abcdef"));
+
+			val command = recorder.send("command", HttpRequest.newBuilder(
+							URI.create(String.format("%s/farcaster/frames/pay/%s/frame/command", apiUrl,
+									receiver.getIdentity())))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(body))
+					.build());
+
+			val matcher = CONFIRM_URL_PATTERN.matcher(command.body());
+			if (!matcher.find()) {
+				recorder.error("payment");
+				return;
+			}
+
+			recorder.send("payment", HttpRequest.newBuilder(
+							URI.create(String.format("%s/payment/%s", apiUrl, matcher.group(1))))
+					.GET()
+					.build());
+		});
+	}
+}
@@ -0,0 +1,81 @@
+package ua.sinaver.web3.payflow.loadtest.scenario;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.RandomStringUtils;
+import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.loadtest.LoadDriver;
+import ua.sinaver.web3.payflow.loadtest.LoadTestEnvironment;
+import ua.sinaver.web3.payflow.loadtest.LoadTestFixtures;
+import ua.sinaver.web3.payflow.repository.PaymentRepository;
+import ua.sinaver.web3.payflow.service.PaymentService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+// seeds a backlog of in-progress glide fulfillments and drains it by invoking the fulfillment
+// check job back to back (instead of waiting for its 15 minute schedule), reports the batch
+// latency and the time until each payment got completed
+@Slf4j
+public class GlideFulfillmentBacklogScenario implements Scenario {
+
+	@Override
+	public String name() {
+		return "glide-backlog";
+	}
+
+	@Override
+	public List<LoadDriver.StepResult> run(LoadTestEnvironment environment, LoadTestFixtures fixtures,
+			LoadDriver driver) throws Exception {
+		val settings = environment.getSettings();
+		val paymentRepository = environment.bean(PaymentRepository.class);
+		val paymentService = environment.bean(PaymentService.class);
+		val backlog = settings.integer(name() + ".payments", 500);
+		val maxDuration = settings.duration(name() + ".duration", Duration.ofMinutes(5));
+
+		val payments = new ArrayList<Payment>(backlog);
+		for (int i = 0; i < backlog; i++) {
+			val sender = fixtures.user(i);
+			val payment = new Payment(Payment.PaymentType.INTENT, fixtures.user(i + 1),
+					LoadTestFixtures.BASE_CHAIN_ID, "usdc");
+			payment.setSender(sender);
+			payment.setSenderAddress(sender.getIdentity());
+			payment.setReceiverAddress(fixtures.user(i + 1).getIdentity());
+			payment.setTokenAmount("1");
+			payment.setStatus(Payment.PaymentStatus.INPROGRESS);
+			payment.setFulfillmentId(RandomStringUtils.secure().nextAlphanumeric(24));
+			// the job only picks up payments older than 10 minutes
+			payment.setCreatedAt(Instant.now().minus(1, ChronoUnit.HOURS));
+			payments.add(payment);
+		}
+		val paymentIds = paymentRepository.saveAll(payments).stream().map(Payment::getId).toList();
+		log.info("Seeded glide fulfillment backlog of {} payments", paymentIds.size());
+
+		val recorder = driver.recorder(name());
+		val startedAt = Instant.now();
+		val deadline = System.nanoTime() + maxDuration.toNanos();
+		long remaining = backlog;
+		while (remaining > 0 && System.nanoTime() < deadline) {
+			recorder.time("batch", () -> {
+				paymentService.scheduledInProgressCheck();
+				return null;
+			});
+			remaining = paymentRepository.countByStatusIn(List.of(Payment.PaymentStatus.INPROGRESS));
+		}
+
+		paymentRepository.findAllById(paymentIds).stream()
+				.filter(payment -> payment.getCompletedAt() != null)
+				.forEach(payment -> recorder.record("fulfilled",
+						Duration.between(startedAt, payment.getCompletedAt()).toNanos()));
+		if (remaining > 0) {
+			log.warn("Glide backlog not drained within {}, {} payments left", maxDuration, remaining);
+			for (long i = 0; i < remaining; i++) {
+				recorder.error("fulfilled");
+			}
+		}
+		return recorder.results();
+	}
+}
@@ -0,0 +1,27 @@
+package ua.sinaver.web3.payflow.loadtest.scenario;
+
+import ua.sinaver.web3.payflow.loadtest.LoadDriver;
+import ua.sinaver.web3.payflow.loadtest.LoadTestEnvironment;
+import ua.sinaver.web3.payflow.loadtest.LoadTestFixtures;
+
+import java.time.Duration;
+import java.util.List;
+
+// load is shaped per scenario: loadtest.<name>.concurrency, .iterations (0 = bounded by
+// duration only) and .duration, falling back to the global loadtest.concurrency/duration
+public interface Scenario {
+	String name();
+
+	List<LoadDriver.StepResult> run(LoadTestEnvironment environment, LoadTestFixtures fixtures,
+			LoadDriver driver) throws Exception;
+
+	default List<LoadDriver.StepResult> drive(LoadTestEnvironment environment, LoadDriver driver,
+			LoadDriver.Iteration iteration) throws InterruptedException {
+		var settings = environment.getSettings();
+		return driver.run(name(),
+				settings.integer(name() + ".concurrency", settings.integer("concurrency", 32)),
+				settings.integer(name() + ".iterations", 0),
+				settings.duration(name() + ".duration", settings.duration("duration", Duration.ofSeconds(60))),
+				iteration);
+	}
+}
@@ -0,0 +1,45 @@
+package ua.sinaver.web3.payflow.loadtest.scenario;
+
+import lombok.val;
+import ua.sinaver.web3.payflow.loadtest.LoadDriver;
+import ua.sinaver.web3.payflow.loadtest.LoadTestEnvironment;
+import ua.sinaver.web3.payflow.loadtest.LoadTestFixtures;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.List;
+
+// protocol createPayment with session intents, every created payment is executed
+// asynchronously through the onchain wallet stub
+public class SessionIntentPaymentScenario implements Scenario {
+	private static final String CREATE_PAYMENT = """
+			{
+			  "type": "SESSION_INTENT",
+			  "name": "load test",
+			  "recipient": {"address": "%s", "comment": "load test #%d"},
+			  "payer": {"sessionId": "%s"},
+			  "payment": {"amount": "1", "token": "usdc", "chainId": %d}
+			}
+			""";
+
+	@Override
+	public String name() {
+		return "session-intents";
+	}
+
+	@Override
+	public List<LoadDriver.StepResult> run(LoadTestEnvironment environment, LoadTestFixtures fixtures,
+			LoadDriver driver) throws Exception {
+		val url = URI.create(environment.apiUrl() + "/protocol/payment/create");
+		val apiKey = fixtures.getApiKey().getApiKey();
+		return drive(environment, driver, (index, recorder) -> {
+			val body = String.format(CREATE_PAYMENT, fixtures.user(index + 1).getIdentity(), index,
+					fixtures.sessionId(index), LoadTestFixtures.BASE_CHAIN_ID);
+			recorder.send("create", HttpRequest.newBuilder(url)
+					.header("Content-Type", "application/json")
+					.header("X-API-Key", apiKey)
+					.POST(HttpRequest.BodyPublishers.ofString(body))
+					.build());
+		});
+	}
+}
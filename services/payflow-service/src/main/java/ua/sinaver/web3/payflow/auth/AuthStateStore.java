@@ -0,0 +1,16 @@
+package ua.sinaver.web3.payflow.auth;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// short-lived sign in state which doesn't belong into an http session: siwe nonces, consumed
+// once, and the deny-list of revoked signed session ids, kept until the session would expire
+public interface AuthStateStore {
+	void saveNonce(String nonce, Duration ttl);
+
+	boolean consumeNonce(String nonce);
+
+	void deny(String sessionId, Instant expiresAt);
+
+	boolean isDenied(String sessionId);
+}
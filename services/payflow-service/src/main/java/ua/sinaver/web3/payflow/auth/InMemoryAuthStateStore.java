@@ -0,0 +1,51 @@
+package ua.sinaver.web3.payflow.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// single instance setup, nonces and revocations are only visible to this instance
+@Component
+@Profile("!redis")
+public class InMemoryAuthStateStore implements AuthStateStore {
+	private final Cache<String, Instant> nonces;
+	private final Cache<String, Instant> deniedSessions;
+
+	public InMemoryAuthStateStore(@Value("${payflow.auth.nonce.max-size:100000}") long noncesMaxSize) {
+		this.nonces = Caffeine.newBuilder()
+				.expireAfter(Expiry.writing((String nonce, Instant expiresAt) ->
+						Duration.between(Instant.now(), expiresAt)))
+				.maximumSize(noncesMaxSize)
+				.build();
+		this.deniedSessions = Caffeine.newBuilder()
+				.expireAfter(Expiry.writing((String sessionId, Instant expiresAt) ->
+						Duration.between(Instant.now(), expiresAt)))
+				.build();
+	}
+
+	@Override
+	public void saveNonce(String nonce, Duration ttl) {
+		nonces.put(nonce, Instant.now().plus(ttl));
+	}
+
+	@Override
+	public boolean consumeNonce(String nonce) {
+		return nonces.asMap().remove(nonce) != null;
+	}
+
+	@Override
+	public void deny(String sessionId, Instant expiresAt) {
+		deniedSessions.put(sessionId, expiresAt);
+	}
+
+	@Override
+	public boolean isDenied(String sessionId) {
+		return deniedSessions.getIfPresent(sessionId) != null;
+	}
+}
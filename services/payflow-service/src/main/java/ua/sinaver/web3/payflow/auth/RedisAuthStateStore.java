@@ -0,0 +1,68 @@
+package ua.sinaver.web3.payflow.auth;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// shared between instances: a nonce can be issued by one instance and consumed by another.
+// revoked session ids live in a sorted set scored by expiry, every instance keeps a local copy
+// refreshed in the background, so checking a session never goes to redis
+@Slf4j
+@Component
+@Profile("redis")
+public class RedisAuthStateStore implements AuthStateStore {
+	private static final String NONCE_KEY_PREFIX = "auth:nonce:";
+	private static final String DENIED_SESSIONS_KEY = "auth:denied-sessions";
+
+	private volatile Set<String> deniedSessions = ConcurrentHashMap.newKeySet();
+
+	@Autowired
+	private StringRedisTemplate redisTemplate;
+
+	@Override
+	public void saveNonce(String nonce, Duration ttl) {
+		redisTemplate.opsForValue().set(NONCE_KEY_PREFIX + nonce, "", ttl);
+	}
+
+	@Override
+	public boolean consumeNonce(String nonce) {
+		return redisTemplate.opsForValue().getAndDelete(NONCE_KEY_PREFIX + nonce) != null;
+	}
+
+	@Override
+	public void deny(String sessionId, Instant expiresAt) {
+		redisTemplate.opsForZSet().add(DENIED_SESSIONS_KEY, sessionId, expiresAt.getEpochSecond());
+		deniedSessions.add(sessionId);
+	}
+
+	@Override
+	public boolean isDenied(String sessionId) {
+		return deniedSessions.contains(sessionId);
+	}
+
+	@Scheduled(fixedDelayString = "${payflow.auth.session.deny-list.refresh:PT10S}")
+	void refreshDeniedSessions() {
+		try {
+			val now = Instant.now().getEpochSecond();
+			val zset = redisTemplate.opsForZSet();
+			zset.removeRangeByScore(DENIED_SESSIONS_KEY, 0, now);
+			val denied = zset.rangeByScore(DENIED_SESSIONS_KEY, now, Double.POSITIVE_INFINITY);
+			val refreshed = ConcurrentHashMap.<String>newKeySet();
+			if (denied != null) {
+				refreshed.addAll(denied);
+			}
+			deniedSessions = refreshed;
+		} catch (RuntimeException e) {
+			log.warn("Failed to refresh denied sessions, keeping {} known ones", deniedSessions.size(), e);
+		}
+	}
+}
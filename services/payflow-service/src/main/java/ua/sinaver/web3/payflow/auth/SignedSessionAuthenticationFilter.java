@@ -0,0 +1,37 @@
+package ua.sinaver.web3.payflow.auth;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+@Component
+@Slf4j
+public class SignedSessionAuthenticationFilter extends OncePerRequestFilter {
+
+	@Autowired
+	private SignedSessionService signedSessionService;
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		if (signedSessionService.isEnabled()
+				&& SecurityContextHolder.getContext().getAuthentication() == null) {
+			val identity = signedSessionService.authenticate(request);
+			if (identity != null) {
+				val authentication = new Web3Authentication(identity, null, null);
+				authentication.setAuthenticated(true);
+				SecurityContextHolder.getContext().setAuthentication(authentication);
+			}
+		}
+		chain.doFilter(request, response);
+	}
+}
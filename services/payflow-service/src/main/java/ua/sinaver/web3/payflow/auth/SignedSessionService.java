@@ -0,0 +1,172 @@
+package ua.sinaver.web3.payflow.auth;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// stateless alternative to jdbc http sessions (payflow.auth.session.mode=signed): after siwe
+// verification the identity is put into an hmac signed, expiring cookie, which is checked on
+// every request without a session lookup. logout puts the session id on the deny-list
+// token: <session id>.<base64url identity>.<expires at epoch seconds>.<base64url hmac-sha256>
+@Slf4j
+@Component
+public class SignedSessionService {
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final int MIN_SECRET_LENGTH = 32;
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private final SecureRandom random = new SecureRandom();
+	// request threads are virtual, initialized macs are pooled instead of kept in thread locals
+	private final Queue<Mac> macs = new ConcurrentLinkedQueue<>();
+
+	@Value("${payflow.auth.session.mode:jdbc}")
+	private String mode;
+	@Value("${payflow.auth.session.secret:}")
+	private String secret;
+	@Value("${server.servlet.session.timeout:30m}")
+	private Duration timeout;
+	@Value("${server.servlet.session.cookie.name:sessionId}")
+	private String cookieName;
+	@Value("${server.servlet.session.cookie.domain:}")
+	private String cookieDomain;
+
+	@Autowired
+	private AuthStateStore authStateStore;
+
+	private SecretKeySpec secretKey;
+
+	public boolean isEnabled() {
+		return "signed".equals(mode);
+	}
+
+	@PostConstruct
+	private void initialize() {
+		if (!isEnabled()) {
+			return;
+		}
+		if (StringUtils.length(secret) < MIN_SECRET_LENGTH) {
+			throw new IllegalStateException(String.format(
+					"payflow.auth.session.secret must be at least %d characters for signed sessions",
+					MIN_SECRET_LENGTH));
+		}
+		secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+		log.info("Signed sessions enabled, session timeout: {}", timeout);
+	}
+
+	public ResponseCookie issue(String identity) {
+		val sessionIdBytes = new byte[16];
+		random.nextBytes(sessionIdBytes);
+		val payload = String.join(".",
+				ENCODER.encodeToString(sessionIdBytes),
+				ENCODER.encodeToString(identity.getBytes(StandardCharsets.UTF_8)),
+				String.valueOf(Instant.now().plus(timeout).getEpochSecond()));
+		return cookie(payload + "." + ENCODER.encodeToString(sign(payload)), timeout);
+	}
+
+	// identity of a valid, not expired and not revoked session, otherwise null
+	public String authenticate(HttpServletRequest request) {
+		val session = parse(token(request));
+		return session != null ? session.identity() : null;
+	}
+
+	public ResponseCookie revoke(HttpServletRequest request) {
+		val session = parse(token(request));
+		if (session != null) {
+			authStateStore.deny(session.id(), session.expiresAt());
+		}
+		return cookie("", Duration.ZERO);
+	}
+
+	private Session parse(String token) {
+		if (StringUtils.isBlank(token)) {
+			return null;
+		}
+
+		val separator = token.lastIndexOf('.');
+		val parts = token.split("\\.");
+		if (separator < 0 || parts.length != 4) {
+			return null;
+		}
+
+		try {
+			val payload = token.substring(0, separator);
+			if (!MessageDigest.isEqual(sign(payload), DECODER.decode(parts[3]))) {
+				log.debug("Invalid signed session signature");
+				return null;
+			}
+
+			val expiresAt = Instant.ofEpochSecond(Long.parseLong(parts[2]));
+			if (expiresAt.isBefore(Instant.now()) || authStateStore.isDenied(parts[0])) {
+				return null;
+			}
+			return new Session(parts[0], new String(DECODER.decode(parts[1]), StandardCharsets.UTF_8),
+					expiresAt);
+		} catch (IllegalArgumentException e) {
+			log.debug("Malformed signed session: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	private String token(HttpServletRequest request) {
+		if (request.getCookies() == null) {
+			return null;
+		}
+		return Arrays.stream(request.getCookies())
+				.filter(cookie -> cookieName.equals(cookie.getName()))
+				.map(Cookie::getValue)
+				.findFirst()
+				.orElse(null);
+	}
+
+	private ResponseCookie cookie(String value, Duration maxAge) {
+		val cookie = ResponseCookie.from(cookieName, value)
+				.path("/")
+				.httpOnly(true)
+				.secure(true)
+				.sameSite("Strict")
+				.maxAge(maxAge);
+		if (StringUtils.isNotBlank(cookieDomain)) {
+			cookie.domain(cookieDomain);
+		}
+		return cookie.build();
+	}
+
+	private byte[] sign(String payload) {
+		var mac = macs.poll();
+		try {
+			if (mac == null) {
+				mac = Mac.getInstance(HMAC_ALGORITHM);
+				mac.init(secretKey);
+			}
+			val signature = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+			macs.offer(mac);
+			return signature;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Failed to initialize session signature mac", e);
+		}
+	}
+
+	private record Session(String id, String identity, Instant expiresAt) {
+	}
+}
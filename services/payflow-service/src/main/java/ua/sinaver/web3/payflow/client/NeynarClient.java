@@ -12,7 +12,7 @@ import ua.sinaver.web3.payflow.message.subscription.SubscribedToResponse;
 import java.util.List;
 import java.util.Map;
 
-@FeignClient(name = "neynar", url = "https://api.neynar.com/v2/farcaster", configuration = NeynarClientConfig.class)
+@FeignClient(name = "neynar", url = "${payflow.neynar.api.url}", configuration = NeynarClientConfig.class)
 public interface NeynarClient {
     @GetMapping("/cast/conversation")
     CastConversationData getCastConversation(
@@ -1,11 +1,13 @@
 package ua.sinaver.web3.payflow.client;
 
+import feign.Client;
+import feign.Request;
 import feign.RequestInterceptor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
 
-@Configuration
+// not a @Configuration on purpose: beans are only registered in the neynar feign
+// client context, so the api key and neynar pool/breaker don't leak to other clients
 public class NeynarClientConfig {
     @Value("${payflow.hub.api.key}")
     private String apiKey;
@@ -14,4 +16,14 @@ public class NeynarClientConfig {
     public RequestInterceptor apiKeyInterceptor() {
         return requestTemplate -> requestTemplate.header("api_key", apiKey);
     }
+
+    @Bean
+    public Client neynarFeignClient(UpstreamClientRegistry upstreams) {
+        return upstreams.feignClient(UpstreamClientRegistry.NEYNAR);
+    }
+
+    @Bean
+    public Request.Options neynarRequestOptions(UpstreamClientRegistry upstreams) {
+        return upstreams.feignOptions(UpstreamClientRegistry.NEYNAR);
+    }
 }
@@ -0,0 +1,277 @@
+package ua.sinaver.web3.payflow.client;
+
+import feign.Client;
+import feign.Request;
+import feign.hc5.ApacheHttp5Client;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// shared outbound http layer: every upstream gets its own connection pool, timeouts,
+// bulkhead and circuit breaker, so one slow dependency can't exhaust the threads
+// blocked on the others. latency is reported per upstream as payflow.upstream.requests
+@Slf4j
+@Component
+public class UpstreamClientRegistry {
+	public static final String NEYNAR = "neynar";
+	public static final String EFP = "efp";
+	public static final String COINGECKO = "coingecko";
+	public static final String GECKOTERMINAL = "geckoterminal";
+	public static final String BANKR = "bankr";
+	public static final String RODEO = "rodeo";
+	public static final String FRAMES = "frames";
+	public static final String ANTHROPIC = "anthropic";
+	public static final String GLIDE = "glide";
+	public static final String WALLET = "wallet";
+	public static final String AIRSTACK = "airstack";
+	public static final String WARPCAST = "warpcast";
+
+	private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+	private final Map<String, CloseableHttpClient> feignHttpClients = new ConcurrentHashMap<>();
+
+	@Autowired
+	private UpstreamProperties properties;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private ObjectProvider<WebClient.Builder> webClientBuilder;
+
+	// filters are applied outside-in: metrics, circuit breaker, hedging, bulkhead,
+	// so each hedged attempt takes its own bulkhead permit
+	public WebClient.Builder webClient(String name) {
+		val upstream = upstream(name);
+		return webClientBuilder.getObject()
+				.clientConnector(new ReactorClientHttpConnector(upstream.httpClient()))
+				.filter(metricsFilter(upstream))
+				.filter((request, next) -> next.exchange(request)
+						.transformDeferred(CircuitBreakerOperator.of(upstream.circuitBreaker())))
+				.filter(hedgingFilter(upstream))
+				.filter((request, next) -> next.exchange(request)
+						.transformDeferred(BulkheadOperator.of(upstream.bulkhead())));
+	}
+
+	public Client feignClient(String name) {
+		val upstream = upstream(name);
+		val delegate = new ApacheHttp5Client(feignHttpClients.computeIfAbsent(name,
+				key -> feignHttpClient(upstream.config())));
+		return (request, options) -> {
+			val sample = Timer.start(meterRegistry);
+			try {
+				val response = upstream.circuitBreaker().executeCheckedSupplier(
+						() -> upstream.bulkhead().executeCheckedSupplier(
+								() -> delegate.execute(request, options)));
+				record(sample, upstream, request.httpMethod().name(), outcome(response.status()));
+				return response;
+			} catch (Throwable t) {
+				record(sample, upstream, request.httpMethod().name(), outcome(t));
+				if (t instanceof IOException e) {
+					throw e;
+				}
+				if (t instanceof RuntimeException e) {
+					throw e;
+				}
+				throw new IOException(t);
+			}
+		};
+	}
+
+	public Request.Options feignOptions(String name) {
+		val config = upstream(name).config();
+		return new Request.Options(
+				config.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS,
+				config.getResponseTimeout().toMillis(), TimeUnit.MILLISECONDS,
+				true);
+	}
+
+	public CircuitBreaker.State state(String name) {
+		return upstream(name).circuitBreaker().getState();
+	}
+
+	@PreDestroy
+	void dispose() {
+		upstreams.values().forEach(upstream -> upstream.connectionProvider().dispose());
+		feignHttpClients.values().forEach(httpClient -> httpClient.close(CloseMode.GRACEFUL));
+	}
+
+	private Upstream upstream(String name) {
+		return upstreams.computeIfAbsent(name, this::create);
+	}
+
+	private Upstream create(String name) {
+		val config = properties.get(name);
+
+		val connectionProvider = ConnectionProvider.builder("upstream-" + name)
+				.maxConnections(config.getMaxConnections())
+				.pendingAcquireTimeout(config.getPendingAcquireTimeout())
+				.maxIdleTime(config.getMaxIdleTime())
+				.evictInBackground(Duration.ofSeconds(60))
+				.build();
+
+		val httpClient = HttpClient.create(connectionProvider)
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) config.getConnectTimeout().toMillis())
+				.responseTimeout(config.getResponseTimeout());
+
+		val circuitBreaker = CircuitBreaker.of(name, CircuitBreakerConfig.custom()
+				.failureRateThreshold(config.getFailureRateThreshold())
+				.slowCallDurationThreshold(config.getSlowCallDurationThreshold())
+				.slowCallRateThreshold(config.getSlowCallRateThreshold())
+				.slidingWindowSize(config.getSlidingWindowSize())
+				.minimumNumberOfCalls(config.getMinimumNumberOfCalls())
+				.waitDurationInOpenState(config.getWaitDurationInOpenState())
+				.recordResult(UpstreamClientRegistry::isUpstreamFailure)
+				.build());
+		circuitBreaker.getEventPublisher().onStateTransition(event -> log.warn(
+				"Upstream {} circuit breaker transition: {}", name, event.getStateTransition()));
+
+		// reactive calls never wait for a permit, max wait only applies to feign
+		val bulkhead = Bulkhead.of(name, BulkheadConfig.custom()
+				.maxConcurrentCalls(config.getMaxConcurrentCalls())
+				.maxWaitDuration(config.getMaxWaitDuration())
+				.build());
+
+		log.info("Upstream {} client: max connections {}, response timeout {}, max concurrent calls {}, " +
+						"hedge delay {}", name, config.getMaxConnections(), config.getResponseTimeout(),
+				config.getMaxConcurrentCalls(), config.getHedgeDelay());
+		return new Upstream(name, config, connectionProvider, httpClient, circuitBreaker, bulkhead);
+	}
+
+	// blocking pool for feign, with the same limits as the reactive one: a request waits up to
+	// the pending acquire timeout for a connection. only built for upstreams called through feign
+	private static CloseableHttpClient feignHttpClient(UpstreamProperties.Upstream config) {
+		val connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+				.setMaxConnTotal(config.getMaxConnections())
+				.setMaxConnPerRoute(config.getMaxConnections())
+				.setDefaultConnectionConfig(ConnectionConfig.custom()
+						.setConnectTimeout(Timeout.of(config.getConnectTimeout()))
+						.setSocketTimeout(Timeout.of(config.getResponseTimeout()))
+						.build())
+				.build();
+		return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				// feign copies this config per request, overriding only its own timeouts
+				.setDefaultRequestConfig(RequestConfig.custom()
+						.setConnectionRequestTimeout(Timeout.of(config.getPendingAcquireTimeout()))
+						.build())
+				.evictIdleConnections(TimeValue.of(config.getMaxIdleTime()))
+				// failures go to the circuit breaker as they are
+				.disableAutomaticRetries()
+				.build();
+	}
+
+	private ExchangeFilterFunction metricsFilter(Upstream upstream) {
+		return (request, next) -> {
+			val sample = Timer.start(meterRegistry);
+			return next.exchange(request)
+					.doOnSuccess(response -> record(sample, upstream, request.method().name(),
+							outcome(response.statusCode().value())))
+					.doOnError(t -> record(sample, upstream, request.method().name(), outcome(t)));
+		};
+	}
+
+	private ExchangeFilterFunction hedgingFilter(Upstream upstream) {
+		val hedgeDelay = upstream.config().getHedgeDelay();
+		return (request, next) -> {
+			if (hedgeDelay == null || !HttpMethod.GET.equals(request.method())) {
+				return next.exchange(request);
+			}
+			// deferred so every attempt gets its own connection state, cancelling the
+			// losing attempt would otherwise release the winner's response body
+			val attempt = Mono.defer(() -> next.exchange(request));
+			return Mono.firstWithValue(attempt, attempt.delaySubscription(hedgeDelay)
+							.doOnSubscribe(s -> log.trace("Hedging {} request {}", upstream.name(),
+									request.url())))
+					.doOnDiscard(ClientResponse.class, response -> response.releaseBody().subscribe())
+					.onErrorMap(NoSuchElementException.class, UpstreamClientRegistry::firstCause);
+		};
+	}
+
+	private void record(Timer.Sample sample, Upstream upstream, String method, String outcome) {
+		sample.stop(Timer.builder("payflow.upstream.requests")
+				.tag("upstream", upstream.name())
+				.tag("method", method)
+				.tag("outcome", outcome)
+				.publishPercentileHistogram()
+				.register(meterRegistry));
+	}
+
+	private static String outcome(int status) {
+		if (status >= 500) {
+			return "SERVER_ERROR";
+		}
+		if (status >= 400) {
+			return "CLIENT_ERROR";
+		}
+		return "SUCCESS";
+	}
+
+	private static String outcome(Throwable t) {
+		if (t instanceof CallNotPermittedException || t instanceof BulkheadFullException) {
+			return "REJECTED";
+		}
+		return "ERROR";
+	}
+
+	// 5xx and rate limiting count against the circuit breaker, other responses are successes
+	private static boolean isUpstreamFailure(Object result) {
+		return switch (result) {
+			case ClientResponse response -> response.statusCode().is5xxServerError()
+					|| response.statusCode().value() == 429;
+			case feign.Response response -> response.status() >= 500 || response.status() == 429;
+			case null, default -> false;
+		};
+	}
+
+	// all hedged attempts failed, surface the first error instead of the aggregate
+	private static Throwable firstCause(NoSuchElementException e) {
+		for (val suppressed : e.getSuppressed()) {
+			val causes = Exceptions.unwrapMultiple(suppressed);
+			if (!causes.isEmpty()) {
+				return causes.getFirst();
+			}
+		}
+		return e;
+	}
+
+	private record Upstream(String name, UpstreamProperties.Upstream config,
+	                        ConnectionProvider connectionProvider, HttpClient httpClient,
+	                        CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+	}
+}
@@ -0,0 +1,54 @@
+package ua.sinaver.web3.payflow.client;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// per-upstream http settings, e.g. payflow.http.upstreams.neynar.response-timeout=5s
+// upstreams without explicit config use the defaults below
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("payflow.http")
+public class UpstreamProperties {
+
+	private Map<String, Upstream> upstreams = new HashMap<>();
+
+	public Upstream get(String name) {
+		return upstreams.getOrDefault(name, new Upstream());
+	}
+
+	@Getter
+	@Setter
+	public static class Upstream {
+		// connection pool
+		private int maxConnections = 50;
+		private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+		private Duration maxIdleTime = Duration.ofSeconds(30);
+
+		// timeouts
+		private Duration connectTimeout = Duration.ofSeconds(5);
+		private Duration responseTimeout = Duration.ofSeconds(15);
+
+		// bulkhead: max in-flight calls, excess calls are rejected
+		private int maxConcurrentCalls = 50;
+		private Duration maxWaitDuration = Duration.ofMillis(500);
+
+		// circuit breaker
+		private float failureRateThreshold = 50;
+		private Duration slowCallDurationThreshold = Duration.ofSeconds(10);
+		private float slowCallRateThreshold = 80;
+		private int slidingWindowSize = 50;
+		private int minimumNumberOfCalls = 20;
+		private Duration waitDurationInOpenState = Duration.ofSeconds(30);
+
+		// hedged GETs: a second request is sent if the first hasn't answered
+		// within the delay, first response wins. disabled when not set
+		private Duration hedgeDelay;
+	}
+}
@@ -10,7 +10,7 @@ import ua.sinaver.web3.payflow.service.WalletService;
 
 import java.util.List;
 
-@FeignClient(name = "wallet", url = "${payflow.onchain.url}/api/wallet")
+@FeignClient(name = "wallet", url = "${payflow.onchain.url}/api/wallet", configuration = WalletClientConfig.class)
 public interface WalletClient {
 
 	@GetMapping("/generate")
@@ -0,0 +1,18 @@
+package ua.sinaver.web3.payflow.client;
+
+import feign.Client;
+import feign.Request;
+import org.springframework.context.annotation.Bean;
+
+// not a @Configuration on purpose: beans are only registered in the wallet feign client context
+public class WalletClientConfig {
+	@Bean
+	public Client walletFeignClient(UpstreamClientRegistry upstreams) {
+		return upstreams.feignClient(UpstreamClientRegistry.WALLET);
+	}
+
+	@Bean
+	public Request.Options walletRequestOptions(UpstreamClientRegistry upstreams) {
+		return upstreams.feignOptions(UpstreamClientRegistry.WALLET);
+	}
+}
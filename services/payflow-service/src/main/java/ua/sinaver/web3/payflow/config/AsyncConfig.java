@@ -1,6 +1,9 @@
 package ua.sinaver.web3.payflow.config;
 
+import lombok.val;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.core.task.support.TaskExecutorAdapter;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 
 import java.util.concurrent.Executor;
@@ -11,6 +14,9 @@ public class AsyncConfig implements AsyncConfigurer {
 
 	@Override
 	public Executor getAsyncExecutor() {
-		return Executors.newVirtualThreadPerTaskExecutor();
+		val executor = new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+		// carry the current observation (trace) over to @Async event handlers
+		executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+		return executor;
 	}
 }
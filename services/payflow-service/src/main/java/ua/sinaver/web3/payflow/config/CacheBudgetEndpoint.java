@@ -0,0 +1,54 @@
+package ua.sinaver.web3.payflow.config;
+
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+// current weights of the caffeine caches on the management port:
+//   GET    /actuator/cachebudget
+//   POST   /actuator/cachebudget/{cache} {"maximumWeight": "16MB"} - pins the cache to the weight
+//   DELETE /actuator/cachebudget/{cache} - returns the cache to tuning
+@Component
+@Profile("caffeine")
+@Endpoint(id = "cachebudget")
+public class CacheBudgetEndpoint {
+	@Autowired
+	private CaffeineCacheBudget cacheBudget;
+
+	@ReadOperation
+	public CacheBudget budget() {
+		val weights = cacheBudget.weights();
+		return new CacheBudget(cacheBudget.getBudget(),
+				weights.stream().mapToLong(CaffeineCacheBudget.CacheWeight::maximumWeight).sum(), weights);
+	}
+
+	@ReadOperation
+	public CaffeineCacheBudget.CacheWeight cache(@Selector String cache) {
+		return cacheBudget.weights().stream()
+				.filter(weight -> weight.name().equals(cache))
+				.findFirst()
+				.orElse(null);
+	}
+
+	@WriteOperation
+	public CaffeineCacheBudget.CacheWeight resize(@Selector String cache, String maximumWeight) {
+		return cacheBudget.resize(cache, DataSize.parse(maximumWeight).toBytes());
+	}
+
+	@DeleteOperation
+	public CaffeineCacheBudget.CacheWeight unpin(@Selector String cache) {
+		return cacheBudget.resize(cache, null);
+	}
+
+	public record CacheBudget(long budget, long allocated, List<CaffeineCacheBudget.CacheWeight> caches) {
+	}
+}
@@ -1,31 +1,53 @@
 package ua.sinaver.web3.payflow.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.actuate.metrics.cache.CaffeineCacheMeterBinderProvider;
+import org.springframework.boot.actuate.metrics.cache.RedisCacheMeterBinderProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.support.NullValue;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.data.redis.cache.RedisCache;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.unit.DataSize;
 import ua.sinaver.web3.payflow.message.farcaster.StorageAllocationsResponse;
 import ua.sinaver.web3.payflow.message.farcaster.StorageUsage;
 
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 @Configuration
 public class CacheConfig {
-	public static final String CACHE_PREFIX_VERSION = "v0.1.0_0:";
+	// the suffix follows CompactRedisSerializer.FORMAT_VERSION, values of older formats are left to expire
+	public static final String CACHE_PREFIX_VERSION = "v0.1.0_1:";
 	public static final String CONTACTS_CACHE_NAME = CACHE_PREFIX_VERSION + "contacts";
 	public static final String CONTACT_LIST_CACHE_NAME = CACHE_PREFIX_VERSION + "contact-list";
 	public static final String SOCIALS_CACHE_NAME = CACHE_PREFIX_VERSION + "socials";
@@ -40,7 +62,14 @@ public class CacheConfig {
 	public static final String DAILY_STATS_CACHE = CACHE_PREFIX_VERSION + "stats";
 	public static final String BANKR_WALLETS_CACHE = CACHE_PREFIX_VERSION + "bankr-wallets";
 	public static final String USER_FLOWS_CACHE = CACHE_PREFIX_VERSION + "user-flows";
-	public static final String AGENT_ATTEMPTS_CACHE = CACHE_PREFIX_VERSION + "agent-attempts";
+
+	// caches which keep known absent lookups as null, see LookupCacheService
+	private static final Set<String> NEGATIVE_CACHES = Set.of(SOCIALS_CACHE_NAME, NEYNAR_FARCASTER_USER_CACHE,
+			BANKR_WALLETS_CACHE, RODEO_WALLETS_CACHE);
+	// caches which are expensive to fill, kept across restarts, see CaffeineCacheSnapshots
+	private static final Set<String> SNAPSHOT_CACHES = Set.of(CONTACTS_CACHE_NAME, CONTACT_LIST_CACHE_NAME,
+			SOCIALS_CACHE_NAME, SOCIALS_INSIGHTS_CACHE_NAME, NEYNAR_FARCASTER_USER_CACHE, DAILY_STATS_CACHE,
+			BANKR_WALLETS_CACHE, USER_FLOWS_CACHE, RODEO_WALLETS_CACHE);
 
 	@Value("${spring.cache.contacts.all.expireAfterWrite:10m}")
 	private Duration contactsExpireAfterWriteDuration;
@@ -50,8 +79,6 @@ public class CacheConfig {
 	private Duration socialsExpireAfterWriteDuration;
 	@Value("${spring.cache.verifications.expireAfterWrite:24h}")
 	private Duration verificationsExpireAfterWriteDuration;
-	@Value("${spring.cache.socials.maxSize:1000}")
-	private int socialsMaxSize;
 	@Value("${spring.cache.storage.expireAfterWrite:4h}")
 	private Duration storageExpireAfterWriteDuration;
 	@Value("${spring.cache.stats.expireAfterWrite:24h}")
@@ -62,11 +89,25 @@ public class CacheConfig {
 	private Duration flowsExpireAfterWriteDuration;
 	@Value("${spring.cache.rodeo.expireAfterWrite:30d}")
 	private Duration rodeoExpireAfterWriteDuration;
-	@Value("${spring.cache.agent-attempts.expireAfterWrite:24h}")
-	private Duration agentAttemptsExpireAfterWriteDuration;
+	// known absent identities and wallets, see LookupCacheService
+	@Value("${spring.cache.absent.expireAfterWrite:1h}")
+	private Duration absentExpireAfterWriteDuration;
+
+	@Value("${payflow.cache.redis.compression-threshold:1KB}")
+	private DataSize redisCompressionThreshold;
+	// how eagerly hot entries are refreshed ahead of expiry, scales the last load time
+	@Value("${payflow.cache.refresh-ahead.beta:1.0}")
+	private double refreshAheadBeta;
+	// caffeine caches share this part of the heap, each keeps at least min-share of it
+	@Value("${payflow.cache.caffeine.heap-fraction:0.1}")
+	private double caffeineHeapFraction;
+	@Value("${payflow.cache.caffeine.min-share:0.01}")
+	private double caffeineMinShare;
 
 	@Autowired
 	private ObjectMapper objectMapper;
+	@Autowired
+	private MeterRegistry meterRegistry;
 
 	// redis cache
 	@Bean
@@ -76,8 +117,7 @@ public class CacheConfig {
 				.disableCachingNullValues()
 				.entryTtl(Duration.ofMinutes(30))
 				.enableTimeToIdle()
-				.serializeValuesWith(RedisSerializationContext.SerializationPair
-						.fromSerializer(new GenericJackson2JsonRedisSerializer()));
+				.serializeValuesWith(compactValues("default", typedValues()));
 	}
 
 	@Bean
@@ -89,82 +129,178 @@ public class CacheConfig {
 		// Basic configs with different TTLs
 		cacheConfigurations.put(CONTACTS_CACHE_NAME, configuration.entryTtl(contactsExpireAfterWriteDuration));
 		cacheConfigurations.put(CONTACT_LIST_CACHE_NAME, configuration.entryTtl(contactsListExpireAfterWriteDuration));
-		cacheConfigurations.put(SOCIALS_CACHE_NAME, configuration.entryTtl(socialsExpireAfterWriteDuration));
+		cacheConfigurations.put(SOCIALS_CACHE_NAME, negativeCacheConfiguration(socialsExpireAfterWriteDuration));
 		cacheConfigurations.put(SOCIALS_INSIGHTS_CACHE_NAME, configuration.entryTtl(socialsExpireAfterWriteDuration));
 		cacheConfigurations.put(NEYNAR_FARCASTER_USER_CACHE,
-				configuration.entryTtl(verificationsExpireAfterWriteDuration));
+				negativeCacheConfiguration(verificationsExpireAfterWriteDuration));
 		cacheConfigurations.put(USERS_CACHE_NAME, configuration);
 		cacheConfigurations.put(INVITATIONS_CACHE_NAME, configuration);
 
-		// Special configs with custom serializers
-		cacheConfigurations.put(NEYNAR_STORAGE_USAGE_CACHE,
-				configuration.entryTtl(storageExpireAfterWriteDuration)
-						.serializeValuesWith(RedisSerializationContext.SerializationPair
-								.fromSerializer(new Jackson2JsonRedisSerializer<>(objectMapper, StorageUsage.class))));
-		cacheConfigurations.put(NEYNAR_STORAGE_ALLOCATION_CACHE,
-				configuration.entryTtl(storageExpireAfterWriteDuration)
-						.serializeValuesWith(RedisSerializationContext.SerializationPair
-								.fromSerializer(new Jackson2JsonRedisSerializer<>(objectMapper,
-										StorageAllocationsResponse.class))));
-
 		// Add daily stats cache configuration
 		cacheConfigurations.put(DAILY_STATS_CACHE, configuration.entryTtl(statsExpireAfterWriteDuration));
 
 		// Add Bankr wallets cache configuration
-		cacheConfigurations.put(BANKR_WALLETS_CACHE, configuration.entryTtl(bankrExpireAfterWriteDuration));
+		cacheConfigurations.put(BANKR_WALLETS_CACHE, negativeCacheConfiguration(bankrExpireAfterWriteDuration));
 
 		// Add user flows cache configuration
 		cacheConfigurations.put(USER_FLOWS_CACHE, configuration.entryTtl(flowsExpireAfterWriteDuration));
 
 		// Add Rodeo wallets cache configuration
-		cacheConfigurations.put(RODEO_WALLETS_CACHE, configuration.entryTtl(rodeoExpireAfterWriteDuration));
+		cacheConfigurations.put(RODEO_WALLETS_CACHE, negativeCacheConfiguration(rodeoExpireAfterWriteDuration));
+
+		// values with type hints, each cache gets its own serializer for per cache size and timing metrics
+		val values = typedValues();
+		cacheConfigurations.replaceAll((name, cacheConfiguration) ->
+				cacheConfiguration.serializeValuesWith(compactValues(name, values)));
 
-		// Add agent attempts cache configuration
-		cacheConfigurations.put(AGENT_ATTEMPTS_CACHE, configuration.entryTtl(agentAttemptsExpireAfterWriteDuration));
+		// Special configs with custom serializers
+		cacheConfigurations.put(NEYNAR_STORAGE_USAGE_CACHE,
+				configuration.entryTtl(storageExpireAfterWriteDuration)
+						.serializeValuesWith(compactValues(NEYNAR_STORAGE_USAGE_CACHE,
+								new Jackson2JsonRedisSerializer<>(smileMapper(), StorageUsage.class))));
+		cacheConfigurations.put(NEYNAR_STORAGE_ALLOCATION_CACHE,
+				configuration.entryTtl(storageExpireAfterWriteDuration)
+						.serializeValuesWith(compactValues(NEYNAR_STORAGE_ALLOCATION_CACHE,
+								new Jackson2JsonRedisSerializer<>(smileMapper(), StorageAllocationsResponse.class))));
 
-		return RedisCacheManager
+		return new SingleFlightCacheManager(RedisCacheManager
 				.builder(connectionFactory)
 				.cacheDefaults(configuration)
 				.withInitialCacheConfigurations(cacheConfigurations)
-				.build();
+				// hit/miss counters per cache, bound to the meter registry as cache.* metrics
+				.enableStatistics()
+				.build(), singleFlight());
 	}
 
 	// caffeine cache
 	@Bean
 	@Profile("caffeine")
-	CacheManager caffeineCacheManager() {
+	CaffeineCacheBudget caffeineCacheBudget() {
+		return new CaffeineCacheBudget((long) (Runtime.getRuntime().maxMemory() * caffeineHeapFraction),
+				caffeineMinShare, new CacheSizeEstimator(objectMapper), meterRegistry);
+	}
+
+	@Bean
+	@Profile("caffeine")
+	CacheManager caffeineCacheManager(CaffeineCacheBudget budget) {
 		val cacheManager = new CaffeineCacheManager();
-		// Define cache specifications
+		// Define cache specifications, sized by initial share of the memory budget
 		val cacheSpecs = new HashMap<String, Cache<Object, Object>>();
-		cacheSpecs.put(CONTACTS_CACHE_NAME, buildCache(contactsExpireAfterWriteDuration));
-		cacheSpecs.put(CONTACT_LIST_CACHE_NAME, buildCache(contactsListExpireAfterWriteDuration));
-		cacheSpecs.put(SOCIALS_CACHE_NAME, buildCache(socialsExpireAfterWriteDuration, socialsMaxSize));
-		cacheSpecs.put(SOCIALS_INSIGHTS_CACHE_NAME, buildCache(socialsExpireAfterWriteDuration, socialsMaxSize));
-		cacheSpecs.put(NEYNAR_FARCASTER_USER_CACHE, buildCache(verificationsExpireAfterWriteDuration, socialsMaxSize));
-		cacheSpecs.put(USERS_CACHE_NAME, buildCache(Duration.ofHours(24)));
-		cacheSpecs.put(INVITATIONS_CACHE_NAME, buildCache(Duration.ofHours(24)));
-		cacheSpecs.put(NEYNAR_STORAGE_USAGE_CACHE, buildCache(storageExpireAfterWriteDuration));
-		cacheSpecs.put(NEYNAR_STORAGE_ALLOCATION_CACHE, buildCache(storageExpireAfterWriteDuration));
-		cacheSpecs.put(DAILY_STATS_CACHE, buildCache(statsExpireAfterWriteDuration));
-		cacheSpecs.put(BANKR_WALLETS_CACHE, buildCache(bankrExpireAfterWriteDuration));
-		cacheSpecs.put(USER_FLOWS_CACHE, buildCache(flowsExpireAfterWriteDuration));
-		cacheSpecs.put(RODEO_WALLETS_CACHE, buildCache(rodeoExpireAfterWriteDuration));
-		cacheSpecs.put(AGENT_ATTEMPTS_CACHE, buildCache(agentAttemptsExpireAfterWriteDuration));
+		cacheSpecs.put(CONTACTS_CACHE_NAME,
+				buildCache(budget, CONTACTS_CACHE_NAME, contactsExpireAfterWriteDuration, 0.25));
+		cacheSpecs.put(CONTACT_LIST_CACHE_NAME,
+				buildCache(budget, CONTACT_LIST_CACHE_NAME, contactsListExpireAfterWriteDuration, 0.15));
+		cacheSpecs.put(SOCIALS_CACHE_NAME,
+				buildNegativeCache(budget, SOCIALS_CACHE_NAME, socialsExpireAfterWriteDuration, 0.15));
+		cacheSpecs.put(SOCIALS_INSIGHTS_CACHE_NAME,
+				buildCache(budget, SOCIALS_INSIGHTS_CACHE_NAME, socialsExpireAfterWriteDuration, 0.05));
+		cacheSpecs.put(NEYNAR_FARCASTER_USER_CACHE,
+				buildNegativeCache(budget, NEYNAR_FARCASTER_USER_CACHE, verificationsExpireAfterWriteDuration, 0.1));
+		cacheSpecs.put(USERS_CACHE_NAME, buildCache(budget, USERS_CACHE_NAME, Duration.ofHours(24), 0.05));
+		cacheSpecs.put(INVITATIONS_CACHE_NAME,
+				buildCache(budget, INVITATIONS_CACHE_NAME, Duration.ofHours(24), 0.02));
+		cacheSpecs.put(NEYNAR_STORAGE_USAGE_CACHE,
+				buildCache(budget, NEYNAR_STORAGE_USAGE_CACHE, storageExpireAfterWriteDuration, 0.02));
+		cacheSpecs.put(NEYNAR_STORAGE_ALLOCATION_CACHE,
+				buildCache(budget, NEYNAR_STORAGE_ALLOCATION_CACHE, storageExpireAfterWriteDuration, 0.02));
+		cacheSpecs.put(DAILY_STATS_CACHE, buildCache(budget, DAILY_STATS_CACHE, statsExpireAfterWriteDuration, 0.01));
+		cacheSpecs.put(BANKR_WALLETS_CACHE,
+				buildNegativeCache(budget, BANKR_WALLETS_CACHE, bankrExpireAfterWriteDuration, 0.03));
+		cacheSpecs.put(USER_FLOWS_CACHE, buildCache(budget, USER_FLOWS_CACHE, flowsExpireAfterWriteDuration, 0.1));
+		cacheSpecs.put(RODEO_WALLETS_CACHE,
+				buildNegativeCache(budget, RODEO_WALLETS_CACHE, rodeoExpireAfterWriteDuration, 0.03));
 
 		// Register all caches
 		cacheSpecs.forEach(cacheManager::registerCustomCache);
 
-		return cacheManager;
+		return new SingleFlightCacheManager(cacheManager, singleFlight());
 	}
 
-	private Cache<Object, Object> buildCache(Duration expireAfterWrite, int maximumSize) {
-		return Caffeine.newBuilder()
-				.expireAfterWrite(expireAfterWrite)
-				.maximumSize(maximumSize)
+	@Bean
+	@Profile("caffeine")
+	@ConditionalOnExpression("!'${payflow.cache.snapshot.path:}'.isEmpty()")
+	CaffeineCacheSnapshots caffeineCacheSnapshots(CacheManager caffeineCacheManager,
+			@Value("${payflow.cache.snapshot.path}") Path path) {
+		return new CaffeineCacheSnapshots(caffeineCacheManager, path, SNAPSHOT_CACHES,
+				new CompactRedisSerializer<>("snapshot", typedValues(), (int) redisCompressionThreshold.toBytes(),
+						meterRegistry),
+				meterRegistry);
+	}
+
+	// cache.* metrics of the caffeine and redis caches behind the single flight decorator
+	@Bean
+	CacheMeterBinderProvider<SingleFlightCache> singleFlightCacheMeterBinderProvider() {
+		val caffeine = new CaffeineCacheMeterBinderProvider();
+		val redis = new RedisCacheMeterBinderProvider();
+		return new CacheMeterBinderProvider<>() {
+			@Override
+			public MeterBinder getMeterBinder(SingleFlightCache cache, Iterable<Tag> tags) {
+				return switch (cache.getDelegate()) {
+					case CaffeineCache caffeineCache -> caffeine.getMeterBinder(caffeineCache, tags);
+					case RedisCache redisCache -> redis.getMeterBinder(redisCache, tags);
+					default -> null;
+				};
+			}
+		};
+	}
+
+	// hot entries are refreshed ahead of expiry: stats are recomputed from the whole payments
+	// table, socials and farcaster users of popular accounts are looked up on most requests
+	private Function<org.springframework.cache.Cache, SingleFlightCache> singleFlight() {
+		val refreshAheadTtls = Map.of(
+				DAILY_STATS_CACHE, statsExpireAfterWriteDuration,
+				SOCIALS_CACHE_NAME, socialsExpireAfterWriteDuration,
+				NEYNAR_FARCASTER_USER_CACHE, verificationsExpireAfterWriteDuration);
+		val refreshExecutor = new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+		refreshExecutor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+		return cache -> new SingleFlightCache(cache, NEGATIVE_CACHES.contains(cache.getName()),
+				refreshAheadTtls.get(cache.getName()), absentExpireAfterWriteDuration, refreshAheadBeta,
+				refreshExecutor, meterRegistry);
+	}
+
+	// negative caches keep null values, which expire after the shorter absent ttl. no time to
+	// idle here, on reads the ttl function doesn't get the value and would cut found entries short.
+	// the value serializer is set with the other caches
+	private RedisCacheConfiguration negativeCacheConfiguration(Duration expireAfterWrite) {
+		return RedisCacheConfiguration
+				.defaultCacheConfig()
+				.entryTtl((key, value) -> value != null ? expireAfterWrite : absentExpireAfterWriteDuration);
+	}
+
+	// smile is jackson's binary json: same mapping as the api, no repeated field names and no
+	// text encoding of numbers. unknown properties are ignored, so added fields don't evict
+	private ObjectMapper smileMapper() {
+		return objectMapper.copyWith(new SmileFactory());
+	}
+
+	private GenericJackson2JsonRedisSerializer typedValues() {
+		return GenericJackson2JsonRedisSerializer.builder()
+				.objectMapper(smileMapper())
+				.defaultTyping(true)
 				.build();
 	}
 
-	private Cache<Object, Object> buildCache(Duration expireAfterWrite) {
-		return buildCache(expireAfterWrite, 200);
+	private <T> RedisSerializationContext.SerializationPair<T> compactValues(String cacheName,
+			RedisSerializer<T> delegate) {
+		return RedisSerializationContext.SerializationPair.fromSerializer(new CompactRedisSerializer<>(
+				cacheName, delegate, (int) redisCompressionThreshold.toBytes(), meterRegistry));
+	}
+
+	private Cache<Object, Object> buildNegativeCache(CaffeineCacheBudget budget, String name,
+			Duration expireAfterWrite, double share) {
+		return budget.register(name, Caffeine.newBuilder()
+				// spring's caffeine cache stores nulls as NullValue
+				.expireAfter(Expiry.writing((Object key, Object value) ->
+						value instanceof NullValue ? absentExpireAfterWriteDuration : expireAfterWrite))
+				.recordStats(), share);
+	}
+
+	private Cache<Object, Object> buildCache(CaffeineCacheBudget budget, String name, Duration expireAfterWrite,
+			double share) {
+		return budget.register(name, Caffeine.newBuilder()
+				// same as expireAfterWrite, but snapshots can be restored with the remaining time
+				.expireAfter(Expiry.writing((Object key, Object value) -> expireAfterWrite))
+				// hit/miss/eviction counts per cache, bound to the meter registry as cache.* metrics
+				.recordStats(), share);
 	}
 }
@@ -0,0 +1,59 @@
+package ua.sinaver.web3.payflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Weigher;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.cache.support.NullValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// approximate retained heap size of a cache entry in bytes, from the size of the value as json:
+// strings take two bytes a char on the heap, and objects, collections and boxed numbers add about
+// as much again in headers and references as their fields take in json
+@Slf4j
+public class CacheSizeEstimator implements Weigher<Object, Object> {
+	private static final int ENTRY_OVERHEAD = 128;
+	private static final int HEAP_BYTES_PER_JSON_BYTE = 2;
+	private static final int UNKNOWN_SIZE = 4 * 1024;
+
+	private final ObjectMapper objectMapper;
+
+	public CacheSizeEstimator(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public int weigh(Object key, Object value) {
+		var size = (long) ENTRY_OVERHEAD + key.toString().length() * 2L;
+		if (value == null || value instanceof NullValue) {
+			return (int) size;
+		}
+
+		try {
+			val out = new CountingOutputStream();
+			objectMapper.writeValue(out, value);
+			size += out.count * HEAP_BYTES_PER_JSON_BYTE;
+		} catch (IOException | RuntimeException e) {
+			log.debug("Failed to estimate size of {} cached for {}: {}", value.getClass().getSimpleName(), key,
+					e.getMessage());
+			size += UNKNOWN_SIZE;
+		}
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package ua.sinaver.web3.payflow.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// the caffeine caches share one memory budget: entries are weighed by their estimated size and
+// each cache may hold its share of the budget. the tuner moves budget between caches:
+// - caches which didn't evict anything keep what they use plus some headroom
+// - the rest goes to caches which evicted, by what their misses cost (misses x mean load time)
+// caches resized through the cachebudget actuator endpoint are pinned and left out of tuning
+@Slf4j
+public class CaffeineCacheBudget {
+	private static final double HEADROOM = 1.5;
+	// part of the way to the target per round, so one busy interval doesn't flush a cache
+	private static final double TUNING_RATE = 0.5;
+	// load time isn't known for caches not read through a loader, e.g. the contact lists
+	private static final double DEFAULT_MISS_COST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final long budget;
+	private final long minWeight;
+	private final Weigher<Object, Object> weigher;
+	private final MeterRegistry meterRegistry;
+	private final Map<String, BudgetedCache> caches = new ConcurrentHashMap<>();
+
+	public CaffeineCacheBudget(long budget, double minShare, Weigher<Object, Object> weigher,
+			MeterRegistry meterRegistry) {
+		this.budget = budget;
+		this.minWeight = (long) (budget * minShare);
+		this.weigher = weigher;
+		this.meterRegistry = meterRegistry;
+		log.info("Caffeine cache budget: {} MB", budget / (1024 * 1024));
+	}
+
+	// builder with expiry and stats set, share is the initial part of the budget
+	public Cache<Object, Object> register(String name, Caffeine<Object, Object> builder, double share) {
+		val cache = builder
+				.maximumWeight(Math.max(minWeight, (long) (budget * share)))
+				.weigher(weigher)
+				.build();
+		val budgeted = new BudgetedCache(name, cache, cache.policy().eviction().orElseThrow());
+		caches.put(name, budgeted);
+
+		Gauge.builder("payflow.cache.caffeine.weight", budgeted, b -> b.eviction.getMaximum())
+				.tag("cache", name)
+				.tag("weight", "maximum")
+				.baseUnit("bytes")
+				.register(meterRegistry);
+		Gauge.builder("payflow.cache.caffeine.weight", budgeted, b -> b.eviction.weightedSize().orElse(0))
+				.tag("cache", name)
+				.tag("weight", "used")
+				.baseUnit("bytes")
+				.register(meterRegistry);
+		return cache;
+	}
+
+	@Scheduled(fixedDelayString = "${payflow.cache.caffeine.tuning-interval:PT5M}",
+			initialDelayString = "${payflow.cache.caffeine.tuning-interval:PT5M}")
+	public void tune() {
+		val tuned = caches.values().stream().filter(cache -> !cache.pinned).toList();
+		val unpinned = unpinnedBudget();
+		var available = unpinned;
+
+		val targets = new HashMap<BudgetedCache, Long>();
+		val costs = new HashMap<BudgetedCache, Double>();
+		var totalCost = 0.0;
+		for (val cache : tuned) {
+			val stats = cache.cache.stats();
+			val interval = stats.minus(cache.lastStats);
+			cache.lastStats = stats;
+
+			if (interval.evictionCount() == 0) {
+				val target = Math.max(minWeight, (long) (cache.eviction.weightedSize().orElse(0) * HEADROOM));
+				targets.put(cache, target);
+				available -= target;
+			} else {
+				val cost = Math.max(1, interval.missCount()) * cache.missCostNanos();
+				costs.put(cache, cost);
+				totalCost += cost;
+			}
+		}
+
+		val pool = Math.max(0, available - minWeight * costs.size());
+		for (val entry : costs.entrySet()) {
+			targets.put(entry.getKey(), minWeight + (long) (pool * entry.getValue() / totalCost));
+		}
+
+		// headroom of the others may not fit once pinned caches took their part
+		val total = targets.values().stream().mapToLong(Long::longValue).sum();
+		val scale = total > unpinned ? (double) Math.max(0, unpinned) / total : 1.0;
+
+		targets.forEach((cache, target) -> {
+			val current = cache.eviction.getMaximum();
+			val maximum = Math.max(minWeight, current + (long) ((target * scale - current) * TUNING_RATE));
+			if (maximum != current) {
+				cache.eviction.setMaximum(maximum);
+				log.debug("Resized cache {} from {} to {} KB", cache.name, current / 1024, maximum / 1024);
+			}
+		});
+	}
+
+	public List<CacheWeight> weights() {
+		return caches.values().stream()
+				.map(BudgetedCache::weight)
+				.sorted(Comparator.comparing(CacheWeight::name))
+				.toList();
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	// pins the cache to the given maximum weight, null returns it to tuning
+	public CacheWeight resize(String name, Long maximumWeight) {
+		val cache = caches.get(name);
+		if (cache == null) {
+			return null;
+		}
+		if (maximumWeight == null) {
+			cache.pinned = false;
+			log.info("Cache {} returned to tuning", name);
+		} else {
+			cache.eviction.setMaximum(Math.clamp(maximumWeight, 0, budget));
+			cache.pinned = true;
+			log.info("Cache {} pinned to {} KB", name, cache.eviction.getMaximum() / 1024);
+			fitBudget();
+		}
+		return cache.weight();
+	}
+
+	// the tuned caches give up what a pinned cache took beyond the free budget right away
+	private void fitBudget() {
+		val tuned = caches.values().stream().filter(cache -> !cache.pinned).toList();
+		val total = tuned.stream().mapToLong(cache -> cache.eviction.getMaximum()).sum();
+		val unpinned = unpinnedBudget();
+		if (total <= unpinned) {
+			return;
+		}
+		val scale = (double) Math.max(0, unpinned) / total;
+		tuned.forEach(cache -> cache.eviction.setMaximum(
+				Math.max(minWeight, (long) (cache.eviction.getMaximum() * scale))));
+	}
+
+	private long unpinnedBudget() {
+		return budget - caches.values().stream()
+				.filter(cache -> cache.pinned)
+				.mapToLong(cache -> cache.eviction.getMaximum())
+				.sum();
+	}
+
+	public record CacheWeight(String name, long maximumWeight, long usedWeight, long entries, double hitRate,
+			double meanLoadMillis, boolean pinned) {
+	}
+
+	private class BudgetedCache {
+		private final String name;
+		private final Cache<Object, Object> cache;
+		private final Policy.Eviction<Object, Object> eviction;
+		private volatile boolean pinned;
+		private CacheStats lastStats = CacheStats.empty();
+
+		BudgetedCache(String name, Cache<Object, Object> cache, Policy.Eviction<Object, Object> eviction) {
+			this.name = name;
+			this.cache = cache;
+			this.eviction = eviction;
+		}
+
+		// loads through SingleFlightCache are timed per cache
+		private double missCostNanos() {
+			val timer = loadTimer();
+			val mean = timer != null ? timer.mean(TimeUnit.NANOSECONDS) : 0;
+			return mean > 0 ? mean : DEFAULT_MISS_COST_NANOS;
+		}
+
+		private Timer loadTimer() {
+			return meterRegistry.find("payflow.cache.load").tag("cache", name).timer();
+		}
+
+		private CacheWeight weight() {
+			val timer = loadTimer();
+			return new CacheWeight(name, eviction.getMaximum(), eviction.weightedSize().orElse(0),
+					cache.estimatedSize(), cache.stats().hitRate(),
+					timer != null ? timer.mean(TimeUnit.MILLISECONDS) : 0, pinned);
+		}
+	}
+}
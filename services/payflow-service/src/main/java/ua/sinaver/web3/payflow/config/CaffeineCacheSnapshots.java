@@ -0,0 +1,197 @@
+package ua.sinaver.web3.payflow.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NullValue;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// snapshots of selected caffeine caches in a local or mounted directory, so a new instance starts
+// with what the previous one had cached. one file per cache, entries are written one by one in
+// the redis value frames (typed smile, lz4 from the threshold on) together with their expiry.
+// entries which expired meanwhile or no longer decode after a change of the cached types are
+// skipped, the rest keep their original expiry. the cache names carry CACHE_PREFIX_VERSION, so
+// snapshots of an older cache format are never read
+@Slf4j
+public class CaffeineCacheSnapshots {
+	private static final int MAX_ENTRY_SIZE = 16 * 1024 * 1024;
+
+	private final CacheManager cacheManager;
+	private final Path directory;
+	private final Set<String> cacheNames;
+	private final RedisSerializer<Object> serializer;
+	private final MeterRegistry meterRegistry;
+
+	public CaffeineCacheSnapshots(CacheManager cacheManager, Path directory, Set<String> cacheNames,
+			RedisSerializer<Object> serializer, MeterRegistry meterRegistry) {
+		this.cacheManager = cacheManager;
+		this.directory = directory;
+		this.cacheNames = cacheNames;
+		this.serializer = serializer;
+		this.meterRegistry = meterRegistry;
+	}
+
+	// before the instance is ready for traffic
+	@EventListener(ApplicationStartedEvent.class)
+	public void restore() {
+		cacheNames.forEach(this::restore);
+	}
+
+	@Scheduled(fixedDelayString = "${payflow.cache.snapshot.interval:PT10M}",
+			initialDelayString = "${payflow.cache.snapshot.interval:PT10M}")
+	public void snapshot() {
+		cacheNames.forEach(this::snapshot);
+	}
+
+	// cloud run stops instances on scale in and deploys, what they cached is the freshest
+	@PreDestroy
+	public void snapshotOnShutdown() {
+		snapshot();
+	}
+
+	private void snapshot(String name) {
+		val cache = nativeCache(name);
+		if (cache == null) {
+			return;
+		}
+		val expiry = cache.policy().expireVariably().orElse(null);
+		val file = file(name);
+		val now = System.currentTimeMillis();
+		int written = 0;
+		try {
+			Files.createDirectories(directory);
+			// written aside and moved in place, a crash or another instance never leaves a partial file
+			val temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				for (val entry : cache.asMap().entrySet()) {
+					val expiresAfter = expiry != null
+							? expiry.getExpiresAfter(entry.getKey(), TimeUnit.MILLISECONDS).orElse(0)
+							: 0;
+					if (expiresAfter <= 0) {
+						continue;
+					}
+					val frame = serializer.serialize(new Entry(entry.getKey(), entry.getValue(), now + expiresAfter));
+					if (frame == null || frame.length > MAX_ENTRY_SIZE) {
+						continue;
+					}
+					out.writeInt(frame.length);
+					out.write(frame);
+					written++;
+				}
+			} catch (IOException | RuntimeException e) {
+				Files.deleteIfExists(temp);
+				throw e;
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				// bucket mounts
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			count(name, "written", written);
+			log.debug("Snapshot of cache {}: {} entries", name, written);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Failed to snapshot cache {} to {}: {}", name, file, e.getMessage());
+		}
+	}
+
+	private void restore(String name) {
+		val cache = nativeCache(name);
+		val file = file(name);
+		if (cache == null || !Files.isRegularFile(file)) {
+			return;
+		}
+		val expiry = cache.policy().expireVariably().orElse(null);
+		if (expiry == null) {
+			log.warn("Cache {} has no per entry expiry, not restoring its snapshot", name);
+			return;
+		}
+
+		val now = System.currentTimeMillis();
+		int restored = 0;
+		int skipped = 0;
+		try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				if (length <= 0 || length > MAX_ENTRY_SIZE) {
+					throw new IOException("Invalid entry length " + length);
+				}
+				val frame = in.readNBytes(length);
+				if (frame.length < length) {
+					throw new EOFException("Truncated entry");
+				}
+
+				// frames of another format or types read as null
+				if (!(serializer.deserialize(frame) instanceof Entry entry)
+						|| entry.key() == null || entry.expiresAt() <= now) {
+					skipped++;
+					continue;
+				}
+				// known absent values of the negative caches, spring's cache only recognizes the
+				// singleton. values loaded since startup are fresher
+				val value = entry.value() == null || entry.value() instanceof NullValue
+						? NullValue.INSTANCE
+						: entry.value();
+				if (expiry.putIfAbsent(entry.key(), value, entry.expiresAt() - now,
+						TimeUnit.MILLISECONDS) == null) {
+					restored++;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			log.warn("Failed to restore cache {} from {}, kept {} entries: {}", name, file, restored,
+					e.getMessage());
+		}
+		count(name, "restored", restored);
+		count(name, "skipped", skipped);
+		log.info("Restored cache {} from snapshot: {} entries, {} expired or unreadable", name, restored,
+				skipped);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Cache<Object, Object> nativeCache(String name) {
+		val cache = cacheManager.getCache(name);
+		return cache != null && cache.getNativeCache() instanceof Cache<?, ?> nativeCache
+				? (Cache<Object, Object>) nativeCache
+				: null;
+	}
+
+	private Path file(String name) {
+		return directory.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + ".snapshot");
+	}
+
+	private void count(String name, String outcome, int entries) {
+		Counter.builder("payflow.cache.snapshot.entries")
+				.tag("cache", name)
+				.tag("outcome", outcome)
+				.register(meterRegistry)
+				.increment(entries);
+	}
+
+	public record Entry(Object key, Object value, long expiresAt) {
+	}
+}
@@ -0,0 +1,167 @@
+package ua.sinaver.web3.payflow.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// redis cache values as framed binary payloads, lz4 compressed from a size threshold on:
+//   'P' 'F' | format version | codec | [uncompressed length, lz4 only] | payload
+// frames of another format version or which fail to decode are read as a cache miss, so the
+// entry is loaded and written again instead of failing the request after a format change
+@Slf4j
+public class CompactRedisSerializer<T> implements RedisSerializer<T> {
+	// bump together with CacheConfig.CACHE_PREFIX_VERSION when the payload encoding changes
+	public static final byte FORMAT_VERSION = 1;
+
+	private static final byte MAGIC_0 = 'P';
+	private static final byte MAGIC_1 = 'F';
+	private static final byte CODEC_NONE = 0;
+	private static final byte CODEC_LZ4 = 1;
+	private static final int HEADER_SIZE = 4;
+	private static final int LENGTH_SIZE = 4;
+	private static final int MAX_UNCOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+	private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+	private final RedisSerializer<T> delegate;
+	private final int compressionThreshold;
+
+	private final DistributionSummary rawSize;
+	private final DistributionSummary storedSize;
+	private final Timer encodeTimer;
+	private final Timer decodeTimer;
+	private final Counter formatMismatches;
+	private final Counter decodeFailures;
+
+	public CompactRedisSerializer(String cacheName, RedisSerializer<T> delegate, int compressionThreshold,
+			MeterRegistry meterRegistry) {
+		this.delegate = delegate;
+		this.compressionThreshold = compressionThreshold;
+
+		this.rawSize = size(cacheName, "raw", meterRegistry);
+		this.storedSize = size(cacheName, "stored", meterRegistry);
+		this.encodeTimer = Timer.builder("payflow.cache.redis.encode")
+				.tag("cache", cacheName)
+				.register(meterRegistry);
+		this.decodeTimer = Timer.builder("payflow.cache.redis.decode")
+				.tag("cache", cacheName)
+				.register(meterRegistry);
+		this.formatMismatches = decodeFailures(cacheName, "format", meterRegistry);
+		this.decodeFailures = decodeFailures(cacheName, "corrupt", meterRegistry);
+	}
+
+	@Override
+	public byte[] serialize(T value) throws SerializationException {
+		if (value == null) {
+			return null;
+		}
+
+		val start = System.nanoTime();
+		val raw = delegate.serialize(value);
+		if (raw == null) {
+			return null;
+		}
+
+		var frame = raw.length >= compressionThreshold ? compress(raw) : null;
+		if (frame == null) {
+			frame = new byte[HEADER_SIZE + raw.length];
+			header(frame, CODEC_NONE);
+			System.arraycopy(raw, 0, frame, HEADER_SIZE, raw.length);
+		}
+
+		encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		rawSize.record(raw.length);
+		storedSize.record(frame.length);
+		return frame;
+	}
+
+	@Override
+	public T deserialize(byte[] bytes) throws SerializationException {
+		if (bytes == null || bytes.length == 0) {
+			return null;
+		}
+		if (bytes.length < HEADER_SIZE || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1
+				|| bytes[2] != FORMAT_VERSION) {
+			formatMismatches.increment();
+			log.debug("Skipping cache value of unknown format, {} bytes", bytes.length);
+			return null;
+		}
+
+		val start = System.nanoTime();
+		try {
+			byte[] raw = switch (bytes[3]) {
+				case CODEC_NONE -> Arrays.copyOfRange(bytes, HEADER_SIZE, bytes.length);
+				case CODEC_LZ4 -> decompress(bytes);
+				default -> throw new SerializationException("Unknown cache value codec " + bytes[3]);
+			};
+			val value = delegate.deserialize(raw);
+			decodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			return value;
+		} catch (SerializationException | LZ4Exception | IndexOutOfBoundsException e) {
+			decodeFailures.increment();
+			log.warn("Failed to decode cache value, treating as miss: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	// null if compression doesn't pay off
+	private byte[] compress(byte[] raw) {
+		val compressor = LZ4.fastCompressor();
+		val maxLength = compressor.maxCompressedLength(raw.length);
+		val frame = new byte[HEADER_SIZE + LENGTH_SIZE + maxLength];
+		val compressedLength = compressor.compress(raw, 0, raw.length, frame, HEADER_SIZE + LENGTH_SIZE, maxLength);
+		if (compressedLength >= raw.length) {
+			return null;
+		}
+		header(frame, CODEC_LZ4);
+		ByteBuffer.wrap(frame, HEADER_SIZE, LENGTH_SIZE).putInt(raw.length);
+		return Arrays.copyOf(frame, HEADER_SIZE + LENGTH_SIZE + compressedLength);
+	}
+
+	private static byte[] decompress(byte[] frame) {
+		val length = ByteBuffer.wrap(frame, HEADER_SIZE, LENGTH_SIZE).getInt();
+		if (length < 0 || length > MAX_UNCOMPRESSED_SIZE) {
+			throw new SerializationException("Invalid uncompressed cache value length " + length);
+		}
+		val raw = new byte[length];
+		val offset = HEADER_SIZE + LENGTH_SIZE;
+		val decompressed = LZ4.safeDecompressor().decompress(frame, offset, frame.length - offset, raw, 0);
+		if (decompressed != length) {
+			throw new SerializationException("Truncated cache value, " + decompressed + " of " + length + " bytes");
+		}
+		return raw;
+	}
+
+	private static void header(byte[] frame, byte codec) {
+		frame[0] = MAGIC_0;
+		frame[1] = MAGIC_1;
+		frame[2] = FORMAT_VERSION;
+		frame[3] = codec;
+	}
+
+	private static DistributionSummary size(String cacheName, String form, MeterRegistry meterRegistry) {
+		return DistributionSummary.builder("payflow.cache.redis.value.size")
+				.baseUnit("bytes")
+				.tag("cache", cacheName)
+				.tag("form", form)
+				.register(meterRegistry);
+	}
+
+	private static Counter decodeFailures(String cacheName, String reason, MeterRegistry meterRegistry) {
+		return Counter.builder("payflow.cache.redis.decode.failures")
+				.tag("cache", cacheName)
+				.tag("reason", reason)
+				.register(meterRegistry);
+	}
+}
@@ -0,0 +1,73 @@
+package ua.sinaver.web3.payflow.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+// routes read-only transactions to a replica pool, everything else (writes, flyway,
+// shedlock, sessions) stays on the primary. only active when a replica url is set,
+// otherwise boot's default single datasource is used.
+// note: replica reads may lag behind the primary, keep read-your-writes paths read-write
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "payflow.datasource.replica", name = "url")
+public class DataSourceConfig {
+
+	@Bean(destroyMethod = "close")
+	@ConfigurationProperties("spring.datasource.hikari")
+	HikariDataSource primaryDataSource(DataSourceProperties properties) {
+		val dataSource = properties.initializeDataSourceBuilder()
+				.type(HikariDataSource.class)
+				.build();
+		dataSource.setPoolName("primary");
+		return dataSource;
+	}
+
+	@Bean(destroyMethod = "close")
+	@ConfigurationProperties("payflow.datasource.replica.hikari")
+	HikariDataSource replicaDataSource(DataSourceProperties properties,
+			@Value("${payflow.datasource.replica.url}") String url,
+			@Value("${payflow.datasource.replica.username:}") String username,
+			@Value("${payflow.datasource.replica.password:}") String password) {
+		// credentials default to the primary ones
+		val dataSource = properties.initializeDataSourceBuilder()
+				.type(HikariDataSource.class)
+				.url(url)
+				.username(StringUtils.defaultIfBlank(username, properties.determineUsername()))
+				.password(StringUtils.defaultIfBlank(password, properties.determinePassword()))
+				.build();
+		dataSource.setPoolName("replica");
+		dataSource.setReadOnly(true);
+		log.info("Routing read-only transactions to replica: {}", url);
+		return dataSource;
+	}
+
+	@Bean
+	@Primary
+	DataSource dataSource(HikariDataSource primaryDataSource, HikariDataSource replicaDataSource) {
+		return routingDataSource(primaryDataSource, replicaDataSource);
+	}
+
+	// the physical connection is only fetched on first statement, after the
+	// transaction manager marked it read-only, so the target pool can be picked
+	public static DataSource routingDataSource(DataSource primary, DataSource replica) {
+		val proxy = new LazyConnectionDataSourceProxy(primary);
+		proxy.setReadOnlyDataSource(replica);
+		// mysql defaults, avoids probing a connection on startup
+		proxy.setDefaultAutoCommit(true);
+		proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+		return proxy;
+	}
+}
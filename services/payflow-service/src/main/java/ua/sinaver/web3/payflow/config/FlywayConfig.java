@@ -0,0 +1,161 @@
+package ua.sinaver.web3.payflow.config;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+// flyway scans, parses and validates every migration on each start, even though the deployed
+// schema is almost always up to date. with payflow.flyway.skip-unchanged the checksums of the
+// packaged migrations are compared with the schema history first, and migrate only runs when
+// something isn't applied yet (or the history can't be read)
+@Slf4j
+@org.springframework.context.annotation.Configuration
+public class FlywayConfig {
+	private static final Pattern VERSIONED_MIGRATION = Pattern.compile("^V([0-9._]+)__.+\\.sql$");
+	private static final Pattern VERSION_SEPARATOR = Pattern.compile("[._]");
+
+	@Value("${payflow.flyway.skip-unchanged:false}")
+	private boolean skipUnchanged;
+
+	// set by the class data sharing training run, which only refreshes the context without a database
+	@Value("${spring.context.exit:}")
+	private String contextExit;
+
+	@Bean
+	FlywayMigrationStrategy flywayMigrationStrategy() {
+		return flyway -> {
+			if ("onRefresh".equals(contextExit)) {
+				log.info("Skipping flyway migrations, context exits on refresh");
+				return;
+			}
+			if (skipUnchanged && isUpToDate(flyway.getConfiguration())) {
+				log.info("Skipping flyway migrations, schema history matches packaged migrations");
+				return;
+			}
+			flyway.migrate();
+		};
+	}
+
+	private boolean isUpToDate(Configuration configuration) {
+		try {
+			val packaged = packagedChecksums(configuration);
+			if (packaged == null) {
+				return false;
+			}
+			val applied = appliedChecksums(configuration);
+			if (applied == null) {
+				return false;
+			}
+
+			// migrations up to the baseline may be missing from the history of a baselined schema
+			val baseline = normalizeVersion(configuration.getBaselineVersion().getVersion());
+			return packaged.entrySet().stream().allMatch(migration ->
+					migration.getValue().equals(applied.get(migration.getKey()))
+							|| (!applied.containsKey(migration.getKey())
+							&& compareVersions(migration.getKey(), baseline) <= 0));
+		} catch (IOException | SQLException | RuntimeException e) {
+			log.warn("Failed to compare flyway schema history, running migrations", e);
+			return false;
+		}
+	}
+
+	// null if there is anything besides versioned sql migrations, e.g. repeatable ones or callbacks
+	private Map<String, Integer> packagedChecksums(Configuration configuration) throws IOException {
+		val resolver = new PathMatchingResourcePatternResolver(configuration.getClassLoader());
+		val checksums = new HashMap<String, Integer>();
+		for (val location : configuration.getLocations()) {
+			if (!location.isClassPath()) {
+				return null;
+			}
+			for (val resource : resolver.getResources("classpath*:" + location.getRootPath() + "/**/*.sql")) {
+				val matcher = VERSIONED_MIGRATION.matcher(String.valueOf(resource.getFilename()));
+				if (!matcher.matches()) {
+					return null;
+				}
+				checksums.put(normalizeVersion(matcher.group(1)), checksum(resource, configuration));
+			}
+		}
+		return checksums;
+	}
+
+	// null if any migration failed, so that flyway reports it
+	private Map<String, Integer> appliedChecksums(Configuration configuration) throws SQLException {
+		val checksums = new HashMap<String, Integer>();
+		try (val connection = configuration.getDataSource().getConnection()) {
+			// flyway creates the history table with quoted identifiers
+			val quote = connection.getMetaData().getIdentifierQuoteString().trim();
+			val table = (configuration.getDefaultSchema() != null
+					? quote + configuration.getDefaultSchema() + quote + "." : "")
+					+ quote + configuration.getTable() + quote;
+			try (val statement = connection.createStatement();
+					val result = statement.executeQuery(String.format("SELECT %1$sversion%1$s, %1$schecksum%1$s, "
+							+ "%1$ssuccess%1$s FROM %2$s", quote, table))) {
+				while (result.next()) {
+					if (!result.getBoolean(3)) {
+						return null;
+					}
+					val version = result.getString(1);
+					val checksum = result.getObject(2, Integer.class);
+					if (version != null && checksum != null) {
+						checksums.put(normalizeVersion(version), checksum);
+					}
+				}
+			}
+		}
+		return checksums;
+	}
+
+	// same as flyway's checksum: crc32 over the utf-8 bytes of each line without line breaks and bom
+	private static int checksum(Resource resource, Configuration configuration) throws IOException {
+		val crc32 = new CRC32();
+		try (val reader = new BufferedReader(
+				new InputStreamReader(resource.getInputStream(), configuration.getEncoding()))) {
+			var line = reader.readLine();
+			if (line != null && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+				line = line.substring(1);
+			}
+			while (line != null) {
+				crc32.update(line.getBytes(StandardCharsets.UTF_8));
+				line = reader.readLine();
+			}
+		}
+		return (int) crc32.getValue();
+	}
+
+	private static String normalizeVersion(String version) {
+		return VERSION_SEPARATOR.splitAsStream(version)
+				.map(part -> new BigInteger(part).toString())
+				.collect(Collectors.joining("."));
+	}
+
+	private static int compareVersions(String left, String right) {
+		val leftParts = left.split("\\.");
+		val rightParts = right.split("\\.");
+		for (int i = 0; i < Math.max(leftParts.length, rightParts.length); i++) {
+			val leftPart = i < leftParts.length ? new BigInteger(leftParts[i]) : BigInteger.ZERO;
+			val rightPart = i < rightParts.length ? new BigInteger(rightParts[i]) : BigInteger.ZERO;
+			val result = leftPart.compareTo(rightPart);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,89 @@
+package ua.sinaver.web3.payflow.config;
+
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import lombok.val;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.orm.jpa.JpaVendorAdapter;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+
+import java.sql.SQLException;
+
+// hibernate second-level cache (user, flow, wallet, preferred tokens, regions in hibernate-jcache.conf).
+// read-only transactions may run on the replica, which can lag behind: they read the cache but
+// never put into it, entries are only loaded by read-write transactions on the primary
+@Configuration
+public class HibernateCacheConfig {
+
+	// same as boot's default adapter, with the dialect below
+	@Bean
+	JpaVendorAdapter jpaVendorAdapter(JpaProperties properties) {
+		val adapter = new HibernateJpaVendorAdapter() {
+			private final HibernateJpaDialect jpaDialect = new ReadOnlyCacheModeJpaDialect();
+
+			@Override
+			public HibernateJpaDialect getJpaDialect() {
+				return jpaDialect;
+			}
+		};
+		adapter.setShowSql(properties.isShowSql());
+		if (properties.getDatabase() != null) {
+			adapter.setDatabase(properties.getDatabase());
+		}
+		if (properties.getDatabasePlatform() != null) {
+			adapter.setDatabasePlatform(properties.getDatabasePlatform());
+		}
+		adapter.setGenerateDdl(properties.isGenerateDdl());
+		return adapter;
+	}
+
+	// region and timestamps cache factories announcing bulk region clears and written query spaces,
+	// the announcer is resolved lazily since it's built from the entity manager factory
+	@Bean
+	@Profile("redis")
+	HibernatePropertiesCustomizer secondLevelCacheAnnouncements(
+			ObjectProvider<SecondLevelCacheInvalidation> invalidation) {
+		return properties -> {
+			properties.put(AvailableSettings.CACHE_REGION_FACTORY,
+					new SecondLevelCacheInvalidation.AnnouncingRegionFactory(invalidation::getObject));
+			properties.put(AvailableSettings.QUERY_CACHE_FACTORY,
+					new SecondLevelCacheInvalidation.AnnouncingTimestampsCacheFactory(invalidation::getObject));
+		};
+	}
+
+	@Bean
+	@Profile("redis")
+	RedisMessageListenerContainer secondLevelCacheEvictions(RedisConnectionFactory connectionFactory,
+			SecondLevelCacheInvalidation invalidation) {
+		val container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		container.addMessageListener(invalidation, new ChannelTopic(SecondLevelCacheInvalidation.CHANNEL));
+		return container;
+	}
+
+	static class ReadOnlyCacheModeJpaDialect extends HibernateJpaDialect {
+		@Override
+		public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition)
+				throws PersistenceException, SQLException, TransactionException {
+			val transactionData = super.beginTransaction(entityManager, definition);
+			if (definition.isReadOnly()) {
+				// entity managers are transaction scoped (open-in-view is off), the mode goes with it
+				entityManager.setProperty(AvailableSettings.JAKARTA_SHARED_CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+			}
+			return transactionData;
+		}
+	}
+}
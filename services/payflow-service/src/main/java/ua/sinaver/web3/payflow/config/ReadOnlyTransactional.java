@@ -0,0 +1,15 @@
+package ua.sinaver.web3.payflow.config;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.annotation.*;
+
+// read-only spring transaction: hibernate switches the session to manual flush
+// and read-only entities (no dirty checking), connection is routed to the replica
+// when one is configured, see DataSourceConfig
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Transactional(readOnly = true)
+public @interface ReadOnlyTransactional {
+}
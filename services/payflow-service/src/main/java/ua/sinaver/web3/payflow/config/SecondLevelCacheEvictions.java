@@ -0,0 +1,52 @@
+package ua.sinaver.web3.payflow.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.val;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// explicit second-level cache evictions for mutation paths, on top of what hibernate evicts for the
+// entities it flushes. applied once the transaction commits, and announced to the other instances
+// with the redis profile
+@Component
+public class SecondLevelCacheEvictions {
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private ObjectProvider<SecondLevelCacheInvalidation> invalidation;
+
+	public void evictAfterCommit(Class<?> entityClass, Object id) {
+		afterCommit(() -> {
+			entityManagerFactory.unwrap(SessionFactory.class).getCache().evictEntityData(entityClass, id);
+			invalidation.ifAvailable(announcer -> announcer.announce(SecondLevelCacheInvalidation.ENTITY,
+					entityClass.getName(), id));
+		});
+	}
+
+	public void evictCollectionAfterCommit(Class<?> ownerClass, String property, Object ownerId) {
+		val role = ownerClass.getName() + "." + property;
+		afterCommit(() -> {
+			entityManagerFactory.unwrap(SessionFactory.class).getCache().evictCollectionData(role, ownerId);
+			invalidation.ifAvailable(announcer -> announcer.announce(SecondLevelCacheInvalidation.COLLECTION,
+					role, ownerId));
+		});
+	}
+
+	private void afterCommit(Runnable eviction) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			eviction.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				eviction.run();
+			}
+		});
+	}
+}
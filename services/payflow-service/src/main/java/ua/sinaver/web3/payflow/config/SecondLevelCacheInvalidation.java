@@ -0,0 +1,414 @@
+package ua.sinaver.web3.payflow.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.internal.TimestampsCacheEnabledImpl;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.CacheImplementor;
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.cache.spi.TimestampsCacheFactory;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.EntityType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// second-level cache entries are local to each instance: changes committed on one instance are
+// announced on a redis channel, the other instances evict them:
+// - updated and deleted entities
+// - cached collections changed through their owner, or through the owning side of an inverse
+//   collection (a wallet moved to another flow evicts both flows' wallets)
+// - whole regions cleared by bulk jpql updates and deletes
+// - query spaces (tables) of cached entities, so cached query results over them are stale
+// without redis (single instance) the regions are only kept consistent locally
+@Slf4j
+@Component
+@Profile("redis")
+public class SecondLevelCacheInvalidation implements PostCommitInsertEventListener,
+		PostCommitUpdateEventListener, PostCommitDeleteEventListener, PostCollectionRecreateEventListener,
+		PostCollectionUpdateEventListener, PostCollectionRemoveEventListener, MessageListener {
+	static final String CHANNEL = "hibernate:evict";
+
+	// message format: <instance> <kind> <name> [<key>]
+	static final String ENTITY = "entity";
+	static final String COLLECTION = "collection";
+	static final String REGION = "region";
+	static final String SPACES = "spaces";
+
+	private final String instance = UUID.randomUUID().toString();
+
+	@Autowired
+	private StringRedisTemplate redisTemplate;
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private SessionFactoryImplementor sessionFactory;
+	// cached inverse collections by element entity name
+	private final Map<String, List<CollectionPersister>> inverseCollections = new HashMap<>();
+	// tables of cached entities and collections, only lookups over them are query cached
+	private final Set<String> cachedSpaces = new HashSet<>();
+	// spaces written by each session's transaction, announced at once after the commit
+	private final Map<SharedSessionContractImplementor, Set<String>> writtenSpaces = new ConcurrentHashMap<>();
+	private final ThreadLocal<Boolean> evicting = ThreadLocal.withInitial(() -> false);
+
+	@PostConstruct
+	void register() {
+		sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+		val metamodel = sessionFactory.getMappingMetamodel();
+		metamodel.forEachEntityDescriptor(persister -> {
+			if (persister.canWriteToCache()) {
+				Arrays.stream(persister.getQuerySpaces()).forEach(space -> cachedSpaces.add(space.toString()));
+			}
+		});
+		metamodel.forEachCollectionDescriptor(persister -> {
+			if (!persister.hasCache()) {
+				return;
+			}
+			cachedSpaces.addAll(Arrays.asList(persister.getCollectionSpaces()));
+			if (persister.isInverse() && persister.getElementType() instanceof EntityType element) {
+				inverseCollections.computeIfAbsent(element.getAssociatedEntityName(), name -> new ArrayList<>())
+						.add(persister);
+			}
+		});
+
+		val listeners = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+		listeners.appendListeners(EventType.POST_COMMIT_INSERT, this);
+		listeners.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+		listeners.appendListeners(EventType.POST_COMMIT_DELETE, this);
+		listeners.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+		listeners.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+		listeners.appendListeners(EventType.POST_COLLECTION_REMOVE, this);
+	}
+
+	@Override
+	public boolean requiresPostCommitHandling(EntityPersister persister) {
+		return persister.canWriteToCache() || inverseCollections.containsKey(persister.getEntityName());
+	}
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		announceOwners(event.getPersister(), null, event.getState());
+	}
+
+	@Override
+	public void onPostInsertCommitFailed(PostInsertEvent event) {
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		announceEntity(event.getPersister(), event.getId());
+		announceOwners(event.getPersister(), event.getOldState(), event.getState());
+	}
+
+	@Override
+	public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		announceEntity(event.getPersister(), event.getId());
+		announceOwners(event.getPersister(), event.getDeletedState(), null);
+	}
+
+	@Override
+	public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+	}
+
+	@Override
+	public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+		announceCollection(event);
+	}
+
+	@Override
+	public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+		announceCollection(event);
+	}
+
+	@Override
+	public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+		announceCollection(event);
+	}
+
+	private void announceEntity(EntityPersister persister, Object id) {
+		if (persister.canWriteToCache()) {
+			announce(ENTITY, persister.getEntityName(), id);
+		}
+	}
+
+	// same as hibernate's local auto_evict_collection_cache: the owners of an inverse collection
+	// element are evicted when it's inserted, deleted or moved to another owner
+	private void announceOwners(EntityPersister persister, Object[] oldState, Object[] state) {
+		for (val collection : inverseCollections.getOrDefault(persister.getEntityName(), List.of())) {
+			val position = persister.findAttributeMapping(collection.getMappedByProperty()).getStateArrayPosition();
+			val oldOwner = oldState != null ? ownerId(oldState[position]) : null;
+			val owner = state != null ? ownerId(state[position]) : null;
+			if (oldState != null && state != null && Objects.equals(oldOwner, owner)) {
+				continue;
+			}
+			if (oldOwner != null) {
+				announce(COLLECTION, collection.getRole(), oldOwner);
+			}
+			if (owner != null && !owner.equals(oldOwner)) {
+				announce(COLLECTION, collection.getRole(), owner);
+			}
+		}
+	}
+
+	private Object ownerId(Object owner) {
+		return owner != null ? sessionFactory.getPersistenceUnitUtil().getIdentifier(owner) : null;
+	}
+
+	// collection events fire on flush, the announcement waits for the commit
+	private void announceCollection(AbstractCollectionEvent event) {
+		val role = event.getCollection().getRole();
+		val ownerId = event.getAffectedOwnerIdOrNull();
+		if (role != null && ownerId != null
+				&& sessionFactory.getMappingMetamodel().getCollectionDescriptor(role).hasCache()) {
+			announceAfterCommit(event.getSession(), COLLECTION, role, ownerId);
+		}
+	}
+
+	private void announceAfterCommit(SharedSessionContractImplementor session, String kind, String name,
+			Object key) {
+		if (session.isEventSource()) {
+			session.asEventSource().getActionQueue().registerProcess((success, completed) -> {
+				if (success) {
+					announce(kind, name, key);
+				}
+			});
+		} else {
+			announce(kind, name, key);
+		}
+	}
+
+	void announceRegion(String region) {
+		// evictions of other instances' announcements aren't announced back
+		if (!evicting.get()) {
+			announce(REGION, region, null);
+		}
+	}
+
+	void announceSpacesAfterCommit(SharedSessionContractImplementor session, String[] spaces) {
+		val written = Arrays.stream(spaces).filter(cachedSpaces::contains).toList();
+		if (written.isEmpty()) {
+			return;
+		}
+		if (!session.isEventSource()) {
+			announce(SPACES, String.join(",", written), null);
+			return;
+		}
+		writtenSpaces.computeIfAbsent(session, key -> {
+			session.asEventSource().getActionQueue().registerProcess((success, completed) -> {
+				val all = writtenSpaces.remove(session);
+				if (success) {
+					announce(SPACES, String.join(",", all), null);
+				}
+			});
+			return ConcurrentHashMap.newKeySet();
+		}).addAll(written);
+	}
+
+	void announce(String kind, String name, Object key) {
+		try {
+			redisTemplate.convertAndSend(CHANNEL, key != null
+					? String.join(" ", instance, kind, name, key.toString())
+					: String.join(" ", instance, kind, name));
+		} catch (RuntimeException e) {
+			log.warn("Failed to announce {} {} {} eviction, other instances keep it until expiry",
+					kind, name, key, e);
+		}
+	}
+
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		val parts = new String(message.getBody(), StandardCharsets.UTF_8).split(" ", 4);
+		if (parts.length < 3 || parts[0].equals(instance)) {
+			return;
+		}
+		val kind = parts[1];
+		val name = parts[2];
+		val key = parts.length == 4 ? parts[3] : null;
+		evicting.set(true);
+		try {
+			val cache = sessionFactory.getCache();
+			switch (kind) {
+				case ENTITY -> {
+					val persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(name);
+					cache.evictEntityData(name, persister.getIdentifierMapping().getJavaType().fromString(key));
+				}
+				case COLLECTION -> {
+					val persister = sessionFactory.getMappingMetamodel().getCollectionDescriptor(name);
+					cache.evictCollectionData(name, persister.getOwnerEntityPersister().getIdentifierMapping()
+							.getJavaType().fromString(key));
+				}
+				case REGION -> cache.evictRegion(name);
+				case SPACES -> invalidateSpaces(cache, name.split(","));
+				default -> {
+					log.warn("Unknown second-level cache eviction: {}", kind);
+					return;
+				}
+			}
+			log.trace("Evicted {} {} {} changed on another instance", kind, name, key);
+		} catch (RuntimeException e) {
+			log.warn("Failed to evict {} {} from second-level cache", kind, name, e);
+		} finally {
+			evicting.remove();
+		}
+	}
+
+	// marks the spaces as updated now, cached query results over them are stale
+	private void invalidateSpaces(CacheImplementor cache, String[] spaces) {
+		var timestamps = cache.getTimestampsCache();
+		if (timestamps instanceof AnnouncingTimestampsCache announcing) {
+			timestamps = announcing.delegate;
+		}
+		try (val session = sessionFactory.openTemporarySession()) {
+			timestamps.invalidate(spaces, session);
+		}
+	}
+
+	// bulk jpql evicts whole regions of the entities and collections it touches
+	static class AnnouncingRegionFactory extends JCacheRegionFactory {
+		private final Supplier<SecondLevelCacheInvalidation> invalidation;
+
+		AnnouncingRegionFactory(Supplier<SecondLevelCacheInvalidation> invalidation) {
+			this.invalidation = invalidation;
+		}
+
+		@Override
+		protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+				DomainDataRegionBuildingContext buildingContext) {
+			val storage = super.createDomainDataStorageAccess(regionConfig, buildingContext);
+			val region = regionConfig.getRegionName();
+			return new DomainDataStorageAccess() {
+				@Override
+				public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+					return storage.getFromCache(key, session);
+				}
+
+				@Override
+				public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+					storage.putIntoCache(key, value, session);
+				}
+
+				@Override
+				public void putFromLoad(Object key, Object value, SharedSessionContractImplementor session) {
+					storage.putFromLoad(key, value, session);
+				}
+
+				@Override
+				public void removeFromCache(Object key, SharedSessionContractImplementor session) {
+					storage.removeFromCache(key, session);
+				}
+
+				@Override
+				public void clearCache(SharedSessionContractImplementor session) {
+					storage.clearCache(session);
+				}
+
+				@Override
+				public boolean contains(Object key) {
+					return storage.contains(key);
+				}
+
+				// whole regions are evicted by cache api calls and, once the transaction completes, by
+				// bulk jpql on the regions it touched (also after a rollback, it only costs a reload)
+				@Override
+				public void evictData() {
+					storage.evictData();
+					invalidation.get().announceRegion(region);
+				}
+
+				@Override
+				public void evictData(Object key) {
+					storage.evictData(key);
+				}
+
+				@Override
+				public void release() {
+					storage.release();
+				}
+			};
+		}
+	}
+
+	// pre-invalidated with the tables each flushed action or bulk operation writes to
+	static class AnnouncingTimestampsCacheFactory implements TimestampsCacheFactory {
+		private final Supplier<SecondLevelCacheInvalidation> invalidation;
+
+		AnnouncingTimestampsCacheFactory(Supplier<SecondLevelCacheInvalidation> invalidation) {
+			this.invalidation = invalidation;
+		}
+
+		@Override
+		public TimestampsCache buildTimestampsCache(CacheImplementor cacheImplementor, TimestampsRegion region) {
+			return new AnnouncingTimestampsCache(new TimestampsCacheEnabledImpl(region), invalidation);
+		}
+	}
+
+	static class AnnouncingTimestampsCache implements TimestampsCache {
+		private final TimestampsCache delegate;
+		private final Supplier<SecondLevelCacheInvalidation> invalidation;
+
+		AnnouncingTimestampsCache(TimestampsCache delegate, Supplier<SecondLevelCacheInvalidation> invalidation) {
+			this.delegate = delegate;
+			this.invalidation = invalidation;
+		}
+
+		@Override
+		public TimestampsRegion getRegion() {
+			return delegate.getRegion();
+		}
+
+		@Override
+		public void preInvalidate(String[] spaces, SharedSessionContractImplementor session) {
+			delegate.preInvalidate(spaces, session);
+			invalidation.get().announceSpacesAfterCommit(session, spaces);
+		}
+
+		@Override
+		public void invalidate(String[] spaces, SharedSessionContractImplementor session) {
+			delegate.invalidate(spaces, session);
+		}
+
+		@Override
+		public boolean isUpToDate(String[] spaces, Long timestamp, SharedSessionContractImplementor session) {
+			return delegate.isUpToDate(spaces, timestamp, session);
+		}
+
+		@Override
+		public boolean isUpToDate(Collection<String> spaces, Long timestamp,
+				SharedSessionContractImplementor session) {
+			return delegate.isUpToDate(spaces, timestamp, session);
+		}
+
+		@Override
+		public void clear() {
+			delegate.clear();
+		}
+
+		@Override
+		public void destroy() {
+			delegate.destroy();
+		}
+	}
+}
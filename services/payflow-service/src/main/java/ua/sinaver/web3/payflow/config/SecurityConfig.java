@@ -1,10 +1,15 @@
 package ua.sinaver.web3.payflow.config;
 
 import jakarta.servlet.http.HttpServletResponse;
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.Customizer;
@@ -13,8 +18,10 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.annotation.web.configurers.RequestCacheConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import ua.sinaver.web3.payflow.auth.*;
@@ -37,6 +44,51 @@ public class SecurityConfig {
 	@Autowired
 	private ClientApiKeyAuthFilter clientApiKeyAuthFilter;
 
+	@Autowired
+	private SignedSessionAuthenticationFilter signedSessionAuthenticationFilter;
+
+	@Autowired
+	private SignedSessionService signedSessionService;
+
+	@Value("${payflow.metrics.username:prometheus}")
+	private String metricsUsername;
+
+	@Value("${payflow.metrics.password:}")
+	private String metricsPassword;
+
+	// actuator endpoints are served on the management port, scraping uses its own basic
+	// auth user, so neither web3 sessions nor client api keys grant access to metrics
+	@Bean
+	@Order(0)
+	SecurityFilterChain managementFilterChain(HttpSecurity http) throws Exception {
+		val metricsUsers = new InMemoryUserDetailsManager();
+		if (StringUtils.isNotBlank(metricsPassword)) {
+			metricsUsers.createUser(User.withUsername(metricsUsername)
+					.password(passwordEncoder().encode(metricsPassword))
+					.roles("METRICS")
+					.build());
+		}
+
+		return http
+				.securityMatcher(EndpointRequest.toAnyEndpoint())
+				.csrf(AbstractHttpConfigurer::disable)
+				.sessionManagement(session -> session
+						.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+				.requestCache(RequestCacheConfigurer::disable)
+				.formLogin(AbstractHttpConfigurer::disable)
+				.httpBasic(Customizer.withDefaults())
+				.userDetailsService(metricsUsers)
+				.authorizeHttpRequests(requests -> {
+					// no password configured - metrics are not reachable at all
+					if (StringUtils.isBlank(metricsPassword)) {
+						requests.anyRequest().denyAll();
+					} else {
+						requests.anyRequest().hasRole("METRICS");
+					}
+				})
+				.build();
+	}
+
 	@Bean
 	@Order(1)
 	SecurityFilterChain protocolFilterChain(HttpSecurity http) throws Exception {
@@ -112,13 +164,24 @@ public class SecurityConfig {
 						.requestMatchers(HttpMethod.GET, "/error").permitAll()
 						// other authenticated
 						.anyRequest().authenticated())
+				// signed sessions are verified from the cookie on each request, no http session
+				// is created or looked up. otherwise the context is saved into the (jdbc) session
+				// automatically, as explicit save is disabled
 				.sessionManagement(session -> session
-						.sessionCreationPolicy(SessionCreationPolicy.IF_REQUIRED))
-				// set to false, so that context is saved into session automatically
-				.securityContext(securityContext -> securityContext.requireExplicitSave(false))
+						.sessionCreationPolicy(signedSessionService.isEnabled()
+								? SessionCreationPolicy.STATELESS
+								: SessionCreationPolicy.IF_REQUIRED))
+				.securityContext(securityContext -> securityContext
+						.requireExplicitSave(signedSessionService.isEnabled()))
 				.authenticationManager(authenticationManager)
 				.logout(logout -> logout
 						.logoutUrl("/auth/logout")
+						.addLogoutHandler((httpServletRequest, httpServletResponse, authentication) -> {
+							if (signedSessionService.isEnabled()) {
+								httpServletResponse.addHeader(HttpHeaders.SET_COOKIE,
+										signedSessionService.revoke(httpServletRequest).toString());
+							}
+						})
 						.deleteCookies("sessionId")
 						.invalidateHttpSession(true)
 						.clearAuthentication(true)
@@ -126,6 +189,7 @@ public class SecurityConfig {
 								authentication) -> {
 							httpServletResponse.setStatus(HttpServletResponse.SC_OK);
 						}))
+				.addFilterBefore(signedSessionAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
 				.addFilterAfter(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
 				.exceptionHandling(exception -> exception
 						.authenticationEntryPoint(authenticationEntryPoint)
@@ -0,0 +1,261 @@
+package ua.sinaver.web3.payflow.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.cache.Cache;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// stampede protection for @Cacheable(sync = true) and other get(key, loader) callers, in front of
+// the caffeine or redis cache:
+// - concurrent misses of the same key wait for a single load instead of all recomputing it
+// - null results aren't cached (same as unless = "#result == null"), except in negative caches
+// - with refresh ahead, hits trigger an asynchronous reload before the entry expires while the
+//   old value is still served (probabilistic early expiration, xfetch): the closer to expiry and
+//   the more expensive the load was, the more likely a hit refreshes it
+// loads are coalesced per instance, and write times are only known for entries loaded here, so
+// with redis other instances still load a key once each and only refresh what they loaded
+@Slf4j
+public class SingleFlightCache implements Cache {
+	@Getter
+	private final Cache delegate;
+	private final boolean cacheNulls;
+	private final Duration refreshAheadTtl;
+	private final Duration absentTtl;
+	private final double beta;
+	private final Executor refreshExecutor;
+
+	private final ConcurrentMap<Object, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+	// expiry and load time of entries loaded by this instance
+	private final com.github.benmanes.caffeine.cache.Cache<Object, Timing> timings;
+
+	private final Counter leaderLoads;
+	private final Counter coalescedLoads;
+	private final Counter earlyRefreshes;
+	private final Counter failedRefreshes;
+	// cost of a miss, see CaffeineCacheBudget
+	private final Timer loadTimer;
+
+	// refreshAheadTtl null disables refresh ahead
+	public SingleFlightCache(Cache delegate, boolean cacheNulls, Duration refreshAheadTtl, Duration absentTtl,
+			double beta, Executor refreshExecutor, MeterRegistry meterRegistry) {
+		this.delegate = delegate;
+		this.cacheNulls = cacheNulls;
+		this.refreshAheadTtl = refreshAheadTtl;
+		this.absentTtl = absentTtl;
+		this.beta = beta;
+		this.refreshExecutor = refreshExecutor;
+		this.timings = refreshAheadTtl != null ? Caffeine.newBuilder()
+				.expireAfterWrite(refreshAheadTtl)
+				.maximumSize(10_000)
+				.build() : null;
+
+		this.leaderLoads = loads(delegate.getName(), "leader", meterRegistry);
+		this.coalescedLoads = loads(delegate.getName(), "coalesced", meterRegistry);
+		this.earlyRefreshes = loads(delegate.getName(), "early_refresh", meterRegistry);
+		this.failedRefreshes = loads(delegate.getName(), "refresh_failed", meterRegistry);
+		this.loadTimer = Timer.builder("payflow.cache.load")
+				.tag("cache", delegate.getName())
+				.register(meterRegistry);
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName();
+	}
+
+	@Override
+	public Object getNativeCache() {
+		return delegate.getNativeCache();
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		return delegate.get(key);
+	}
+
+	@Override
+	public <T> T get(Object key, Class<T> type) {
+		return delegate.get(key, type);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		val cached = delegate.get(key);
+		if (cached != null) {
+			if (shouldRefreshEarly(key)) {
+				val refresh = load(key, valueLoader, true);
+				if (refresh != null) {
+					earlyRefreshes.increment();
+					refresh.exceptionally(e -> {
+						failedRefreshes.increment();
+						log.warn("Failed to refresh {} in {} ahead of expiry: {}", key, getName(),
+								e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+						return null;
+					});
+				}
+			}
+			return (T) cached.get();
+		}
+
+		val load = load(key, valueLoader, false);
+		try {
+			return (T) load.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	// the load of the key, or null for an early refresh when the key is already being loaded.
+	// misses join the running load, the first caller loads on its own thread, refreshes load in
+	// the background
+	private CompletableFuture<Object> load(Object key, Callable<?> valueLoader, boolean refresh) {
+		val load = new CompletableFuture<Object>();
+		val running = loads.putIfAbsent(key, load);
+		if (running != null) {
+			if (refresh) {
+				return null;
+			}
+			coalescedLoads.increment();
+			return running;
+		}
+
+		Runnable task = () -> {
+			try {
+				// the previous leader may have cached the value right before this one registered
+				val cached = refresh ? null : delegate.get(key);
+				if (cached != null) {
+					load.complete(cached.get());
+					return;
+				}
+
+				val start = System.nanoTime();
+				val value = valueLoader.call();
+				val loadNanos = System.nanoTime() - start;
+				loadTimer.record(loadNanos, TimeUnit.NANOSECONDS);
+				// evicted while loading, the value may already be stale
+				if ((value != null || cacheNulls) && loads.get(key) == load) {
+					delegate.put(key, value);
+					recordTiming(key, value, loadNanos);
+				}
+				load.complete(value);
+			} catch (Exception e) {
+				load.completeExceptionally(new ValueRetrievalException(key, valueLoader, e));
+			} catch (Throwable e) {
+				load.completeExceptionally(e);
+			} finally {
+				loads.remove(key, load);
+			}
+		};
+
+		if (refresh) {
+			refreshExecutor.execute(task);
+		} else {
+			leaderLoads.increment();
+			task.run();
+		}
+		return load;
+	}
+
+	private void recordTiming(Object key, Object value, long loadNanos) {
+		if (timings == null) {
+			return;
+		}
+		val ttl = value == null && absentTtl != null ? absentTtl : refreshAheadTtl;
+		timings.put(key, new Timing(System.nanoTime() + ttl.toNanos(), loadNanos));
+	}
+
+	// xfetch: now - loadTime * beta * ln(random) >= expiry
+	private boolean shouldRefreshEarly(Object key) {
+		if (timings == null) {
+			return false;
+		}
+		val timing = timings.getIfPresent(key);
+		if (timing == null) {
+			return false;
+		}
+		val gap = timing.loadNanos() * beta * -Math.log(ThreadLocalRandom.current().nextDouble());
+		return System.nanoTime() + gap >= timing.expiresAtNanos();
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		delegate.put(key, value);
+		forget(key);
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		val existing = delegate.putIfAbsent(key, value);
+		forget(key);
+		return existing;
+	}
+
+	@Override
+	public void evict(Object key) {
+		delegate.evict(key);
+		forget(key);
+	}
+
+	@Override
+	public boolean evictIfPresent(Object key) {
+		val evicted = delegate.evictIfPresent(key);
+		forget(key);
+		return evicted;
+	}
+
+	@Override
+	public void clear() {
+		delegate.clear();
+		loads.clear();
+		if (timings != null) {
+			timings.invalidateAll();
+		}
+	}
+
+	@Override
+	public boolean invalidate() {
+		val invalidated = delegate.invalidate();
+		loads.clear();
+		if (timings != null) {
+			timings.invalidateAll();
+		}
+		return invalidated;
+	}
+
+	// a running load no longer owns the key, so it won't overwrite the new value (or the eviction)
+	// with what it read before. its waiting callers still get its result
+	private void forget(Object key) {
+		loads.remove(key);
+		if (timings != null) {
+			timings.invalidate(key);
+		}
+	}
+
+	private static Counter loads(String cacheName, String outcome, MeterRegistry meterRegistry) {
+		return Counter.builder("payflow.cache.loads")
+				.tag("cache", cacheName)
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+
+	private record Timing(long expiresAtNanos, long loadNanos) {
+	}
+}
@@ -0,0 +1,46 @@
+package ua.sinaver.web3.payflow.config;
+
+import lombok.val;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+// hands out the caches of the wrapped manager decorated with SingleFlightCache
+public class SingleFlightCacheManager implements CacheManager, InitializingBean {
+	private final CacheManager delegate;
+	private final Function<Cache, SingleFlightCache> decorator;
+	private final ConcurrentMap<String, SingleFlightCache> caches = new ConcurrentHashMap<>();
+
+	public SingleFlightCacheManager(CacheManager delegate, Function<Cache, SingleFlightCache> decorator) {
+		this.delegate = delegate;
+		this.decorator = decorator;
+	}
+
+	// the redis manager only applies the per cache configurations when initialized
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if (delegate instanceof InitializingBean initializingBean) {
+			initializingBean.afterPropertiesSet();
+		}
+	}
+
+	@Override
+	public Cache getCache(String name) {
+		val cache = caches.get(name);
+		if (cache != null) {
+			return cache;
+		}
+		val target = delegate.getCache(name);
+		return target != null ? caches.computeIfAbsent(name, key -> decorator.apply(target)) : null;
+	}
+
+	@Override
+	public Collection<String> getCacheNames() {
+		return delegate.getCacheNames();
+	}
+}
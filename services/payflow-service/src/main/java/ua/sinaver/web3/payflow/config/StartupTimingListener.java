@@ -0,0 +1,55 @@
+package ua.sinaver.web3.payflow.config;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+// reports how long the jvm, the context refresh and the readiness took, together with the
+// slowest startup steps (bean instantiation, flyway, entity manager, ...) buffered by main
+@Slf4j
+@Component
+public class StartupTimingListener {
+	private static final int SLOWEST_STEPS = 10;
+
+	private Duration startedIn;
+
+	@EventListener
+	public void onStarted(ApplicationStartedEvent event) {
+		startedIn = event.getTimeTaken();
+	}
+
+	@EventListener
+	public void onReady(ApplicationReadyEvent event) {
+		val runtime = ManagementFactory.getRuntimeMXBean();
+		val readyIn = event.getTimeTaken();
+		val jvmIn = Duration.ofMillis(runtime.getUptime()).minus(readyIn);
+		log.info("Startup timing: jvm {} ms, context {} ms, ready {} ms, process uptime {} ms",
+				jvmIn.toMillis(), startedIn != null ? startedIn.toMillis() : -1, readyIn.toMillis(),
+				runtime.getUptime());
+
+		if (event.getApplicationContext().getApplicationStartup() instanceof BufferingApplicationStartup startup) {
+			// drained, as nothing else reads the timeline after startup
+			val slowest = startup.drainBufferedTimeline().getEvents().stream()
+					.sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+					.limit(SLOWEST_STEPS)
+					.map(step -> String.format("%s %s: %d ms", step.getStartupStep().getName(),
+							StreamSupport.stream(step.getStartupStep().getTags().spliterator(), false)
+									.map(tag -> tag.getKey() + "=" + tag.getValue())
+									.collect(Collectors.joining(",", "[", "]")),
+							step.getDuration().toMillis()))
+					.collect(Collectors.joining("\n\t", "\n\t", ""));
+			log.info("Slowest startup steps: {}", slowest);
+		}
+	}
+}
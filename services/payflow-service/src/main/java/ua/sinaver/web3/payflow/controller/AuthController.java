@@ -1,21 +1,25 @@
 package ua.sinaver.web3.payflow.controller;
 
-import jakarta.servlet.http.HttpSession;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import ua.sinaver.web3.payflow.auth.AuthStateStore;
+import ua.sinaver.web3.payflow.auth.SignedSessionService;
 import ua.sinaver.web3.payflow.auth.Web3Authentication;
 import ua.sinaver.web3.payflow.message.SiweChallengeMessage;
 import ua.sinaver.web3.payflow.service.api.IUserService;
 
+import java.time.Duration;
+
 @RestController
 @RequestMapping("/auth")
 @CrossOrigin(origins = "${payflow.dapp.url}", allowCredentials = "true")
@@ -29,34 +33,40 @@ public class AuthController {
 	@Autowired
 	private IUserService userService;
 
+	@Autowired
+	private AuthStateStore authStateStore;
+
+	@Autowired
+	private SignedSessionService signedSessionService;
+
 	@Value("${payflow.dapp.url}")
 	private String dappUri;
 
+	@Value("${payflow.auth.nonce.ttl:10m}")
+	private Duration nonceTtl;
+
+	// nonces don't need a session, they are issued into the auth state store and consumed once
 	@GetMapping("/nonce")
-	public String nonce(HttpSession session) {
+	public String nonce() {
 		val nonce = RandomStringUtils.secure().nextAlphanumeric(10);
-		session.setAttribute("nonce", nonce);
-		log.debug("SessionId: {} - nonce: {} ", session.getId(), nonce);
+		authStateStore.saveNonce(nonce, nonceTtl);
+		log.debug("Issued nonce: {}", nonce);
 		return nonce;
 	}
 
 	@PostMapping("/verify/{identity}")
 	public ResponseEntity<String> verify(@PathVariable String identity,
-			@RequestBody SiweChallengeMessage siwe,
-			HttpSession session) {
-		log.debug("SessionId: {} - siwe challenge request: {} for {}", session.getId(), siwe, identity);
-
-		val sessionNonce = (String) session.getAttribute("nonce");
-		log.debug("nonce from session {}", sessionNonce);
-
-		// check if nonce match with previously generated for this session
+			@RequestBody SiweChallengeMessage siwe) {
+		log.debug("Siwe challenge request: {} for {}", siwe, identity);
 
-		if (sessionNonce == null || siwe.message().nonce() == null) {
-			log.error("Nonce is empty - session: {}, challenge {}", sessionNonce, siwe.message().nonce());
+		// check if nonce was issued by us and not used yet, it can't be re-used after this point
+		val nonce = siwe.message().nonce();
+		if (nonce == null) {
+			log.error("Nonce is empty in challenge for {}", identity);
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
 		}
-		if (!siwe.message().nonce().equals(sessionNonce)) {
-			log.error("Nonce mismatch - expected: {}, actual {}", sessionNonce, siwe.message().nonce());
+		if (!authStateStore.consumeNonce(nonce)) {
+			log.error("Nonce unknown, expired or already used: {}", nonce);
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
 		}
 
@@ -70,12 +80,9 @@ public class AuthController {
 				new Web3Authentication(identity.toLowerCase(), siwe.message(), siwe.signature()));
 
 		if (authentication.isAuthenticated()) {
-			// save authentication to security context
+			// save authentication to security context (and the http session in jdbc mode)
 			SecurityContextHolder.getContext().setAuthentication(authentication);
 
-			// remove nonce, so it can't be re-used
-			session.removeAttribute("nonce");
-
 			// create a user if not exist
 			val authenticatedIdentity = authentication.getPrincipal().toString();
 			val user = userService.findByIdentity(authenticatedIdentity);
@@ -83,6 +90,11 @@ public class AuthController {
 				userService.saveUser(authenticatedIdentity);
 			}
 
+			if (signedSessionService.isEnabled()) {
+				return ResponseEntity.ok()
+						.header(HttpHeaders.SET_COOKIE, signedSessionService.issue(authenticatedIdentity).toString())
+						.build();
+			}
 			return ResponseEntity.ok().build();
 		}
 
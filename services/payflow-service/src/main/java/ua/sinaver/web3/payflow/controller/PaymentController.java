@@ -5,12 +5,11 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.dto.CursorPageMessage;
 import ua.sinaver.web3.payflow.dto.PaymentMessage;
 import ua.sinaver.web3.payflow.message.PaymentReferenceMessage;
 import ua.sinaver.web3.payflow.message.PaymentUpdateMessage;
@@ -18,6 +17,8 @@ import ua.sinaver.web3.payflow.repository.PaymentRepository;
 import ua.sinaver.web3.payflow.service.ContactBookService;
 import ua.sinaver.web3.payflow.service.FarcasterNeynarService;
 import ua.sinaver.web3.payflow.service.NotificationService;
+import ua.sinaver.web3.payflow.service.PaymentListingService;
+import ua.sinaver.web3.payflow.service.PaymentParticipantService;
 import ua.sinaver.web3.payflow.service.api.IIdentityService;
 import ua.sinaver.web3.payflow.service.api.IUserService;
 
@@ -51,6 +52,12 @@ public class PaymentController {
 	@Autowired
 	private FarcasterNeynarService neynarService;
 
+	@Autowired
+	private PaymentParticipantService paymentParticipantService;
+
+	@Autowired
+	private PaymentListingService paymentListingService;
+
 	@GetMapping
 	public List<PaymentMessage> payments(@RequestParam(value = "hashes") List<String> hashes,
 			Principal principal) {
@@ -63,13 +70,10 @@ public class PaymentController {
 		}
 
 		val user = username != null ? userService.findByIdentity(username) : null;
-		val payments = paymentRepository.findByHashIn(hashes, user);
+		val payments = paymentListingService.findByHashes(hashes, user);
 
 		log.debug("Fetched payments: {}", payments);
-
-		return payments.stream()
-				.map(payment -> PaymentMessage.convert(payment, false, true))
-				.toList();
+		return payments;
 	}
 
 	@PostMapping
@@ -126,9 +130,13 @@ public class PaymentController {
 		return ResponseEntity.ok(new PaymentReferenceMessage(payment.getReferenceId()));
 	}
 
+	// no transaction around the whole request, neynar lookups would hold a pooled connection,
+	// the listing itself reads from the replica
 	@GetMapping("/completed")
-	public Page<PaymentMessage> completedPayments(Principal principal,
+	@Transactional(Transactional.TxType.NOT_SUPPORTED)
+	public CursorPageMessage<PaymentMessage> completedPayments(Principal principal,
 			@RequestParam(required = false) String identity,
+			@RequestParam(required = false) String cursor,
 			@RequestParam(defaultValue = "0") int page,
 			@RequestParam(defaultValue = "20") int size) {
 		val loggedIdentity = principal != null ? principal.getName() : null;
@@ -143,7 +151,7 @@ public class PaymentController {
 		val user = userService.findByIdentity(identity);
 		if (user == null) {
 			log.warn("User not found for identity: {}", identity);
-			return Page.empty();
+			return CursorPageMessage.empty();
 		}
 
 		val verifications = identityService.getFarcasterAddressesByAddress(user.getIdentity()).stream()
@@ -152,18 +160,20 @@ public class PaymentController {
 
 		val fid = identityService.getIdentityFid(user.getIdentity());
 
-		val paymentsPage = paymentRepository.findAllCompletedOrderByCompletedAtDesc(user,
-				verifications, fid, PageRequest.of(page, size));
+		val paymentsPage = paymentParticipantService.findCompleted(user, verifications, fid,
+				cursor, page, size);
 
 		// Check if we should include comments (when logged user is viewing their own
 		// payments)
 		val includeComments = StringUtils.equalsIgnoreCase(identity, loggedIdentity);
-		return paymentsPage.map(payment -> PaymentMessage.convert(payment, true, includeComments));
+		return paymentListingService.messages(paymentsPage, true, includeComments);
 	}
 
 	@GetMapping("/outbound")
-	public Page<PaymentMessage> outbound(Principal principal,
+	@Transactional(Transactional.TxType.NOT_SUPPORTED)
+	public CursorPageMessage<PaymentMessage> outbound(Principal principal,
 			@RequestParam List<Payment.PaymentStatus> statuses,
+			@RequestParam(required = false) String cursor,
 			@RequestParam(defaultValue = "0") int page,
 			@RequestParam(defaultValue = "5") int size) {
 		val username = principal != null ? principal.getName() : null;
@@ -171,18 +181,18 @@ public class PaymentController {
 
 		val user = userService.findByIdentity(username);
 		if (user == null) {
-			return Page.empty();
+			return CursorPageMessage.empty();
 		}
 		val verifications = identityService.getFarcasterAddressesByAddress(user.getIdentity()).stream()
 				.map(String::toLowerCase).toList();
 
-		val paymentsPage = paymentRepository.findOutboundByStatusAndSenderOrderDesc(user,
-				verifications, statuses,
-				PageRequest.of(page, size));
+		val paymentsPage = paymentParticipantService.findOutbound(user, verifications, statuses,
+				cursor, page, size);
 
-		return paymentsPage.map(payment -> PaymentMessage.convert(payment, true, true));
+		return paymentListingService.messages(paymentsPage, true, true);
 	}
 
+	// polled right after a payment is created or completed, so read from the primary
 	@GetMapping("/{referenceId}")
 	@ResponseStatus(HttpStatus.OK)
 	public ResponseEntity<PaymentMessage> payment(@PathVariable String referenceId) {
@@ -8,7 +8,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
+import ua.sinaver.web3.payflow.config.SecondLevelCacheEvictions;
 import ua.sinaver.web3.payflow.entity.PreferredTokens;
+import ua.sinaver.web3.payflow.entity.User;
 import ua.sinaver.web3.payflow.message.Token;
 import ua.sinaver.web3.payflow.service.TokenService;
 import ua.sinaver.web3.payflow.service.UserService;
@@ -28,6 +30,9 @@ public class TokenController {
 	@Autowired
 	private TokenService tokenService;
 
+	@Autowired
+	private SecondLevelCacheEvictions secondLevelCacheEvictions;
+
 	@GetMapping
 	public List<Token> getAllTokens() {
 		return tokenService.getTokens();
@@ -59,6 +64,8 @@ public class TokenController {
 
 		preferredTokens.setTokens(String.join(",", tokens));
 		userService.saveUser(user);
+		// preferred tokens are on the inverse side, a new one doesn't update the user's row
+		secondLevelCacheEvictions.evictAfterCommit(User.class, user.getId());
 	}
 
 }
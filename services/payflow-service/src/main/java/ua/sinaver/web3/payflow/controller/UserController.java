@@ -5,11 +5,13 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import ua.sinaver.web3.payflow.client.NeynarClient;
+import ua.sinaver.web3.payflow.config.ReadOnlyTransactional;
 import ua.sinaver.web3.payflow.dto.FlowMessage;
 import ua.sinaver.web3.payflow.dto.ProfileMessage;
 import ua.sinaver.web3.payflow.dto.ProfileMetaMessage;
@@ -102,7 +104,8 @@ public class UserController {
 			}
 		}
 
-		return new ContactsResponseMessage(Collections.emptyList(), Collections.emptyList());
+		return new ContactsResponseMessage(Collections.emptyList(), Collections.emptyList(),
+				Collections.emptyList());
 	}
 
 	@PostMapping("/me/favourites")
@@ -149,6 +152,7 @@ public class UserController {
 	}
 
 	@GetMapping("/all")
+	@ReadOnlyTransactional
 	// @Cacheable(cacheNames = USERS_CACHE_NAME, unless = "#result.isEmpty()")
 	public List<ProfileMetaMessage> getAllProfiles() {
 		try {
@@ -224,7 +228,13 @@ public class UserController {
 				}
 			}
 
-			val identityInfo = identityService.getIdentitiesInfo(identities)
+			val fetched = identityService.fetchIdentitiesInfo(identities);
+			// none of the identities loaded in time, not the same as having none
+			if (fetched.identities().isEmpty() && !fetched.missing().isEmpty()) {
+				log.warn("Identities not fetched for {}: {}", identities, fetched.missing());
+				return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+			}
+			val identityInfo = fetched.identities()
 					.stream()
 					.max(Comparator.comparingInt(IdentityMessage::score))
 					.orElse(null);
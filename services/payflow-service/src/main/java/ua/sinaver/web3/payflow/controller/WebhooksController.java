@@ -4,51 +4,31 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import ua.sinaver.web3.payflow.entity.bot.PaymentBotJob;
-import ua.sinaver.web3.payflow.events.PaymentBotJobEvent;
 import ua.sinaver.web3.payflow.message.farcaster.CastCreatedMessage;
 import ua.sinaver.web3.payflow.message.farcaster.DirectCastMessage;
 import ua.sinaver.web3.payflow.message.farcaster.FarcasterSignedMessage;
 import ua.sinaver.web3.payflow.message.farcaster.modbot.MembershipRequestMessage;
 import ua.sinaver.web3.payflow.message.farcaster.modbot.MembershipResponseMessage;
-import ua.sinaver.web3.payflow.repository.PaymentBotJobRepository;
 import ua.sinaver.web3.payflow.repository.PaymentRepository;
+import ua.sinaver.web3.payflow.service.BotWebhookService;
 import ua.sinaver.web3.payflow.service.FarcasterMessagingService;
 import ua.sinaver.web3.payflow.service.IdentityService;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.time.Instant;
 import java.util.UUID;
 
-import static ua.sinaver.web3.payflow.service.FarcasterBotService.BOT_FID;
-
 @RestController
 @RequestMapping("/farcaster/webhooks")
 @Slf4j
 public class WebhooksController {
-	private static final Logger LOGGER = LoggerFactory.getLogger(WebhooksController.class);
-
-	@Value("${payflow.farcaster.webhooks.neynar.secret}")
-	private String neynarSecret;
-
 	@Value("${payflow.farcaster.webhooks.membership.secret}")
 	private String membershipSecret;
 
-	@Autowired
-	private PaymentBotJobRepository paymentBotJobRepository;
-
 	@Autowired
 	private ObjectMapper objectMapper;
 
@@ -62,19 +42,7 @@ public class WebhooksController {
 	private FarcasterMessagingService farcasterMessagingService;
 
 	@Autowired
-	private ApplicationEventPublisher eventPublisher;
-
-	private static String bytesToHex(byte[] bytes) {
-		StringBuilder hexString = new StringBuilder();
-		for (byte b : bytes) {
-			String hex = Integer.toHexString(0xff & b);
-			if (hex.length() == 1) {
-				hexString.append('0');
-			}
-			hexString.append(hex);
-		}
-		return hexString.toString();
-	}
+	private BotWebhookService botWebhookService;
 
 	@PostMapping("/frames/v2")
 	public ResponseEntity<String> processFrameV2Message(
@@ -85,16 +53,29 @@ public class WebhooksController {
 
 	@PostMapping("/bot")
 	public ResponseEntity<String> processBotCommand(
-			@RequestHeader("X-Neynar-Signature") String signature,
-			@RequestBody String rawBody) {
+			@RequestHeader(value = "X-Neynar-Signature", required = false) String signature,
+			@RequestBody byte[] rawBody) {
 
 		if (StringUtils.isBlank(signature)) {
-			LOGGER.error("No Signature found!");
+			log.error("No Signature found!");
+			botWebhookService.delivery("unauthorized");
 			return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
 		}
 
-		log.debug("Incoming mention: rawCast: {}, signature: {}", rawBody,
-				signature);
+		// verify before parsing, forged payloads never reach the object mapper
+		if (!botWebhookService.verifySignature(rawBody, signature)) {
+			log.error("The provided signature is not valid");
+			botWebhookService.delivery("invalid_signature");
+			return ResponseEntity.badRequest().body("Invalid webhook signature");
+		}
+
+		// neynar redelivers on slow or failed acks, drop repeats before any parsing or db work
+		val castHash = botWebhookService.castHash(rawBody);
+		if (castHash != null && !botWebhookService.markDelivered(castHash)) {
+			log.debug("Duplicate delivery of cast {}", castHash);
+			botWebhookService.delivery("duplicate");
+			return ResponseEntity.ok().body("Duplicate");
+		}
 
 		CastCreatedMessage castCreatedMessage;
 		try {
@@ -102,37 +83,25 @@ public class WebhooksController {
 			log.debug("Parsed cast created message: {}", castCreatedMessage);
 		} catch (Throwable t) {
 			log.error("Failed to parse cast message", t);
+			botWebhookService.delivery("malformed");
 			return ResponseEntity.badRequest().body("Failed to parse cast message!");
 		}
 
 		try {
-			val isValid = verifySignature(rawBody, signature, neynarSecret);
-			if (!isValid) {
-				LOGGER.error("The provided signature is not valid");
-				return ResponseEntity.badRequest().body("Invalid webhook signature");
-			}
-
-			val cast = castCreatedMessage.data();
-
-			// save if not its cast and not quoted
-			if (cast.author().fid() != BOT_FID ||
-					(StringUtils.isNotBlank(cast.text()) &&
-							!cast.text().matches("([\"'`])@payflow.*?\\1"))) {
-				val job = new PaymentBotJob(cast.hash(),
-						cast.author().fid(),
-						Instant.parse(cast.timestamp()),
-						cast);
-
-				// Save without explicit flush since transaction will handle it
-				paymentBotJobRepository.save(job);
-				eventPublisher.publishEvent(new PaymentBotJobEvent(job.getId()));
-				LOGGER.info("Payment job command saved: {}", job);
-			}
-
+			val enqueued = botWebhookService.enqueue(castCreatedMessage.data());
+			botWebhookService.delivery(enqueued ? "accepted" : "ignored");
 			return ResponseEntity.ok().body("Success");
-		} catch (NoSuchAlgorithmException | InvalidKeyException e) {
-			LOGGER.error("Security exception", e);
-			return ResponseEntity.badRequest().body("Invalid webhook signature");
+		} catch (DataIntegrityViolationException e) {
+			// delivered to another instance or before the dedup window
+			log.debug("Payment job for cast {} already exists", castHash);
+			botWebhookService.delivery("duplicate");
+			return ResponseEntity.ok().body("Duplicate");
+		} catch (RuntimeException e) {
+			// let the redelivery through
+			if (castHash != null) {
+				botWebhookService.forgetDelivery(castHash);
+			}
+			throw e;
 		}
 	}
 
@@ -197,16 +166,6 @@ public class WebhooksController {
 		}
 	}
 
-	private boolean verifySignature(String body, String sig, String secret)
-			throws NoSuchAlgorithmException, InvalidKeyException {
-		val hmacSha512 = Mac.getInstance("HmacSHA512");
-		val secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA512");
-		hmacSha512.init(secretKey);
-		val hmac = hmacSha512.doFinal(body.getBytes(StandardCharsets.UTF_8));
-		val generatedSignature = bytesToHex(hmac);
-		return generatedSignature.equals(sig);
-	}
-
 	public void sendMembershipDeniedMessage(int fid, String reason, Integer minNumberOfPayments) {
 		farcasterMessagingService.sendMessageAsync(new DirectCastMessage(fid,
 				String.format("""
@@ -0,0 +1,20 @@
+package ua.sinaver.web3.payflow.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+// keeps `content`, `number` and `last` fields compatible with spring data page json
+public record CursorPageMessage<T>(
+		List<T> content,
+		int number,
+		boolean last,
+		String nextCursor) {
+
+	public <R> CursorPageMessage<R> map(Function<? super T, ? extends R> converter) {
+		return new CursorPageMessage<>(content.stream().<R>map(converter).toList(), number, last, nextCursor);
+	}
+
+	public static <T> CursorPageMessage<T> empty() {
+		return new CursorPageMessage<>(List.of(), 0, true, null);
+	}
+}
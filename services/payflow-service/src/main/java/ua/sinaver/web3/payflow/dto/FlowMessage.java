@@ -91,6 +91,19 @@ public record FlowMessage(String signer, String signerProvider,
 				flow.isArchived() || flow.isDisabled());
 	}
 
+	// same as convert(flow, null, false), from the flow columns of a listing row
+	public static FlowMessage convert(String title, Flow.FlowType type, String uuid, String walletProvider,
+			String saltNonce, List<WalletMessage> wallets, boolean archived) {
+		return new FlowMessage(null, null,
+				null, null,
+				title,
+				type != null ? type.toString() : "",
+				uuid,
+				walletProvider, saltNonce, wallets,
+				null,
+				archived);
+	}
+
 	public static FlowMessage convertFarcasterVerification(String verificationAddress, User user) {
 		val wallets = SUPPORTED_FRAME_PAYMENTS_CHAIN_IDS.stream()
 				.map(chainId -> new WalletMessage(verificationAddress, chainId, null, true))
@@ -4,6 +4,10 @@ import org.apache.commons.lang3.StringUtils;
 import ua.sinaver.web3.payflow.entity.Payment;
 
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.commons.lang3.BooleanUtils.isTrue;
 
 public record PaymentMessage(
 		String referenceId,
@@ -66,9 +70,67 @@ public record PaymentMessage(
 				payment.getExpiresAt());
 	}
 
+	// same as convert(payment, ...) above, flows are looked up in the wallets fetched for the page
+	public static PaymentMessage convert(PaymentRow row, Map<Integer, List<WalletMessage>> flowWallets,
+	                                     boolean includeRef, boolean includeComment) {
+		return new PaymentMessage(
+				includeRef ? row.getReferenceId() : null,
+				row.getType(),
+				row.getName(),
+				row.getCategory(),
+				getStatusWithExpiryCheck(row.getStatus(), row.getExpiresAt()),
+				row.getReceiverId() != null ? new ProfileMetaMessage(row.getReceiverIdentity(),
+						row.getReceiverDisplayName(), row.getReceiverUsername(), row.getReceiverProfileImage(),
+						String.valueOf(row.getReceiverCreatedDate()), receiverDefaultFlow(row, flowWallets)) : null,
+				row.getReceiverFlowId() != null ? FlowMessage.convert(row.getReceiverFlowTitle(),
+						row.getReceiverFlowType(), row.getReceiverFlowUuid(), row.getReceiverFlowWalletProvider(),
+						row.getReceiverFlowSaltNonce(),
+						flowWallets.getOrDefault(row.getReceiverFlowId(), List.of()),
+						isTrue(row.getReceiverFlowArchived()) || isTrue(row.getReceiverFlowDisabled())) : null,
+				row.getSenderAddress(),
+				row.getReceiverAddress(),
+				row.getReceiverFid(),
+				row.getSenderId() != null ? new ProfileMetaMessage(row.getSenderIdentity(),
+						row.getSenderDisplayName(), row.getSenderUsername(), row.getSenderProfileImage(),
+						String.valueOf(row.getSenderCreatedDate()), null) : null,
+				row.getNetwork(),
+				row.getToken(),
+				StringUtils.isNotBlank(row.getUsdAmount()) ? Double.parseDouble(row.getUsdAmount()) : null,
+				StringUtils.isNotBlank(row.getTokenAmount()) ? Double.parseDouble(row.getTokenAmount()) : null,
+				row.getHash(),
+				row.getFulfillmentId(),
+				row.getFulfillmentChainId(),
+				row.getFulfillmentHash(),
+				row.getRefundHash(),
+				new PaymentMessage.PaymentSource(row.getSourceApp(), row.getSourceRef()),
+				includeComment ? row.getComment() : null,
+				row.getTarget(),
+				row.getCreatedAt(),
+				row.getCompletedAt(),
+				row.getExpiresAt());
+	}
+
+	// same as FlowMessage.convertDefaultFlow(receiver, false)
+	private static FlowMessage receiverDefaultFlow(PaymentRow row, Map<Integer, List<WalletMessage>> flowWallets) {
+		if (row.getReceiverDefaultFlowId() != null) {
+			return FlowMessage.convert(row.getReceiverDefaultFlowTitle(), row.getReceiverDefaultFlowType(),
+					row.getReceiverDefaultFlowUuid(), row.getReceiverDefaultFlowWalletProvider(),
+					row.getReceiverDefaultFlowSaltNonce(),
+					flowWallets.getOrDefault(row.getReceiverDefaultFlowId(), List.of()),
+					isTrue(row.getReceiverDefaultFlowArchived()) || isTrue(row.getReceiverDefaultFlowDisabled()));
+		}
+		return row.getReceiverDefaultReceivingAddress() != null
+				? FlowMessage.convertFarcasterVerification(row.getReceiverDefaultReceivingAddress(), null)
+				: null;
+	}
+
 	public static Payment.PaymentStatus getStatusWithExpiryCheck(Payment payment) {
-		return Payment.PaymentStatus.CREATED.equals(payment.getStatus()) && payment.getExpiresAt() != null && payment.getExpiresAt().isBefore(Instant.now()) ?
-				Payment.PaymentStatus.EXPIRED : payment.getStatus();
+		return getStatusWithExpiryCheck(payment.getStatus(), payment.getExpiresAt());
+	}
+
+	public static Payment.PaymentStatus getStatusWithExpiryCheck(Payment.PaymentStatus status, Instant expiresAt) {
+		return Payment.PaymentStatus.CREATED.equals(status) && expiresAt != null && expiresAt.isBefore(Instant.now()) ?
+				Payment.PaymentStatus.EXPIRED : status;
 	}
 
 	public record PaymentSource(String app, String ref) {
@@ -0,0 +1,118 @@
+package ua.sinaver.web3.payflow.dto;
+
+import ua.sinaver.web3.payflow.entity.Flow;
+import ua.sinaver.web3.payflow.entity.Payment;
+
+import java.time.Instant;
+
+// flat read model of a payment listing row: payment columns with sender, receiver (and its
+// default flow) and receiver flow summaries joined in, see PaymentRepository.PAYMENT_ROW_SELECT
+public interface PaymentRow {
+	Integer getId();
+
+	String getReferenceId();
+
+	Payment.PaymentType getType();
+
+	String getName();
+
+	String getCategory();
+
+	Payment.PaymentStatus getStatus();
+
+	String getSenderAddress();
+
+	String getReceiverAddress();
+
+	Integer getReceiverFid();
+
+	Integer getNetwork();
+
+	String getToken();
+
+	String getUsdAmount();
+
+	String getTokenAmount();
+
+	String getHash();
+
+	String getFulfillmentId();
+
+	Integer getFulfillmentChainId();
+
+	String getFulfillmentHash();
+
+	String getRefundHash();
+
+	String getSourceApp();
+
+	String getSourceRef();
+
+	String getComment();
+
+	String getTarget();
+
+	Instant getCreatedAt();
+
+	Instant getCompletedAt();
+
+	Instant getExpiresAt();
+
+	Integer getSenderId();
+
+	String getSenderIdentity();
+
+	String getSenderDisplayName();
+
+	String getSenderUsername();
+
+	String getSenderProfileImage();
+
+	Instant getSenderCreatedDate();
+
+	Integer getReceiverId();
+
+	String getReceiverIdentity();
+
+	String getReceiverDisplayName();
+
+	String getReceiverUsername();
+
+	String getReceiverProfileImage();
+
+	Instant getReceiverCreatedDate();
+
+	String getReceiverDefaultReceivingAddress();
+
+	Integer getReceiverDefaultFlowId();
+
+	String getReceiverDefaultFlowTitle();
+
+	Flow.FlowType getReceiverDefaultFlowType();
+
+	String getReceiverDefaultFlowUuid();
+
+	String getReceiverDefaultFlowWalletProvider();
+
+	String getReceiverDefaultFlowSaltNonce();
+
+	Boolean getReceiverDefaultFlowArchived();
+
+	Boolean getReceiverDefaultFlowDisabled();
+
+	Integer getReceiverFlowId();
+
+	String getReceiverFlowTitle();
+
+	Flow.FlowType getReceiverFlowType();
+
+	String getReceiverFlowUuid();
+
+	String getReceiverFlowWalletProvider();
+
+	String getReceiverFlowSaltNonce();
+
+	Boolean getReceiverFlowArchived();
+
+	Boolean getReceiverFlowDisabled();
+}
@@ -0,0 +1,13 @@
+package ua.sinaver.web3.payflow.dto;
+
+public interface WalletRow {
+	Integer getFlowId();
+
+	String getAddress();
+
+	Integer getNetwork();
+
+	String getVersion();
+
+	Boolean getDeployed();
+}
@@ -7,6 +7,8 @@ import lombok.Setter;
 import lombok.ToString;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.Date;
 import java.util.List;
@@ -16,6 +18,7 @@ import java.util.List;
 @Getter
 @NoArgsConstructor
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "flow")
 @Table(indexes = {@Index(columnList = "user_id"), @Index(columnList = "uuid")})
 public class Flow {
 	@Id
@@ -57,6 +60,7 @@ public class Flow {
 	private String saltNonce;
 
 	@OneToMany(mappedBy = "flow", fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval = true)
+	@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "flow_wallets")
 	private List<Wallet> wallets;
 
 	@Column(columnDefinition = "boolean")
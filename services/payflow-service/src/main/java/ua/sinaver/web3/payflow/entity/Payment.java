@@ -18,7 +18,11 @@ import java.time.temporal.ChronoUnit;
 @Getter
 @NoArgsConstructor
 @Entity
-@Table(uniqueConstraints = {
+@EntityListeners({ PaymentParticipantListener.class, PaymentMetricsListener.class })
+@Table(indexes = {
+		// scheduled jobs of the owned shards, see SchedulerShardService
+		@Index(name = "idx_payment_status_shard_created_at", columnList = "status,shard,created_at")
+}, uniqueConstraints = {
 		@UniqueConstraint(name = "uc_payment_reference_id", columnNames = { "reference_id" })
 })
 public class Payment {
@@ -26,6 +30,10 @@ public class Payment {
 	@GeneratedValue(strategy = GenerationType.AUTO)
 	private Integer id;
 
+	// MOD(id, SchedulerShardService.SHARDS), generated by the database
+	@Column(insertable = false, updatable = false)
+	private Integer shard;
+
 	@Column(columnDefinition = "VARCHAR(256)", nullable = false)
 	@Enumerated(EnumType.STRING)
 	private PaymentType type;
@@ -139,6 +147,11 @@ public class Payment {
 	@Column
 	private Integer failures = 0;
 
+	// status as last loaded or flushed, lets the metrics listener count actual transitions
+	@Transient
+	@ToString.Exclude
+	private PaymentStatus persistedStatus;
+
 	public Payment(PaymentType type, User receiver, Integer network, String token) {
 		this.type = type;
 		this.receiver = receiver;
@@ -0,0 +1,42 @@
+package ua.sinaver.web3.payflow.entity;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+// counts payment status transitions as payflow.payments.transitions{from, to},
+// bulk updates bypass entity callbacks and report through transitioned() directly
+public class PaymentMetricsListener {
+	@Autowired
+	private ObjectProvider<MeterRegistry> meterRegistry;
+
+	public static void transitioned(MeterRegistry meterRegistry, Payment.PaymentStatus from,
+			Payment.PaymentStatus to, int count) {
+		if (count <= 0) {
+			return;
+		}
+		Counter.builder("payflow.payments.transitions")
+				.tag("from", from != null ? from.name() : "NONE")
+				.tag("to", to.name())
+				.register(meterRegistry)
+				.increment(count);
+	}
+
+	@PostLoad
+	void load(Payment payment) {
+		payment.setPersistedStatus(payment.getStatus());
+	}
+
+	@PostPersist
+	@PostUpdate
+	void flushed(Payment payment) {
+		if (payment.getStatus() != payment.getPersistedStatus()) {
+			transitioned(meterRegistry.getObject(), payment.getPersistedStatus(), payment.getStatus(), 1);
+			payment.setPersistedStatus(payment.getStatus());
+		}
+	}
+}
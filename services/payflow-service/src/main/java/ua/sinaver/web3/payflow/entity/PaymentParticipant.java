@@ -0,0 +1,74 @@
+package ua.sinaver.web3.payflow.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+// activity ledger: one row per payment participant (user, address or fid) and role,
+// kept in sync with payment by PaymentParticipantListener
+@ToString
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "payment_participant", indexes = {
+		@Index(name = "idx_payment_participant_key_role_status_sorted_at",
+				columnList = "participant_key, role, status, sorted_at DESC, payment_id DESC"),
+		@Index(name = "idx_payment_participant_payment_id", columnList = "payment_id")
+})
+@IdClass(PaymentParticipant.Key.class)
+public class PaymentParticipant {
+	@Id
+	@Column(name = "participant_key", nullable = false)
+	private String participantKey;
+
+	@Id
+	@Column(columnDefinition = "VARCHAR(32)", nullable = false)
+	@Enumerated(EnumType.STRING)
+	private Role role;
+
+	@Id
+	@Column(name = "payment_id", nullable = false)
+	private Integer paymentId;
+
+	@Column(columnDefinition = "VARCHAR(256)", nullable = false)
+	@Enumerated(EnumType.STRING)
+	private Payment.PaymentStatus status;
+
+	@Column(name = "sorted_at", nullable = false)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Instant sortedAt;
+
+	public static String userKey(Integer userId) {
+		return "user:" + userId;
+	}
+
+	public static String addressKey(String address) {
+		return "address:" + address.toLowerCase();
+	}
+
+	public static String fidKey(Integer fid) {
+		return "fid:" + fid;
+	}
+
+	public static Instant sortedAt(Payment payment) {
+		return payment.getCompletedAt() != null ? payment.getCompletedAt() : payment.getCreatedAt();
+	}
+
+	public enum Role {
+		SENDER,
+		RECEIVER
+	}
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class Key implements Serializable {
+		private String participantKey;
+		private Role role;
+		private Integer paymentId;
+	}
+}
@@ -0,0 +1,30 @@
+package ua.sinaver.web3.payflow.entity;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import ua.sinaver.web3.payflow.service.PaymentParticipantService;
+
+// instantiated by hibernate through spring bean container, service is resolved lazily
+// since listeners are created while entity manager factory is being built
+public class PaymentParticipantListener {
+	@Autowired
+	private ObjectProvider<PaymentParticipantService> participantService;
+
+	@PostPersist
+	void insert(Payment payment) {
+		participantService.getObject().insert(payment);
+	}
+
+	@PostUpdate
+	void sync(Payment payment) {
+		participantService.getObject().sync(payment);
+	}
+
+	@PostRemove
+	void remove(Payment payment) {
+		participantService.getObject().remove(payment.getId());
+	}
+}
@@ -0,0 +1,33 @@
+package ua.sinaver.web3.payflow.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.time.Instant;
+
+// membership of the scheduled job shards: every running instance keeps its heartbeat fresh,
+// see SchedulerShardService
+@ToString
+@Setter
+@Getter
+@NoArgsConstructor
+@Entity
+@Table(name = "scheduler_instance", indexes = {
+		@Index(name = "idx_scheduler_instance_heartbeat_at", columnList = "heartbeat_at")
+})
+public class SchedulerInstance {
+	@Id
+	@Column(name = "instance_id", length = 64, nullable = false)
+	private String instanceId;
+
+	@Column(name = "started_at", nullable = false)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Instant startedAt;
+
+	@Column(name = "heartbeat_at", nullable = false)
+	@Temporal(TemporalType.TIMESTAMP)
+	private Instant heartbeatAt;
+}
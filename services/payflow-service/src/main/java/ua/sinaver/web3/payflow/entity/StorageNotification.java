@@ -13,7 +13,10 @@ import java.time.Instant;
 @Getter
 @NoArgsConstructor
 @Entity
-@Table(uniqueConstraints = {
+@Table(indexes = {
+		@Index(name = "idx_storage_notification_enabled_shard_last_checked_at",
+				columnList = "enabled,shard,last_checked_at")
+}, uniqueConstraints = {
 		@UniqueConstraint(name = "uc_storage_notification_fid", columnNames = {"fid"})
 })
 public class StorageNotification {
@@ -24,6 +27,10 @@ public class StorageNotification {
 	@Column(name = "fid", nullable = false)
 	private Integer fid;
 
+	// MOD(fid, SchedulerShardService.SHARDS), generated by the database
+	@Column(insertable = false, updatable = false)
+	private Integer shard;
+
 	@Column(columnDefinition = "boolean")
 	private boolean enabled = true;
 
@@ -5,6 +5,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.time.Instant;
 import java.util.Date;
@@ -15,6 +17,7 @@ import java.util.List;
 @Getter
 @NoArgsConstructor
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user")
 @Table(indexes = {
 		// TODO: replace @Index(name = "idx_user_last_updated_contacts", columnList =
 		// "allowed", "last_updated_contacts"),
@@ -17,7 +17,9 @@ import java.time.temporal.ChronoUnit;
 @Getter
 @NoArgsConstructor
 @Entity
-@Table(name = "wallet_session")
+@Table(name = "wallet_session", indexes = {
+		@Index(name = "idx_wallet_session_active_shard_expires_at", columnList = "active,shard,expires_at")
+})
 public class WalletSession {
 
 	public static final Integer EXPIRES_AFTER_HOURS = 1;
@@ -26,6 +28,10 @@ public class WalletSession {
 	@GeneratedValue(strategy = GenerationType.AUTO)
 	private Integer id;
 
+	// MOD(id, SchedulerShardService.SHARDS), generated by the database
+	@Column(insertable = false, updatable = false)
+	private Integer shard;
+
 	@Column(name = "session_id", nullable = false)
 	private String sessionId;
 
@@ -17,7 +17,7 @@ import java.time.Instant;
 @NoArgsConstructor
 @Entity
 @Table(indexes = {
-		@Index(name = "idx_payment_bot_job_status_casted_date_asc", columnList = "status,casted_date ASC"),
+		@Index(name = "idx_payment_bot_job_status_shard_casted_date", columnList = "status,shard,casted_date ASC"),
 		// needed to fetch the latest casted_date
 		@Index(name = "idx_payment_bot_job_casted_date_desc", columnList = "casted_date DESC")
 }, uniqueConstraints = {
@@ -28,6 +28,10 @@ public class PaymentBotJob {
 	@GeneratedValue(strategy = GenerationType.AUTO)
 	private Integer id;
 
+	// MOD(id, SchedulerShardService.SHARDS), generated by the database
+	@Column(insertable = false, updatable = false)
+	private Integer shard;
+
 	@Column(name = "cast_hash", nullable = false)
 	private String castHash;
 
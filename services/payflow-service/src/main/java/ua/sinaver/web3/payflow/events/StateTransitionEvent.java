@@ -0,0 +1,6 @@
+package ua.sinaver.web3.payflow.events;
+
+import java.util.List;
+
+public record StateTransitionEvent(String job, List<Integer> ids) {
+}
@@ -2,5 +2,6 @@ package ua.sinaver.web3.payflow.message;
 
 import java.util.List;
 
-public record ContactsResponseMessage(List<String> tags, List<ContactMessage> contacts) {
+public record ContactsResponseMessage(List<String> tags, List<ContactMessage> contacts,
+                                      List<String> missing) {
 }
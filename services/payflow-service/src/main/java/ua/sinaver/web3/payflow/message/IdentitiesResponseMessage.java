@@ -0,0 +1,7 @@
+package ua.sinaver.web3.payflow.message;
+
+import java.util.List;
+
+public record IdentitiesResponseMessage(List<IdentityMessage> identities,
+                                        List<String> missing) {
+}
@@ -5,10 +5,14 @@ import lombok.Builder;
 import lombok.Value;
 
 import java.util.List;
+import java.util.Map;
 
 @Builder
 @Value
 public class AgentRequest {
+    // prompt caching breakpoint, caches the whole prefix up to and including the marked block
+    public static final Map<String, String> EPHEMERAL_CACHE = Map.of("type", "ephemeral");
+
     String model;
     @JsonProperty("max_tokens")
     int maxTokens;
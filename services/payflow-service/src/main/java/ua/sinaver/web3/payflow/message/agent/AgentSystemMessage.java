@@ -12,6 +12,5 @@ public class AgentSystemMessage {
     String type;
     String text;
     @JsonProperty("cache_control")
-    @Builder.Default
-    Map<String, String> cacheControl = Map.of("type", "ephemeral");
+    Map<String, String> cacheControl;
 }
@@ -7,7 +7,7 @@ import lombok.Value;
 import java.util.List;
 import java.util.Map;
 
-@Builder
+@Builder(toBuilder = true)
 @Value
 public class AgentTool {
     String name;
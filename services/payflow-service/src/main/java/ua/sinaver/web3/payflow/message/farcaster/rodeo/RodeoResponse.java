@@ -9,6 +9,7 @@ import java.util.List;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class RodeoResponse {
     private Data data;
+    private List<Error> errors;
     
     @lombok.Data
     @JsonIgnoreProperties(ignoreUnknown = true)
@@ -29,4 +30,10 @@ public class RodeoResponse {
         private String address;
         private String connectorType;
     }
+
+    @lombok.Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Error {
+        private String message;
+    }
 } 
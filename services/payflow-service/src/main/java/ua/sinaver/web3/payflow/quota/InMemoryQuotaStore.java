@@ -0,0 +1,122 @@
+package ua.sinaver.web3.payflow.quota;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.common.util.concurrent.Striped;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+// single instance setup, counts are only visible to this instance. uses of a key are checked and
+// counted under the lock of its stripe, keys of other stripes don't wait on each other
+@Component
+@Profile("!redis")
+public class InMemoryQuotaStore implements QuotaStore {
+	private final Striped<Lock> locks = Striped.lock(64);
+	private final Cache<String, Counter> counters;
+
+	public InMemoryQuotaStore(@Value("${payflow.quota.in-memory.max-size:100000}") long maxSize) {
+		this.counters = Caffeine.newBuilder()
+				.expireAfter(Expiry.writing((String key, Counter counter) ->
+						Duration.ofMillis(Math.max(0, counter.expiresAt - System.currentTimeMillis()))))
+				.maximumSize(maxSize)
+				.build();
+	}
+
+	@Override
+	public Acquisition tryAcquire(String key, long limit, Duration window, QuotaPolicy policy) {
+		return locked(key, counter -> {
+			val now = System.currentTimeMillis();
+			val used = counter.used(now, window.toMillis(), policy);
+			if (used >= limit) {
+				return new Acquisition(false, used, key, policy, null);
+			}
+			val token = policy == QuotaPolicy.SLIDING_WINDOW
+					? UUID.randomUUID().toString()
+					: String.valueOf(counter.start);
+			counter.add(now, window.toMillis(), policy, token);
+			counters.put(key, counter);
+			return new Acquisition(true, used + 1, key, policy, token);
+		});
+	}
+
+	@Override
+	public void release(Acquisition acquisition) {
+		if (!acquisition.granted()) {
+			return;
+		}
+		locked(acquisition.key(), counter -> {
+			if (counter.remove(acquisition.policy(), acquisition.token())) {
+				counters.put(acquisition.key(), counter);
+			}
+			return null;
+		});
+	}
+
+	@Override
+	public long used(String key, Duration window, QuotaPolicy policy) {
+		return locked(key, counter -> counter.used(System.currentTimeMillis(), window.toMillis(), policy));
+	}
+
+	private <T> T locked(String key, Function<Counter, T> action) {
+		val lock = locks.get(key);
+		lock.lock();
+		try {
+			return action.apply(counters.get(key, k -> new Counter()));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// only touched under the lock of its key
+	private static class Counter {
+		// fixed window
+		private long start;
+		private long used;
+		// sliding window, uses by time of use
+		private final LinkedHashMap<String, Long> uses = new LinkedHashMap<>();
+		private long expiresAt;
+
+		long used(long now, long window, QuotaPolicy policy) {
+			if (policy == QuotaPolicy.SLIDING_WINDOW) {
+				uses.values().removeIf(usedAt -> usedAt <= now - window);
+				return uses.size();
+			}
+			val current = now - now % window;
+			if (start != current) {
+				start = current;
+				used = 0;
+			}
+			return used;
+		}
+
+		void add(long now, long window, QuotaPolicy policy, String token) {
+			if (policy == QuotaPolicy.SLIDING_WINDOW) {
+				uses.put(token, now);
+				expiresAt = now + window;
+			} else {
+				used++;
+				expiresAt = start + window;
+			}
+		}
+
+		boolean remove(QuotaPolicy policy, String token) {
+			if (policy == QuotaPolicy.SLIDING_WINDOW) {
+				return uses.remove(token) != null;
+			}
+			if (String.valueOf(start).equals(token) && used > 0) {
+				used--;
+				return true;
+			}
+			return false;
+		}
+	}
+}
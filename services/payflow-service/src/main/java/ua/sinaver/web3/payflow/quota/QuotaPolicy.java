@@ -0,0 +1,10 @@
+package ua.sinaver.web3.payflow.quota;
+
+// how the uses counted against a quota free up again
+public enum QuotaPolicy {
+	// all at once at the end of the window, windows are aligned to the epoch, e.g. a 24h window
+	// resets at midnight utc
+	FIXED_WINDOW,
+	// one by one, each once it's older than the window
+	SLIDING_WINDOW
+}
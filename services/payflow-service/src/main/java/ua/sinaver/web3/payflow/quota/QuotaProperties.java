@@ -0,0 +1,50 @@
+package ua.sinaver.web3.payflow.quota;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// per-quota settings, e.g. payflow.quotas.agent-attempts.limit=10
+// quotas without explicit config use the defaults below
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("payflow")
+public class QuotaProperties {
+
+	private Map<String, Quota> quotas = new HashMap<>();
+
+	public Quota get(String name) {
+		return quotas.getOrDefault(name, new Quota());
+	}
+
+	@Getter
+	@Setter
+	public static class Quota {
+		private long limit = 10;
+		private Duration window = Duration.ofDays(1);
+		private QuotaPolicy policy = QuotaPolicy.FIXED_WINDOW;
+
+		// usernames or subjects with their own limit, and those without any
+		private Map<String, Long> overrides = new HashMap<>();
+		private Set<String> unlimited = new HashSet<>();
+
+		// negative when the subject isn't limited
+		public long limitOf(String subject, String username) {
+			if (unlimited.contains(subject) || (username != null && unlimited.contains(username))) {
+				return -1;
+			}
+			if (username != null && overrides.containsKey(username)) {
+				return overrides.get(username);
+			}
+			return overrides.getOrDefault(subject, limit);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package ua.sinaver.web3.payflow.quota;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+// named quotas on what subjects (e.g. casters by fid) may use: kept in redis with the redis
+// profile, so they hold across instances, and in memory otherwise. a use is counted when its
+// permit is acquired, and given back with release() when what it was acquired for didn't
+// happen. when the store fails, uses are let through rather than taking the feature down
+@Slf4j
+@Service
+public class QuotaService {
+	public static final String AGENT_ATTEMPTS = "agent-attempts";
+	public static final String BOT_COMMANDS = "bot-commands";
+
+	@Autowired
+	private QuotaStore quotaStore;
+	@Autowired
+	private QuotaProperties quotaProperties;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	public Permit tryAcquire(String quota, String subject, String username) {
+		val config = quotaProperties.get(quota);
+		val limit = config.limitOf(subject, username);
+		if (limit < 0) {
+			count(quota, "unlimited");
+			return new Permit(quota, subject, true, Long.MAX_VALUE, null);
+		}
+
+		try {
+			val acquisition = quotaStore.tryAcquire(key(quota, subject), limit, config.getWindow(),
+					config.getPolicy());
+			count(quota, acquisition.granted() ? "granted" : "exceeded");
+			return new Permit(quota, subject, acquisition.granted(), Math.max(0, limit - acquisition.used()),
+					acquisition.granted() ? acquisition : null);
+		} catch (RuntimeException e) {
+			log.warn("Failed to acquire {} quota of {}, letting it through: {}", quota, subject, e.getMessage());
+			count(quota, "error");
+			return new Permit(quota, subject, true, limit, null);
+		}
+	}
+
+	public void release(Permit permit) {
+		if (permit.acquisition() == null) {
+			return;
+		}
+		try {
+			quotaStore.release(permit.acquisition());
+			count(permit.quota(), "released");
+		} catch (RuntimeException e) {
+			log.warn("Failed to release {} quota of {}: {}", permit.quota(), permit.subject(), e.getMessage());
+		}
+	}
+
+	public long remaining(String quota, String subject, String username) {
+		val config = quotaProperties.get(quota);
+		val limit = config.limitOf(subject, username);
+		if (limit < 0) {
+			return Long.MAX_VALUE;
+		}
+		try {
+			return Math.max(0, limit - quotaStore.used(key(quota, subject), config.getWindow(), config.getPolicy()));
+		} catch (RuntimeException e) {
+			log.warn("Failed to read {} quota of {}: {}", quota, subject, e.getMessage());
+			return limit;
+		}
+	}
+
+	private static String key(String quota, String subject) {
+		return quota + ":" + subject;
+	}
+
+	private void count(String quota, String outcome) {
+		Counter.builder("payflow.quota.acquisitions")
+				.tag("quota", quota)
+				.tag("outcome", outcome)
+				.register(meterRegistry)
+				.increment();
+	}
+
+	// acquisition is null for unlimited subjects and when the store failed, nothing to release
+	public record Permit(String quota, String subject, boolean granted, long remaining,
+			QuotaStore.Acquisition acquisition) {
+	}
+}
@@ -0,0 +1,19 @@
+package ua.sinaver.web3.payflow.quota;
+
+import java.time.Duration;
+
+// counts of uses per quota key, checked and counted atomically, so concurrent uses by the same
+// subject can't go over the limit
+public interface QuotaStore {
+	// counts a use if the limit isn't reached yet
+	Acquisition tryAcquire(String key, long limit, Duration window, QuotaPolicy policy);
+
+	// takes back a counted use, no-op once its window is over
+	void release(Acquisition acquisition);
+
+	long used(String key, Duration window, QuotaPolicy policy);
+
+	// token identifies the counted use: the start of the fixed window or the use in the sliding one
+	record Acquisition(boolean granted, long used, String key, QuotaPolicy policy, String token) {
+	}
+}
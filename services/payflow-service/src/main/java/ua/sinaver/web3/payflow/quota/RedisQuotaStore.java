@@ -0,0 +1,110 @@
+package ua.sinaver.web3.payflow.quota;
+
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+// shared between instances. check and count run in one script, times come from the redis clock,
+// so instances with drifting clocks agree on the windows:
+// - fixed window: a hash of the window start and its count, reset when a new window starts
+// - sliding window: a sorted set of the uses scored by time, uses older than the window are dropped
+@Component
+@Profile("redis")
+public class RedisQuotaStore implements QuotaStore {
+	private static final String KEY_PREFIX = "quota:";
+
+	// KEYS[1] quota key, ARGV: limit, window ms, uses to count (0 only reads)
+	// returns granted (1/0), used, window start
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> FIXED_WINDOW = RedisScript.of("""
+			local time = redis.call('TIME')
+			local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+			local limit = tonumber(ARGV[1])
+			local window = tonumber(ARGV[2])
+			local start = now - now % window
+			local state = redis.call('HMGET', KEYS[1], 'start', 'used')
+			local used = 0
+			if tonumber(state[1]) == start then
+				used = tonumber(state[2])
+			end
+			if tonumber(ARGV[3]) == 0 or used >= limit then
+				return {used < limit and 1 or 0, used, start}
+			end
+			used = used + 1
+			redis.call('HSET', KEYS[1], 'start', start, 'used', used)
+			redis.call('PEXPIREAT', KEYS[1], start + window)
+			return {1, used, start}
+			""", List.class);
+
+	// KEYS[1] quota key, ARGV: window start of the use
+	private static final RedisScript<Long> FIXED_WINDOW_RELEASE = RedisScript.of("""
+			local state = redis.call('HMGET', KEYS[1], 'start', 'used')
+			if tonumber(state[1]) == tonumber(ARGV[1]) and tonumber(state[2]) > 0 then
+				return redis.call('HINCRBY', KEYS[1], 'used', -1)
+			end
+			return -1
+			""", Long.class);
+
+	// KEYS[1] quota key, ARGV: limit, window ms, use id (empty only reads)
+	// returns granted (1/0), used, time of the use
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> SLIDING_WINDOW = RedisScript.of("""
+			local time = redis.call('TIME')
+			local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+			local limit = tonumber(ARGV[1])
+			local window = tonumber(ARGV[2])
+			redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window)
+			local used = redis.call('ZCARD', KEYS[1])
+			if ARGV[3] == '' or used >= limit then
+				return {used < limit and 1 or 0, used, now}
+			end
+			redis.call('ZADD', KEYS[1], now, ARGV[3])
+			redis.call('PEXPIRE', KEYS[1], window)
+			return {1, used + 1, now}
+			""", List.class);
+
+	@Autowired
+	private StringRedisTemplate redisTemplate;
+
+	@Override
+	public Acquisition tryAcquire(String key, long limit, Duration window, QuotaPolicy policy) {
+		val use = policy == QuotaPolicy.SLIDING_WINDOW ? UUID.randomUUID().toString() : "1";
+		val result = run(key, limit, window, policy, use);
+		val granted = result.get(0) == 1;
+		val token = policy == QuotaPolicy.SLIDING_WINDOW ? use : String.valueOf(result.get(2));
+		return new Acquisition(granted, result.get(1), key, policy, granted ? token : null);
+	}
+
+	@Override
+	public void release(Acquisition acquisition) {
+		if (!acquisition.granted()) {
+			return;
+		}
+		val key = KEY_PREFIX + acquisition.key();
+		if (acquisition.policy() == QuotaPolicy.SLIDING_WINDOW) {
+			redisTemplate.opsForZSet().remove(key, acquisition.token());
+		} else {
+			redisTemplate.execute(FIXED_WINDOW_RELEASE, List.of(key), acquisition.token());
+		}
+	}
+
+	@Override
+	public long used(String key, Duration window, QuotaPolicy policy) {
+		return run(key, Long.MAX_VALUE, window, policy, policy == QuotaPolicy.SLIDING_WINDOW ? "" : "0")
+				.get(1);
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Long> run(String key, long limit, Duration window, QuotaPolicy policy, String use) {
+		val script = policy == QuotaPolicy.SLIDING_WINDOW ? SLIDING_WINDOW : FIXED_WINDOW;
+		return (List<Long>) redisTemplate.execute(script, List.of(KEY_PREFIX + key),
+				String.valueOf(limit), String.valueOf(window.toMillis()), use);
+	}
+}
@@ -1,14 +1,18 @@
 package ua.sinaver.web3.payflow.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.repository.CrudRepository;
 import ua.sinaver.web3.payflow.entity.Flow;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
 
 @Repository
 public interface FlowRepository extends CrudRepository<Flow, Integer> {
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	Flow findByUuid(String uuid);
 
 	@Query("""
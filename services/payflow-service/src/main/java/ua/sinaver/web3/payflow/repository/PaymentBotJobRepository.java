@@ -7,9 +7,11 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ua.sinaver.web3.payflow.entity.bot.PaymentBotJob;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -18,7 +20,13 @@ public interface PaymentBotJobRepository extends JpaRepository<PaymentBotJob, In
 	// JPA: UPGRADE_SKIPLOCKED - PESSIMISTIC_WRITE
 	@QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "-2"))
 	@Lock(LockModeType.PESSIMISTIC_WRITE)
-	Stream<PaymentBotJob> findTop10ByStatusOrderByCastedAtAsc(PaymentBotJob.Status status);
+	@Query("SELECT j FROM PaymentBotJob j WHERE j.status = :status " +
+			"AND j.shard IN :shards " +
+			"ORDER BY j.castedAt ASC LIMIT 10")
+	Stream<PaymentBotJob> findTop10ByStatusWithLock(@Param("status") PaymentBotJob.Status status,
+			@Param("shards") List<Integer> shards);
+
+	long countByStatus(PaymentBotJob.Status status);
 
 	@QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "-2"))
 	@Query("SELECT j FROM PaymentBotJob j WHERE j.id = :id")
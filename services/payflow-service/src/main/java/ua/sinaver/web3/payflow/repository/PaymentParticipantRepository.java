@@ -0,0 +1,25 @@
+package ua.sinaver.web3.payflow.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.entity.PaymentParticipant;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface PaymentParticipantRepository extends JpaRepository<PaymentParticipant, PaymentParticipant.Key> {
+
+	// bulk payment updates bypass the entity listener, keep the ledger in step explicitly
+	@Modifying
+	@Query("UPDATE PaymentParticipant pp SET pp.status = :status, pp.sortedAt = :sortedAt " +
+			"WHERE pp.paymentId IN :paymentIds")
+	int updateStatusByPaymentIds(
+			@Param("paymentIds") List<Integer> paymentIds,
+			@Param("status") Payment.PaymentStatus status,
+			@Param("sortedAt") Instant sortedAt);
+}
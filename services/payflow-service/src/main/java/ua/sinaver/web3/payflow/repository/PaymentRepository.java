@@ -3,17 +3,18 @@ package ua.sinaver.web3.payflow.repository;
 import jakarta.persistence.LockModeType;
 import jakarta.persistence.QueryHint;
 import org.hibernate.cfg.AvailableSettings;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import ua.sinaver.web3.payflow.dto.PaymentRow;
 import ua.sinaver.web3.payflow.entity.Payment;
 import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.entity.Wallet;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -31,12 +32,56 @@ public interface PaymentRepository extends JpaRepository<Payment, Integer> {
 	@Lock(LockModeType.PESSIMISTIC_WRITE)
 	List<Payment> findWithLockByIds(List<Integer> ids);
 
-	@Query("SELECT p FROM Payment p LEFT JOIN p.receiverFlow rf " +
-			"WHERE p.hash IN :hashes AND " +
-			"((p.receiver IS NOT NULL AND p.receiver = :senderOrReceiver) " +
-			"OR (p.sender IS NOT NULL AND p.sender = :senderOrReceiver) " +
+	// listing rows are selected as flat projections in a single query, instead of loading
+	// lazy sender, receiver and flow associations (with their eager wallets) row by row
+	String PAYMENT_ROW_SELECT = "SELECT p.id AS id, p.referenceId AS referenceId, p.type AS type, " +
+			"p.name AS name, p.category AS category, p.status AS status, " +
+			"p.senderAddress AS senderAddress, p.receiverAddress AS receiverAddress, " +
+			"p.receiverFid AS receiverFid, p.network AS network, p.token AS token, " +
+			"p.usdAmount AS usdAmount, p.tokenAmount AS tokenAmount, p.hash AS hash, " +
+			"p.fulfillmentId AS fulfillmentId, p.fulfillmentChainId AS fulfillmentChainId, " +
+			"p.fulfillmentHash AS fulfillmentHash, p.refundHash AS refundHash, " +
+			"p.sourceApp AS sourceApp, p.sourceRef AS sourceRef, p.comment AS comment, " +
+			"p.target AS target, p.createdAt AS createdAt, p.completedAt AS completedAt, " +
+			"p.expiresAt AS expiresAt, " +
+			"s.id AS senderId, s.identity AS senderIdentity, s.displayName AS senderDisplayName, " +
+			"s.username AS senderUsername, s.profileImage AS senderProfileImage, " +
+			"s.createdDate AS senderCreatedDate, " +
+			"r.id AS receiverId, r.identity AS receiverIdentity, r.displayName AS receiverDisplayName, " +
+			"r.username AS receiverUsername, r.profileImage AS receiverProfileImage, " +
+			"r.createdDate AS receiverCreatedDate, " +
+			"r.defaultReceivingAddress AS receiverDefaultReceivingAddress, " +
+			"df.id AS receiverDefaultFlowId, df.title AS receiverDefaultFlowTitle, " +
+			"df.type AS receiverDefaultFlowType, df.uuid AS receiverDefaultFlowUuid, " +
+			"df.walletProvider AS receiverDefaultFlowWalletProvider, " +
+			"df.saltNonce AS receiverDefaultFlowSaltNonce, df.archived AS receiverDefaultFlowArchived, " +
+			"df.disabled AS receiverDefaultFlowDisabled, " +
+			"rf.id AS receiverFlowId, rf.title AS receiverFlowTitle, rf.type AS receiverFlowType, " +
+			"rf.uuid AS receiverFlowUuid, rf.walletProvider AS receiverFlowWalletProvider, " +
+			"rf.saltNonce AS receiverFlowSaltNonce, rf.archived AS receiverFlowArchived, " +
+			"rf.disabled AS receiverFlowDisabled " +
+			"FROM Payment p LEFT JOIN p.sender s LEFT JOIN p.receiver r " +
+			"LEFT JOIN r.defaultFlow df LEFT JOIN p.receiverFlow rf ";
+
+	@Query(PAYMENT_ROW_SELECT + "WHERE p.id IN :ids")
+	List<PaymentRow> findRowsByIdIn(@Param("ids") List<Integer> ids);
+
+	@Query(PAYMENT_ROW_SELECT + "WHERE p.hash IN :hashes AND " +
+			"((r IS NOT NULL AND r = :senderOrReceiver) " +
+			"OR (s IS NOT NULL AND s = :senderOrReceiver) " +
 			"OR (rf IS NOT NULL AND rf.type = 'JAR'))")
-	List<Payment> findByHashIn(List<String> hashes, User senderOrReceiver);
+	List<PaymentRow> findRowsByHashIn(@Param("hashes") List<String> hashes,
+			@Param("senderOrReceiver") User senderOrReceiver);
+
+	// session intents of a wallet which hold funds against a balance fetched at the given time:
+	// not sent yet, or sent after it
+	@Query("SELECT p FROM Payment p WHERE p.type = 'SESSION_INTENT' AND p.walletSession.wallet = :wallet " +
+			"AND p.network = :chainId AND p.token = :token " +
+			"AND (p.status = 'CREATED' OR (p.status = 'COMPLETED' AND p.completedAt >= :since))")
+	List<Payment> findSessionIntentsHoldingFunds(@Param("wallet") Wallet wallet,
+			@Param("chainId") Integer chainId,
+			@Param("token") String token,
+			@Param("since") Instant since);
 
 	@Query("SELECT p FROM Payment p WHERE (p.sender = :sender OR LOWER(p.senderAddress) IN :addresses) " +
 			"AND p.status IN :statuses ORDER BY p.createdAt DESC")
@@ -50,16 +95,34 @@ public interface PaymentRepository extends JpaRepository<Payment, Integer> {
 	@Query("SELECT p FROM Payment p WHERE p.referenceId = :referenceId AND (p.sender IS NULL OR p.sender = :sender)")
 	Payment findByReferenceIdAndSender(@Param("referenceId") String referenceId, @Param("sender") User sender);
 
-	// JPA: UPGRADE_SKIPLOCKED - PESSIMISTIC_WRITE with a
-	// javax.persistence.lock.timeout setting of -2
-	// https://docs.jboss.org/hibernate/orm/5.0/userguide/html_single/chapters/locking/Locking.html
-	@Lock(LockModeType.PESSIMISTIC_WRITE)
-	@QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "-2"))
-	@Query("SELECT p FROM Payment p WHERE p.status = :status AND " +
-			"((p.expiresAt IS NULL AND p.createdAt < :expiresAt) OR " +
-			"(p.expiresAt IS NOT NULL AND p.expiresAt < CURRENT_TIMESTAMP))")
-	Stream<Payment> findExpiredPaymentsWithLock(@Param("status") Payment.PaymentStatus status,
-			@Param("expiresAt") Instant expiresAt);
+	@Query(value = "SELECT id FROM payment WHERE status = :status AND " +
+			"((expires_at IS NULL AND created_at < :createdBefore) OR " +
+			"(expires_at IS NOT NULL AND expires_at < :now)) " +
+			"AND shard IN (:shards) " +
+			"ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+	List<Integer> findExpiredPaymentIdsForUpdate(@Param("status") String status,
+			@Param("createdBefore") Instant createdBefore,
+			@Param("now") Instant now,
+			@Param("shards") List<Integer> shards,
+			@Param("limit") int limit);
+
+	@Query(value = "SELECT COUNT(*) FROM payment WHERE status = :status AND " +
+			"((expires_at IS NULL AND created_at < :createdBefore) OR " +
+			"(expires_at IS NOT NULL AND expires_at < :now))", nativeQuery = true)
+	long countExpiredPayments(@Param("status") String status,
+			@Param("createdBefore") Instant createdBefore,
+			@Param("now") Instant now);
+
+	long countByStatusIn(List<Payment.PaymentStatus> statuses);
+
+	long countByStatusInAndTypeIn(List<Payment.PaymentStatus> statuses, List<Payment.PaymentType> types);
+
+	@Modifying
+	@Query("UPDATE Payment p SET p.status = :status, p.completedAt = :completedAt, " +
+			"p.version = COALESCE(p.version, 0) + 1 WHERE p.id IN :ids")
+	int updateStatusByIds(@Param("ids") List<Integer> ids,
+			@Param("status") Payment.PaymentStatus status,
+			@Param("completedAt") Instant completedAt);
 
 	// TODO: add a time check not to process recently submitted in 5 mins to avoid
 	// lock
@@ -70,9 +133,11 @@ public interface PaymentRepository extends JpaRepository<Payment, Integer> {
 	@QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "-2"))
 	@Query("SELECT p FROM Payment p WHERE p.status IN :statuses " +
 			"AND p.createdAt <= :tenMinutesAgo " +
+			"AND p.shard IN :shards " +
 			"ORDER BY p.createdAt ASC")
 	Stream<Payment> findTop5ByStatusInWithLock(@Param("statuses") List<Payment.PaymentStatus> statuses,
-			@Param("tenMinutesAgo") Instant tenMinutesAgo);
+			@Param("tenMinutesAgo") Instant tenMinutesAgo,
+			@Param("shards") List<Integer> shards);
 
 	@Query("SELECT count(p) FROM Payment p " +
 			"WHERE (p.sender IN :users " +
@@ -82,29 +147,6 @@ public interface PaymentRepository extends JpaRepository<Payment, Integer> {
 			@Param("users") List<User> users,
 			@Param("addresses") List<String> addresses);
 
-	@Query("SELECT p FROM Payment p " +
-			"WHERE (p.sender = :user OR p.receiver = :user " +
-			"OR LOWER(p.senderAddress) IN :addresses " +
-			"OR LOWER(p.receiverAddress) IN :addresses " +
-			"OR (p.receiverFid IS NOT NULL AND p.receiverFid = :fid)) " +
-			"AND p.status = COMPLETED ORDER BY p.completedAt DESC")
-	Page<Payment> findAllCompletedOrderByCompletedAtDesc(
-			User user,
-			List<String> addresses,
-			Integer fid,
-			Pageable pageable);
-
-	@Query("SELECT p FROM Payment p " +
-			"WHERE (p.sender = :user OR LOWER(p.senderAddress) IN :addresses) " +
-			"AND p.status IN :statuses " +
-			"ORDER BY CASE WHEN p.completedAt IS NOT NULL " +
-			"THEN p.completedAt ELSE p.createdAt END DESC")
-	Page<Payment> findOutboundByStatusAndSenderOrderDesc(
-			@Param("user") User user,
-			@Param("addresses") List<String> addresses,
-			@Param("statuses") List<Payment.PaymentStatus> statuses,
-			Pageable pageable);
-
 	@Query("SELECT COUNT(p) FROM Payment p WHERE p.status IN ('COMPLETED', 'REFUNDED', 'CANCELLED')")
 	Long countAllCompletedPayments();
 
@@ -120,24 +162,27 @@ public interface PaymentRepository extends JpaRepository<Payment, Integer> {
 			"FROM Payment p WHERE p.category = :category AND p.status = 'COMPLETED'")
 	Long countPurchasedAmountByCategory(@Param("category") String category);
 
-	default Stream<Payment> findTop5ByStatusInWithLock(@Param("statuses") List<Payment.PaymentStatus> statuses) {
-		return findTop5ByStatusInWithLock(statuses, Instant.now().minus(10, ChronoUnit.MINUTES));
+	default Stream<Payment> findTop5ByStatusInWithLock(List<Payment.PaymentStatus> statuses,
+			List<Integer> shards) {
+		return findTop5ByStatusInWithLock(statuses, Instant.now().minus(10, ChronoUnit.MINUTES), shards);
 	}
 
 	@Lock(LockModeType.PESSIMISTIC_WRITE)
 	@QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "-2"))
 	@Query("SELECT p FROM Payment p WHERE p.status IN :statuses " +
 			"AND p.type IN :types " +
+			"AND p.shard IN :shards " +
 			"ORDER BY p.createdAt ASC LIMIT :limit")
 	Stream<Payment> findSessionPaymentsWithLock(
 			@Param("statuses") List<Payment.PaymentStatus> statuses,
 			@Param("types") List<Payment.PaymentType> types,
+			@Param("shards") List<Integer> shards,
 			@Param("limit") int limit);
 
-	default Stream<Payment> findSessionIntentPaymentsWithLock(int limit) {
+	default Stream<Payment> findSessionIntentPaymentsWithLock(List<Integer> shards, int limit) {
 		return findSessionPaymentsWithLock(
 				List.of(Payment.PaymentStatus.CREATED),
 				List.of(Payment.PaymentType.SESSION_INTENT),
-				limit);
+				shards, limit);
 	}
 }
@@ -0,0 +1,30 @@
+package ua.sinaver.web3.payflow.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import ua.sinaver.web3.payflow.entity.SchedulerInstance;
+
+import java.util.List;
+
+// heartbeats use the database clock, so clock drift between instances doesn't matter
+@Repository
+public interface SchedulerInstanceRepository extends JpaRepository<SchedulerInstance, String> {
+
+	@Modifying
+	@Query(value = "INSERT INTO scheduler_instance (instance_id, started_at, heartbeat_at) " +
+			"VALUES (:instanceId, NOW(6), NOW(6)) " +
+			"ON DUPLICATE KEY UPDATE heartbeat_at = NOW(6)", nativeQuery = true)
+	int heartbeat(@Param("instanceId") String instanceId);
+
+	@Query(value = "SELECT instance_id FROM scheduler_instance " +
+			"WHERE heartbeat_at > NOW(6) - INTERVAL :ttlSeconds SECOND ORDER BY instance_id", nativeQuery = true)
+	List<String> findLiveInstanceIds(@Param("ttlSeconds") long ttlSeconds);
+
+	@Modifying
+	@Query(value = "DELETE FROM scheduler_instance " +
+			"WHERE heartbeat_at < NOW(6) - INTERVAL :expirySeconds SECOND", nativeQuery = true)
+	int deleteExpired(@Param("expirySeconds") long expirySeconds);
+}
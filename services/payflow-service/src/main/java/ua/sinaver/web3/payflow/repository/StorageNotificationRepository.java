@@ -10,6 +10,7 @@ import org.springframework.data.jpa.repository.QueryHints;
 import ua.sinaver.web3.payflow.entity.StorageNotification;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -21,6 +22,10 @@ public interface StorageNotificationRepository extends JpaRepository<StorageNoti
 
 	@Lock(LockModeType.PESSIMISTIC_WRITE)
 	@QueryHints(@QueryHint(name = AvailableSettings.JAKARTA_LOCK_TIMEOUT, value = "-2"))
-	@Query("SELECT sn FROM StorageNotification sn WHERE sn.enabled = TRUE AND (sn.lastCheckedAt IS NULL OR sn.lastCheckedAt < :checkedAt) ORDER BY sn.lastCheckedAt ASC LIMIT 10")
-	Stream<StorageNotification> findTop10StorageNotifications(Instant checkedAt);
+	@Query("SELECT sn FROM StorageNotification sn WHERE sn.enabled = TRUE AND (sn.lastCheckedAt IS NULL OR sn.lastCheckedAt < :checkedAt) " +
+			"AND sn.shard IN :shards ORDER BY sn.lastCheckedAt ASC LIMIT 10")
+	Stream<StorageNotification> findTop10StorageNotifications(Instant checkedAt, List<Integer> shards);
+
+	@Query("SELECT COUNT(sn) FROM StorageNotification sn WHERE sn.enabled = TRUE AND (sn.lastCheckedAt IS NULL OR sn.lastCheckedAt < :checkedAt)")
+	long countDueStorageNotifications(Instant checkedAt);
 }
@@ -3,6 +3,7 @@ package ua.sinaver.web3.payflow.repository;
 import jakarta.persistence.LockModeType;
 import jakarta.persistence.QueryHint;
 import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -27,12 +28,14 @@ public interface UserRepository extends CrudRepository<User, Integer> {
 
 	boolean existsByUsername(String username);
 
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	User findByIdentityIgnoreCase(String identity);
 
 	List<User> findAllByIdentityInIgnoreCase(List<String> identities);
 
 	User findByAccessToken(String accessToken);
 
+	@QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
 	User findByIdentityIgnoreCaseAndAllowedTrue(String identity);
 
 	User findByUsernameOrIdentityIgnoreCase(String username, String identity);
@@ -52,6 +55,8 @@ public interface UserRepository extends CrudRepository<User, Integer> {
 
 	List<User> findByAllowedTrueOrderByLastSeenDesc();
 
+	List<User> findByAllowedTrueOrderByLastSeenDesc(Pageable pageable);
+
 	// TODO: index: allowed, lastSeen, lastUpdatedContacts
 	// JPA: UPGRADE_SKIPLOCKED - PESSIMISTIC_WRITE with a
 	// javax.persistence.lock.timeout setting of -2
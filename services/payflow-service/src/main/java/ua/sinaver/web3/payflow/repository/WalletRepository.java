@@ -1,10 +1,27 @@
 package ua.sinaver.web3.payflow.repository;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import ua.sinaver.web3.payflow.dto.WalletRow;
 import ua.sinaver.web3.payflow.entity.Wallet;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface WalletRepository extends JpaRepository<Wallet, Integer> {
+	@Query("SELECT w.flow.id AS flowId, w.address AS address, w.network AS network, " +
+			"w.walletVersion AS version, w.deployed AS deployed " +
+			"FROM Wallet w WHERE w.flow.id IN :flowIds ORDER BY w.id")
+	List<WalletRow> findRowsByFlowIdIn(@Param("flowIds") Collection<Integer> flowIds);
+
+	@Query("SELECT w FROM Wallet w WHERE w.id = :id")
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	Optional<Wallet> findWithLockById(@Param("id") Integer id);
 }
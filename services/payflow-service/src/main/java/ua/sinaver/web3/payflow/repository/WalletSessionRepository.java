@@ -3,6 +3,7 @@ package ua.sinaver.web3.payflow.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ua.sinaver.web3.payflow.entity.User;
 import ua.sinaver.web3.payflow.entity.WalletSession;
@@ -13,10 +14,17 @@ import java.util.List;
 @Repository
 public interface WalletSessionRepository extends JpaRepository<WalletSession, Long> {
 
+	@Query(value = "SELECT id FROM wallet_session WHERE active = true AND expires_at < :now " +
+			"AND shard IN (:shards) " +
+			"ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+	List<Integer> findExpiredSessionIdsForUpdate(@Param("now") Instant now,
+			@Param("shards") List<Integer> shards,
+			@Param("limit") int limit);
+
 	@Modifying
-	@Query("UPDATE WalletSession w SET w.active = false, w.sessionKey = '0x0' " +
-			"WHERE w.active = true AND w.expiresAt < :now")
-	void deactivateExpiredSessions(Instant now);
+	@Query("UPDATE WalletSession w SET w.active = false, w.sessionKey = '0x0', " +
+			"w.version = COALESCE(w.version, 0) + 1 WHERE w.id IN :ids")
+	int deactivateByIds(@Param("ids") List<Integer> ids);
 
 	WalletSession findOneBySessionIdAndActiveTrue(String sessionId);
 
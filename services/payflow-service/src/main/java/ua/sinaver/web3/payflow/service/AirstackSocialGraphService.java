@@ -1,39 +1,50 @@
 package ua.sinaver.web3.payflow.service;
 
+import com.google.common.collect.Lists;
+import feign.FeignException;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.graphql.client.GraphQlClient;
 import org.springframework.graphql.client.HttpGraphQlClient;
 import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 import ua.sinaver.web3.payflow.client.NeynarClient;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.graphql.generated.types.*;
 import ua.sinaver.web3.payflow.message.SocialMetadata;
 import ua.sinaver.web3.payflow.message.SocialInfo;
+import ua.sinaver.web3.payflow.message.farcaster.FarcasterUser;
+import ua.sinaver.web3.payflow.service.LookupCacheService.Lookup;
 
 import static ua.sinaver.web3.payflow.config.CacheConfig.*;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class AirstackSocialGraphService {
+	// addresses per neynar bulk-by-address call
+	private static final int BULK_ADDRESSES = 350;
 
 	private final GraphQlClient airstackGraphQlClient;
 
 	@Autowired
 	private NeynarClient neynarClient;
+	@Autowired
+	private LookupCacheService lookupCacheService;
 
-	public AirstackSocialGraphService(WebClient.Builder builder,
+	public AirstackSocialGraphService(UpstreamClientRegistry upstreams,
 			@Value("${payflow.airstack.api.url}") String airstackUrl,
 			@Value("${payflow.airstack.api.key}") String airstackApiKey) {
-		val airstackWebClient = builder
+		val airstackWebClient = upstreams.webClient(UpstreamClientRegistry.AIRSTACK)
 				.baseUrl(airstackUrl)
 				.build();
 
@@ -47,27 +58,61 @@ public class AirstackSocialGraphService {
 		log.debug("Evicting socials cache for {} key", identity);
 	}
 
-	@Cacheable(cacheNames = SOCIALS_CACHE_NAME, unless = "#result==null")
 	public SocialMetadata getSocialMetadata(String identity) {
-		try {
-			val users = neynarClient.getUsersByAddresses(identity.toLowerCase());
-			log.debug("Users: {}", users);
-			if (users != null && !users.isEmpty()) {
-				val socials = users.get(identity.toLowerCase())
-						.stream()
-						.map(user -> new SocialInfo("farcaster", user.username(), user.displayName(), user.fid(),
-								user.pfpUrl(), user.followerCount()))
-						.collect(Collectors.toList());
-				return new SocialMetadata(null, null, socials);
+		return lookupCacheService.get(SOCIALS_CACHE_NAME, identity, () -> {
+			try {
+				val users = neynarClient.getUsersByAddresses(identity.toLowerCase());
+				log.debug("Users: {}", users);
+				if (users == null || users.get(identity.toLowerCase()) == null) {
+					return Lookup.absent();
+				}
+				return Lookup.of(toSocialMetadata(users.get(identity.toLowerCase())));
+			} catch (FeignException.NotFound e) {
+				log.debug("No farcaster users for {}", identity);
+				return Lookup.absent();
+			} catch (Throwable t) {
+				if (log.isTraceEnabled()) {
+					log.error("Full Error:", t);
+				} else {
+					log.error("Error: {}", t.getMessage());
+				}
+				return Lookup.failed();
 			}
-		} catch (Throwable t) {
-			if (log.isTraceEnabled()) {
-				log.error("Full Error:", t);
-			} else {
-				log.error("Error: {}", t.getMessage());
+		});
+	}
+
+	// same as getSocialMetadata for each identity, the uncached ones are fetched with bulk calls.
+	// identities without socials or whose fetch failed are left out
+	public Map<String, SocialMetadata> getSocialMetadata(Collection<String> identities) {
+		return lookupCacheService.getAll(SOCIALS_CACHE_NAME, identities, missing -> {
+			val lookups = new HashMap<String, Lookup<SocialMetadata>>();
+			for (val batch : Lists.partition(missing, BULK_ADDRESSES)) {
+				try {
+					val users = neynarClient.getUsersByAddresses(batch.stream().map(String::toLowerCase).toList());
+					log.debug("Users for {} addresses: {}", batch.size(), users);
+					batch.forEach(identity -> {
+						val farcasterUsers = users != null ? users.get(identity.toLowerCase()) : null;
+						lookups.put(identity, farcasterUsers != null
+								? Lookup.of(toSocialMetadata(farcasterUsers))
+								: Lookup.absent());
+					});
+				} catch (FeignException.NotFound e) {
+					log.debug("No farcaster users for {} addresses", batch.size());
+					batch.forEach(identity -> lookups.put(identity, Lookup.absent()));
+				} catch (Throwable t) {
+					log.error("Error fetching socials of {} addresses: {}", batch.size(), t.getMessage());
+				}
 			}
-		}
-		return null;
+			return lookups;
+		});
+	}
+
+	private static SocialMetadata toSocialMetadata(List<FarcasterUser> users) {
+		val socials = users.stream()
+				.map(user -> new SocialInfo("farcaster", user.username(), user.displayName(), user.fid(),
+						user.pfpUrl(), user.followerCount()))
+				.collect(Collectors.toList());
+		return new SocialMetadata(null, null, socials);
 	}
 
 	public FarcasterChannel getFarcasterChannelByChannelId(String channelId) {
@@ -6,34 +6,34 @@ import com.github.victools.jsonschema.generator.OptionPreset;
 import com.github.victools.jsonschema.generator.SchemaGenerator;
 import com.github.victools.jsonschema.generator.SchemaGeneratorConfigBuilder;
 import com.github.victools.jsonschema.generator.SchemaVersion;
-import io.netty.channel.ChannelOption;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
-import reactor.netty.http.client.HttpClient;
 import reactor.util.retry.Retry;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.config.AnthropicAgentPrompt;
 import ua.sinaver.web3.payflow.message.Token;
 import ua.sinaver.web3.payflow.message.agent.*;
 import ua.sinaver.web3.payflow.message.farcaster.CastConversationData;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class AnthropicAgentService {
 
-	private static final String ANTHROPIC_API_URL = "https://api.anthropic.com/v1/messages";
-
 	private static final List<AgentTool> DEFAULT_TOOLS = List.of(
 			AgentTool.builder()
 					.name("no_reply")
@@ -133,7 +133,6 @@ public class AnthropicAgentService {
 											.build()))
 							.required(List.of("type"))
 							.build())
-					.cacheControl(Map.of("type", "ephemeral"))
 					.build(),
 			AgentTool.builder()
 					.name("pay_me")
@@ -183,27 +182,46 @@ public class AnthropicAgentService {
 	private TokenService tokenService;
 	@Autowired
 	private ObjectMapper objectMapper;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@org.springframework.beans.factory.annotation.Value("${anthropic.agent.model:claude-3-5-haiku-20241022}")
+	private String model;
+	@org.springframework.beans.factory.annotation.Value("${anthropic.agent.max-tokens:4096}")
+	private int maxTokens;
+	@org.springframework.beans.factory.annotation.Value("${anthropic.agent.temperature:0.85}")
+	private double temperature;
+	@org.springframework.beans.factory.annotation.Value("${anthropic.agent.prompt-caching.enabled:true}")
+	private boolean promptCaching;
+	@org.springframework.beans.factory.annotation.Value("${anthropic.agent.history.token-budget:50000}")
+	private int historyTokenBudget;
 	private List<AgentSystemMessage> systemPrompt;
 	private List<AgentTool> tools;
+	private CompletableFuture<Void> initialized;
 
 	public AnthropicAgentService(
 			@org.springframework.beans.factory.annotation.Value("${anthropic.api.key}") String anthropicApiKey,
-			WebClient.Builder webClientBuilder) {
+			@org.springframework.beans.factory.annotation.Value("${anthropic.api.url}") String anthropicApiUrl,
+			UpstreamClientRegistry upstreams) {
 
-		this.webClient = webClientBuilder
-				.baseUrl(ANTHROPIC_API_URL)
+		// timeouts are configured for the anthropic upstream
+		this.webClient = upstreams.webClient(UpstreamClientRegistry.ANTHROPIC)
+				.baseUrl(anthropicApiUrl)
 				.defaultHeader("Content-Type", "application/json")
 				.defaultHeader("Accept", "application/json")
 				.defaultHeader("x-api-key", anthropicApiKey)
 				.defaultHeader("anthropic-version", "2023-06-01")
-				.clientConnector(new ReactorClientHttpConnector(HttpClient.create()
-						.responseTimeout(Duration.ofSeconds(60))
-						.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000)))
 				.build();
 	}
 
+	// generating the conversation json schema is one of the slowest steps of startup, while the
+	// prompt is only needed once the bot gets a job, so it's built in the background
 	@PostConstruct
 	private void initialize() {
+		initialized = CompletableFuture.runAsync(this::buildPrompt,
+				task -> Thread.ofVirtual().name("agent-prompt-init").start(task));
+	}
+
+	private void buildPrompt() {
 		try {
 			val tokenAddresses = tokenService.getTokens().stream()
 					.collect(Collectors.groupingBy(
@@ -227,6 +245,10 @@ public class AnthropicAgentService {
 					.writerWithDefaultPrettyPrinter()
 					.writeValueAsString(tokenAddresses);
 
+			// tools and system prompt don't change between requests, so with caching enabled the
+			// breakpoints on the last tool and the system block let every call after the first one
+			// read the whole static prefix from cache, and only the conversation is billed in full
+			val cacheControl = promptCaching ? AgentRequest.EPHEMERAL_CACHE : null;
 			this.systemPrompt = List.of(
 					AgentSystemMessage.builder()
 							.type("text")
@@ -234,8 +256,13 @@ public class AnthropicAgentService {
 											tokenMapJson)
 									.concat(AnthropicAgentPrompt.NO_REPLY_PROMPT)
 									.concat(AnthropicAgentPrompt.SERVICES_PROMPT))
+							.cacheControl(cacheControl)
 							.build());
-			this.tools = DEFAULT_TOOLS;
+			val cachedTools = new ArrayList<>(DEFAULT_TOOLS);
+			cachedTools.set(cachedTools.size() - 1, cachedTools.getLast().toBuilder()
+					.cacheControl(cacheControl)
+					.build());
+			this.tools = List.copyOf(cachedTools);
 
 			log.info("Initialized AnthropicAgentService with {} tokens", tokenAddresses.size());
 		} catch (JsonProcessingException e) {
@@ -244,19 +271,59 @@ public class AnthropicAgentService {
 		}
 	}
 
+	// keeps the casted and the latest parent casts which fit into the history token budget,
+	// older parents are dropped first since they matter least for the payment command
+	public CastConversationData trimToBudget(CastConversationData conversation) {
+		val parents = conversation.conversation().chronologicalParentCasts();
+		if (parents == null || parents.isEmpty()) {
+			return conversation;
+		}
+
+		var budget = historyTokenBudget - estimateTokens(conversation.conversation().cast());
+		var from = parents.size();
+		while (from > 0) {
+			val tokens = estimateTokens(parents.get(from - 1));
+			if (tokens > budget) {
+				break;
+			}
+			budget -= tokens;
+			from--;
+		}
+
+		if (from > 0) {
+			log.debug("Trimmed {} of {} parent casts to fit history token budget of {}",
+					from, parents.size(), historyTokenBudget);
+		}
+		return new CastConversationData(new CastConversationData.Conversation(
+				conversation.conversation().cast(), parents.subList(from, parents.size())));
+	}
+
+	// rough estimate of ~4 characters per token of the serialized cast, good enough to keep
+	// the request within budget without calling the token counting api
+	private int estimateTokens(CastConversationData.Cast cast) {
+		try {
+			return objectMapper.writeValueAsString(cast).length() / 4 + 1;
+		} catch (JsonProcessingException e) {
+			return Integer.MAX_VALUE;
+		}
+	}
+
 	public AgentResponse processPaymentInput(List<AgentMessage> messages) {
 		try {
+			initialized.join();
 			val request = AgentRequest.builder()
-					.model("claude-3-5-haiku-20241022")
-					.maxTokens(4096)
-					.temperature(0.85)
+					.model(model)
+					.maxTokens(maxTokens)
+					.temperature(temperature)
 					.tools(tools)
 					.system(systemPrompt)
 					.messages(messages)
 					.build();
 
-			log.info("Anthropic API request: {}",
-					objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(request));
+			if (log.isDebugEnabled()) {
+				log.debug("Anthropic API request: {}",
+						objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(request));
+			}
 
 			val response = webClient.post()
 					.bodyValue(request)
@@ -276,6 +343,7 @@ public class AnthropicAgentService {
 					.block();
 
 			log.info("Anthropic API response: {}", response);
+			recordUsage(response);
 
 			return response;
 		} catch (Exception e) {
@@ -284,4 +352,23 @@ public class AnthropicAgentService {
 
 		return null;
 	}
+
+	private void recordUsage(AgentResponse response) {
+		if (response == null || response.getUsage() == null) {
+			return;
+		}
+		val usage = response.getUsage();
+		countTokens("input", usage.getInputTokens());
+		countTokens("output", usage.getOutputTokens());
+		countTokens("cache_read", usage.getCacheReadInputTokens());
+		countTokens("cache_creation", usage.getCacheCreationInputTokens());
+	}
+
+	private void countTokens(String type, int tokens) {
+		Counter.builder("payflow.pipeline.agent.tokens")
+				.tag("model", model)
+				.tag("type", type)
+				.register(meterRegistry)
+				.increment(tokens);
+	}
 }
@@ -0,0 +1,178 @@
+package ua.sinaver.web3.payflow.service;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import ua.sinaver.web3.payflow.entity.bot.PaymentBotJob;
+import ua.sinaver.web3.payflow.events.PaymentBotJobEvent;
+import ua.sinaver.web3.payflow.message.farcaster.Cast;
+import ua.sinaver.web3.payflow.repository.PaymentBotJobRepository;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static ua.sinaver.web3.payflow.service.FarcasterBotService.BOT_FID;
+import static ua.sinaver.web3.payflow.service.FarcasterBotService.QUOTED_MENTION_PATTERN;
+
+// neynar bot webhook fast path: the signature is checked on the raw bytes, redeliveries are
+// dropped by cast hash before the payload is parsed, and only then the job is persisted
+@Service
+@Slf4j
+public class BotWebhookService {
+	private static final String HMAC_ALGORITHM = "HmacSHA512";
+
+	// request threads are virtual, so instead of thread locals initialized macs are pooled
+	// and reused by whichever request thread picks them up
+	private final Queue<Mac> macs = new ConcurrentLinkedQueue<>();
+	private final SecretKeySpec secretKey;
+	private final Cache<String, Boolean> deliveredCasts;
+
+	@Autowired
+	private PaymentBotJobRepository paymentBotJobRepository;
+	@Autowired
+	private ObjectMapper objectMapper;
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+	@Autowired
+	private ObservationRegistry observationRegistry;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private CastCacheService castCacheService;
+
+	public BotWebhookService(
+			@Value("${payflow.farcaster.webhooks.neynar.secret}") String neynarSecret,
+			@Value("${payflow.farcaster.webhooks.dedup.window:30m}") Duration dedupWindow,
+			@Value("${payflow.farcaster.webhooks.dedup.max-size:100000}") long dedupMaxSize) {
+		this.secretKey = new SecretKeySpec(neynarSecret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+		this.deliveredCasts = Caffeine.newBuilder()
+				.expireAfterWrite(dedupWindow)
+				.maximumSize(dedupMaxSize)
+				.build();
+	}
+
+	public boolean verifySignature(byte[] body, String signature) {
+		if (StringUtils.isBlank(signature)) {
+			return false;
+		}
+
+		byte[] provided;
+		try {
+			provided = HexFormat.of().parseHex(signature.trim());
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+
+		var mac = macs.poll();
+		try {
+			if (mac == null) {
+				mac = Mac.getInstance(HMAC_ALGORITHM);
+				mac.init(secretKey);
+			}
+			// doFinal resets the mac, so it can go back to the pool as is
+			val expected = mac.doFinal(body);
+			macs.offer(mac);
+			return MessageDigest.isEqual(expected, provided);
+		} catch (GeneralSecurityException e) {
+			log.error("Failed to initialize webhook signature mac", e);
+			return false;
+		}
+	}
+
+	// reads data.hash with the streaming parser, without binding the whole cast
+	public String castHash(byte[] body) {
+		try (val parser = objectMapper.getFactory().createParser(body)) {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return null;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				val field = parser.currentName();
+				val token = parser.nextToken();
+				if (!"data".equals(field) || token != JsonToken.START_OBJECT) {
+					parser.skipChildren();
+					continue;
+				}
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					val dataField = parser.currentName();
+					val dataToken = parser.nextToken();
+					if ("hash".equals(dataField) && dataToken == JsonToken.VALUE_STRING) {
+						return parser.getText();
+					}
+					parser.skipChildren();
+				}
+				return null;
+			}
+		} catch (IOException e) {
+			log.debug("Failed to read cast hash from webhook payload", e);
+		}
+		return null;
+	}
+
+	// true only for the first delivery of a cast within the dedup window
+	public boolean markDelivered(String castHash) {
+		return deliveredCasts.asMap().putIfAbsent(castHash, Boolean.TRUE) == null;
+	}
+
+	public void forgetDelivery(String castHash) {
+		deliveredCasts.invalidate(castHash);
+	}
+
+	// the job event is handled asynchronously after commit, so the webhook is acknowledged
+	// as soon as the job is durable, without waiting for the bot scheduler
+	@Transactional
+	public boolean enqueue(Cast cast) {
+		castCacheService.seed(cast);
+
+		// skip own casts, unless the bot is mentioned outside of quotes
+		if (cast.author().fid() == BOT_FID && (StringUtils.isBlank(cast.text()) ||
+				QUOTED_MENTION_PATTERN.matcher(cast.text()).matches())) {
+			return false;
+		}
+
+		val job = new PaymentBotJob(cast.hash(),
+				cast.author().fid(),
+				Instant.parse(cast.timestamp()),
+				cast);
+
+		// webhook stage of the trace, bot job span is correlated by the cast hash
+		Observation.createNotStarted("payflow.pipeline.webhook", observationRegistry)
+				.lowCardinalityKeyValue("webhook", "bot")
+				.highCardinalityKeyValue("cast.hash", String.valueOf(cast.hash()))
+				.observe(() -> {
+					paymentBotJobRepository.saveAndFlush(job);
+					eventPublisher.publishEvent(new PaymentBotJobEvent(job.getId()));
+				});
+		log.info("Payment job command saved: {}", job);
+		return true;
+	}
+
+	public void delivery(String outcome) {
+		Counter.builder("payflow.pipeline.webhook.deliveries")
+				.tag("webhook", "bot")
+				.tag("outcome", outcome)
+				.register(meterRegistry)
+				.increment();
+	}
+}
@@ -0,0 +1,98 @@
+package ua.sinaver.web3.payflow.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.repository.UserRepository;
+
+// warms the in-memory caches with flows and contacts (and the socials and wallets behind them)
+// of the most recently active users once an instance is ready, so their first requests after a
+// deploy or scale out are hits. users whose entries were restored from a snapshot are cache hits
+// here too. paced, so a new instance doesn't flood neynar and the database next to live traffic
+@Slf4j
+@Service
+@Profile("caffeine")
+public class CachePreloadService {
+	@Autowired
+	private UserRepository userRepository;
+	@Autowired
+	private FlowService flowService;
+	@Autowired
+	private ContactBookService contactBookService;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${payflow.cache.preload.users:200}")
+	private int users;
+	@Value("${payflow.cache.preload.users-per-second:2}")
+	private double usersPerSecond;
+
+	@Async
+	@EventListener(ApplicationReadyEvent.class)
+	public void preload() {
+		if (users <= 0 || usersPerSecond <= 0) {
+			return;
+		}
+
+		val template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+
+		val activeUsers = template.execute(status -> userRepository
+				.findByAllowedTrueOrderByLastSeenDesc(PageRequest.of(0, users)).stream()
+				.map(User::getId)
+				.toList());
+		if (activeUsers == null || activeUsers.isEmpty()) {
+			return;
+		}
+
+		log.info("Preloading caches of {} recently active users", activeUsers.size());
+		val pauseMillis = (long) (1000 / usersPerSecond);
+		val start = System.currentTimeMillis();
+		int failed = 0;
+		for (val userId : activeUsers) {
+			try {
+				// same as the profile and contacts requests, flows are read from the user's lazy relation
+				template.executeWithoutResult(status -> userRepository.findById(userId).ifPresent(user -> {
+					flowService.getAllFlows(user);
+					contactBookService.getAllContacts(user);
+				}));
+				count("preloaded");
+			} catch (RuntimeException e) {
+				failed++;
+				count("failed");
+				log.debug("Failed to preload caches of user {}: {}", userId, e.getMessage());
+			}
+
+			try {
+				Thread.sleep(pauseMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.info("Cache preloading interrupted");
+				return;
+			}
+		}
+		log.info("Preloaded caches of {} users in {} s, {} failed", activeUsers.size() - failed,
+				(System.currentTimeMillis() - start) / 1000, failed);
+	}
+
+	private void count(String outcome) {
+		Counter.builder("payflow.cache.preload.users")
+				.tag("outcome", outcome)
+				.register(meterRegistry)
+				.increment();
+	}
+}
@@ -0,0 +1,144 @@
+package ua.sinaver.web3.payflow.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import ua.sinaver.web3.payflow.message.farcaster.Cast;
+import ua.sinaver.web3.payflow.message.farcaster.CastConversationData;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// casts are content addressed, so they are kept until evicted by weight, while conversation
+// snapshots change with every new reply and only live for a short while. concurrent misses
+// for the same hash wait on the same in-flight load instead of calling neynar again
+@Slf4j
+@Service
+public class CastCacheService {
+	private static final String CASTS_CACHE = "farcaster-casts";
+	private static final String CONVERSATIONS_CACHE = "farcaster-conversations";
+
+	private final AsyncCache<String, Cast> casts;
+	private final AsyncCache<String, CastConversationData> conversations;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	public CastCacheService(
+			@Value("${payflow.farcaster.casts.cache.max-weight:32MB}") DataSize castsMaxWeight,
+			@Value("${payflow.farcaster.conversations.cache.expireAfterWrite:2m}") Duration conversationsTtl,
+			@Value("${payflow.farcaster.conversations.cache.maxSize:1000}") long conversationsMaxSize) {
+		// loads block on neynar, so they run on virtual threads with the caller's trace
+		val loadExecutor = new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+		loadExecutor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+
+		this.casts = Caffeine.newBuilder()
+				.maximumWeight(castsMaxWeight.toBytes())
+				.weigher((String hash, Cast cast) -> weigh(cast))
+				.executor(loadExecutor)
+				.recordStats()
+				.buildAsync();
+		this.conversations = Caffeine.newBuilder()
+				.expireAfterWrite(conversationsTtl)
+				.maximumSize(conversationsMaxSize)
+				.executor(loadExecutor)
+				.recordStats()
+				.buildAsync();
+	}
+
+	@PostConstruct
+	private void bindMetrics() {
+		CaffeineCacheMetrics.monitor(meterRegistry, casts.synchronous(), CASTS_CACHE);
+		CaffeineCacheMetrics.monitor(meterRegistry, conversations.synchronous(), CONVERSATIONS_CACHE);
+	}
+
+	// null results are not cached, failures are rethrown to every waiting caller
+	public Cast cast(String hash, Function<String, Cast> loader) {
+		return join(casts.get(hash, loader));
+	}
+
+	public CastConversationData conversation(String hash, Function<String, CastConversationData> loader) {
+		return join(conversations.get(hash, loader));
+	}
+
+	// webhook payloads carry the full cast, so it doesn't need to be fetched again when someone
+	// replies to it, and if the parent's conversation is still cached the reply's conversation
+	// is the parent's one with the parent appended to its chronological parents
+	public void seed(Cast cast) {
+		if (cast == null || cast.hash() == null) {
+			return;
+		}
+		casts.synchronous().put(cast.hash(), cast);
+
+		if (cast.parentHash() == null) {
+			return;
+		}
+		val parentConversation = conversations.synchronous().getIfPresent(cast.parentHash());
+		if (parentConversation == null || parentConversation.conversation() == null
+				|| parentConversation.conversation().cast() == null) {
+			return;
+		}
+
+		val parents = new ArrayList<CastConversationData.Cast>();
+		if (parentConversation.conversation().chronologicalParentCasts() != null) {
+			parents.addAll(parentConversation.conversation().chronologicalParentCasts());
+		}
+		val parent = parentConversation.conversation().cast();
+		parents.add(new CastConversationData.Cast(parent.author(), parent.timestamp(), parent.text(),
+				parent.mentionedProfiles(), List.of()));
+
+		conversations.synchronous().put(cast.hash(), new CastConversationData(
+				new CastConversationData.Conversation(
+						new CastConversationData.Cast(cast.author(), cast.timestamp(), cast.text(),
+								cast.mentionedProfiles(), List.of()),
+						List.copyOf(parents))));
+		log.debug("Seeded conversation of cast {} from parent {}", cast.hash(), cast.parentHash());
+	}
+
+	// approximate retained size in bytes, dominated by text, embeds and mentioned profiles
+	private static int weigh(Cast cast) {
+		var weight = 512;
+		if (cast.text() != null) {
+			weight += cast.text().length() * 2;
+		}
+		if (cast.embeds() != null) {
+			weight += cast.embeds().size() * 128;
+		}
+		if (cast.frames() != null) {
+			weight += cast.frames().size() * 512;
+		}
+		if (cast.mentionedProfiles() != null) {
+			weight += cast.mentionedProfiles().size() * 512;
+		}
+		return weight;
+	}
+
+	private static <V> V join(CompletableFuture<V> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			if (e.getCause() instanceof Error cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+}
@@ -8,15 +8,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 import ua.sinaver.web3.payflow.entity.Contact;
 import ua.sinaver.web3.payflow.entity.User;
 import ua.sinaver.web3.payflow.message.ContactMessage;
 import ua.sinaver.web3.payflow.message.ContactsResponseMessage;
 import ua.sinaver.web3.payflow.repository.ContactRepository;
 import ua.sinaver.web3.payflow.repository.UserRepository;
+import ua.sinaver.web3.payflow.utils.FanOut;
 
 import java.time.Duration;
 import java.util.*;
@@ -51,6 +49,8 @@ public class ContactBookService {
 	private PaymentService paymentService;
 	@Value("${payflow.airstack.contacts.fetch.timeout:60s}")
 	private Duration contactsFetchTimeout;
+	@Value("${payflow.airstack.contacts.fetch.max-concurrency:32}")
+	private int contactsMaxConcurrency;
 
 	@Transactional
 	@CacheEvict(value = CONTACTS_CACHE_NAME, key = "#user.identity")
@@ -69,12 +69,8 @@ public class ContactBookService {
 		log.debug("Evicting socials cache for {} key", user.getIdentity());
 	}
 
-	@Cacheable(value = CONTACTS_CACHE_NAME, key = "#user.identity", unless = "#result==null || #result.contacts.isEmpty()")
+	@Cacheable(value = CONTACTS_CACHE_NAME, key = "#user.identity", unless = "#result==null || #result.contacts.isEmpty() || !#result.missing.isEmpty()")
 	public ContactsResponseMessage getAllContacts(User user) {
-		log.debug("VIRTUAL {} {} {} {}", Schedulers.DEFAULT_BOUNDED_ELASTIC_ON_VIRTUAL_THREADS,
-				Schedulers.DEFAULT_POOL_SIZE, Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
-				Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE);
-
 		val wallets = new ArrayList<>(identityService.getFarcasterAddressesByAddress(user.getIdentity()));
 
 		log.debug("Fetched user's wallets: {}", wallets);
@@ -187,41 +183,14 @@ public class ContactBookService {
 				.collect(Collectors.toMap(u -> u.getIdentity().toLowerCase(), u -> u));
 
 		try {
-			val contactMessages = Flux
-					.fromIterable(allContacts.keySet())
-					.parallel()
-					.runOn(Schedulers.boundedElastic())
-					.flatMap(contact -> {
-						log.debug("Processing contact: {} on thread: {} isVirtual: {}",
-								contact,
-								Thread.currentThread().getName(),
-								Thread.currentThread().isVirtual());
-						return Mono.zip(
-								Mono.just(contact),
-								Mono.justOrEmpty(usersMap.get(contact.toLowerCase())).singleOptional(),
-								Mono.fromCallable(() -> {
-									long start = System.currentTimeMillis();
-									var result = socialGraphService.getSocialMetadata(contact);
-									long executionTime = System.currentTimeMillis() - start;
-									log.debug("Actual execution took {}ms for {}", executionTime, contact);
-									return result;
-								})
-										.subscribeOn(Schedulers.boundedElastic())
-										.elapsed()
-										.doOnNext(tuple -> log.debug("Total time (including queue) took {}ms for {}",
-												tuple.getT1(), contact))
-										.map(tuple -> tuple.getT2()))
-								.map(tuple -> ContactMessage.convert(
-										tuple.getT1(),
-										tuple.getT2().orElse(null),
-										tuple.getT3(),
-										allContacts.get(contact)));
-					})
-					// TODO: fail fast, seems doesn't to work properly with threads
-					.sequential()
-					.timeout(contactsFetchTimeout, Mono.empty())
-					.collectList()
-					.block();
+			// contacts without socials are skipped, the ones which failed or didn't make it
+			// before the deadline are returned as missing
+			val fetched = FanOut.run("contacts", contactIdentities, contact -> {
+				val socials = socialGraphService.getSocialMetadata(contact);
+				return socials != null ? ContactMessage.convert(contact, usersMap.get(contact.toLowerCase()),
+						socials, allContacts.get(contact)) : null;
+			}, contactsFetchTimeout, contactsMaxConcurrency);
+			val contactMessages = fetched.completed();
 
 			if (log.isTraceEnabled()) {
 				log.trace("Fetched {} contacts for {}: {}", contactMessages.size(), user.getUsername(),
@@ -229,7 +198,7 @@ public class ContactBookService {
 			} else {
 				log.debug("Fetched {} contacts for {}", contactMessages.size(), user.getUsername());
 			}
-			return new ContactsResponseMessage(tags, contactMessages);
+			return new ContactsResponseMessage(tags, contactMessages, fetched.missing());
 		} catch (Throwable t) {
 			log.error("Failed to fetch contacts", t);
 			return null;
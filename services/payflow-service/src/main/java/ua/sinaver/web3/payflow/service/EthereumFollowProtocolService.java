@@ -1,6 +1,7 @@
 package ua.sinaver.web3.payflow.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -9,6 +10,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.message.efp.EfpFollowingsMessage;
 
 import java.util.Collections;
@@ -23,8 +25,10 @@ public class EthereumFollowProtocolService {
 
 	private final WebClient efpClient;
 
-	public EthereumFollowProtocolService(WebClient.Builder builder) {
-		efpClient = builder.baseUrl("https://api.ethfollow.xyz/api/v1")
+	public EthereumFollowProtocolService(UpstreamClientRegistry upstreams,
+			@Value("${payflow.efp.api.url}") String efpApiUrl) {
+		efpClient = upstreams.webClient(UpstreamClientRegistry.EFP)
+				.baseUrl(efpApiUrl)
 				.defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
 				.defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
 				.build();
@@ -2,14 +2,14 @@ package ua.sinaver.web3.payflow.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -29,6 +29,7 @@ import ua.sinaver.web3.payflow.message.Token;
 import ua.sinaver.web3.payflow.message.farcaster.Cast;
 import ua.sinaver.web3.payflow.message.farcaster.CastConversationData;
 import ua.sinaver.web3.payflow.message.nft.ParsedMintUrlMessage;
+import ua.sinaver.web3.payflow.quota.QuotaService;
 import ua.sinaver.web3.payflow.repository.FlowRepository;
 import ua.sinaver.web3.payflow.repository.PaymentBotJobRepository;
 import ua.sinaver.web3.payflow.repository.PaymentRepository;
@@ -42,7 +43,6 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static ua.sinaver.web3.payflow.config.CacheConfig.AGENT_ATTEMPTS_CACHE;
 import static ua.sinaver.web3.payflow.service.TokenService.BASE_CHAIN_ID;
 
 @Service
@@ -54,15 +54,23 @@ public class FarcasterBotService {
 	private static final List<String> SUPPORTED_COMMANDS = List.of("pay", "send", "transfer",
 			"batch", "jar", "mint", "collect");
 
-	private static final String BOT_COMMAND_PATTERN = String.format(
+	// compiled once, package-private for the command parsing benchmarks
+	static final Pattern BOT_COMMAND_PATTERN = Pattern.compile(String.format(
 			"\\s*(?<beforeText>.*?)?@payflow\\s+(?<command>%s)(?:\\s+(?<remaining>.+))?",
 			SUPPORTED_COMMANDS.stream()
 					.map(Pattern::quote)
-					.collect(Collectors.joining("|")));
+					.collect(Collectors.joining("|"))), Pattern.DOTALL);
+	static final Pattern PAYMENT_COMMAND_PATTERN = Pattern.compile(
+			"(?:@(?<receiver>[a-zA-Z0-9_.-]+)\\s*)?\\s*(?<amount>\\$?[0-9]+(?:\\.[0-9]+)?[km]?)\\s*(?<rest>.*)",
+			Pattern.CASE_INSENSITIVE);
+	public static final Pattern QUOTED_MENTION_PATTERN = Pattern.compile("([\"'`])@payflow.*?\\1");
+	static final Pattern JAR_TITLE_PATTERN = Pattern.compile("\"(?<title>[^\"]*)\"", Pattern.CASE_INSENSITIVE);
 
 	@Autowired
 	private PaymentBotJobRepository paymentBotJobRepository;
 	@Autowired
+	private SchedulerShardService schedulerShardService;
+	@Autowired
 	private IdentityService identityService;
 	@Autowired
 	private FlowService flowService;
@@ -88,11 +96,20 @@ public class FarcasterBotService {
 	@Autowired
 	private NeynarClient neynarClient;
 
+	@Autowired
+	private CastCacheService castCacheService;
+
 	@Value("${payflow.farcaster.bot.enabled:false}")
 	private boolean isBotEnabled;
 
-	@Value("${payflow.farcaster.bot.max-agent-attempts:10}")
-	private int maxAgentAttempts;
+	@Autowired
+	private QuotaService quotaService;
+
+	@Autowired
+	private SessionBalanceService sessionBalanceService;
+
+	@Autowired
+	private RecipientResolutionService recipientResolutionService;
 
 	@Autowired
 	private WalletService walletService;
@@ -109,6 +126,9 @@ public class FarcasterBotService {
 	@Autowired
 	private ApplicationEventPublisher eventPublisher;
 
+	@Autowired
+	private ObservationRegistry observationRegistry;
+
 	private void rejectJob(PaymentBotJob job, String reason, String notifyMessage, String frameUrl) {
 		log.error("Rejecting job {} with reason: {}", job.getId(), reason);
 		job.setStatus(PaymentBotJob.Status.REJECTED);
@@ -132,12 +152,18 @@ public class FarcasterBotService {
 			return;
 		}
 
-		val jobs = paymentBotJobRepository.findTop10ByStatusOrderByCastedAtAsc(
-				PaymentBotJob.Status.CREATED);
+		val shards = schedulerShardService.shards();
+		if (shards.isEmpty()) {
+			log.debug("No scheduler shards owned, skipping bot jobs");
+			return;
+		}
+
+		val jobs = paymentBotJobRepository.findTop10ByStatusWithLock(
+				PaymentBotJob.Status.CREATED, shards.owned());
 
 		jobs.forEach(job -> {
 			try {
-				this.processBotJob(job);
+				botJobObservation(job).observe(() -> this.processBotJob(job));
 			} catch (Throwable t) {
 				log.error("Something went wrong: {} - {}", job.getId(), job.getCastHash(), t);
 				job.setStatus(PaymentBotJob.Status.ERROR);
@@ -149,13 +175,22 @@ public class FarcasterBotService {
 	@Transactional(Transactional.TxType.REQUIRES_NEW)
 	@TransactionalEventListener
 	public void handleBotJob(PaymentBotJobEvent event) {
+		if (!isBotEnabled) {
+			return;
+		}
+
 		val optionalJob = paymentBotJobRepository.findWithLockById(event.id());
 		if (optionalJob.isEmpty()) {
 			return;
 		}
 		val job = optionalJob.get();
+		// the scheduled run picks up created jobs as well, the lock only tells which of them goes first
+		if (job.getStatus() != PaymentBotJob.Status.CREATED) {
+			log.debug("Bot job {} already handled: {}", job.getId(), job.getStatus());
+			return;
+		}
 		try {
-			this.processBotJob(job);
+			botJobObservation(job).observe(() -> this.processBotJob(job));
 		} catch (Throwable t) {
 			log.error("Something went wrong: {}", event.id(), t);
 			job.setStatus(PaymentBotJob.Status.ERROR);
@@ -163,6 +198,13 @@ public class FarcasterBotService {
 		}
 	}
 
+	// bot job stage of the webhook -> bot job -> payment -> notification trace, the job is
+	// handed over from the webhook through the database, so both are correlated by cast hash
+	private Observation botJobObservation(PaymentBotJob job) {
+		return Observation.createNotStarted("payflow.pipeline.bot.job", observationRegistry)
+				.highCardinalityKeyValue("cast.hash", String.valueOf(job.getCastHash()));
+	}
+
 	@Transactional(Transactional.TxType.REQUIRES_NEW)
 	public void processBotJob(PaymentBotJob job) {
 
@@ -178,11 +220,22 @@ public class FarcasterBotService {
 
 		// Skip if text is empty or @payflow is in quotes
 		if (StringUtils.isBlank(text) ||
-				text.matches("([\"'`])@payflow.*?\\1")) {
+				QUOTED_MENTION_PATTERN.matcher(text).matches()) {
 			rejectJob(job, "Bot command not included or in quotes", null);
 			return;
 		}
 
+		val caster = cast.author();
+		val commandPermit = quotaService.tryAcquire(QuotaService.BOT_COMMANDS, String.valueOf(caster.fid()),
+				caster.username());
+		if (!commandPermit.granted()) {
+			// no reply, it would only add to the spam
+			rejectJob(job, "Too many bot commands from caster", null);
+			return;
+		}
+
+		var agentPermit = (QuotaService.Permit) null;
+		var agentAttempt = false;
 		try {
 
 			val casterProfile = userService.getOrCreateUserFromFarcasterProfile(cast.author(),
@@ -195,8 +248,10 @@ public class FarcasterBotService {
 				return;
 			}
 
-			if (canUseAgent(casterProfile)) {
-				processWithAgent(job, casterProfile);
+			agentPermit = quotaService.tryAcquire(QuotaService.AGENT_ATTEMPTS, String.valueOf(caster.fid()),
+					casterProfile.getUsername());
+			if (agentPermit.granted()) {
+				agentAttempt = processWithAgent(job, casterProfile);
 			} else {
 				processWithCommand(job, casterProfile);
 			}
@@ -204,10 +259,15 @@ public class FarcasterBotService {
 			log.error("Error in bot job processing: {}", job, t);
 			rejectJob(job, "Error in bot job processing",
 					"Ooops, something went wrong. Please try again later or contact support if the issue persists.");
+		} finally {
+			// an agent reply counts as an attempt only once it went through with the tools it used
+			if (agentPermit != null && !agentAttempt) {
+				quotaService.release(agentPermit);
+			}
 		}
 	}
 
-	private void processWithAgent(PaymentBotJob job, User casterProfile) {
+	private boolean processWithAgent(PaymentBotJob job, User casterProfile) {
 		val cast = job.getCast();
 		val session = walletSessionRepository.findActiveSessionsByUser(casterProfile)
 				.stream().findFirst().orElse(null);
@@ -217,14 +277,8 @@ public class FarcasterBotService {
 		var conversation = (CastConversationData) null;
 		var parentCasts = (List<CastConversationData.Cast>) null;
 		if (cast.parentHash() != null) {
-			conversation = neynarClient.getCastConversationByHash(cast.hash());
-			var limitedParents = conversation.conversation().chronologicalParentCasts()
-					.subList(Math.max(0, conversation.conversation().chronologicalParentCasts().size() - 100),
-							conversation.conversation().chronologicalParentCasts().size());
-			conversation = new CastConversationData(
-					new CastConversationData.Conversation(
-							conversation.conversation().cast(),
-							limitedParents));
+			conversation = anthropicAgentService.trimToBudget(
+					castCacheService.conversation(cast.hash(), neynarClient::getCastConversationByHash));
 			parentCasts = conversation.conversation().chronologicalParentCasts().stream()
 					.sorted((a, b) -> -1)
 					.toList();
@@ -258,14 +312,14 @@ public class FarcasterBotService {
 			log.error("Failed to serialize conversation", e);
 			rejectJob(job, "Failed to serialize conversation",
 					"Ooops, something went wrong!");
-			return;
+			return false;
 		}
 
 		val response = anthropicAgentService.processPaymentInput(inputMessages);
 		if (response == null) {
 			rejectJob(job, "Failed to process payment command with AI",
 					"Ooops, something went wrong!");
-			return;
+			return false;
 		}
 
 		List<Recipient> recipients = new ArrayList<>();
@@ -276,13 +330,13 @@ public class FarcasterBotService {
 					case "no_reply" -> {
 						val reason = (String) content.getInput().get("reason");
 						rejectJob(job, "Agent chose not to reply: " + reason, null);
-						return;
+						return false;
 					}
 					case "get_granted_session" -> {
 						if (session == null) {
 							rejectJob(job, "No active session found",
 									"Please create a session to grant access to your Payflow Wallet");
-							return;
+							return false;
 						}
 					}
 					case "send_payments" -> {
@@ -308,7 +362,7 @@ public class FarcasterBotService {
 
 						if (recipients.isEmpty()) {
 							rejectJob(job, "No recipients specified", "Please specify at least one recipient");
-							return;
+							return false;
 						}
 
 						var botPromptReplyHash = (String) null;
@@ -316,8 +370,10 @@ public class FarcasterBotService {
 							botPromptReplyHash = notificationService.reply(textWithReply, cast.hash(), null);
 						}
 
-						List<Payment> sessionIntentPayments = new ArrayList<>();
-
+						// tokens and mentioned profiles of all recipients are checked first, then
+						// their receivers are resolved together and the payments created in one pass
+						val recipientTokens = new ArrayList<Token>();
+						val resolvedRecipients = new ArrayList<RecipientResolutionService.Recipient>();
 						for (val recipient : recipients) {
 							val tokens = paymentService.parseCommandTokens(recipient.token());
 
@@ -327,13 +383,12 @@ public class FarcasterBotService {
 								log.error("Token not supported {}", recipient.token());
 								rejectJob(job, "Token not supported: " + recipient.token(),
 										String.format("Token not supported: `%s`!", recipient.token()));
-								return;
+								return false;
 							}
 
 							log.debug("Receiver: {}, amount: {}, token: {}", recipient.username(), recipient.amount(),
 									recipient.token());
 
-							List<String> receiverAddresses = null;
 							// if receiver passed fetch meta from mentions
 							String finalReceiver = recipient.username();
 							var fcProfile = conversation.conversation().cast().mentionedProfiles().stream()
@@ -358,28 +413,31 @@ public class FarcasterBotService {
 										String.format(
 												"@%s, please, mention the user with @ symbol.",
 												cast.author().username()));
-								return;
+								return false;
 							}
-							receiverAddresses = fcProfile.addressesWithoutCustodialIfAvailable();
+							val receiverAddresses = fcProfile.addressesWithoutCustodialIfAvailable();
 
 							log.debug("Receiver: {} - addresses: {}", recipient.username(), receiverAddresses);
 
-							val receiverProfile = identityService.getProfilesByAddresses(receiverAddresses)
-									.stream().findFirst().orElse(null);
+							recipientTokens.add(token);
+							resolvedRecipients.add(new RecipientResolutionService.Recipient(receiverAddresses,
+									token.chainId()));
+						}
 
-							log.debug("Found receiver profile for receiver {} - {}",
-									recipient.username(), receiverProfile);
+						val receivers = recipientResolutionService.resolve(resolvedRecipients);
 
-							String receiverAddress = null;
+						// saved together once all recipients are processed, replies go out after that
+						List<Payment> payments = new ArrayList<>();
+						List<CastEvent> replies = new ArrayList<>();
 
-							if (receiverProfile != null) {
-								receiverAddress = paymentService.getUserReceiverAddress(receiverProfile,
-										token.chainId());
-							}
+						for (int i = 0; i < recipients.size(); i++) {
+							val recipient = recipients.get(i);
+							val token = recipientTokens.get(i);
+							val receiverProfile = receivers.get(i).profile();
+							val receiverAddress = receivers.get(i).address();
 
-							if (receiverAddress == null) {
-								receiverAddress = identityService.getHighestScoredIdentity(receiverAddresses);
-							}
+							log.debug("Found receiver profile for receiver {} - {}",
+									recipient.username(), receiverProfile);
 
 							val sourceApp = "Warpcast";
 							val sourceRef = String.format("https://warpcast.com/%s/%s",
@@ -405,19 +463,16 @@ public class FarcasterBotService {
 							payment.setSourceHash(sourceHash);
 
 							if (session != null && token.chainId().equals(BASE_CHAIN_ID)) {
-								// Check balance for session-based payments
+								// Check balance for session-based payments, less what earlier
+								// recipients and pending session intents hold
 								val sessionWalletAddress = session.getWallet().getAddress();
-								val balance = walletService.getTokenBalance(
-										sessionWalletAddress, token.chainId(),
-										token.tokenAddress());
-
 								val tokenAmount = paymentService.getTokenAmount(payment);
 
-								if (balance == null
-										|| new BigDecimal(balance.formatted())
-												.compareTo(new BigDecimal(tokenAmount)) < 0) {
+								val funds = sessionBalanceService.tryReserve(payment, payments,
+										session.getWallet(), token.tokenAddress(), BigDecimal.valueOf(tokenAmount));
 
-									paymentRepository.save(payment);
+								if (!funds.reserved()) {
+									payments.add(payment);
 									val topUpFrameUrl = UriComponentsBuilder
 											.fromUriString(payflowConfig.getDAppServiceUrl())
 											.path("/{topUpWalletAddress}")
@@ -426,7 +481,7 @@ public class FarcasterBotService {
 											.queryParam("button", "Top Up")
 											.build(sessionWalletAddress).toString();
 
-									eventPublisher.publishEvent(new CastEvent(
+									replies.add(new CastEvent(
 											String.format("""
 													Balance too low!
 
@@ -434,7 +489,7 @@ public class FarcasterBotService {
 													Required: %s %s
 
 													Top up your wallet or pay manually:""",
-													balance != null ? balance.formatted() : "0",
+													formatAvailable(funds),
 													token.id().toUpperCase(),
 													tokenAmount,
 													token.id().toUpperCase()),
@@ -453,7 +508,7 @@ public class FarcasterBotService {
 								payment.setCalls(callsNode);
 							}
 
-							paymentRepository.save(payment);
+							payments.add(payment);
 
 							String castText;
 							List<Cast.Embed> embeds;
@@ -462,8 +517,6 @@ public class FarcasterBotService {
 								castText = "I'm processing payment for you, wait for confirmation:";
 								embeds = Collections.singletonList(
 										new Cast.Embed(linkService.frameV2PaymentLink(payment).toString()));
-
-								sessionIntentPayments.add(payment);
 							} else {
 								val wallet = flowRepository
 										.findPayflowBalanceV2ByUserId(casterProfile.getId(), "1.4.1_0.7");
@@ -498,15 +551,21 @@ public class FarcasterBotService {
 										: List.of(new Cast.Embed(linkService.frameV2PaymentLink(payment).toString()));
 							}
 
-							eventPublisher.publishEvent(new CastEvent(
+							replies.add(new CastEvent(
 									castText,
 									botPromptReplyHash != null ? botPromptReplyHash : cast.hash(),
 									embeds));
 						}
 
-						if (!sessionIntentPayments.isEmpty()) {
-							eventPublisher.publishEvent(new CreatedPaymentsEvent(
-									sessionIntentPayments.stream().map(Payment::getId).toList()));
+						paymentRepository.saveAll(payments);
+						replies.forEach(eventPublisher::publishEvent);
+
+						val sessionIntentIds = payments.stream()
+								.filter(p -> p.getType() == Payment.PaymentType.SESSION_INTENT)
+								.map(Payment::getId)
+								.toList();
+						if (!sessionIntentIds.isEmpty()) {
+							eventPublisher.publishEvent(new CreatedPaymentsEvent(sessionIntentIds));
 						}
 
 						job.setStatus(PaymentBotJob.Status.PROCESSED);
@@ -523,7 +582,7 @@ public class FarcasterBotService {
 								cast.hash(),
 								Collections.singletonList(new Cast.Embed(storageFrameUrl))));
 						job.setStatus(PaymentBotJob.Status.PROCESSED);
-						return;
+						return false;
 					}
 					case "get_wallet_token_balance" -> {
 						var walletAddress = (String) null;
@@ -542,7 +601,7 @@ public class FarcasterBotService {
 										"Create your Payflow Wallet to get started! 🚀",
 										String.format("%s/~/create-payflow-wallet",
 												payflowConfig.getDAppServiceUrl()));
-								return;
+								return false;
 							}
 						} else {
 							walletAddress = session.getWallet().getAddress();
@@ -567,7 +626,7 @@ public class FarcasterBotService {
 									String.format(
 											"Invalid token `%s`. Please provide a valid token symbol or contract address.",
 											tokenOrAddress));
-							return;
+							return false;
 						}
 
 						val balance = walletService.getTokenBalance(
@@ -592,7 +651,7 @@ public class FarcasterBotService {
 
 							job.setStatus(PaymentBotJob.Status.PROCESSED);
 						}
-						return;
+						return false;
 					}
 					case "top_up_wallet" -> {
 						val fid = cast.author().fid();
@@ -617,7 +676,7 @@ public class FarcasterBotService {
 											"Create your Payflow Wallet to get started!",
 											String.format("%s/~/create-payflow-wallet",
 													payflowConfig.getDAppServiceUrl()));
-									return;
+									return false;
 								}
 							} else {
 								walletAddress = session.getWallet().getAddress();
@@ -636,14 +695,14 @@ public class FarcasterBotService {
 							if (walletAddress == null) {
 								rejectJob(job, "No wallet found",
 										"Bankr wallet doesn't exist, check with @bankr agent to get started!");
-								return;
+								return false;
 							}
 						} else if (walletType.equals("rodeo")) {
 							walletAddress = identityService.getRodeoWalletByFid(fid);
 							if (walletAddress == null) {
 								rejectJob(job, "No wallet found",
 										"Rodeo wallet doesn't exist, go to rodeo.club to get started!");
-								return;
+								return false;
 							}
 						}
 
@@ -677,7 +736,7 @@ public class FarcasterBotService {
 								List.of(new Cast.Embed(topUpFrameUrl))));
 
 						job.setStatus(PaymentBotJob.Status.PROCESSED);
-						return;
+						return false;
 					}
 
 					case "pay_me" -> {
@@ -712,7 +771,7 @@ public class FarcasterBotService {
 								Collections.singletonList(new Cast.Embed(builder.build(userId).toString()))));
 
 						job.setStatus(PaymentBotJob.Status.PROCESSED);
-						return;
+						return false;
 					}
 					case "claimables" -> {
 						val input = (Map<String, Object>) content.getInput();
@@ -731,7 +790,7 @@ public class FarcasterBotService {
 								Collections.singletonList(new Cast.Embed(claimFrameUrl))));
 
 						job.setStatus(PaymentBotJob.Status.PROCESSED);
-						return;
+						return false;
 					}
 				}
 			} else if ("text".equals(content.getType())) {
@@ -739,21 +798,18 @@ public class FarcasterBotService {
 			}
 		}
 
-		// if tools were used, decrement attempts, otherwise end chat
-		if (StringUtils.equals(response.getStopReason(), "tool_use")) {
-			decrementAttempts(casterProfile);
-		} else {
+		// if tools were used, count the attempt, otherwise end chat
+		if (!StringUtils.equals(response.getStopReason(), "tool_use")) {
 			rejectJob(job, "Ending chat", textWithReply);
-			return;
+			return false;
 		}
+		return true;
 	}
 
 	private void processWithCommand(PaymentBotJob job, User casterProfile) {
 		val cast = job.getCast();
 		val text = cast.text();
-		var matcher = Pattern.compile(
-				BOT_COMMAND_PATTERN, Pattern.DOTALL)
-				.matcher(text);
+		var matcher = BOT_COMMAND_PATTERN.matcher(text);
 
 		if (!matcher.find()) {
 			job.setStatus(PaymentBotJob.Status.REJECTED);
@@ -793,8 +849,7 @@ public class FarcasterBotService {
 						.stream().findFirst().orElse(null);
 
 				// Regular payment processing
-				val paymentPattern = "(?:@(?<receiver>[a-zA-Z0-9_.-]+)\\s*)?\\s*(?<amount>\\$?[0-9]+(?:\\.[0-9]+)?[km]?)\\s*(?<rest>.*)";
-				matcher = Pattern.compile(paymentPattern, Pattern.CASE_INSENSITIVE).matcher(remainingText);
+				matcher = PAYMENT_COMMAND_PATTERN.matcher(remainingText);
 				if (!matcher.find()) {
 					rejectJob(job, "Pattern not matched for command: " + command,
 							"Invalid format. Please use: \"@payflow " + command + " @user amount token\"");
@@ -873,21 +928,13 @@ public class FarcasterBotService {
 					job.setStatus(PaymentBotJob.Status.REJECTED);
 					return;
 				}
-				val receiverProfile = identityService.getProfilesByAddresses(receiverAddresses)
-						.stream().findFirst().orElse(null);
+				val receiver = recipientResolutionService.resolve(List.of(new RecipientResolutionService.Recipient(
+						receiverAddresses != null ? receiverAddresses : List.of(), token.chainId()))).getFirst();
+				val receiverProfile = receiver.profile();
+				val receiverAddress = receiver.address();
 				log.debug("Found receiver profile for receiver {} - {}",
 						receiverName, receiverProfile);
 
-				String receiverAddress = null;
-
-				if (receiverProfile != null) {
-					receiverAddress = paymentService.getUserReceiverAddress(receiverProfile, token.chainId());
-				}
-
-				if (receiverAddress == null) {
-					receiverAddress = identityService.getHighestScoredIdentity(receiverAddresses);
-				}
-
 				val sourceApp = "Warpcast";
 				val sourceRef = String.format("https://warpcast.com/%s/%s",
 						cast.author().username(),
@@ -911,17 +958,15 @@ public class FarcasterBotService {
 				payment.setSourceHash(sourceHash);
 
 				if (session != null) {
-					// Check balance for session-based payments
+					// Check balance for session-based payments, less what pending
+					// session intents hold
 					val sessionWalletAddress = session.getWallet().getAddress();
-					val balance = walletService.getTokenBalance(
-							sessionWalletAddress, token.chainId(),
-							token.tokenAddress());
-
 					val tokenAmount = paymentService.getTokenAmount(payment);
 
-					if (balance == null
-							|| new BigDecimal(balance.formatted()).compareTo(new BigDecimal(tokenAmount)) < 0) {
+					val funds = sessionBalanceService.tryReserve(payment, session.getWallet(),
+							token.tokenAddress(), BigDecimal.valueOf(tokenAmount));
 
+					if (!funds.reserved()) {
 						paymentRepository.save(payment);
 						val topUpFrameUrl = UriComponentsBuilder
 								.fromUriString(payflowConfig.getDAppServiceUrl())
@@ -938,7 +983,7 @@ public class FarcasterBotService {
 										Current: %s %s
 										Required: %s %s
 										Top up your wallet or pay manually:""",
-										balance != null ? balance.formatted() : "0",
+										formatAvailable(funds),
 										token.id().toUpperCase(),
 										tokenAmount,
 										token.id().toUpperCase()),
@@ -984,8 +1029,7 @@ public class FarcasterBotService {
 				break;
 			}
 			case "jar": {
-				val jarTitlePattern = "\"(?<title>[^\"]*)\"";
-				matcher = Pattern.compile(jarTitlePattern, Pattern.CASE_INSENSITIVE).matcher(remainingText);
+				matcher = JAR_TITLE_PATTERN.matcher(remainingText);
 				if (!matcher.find() || StringUtils.isBlank(matcher.group("title"))) {
 					rejectJob(job, "Missing or empty jar title",
 							"Please provide a title in quotes. Example: \"@payflow jar \\\"My Jar Title\\\"\"");
@@ -1124,29 +1168,8 @@ public class FarcasterBotService {
 		}
 	}
 
-	@Cacheable(value = AGENT_ATTEMPTS_CACHE, key = "#user.identity", unless = "#result == null")
-	public Integer getRemainingAttempts(User user) {
-		if (userService.getEarlyFeatureAccessUsers().contains(user.getUsername())) {
-			return Integer.MAX_VALUE;
-		}
-		return maxAgentAttempts;
-	}
-
-	@CachePut(value = AGENT_ATTEMPTS_CACHE, key = "#user.identity")
-	public Integer decrementAttempts(User user) {
-		if (userService.getEarlyFeatureAccessUsers().contains(user.getUsername())) {
-			return Integer.MAX_VALUE;
-		}
-
-		Integer attempts = getRemainingAttempts(user);
-		return attempts > 0 ? attempts - 1 : 0;
-	}
-
-	private boolean canUseAgent(User user) {
-		if (userService.getEarlyFeatureAccessUsers().contains(user.getUsername())) {
-			return true;
-		}
-		return getRemainingAttempts(user) > 0;
+	private static String formatAvailable(SessionBalanceService.Funds funds) {
+		return funds.available() != null ? funds.available().stripTrailingZeros().toPlainString() : "0";
 	}
 
 	private record Recipient(
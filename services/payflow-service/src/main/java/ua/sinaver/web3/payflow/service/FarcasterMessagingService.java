@@ -8,6 +8,7 @@ import org.springframework.http.MediaType;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.message.farcaster.DirectCastMessage;
 import ua.sinaver.web3.payflow.message.farcaster.DirectCastResponse;
 
@@ -17,9 +18,11 @@ public class FarcasterMessagingService {
 
 	private final WebClient webClient;
 
-	public FarcasterMessagingService(WebClient.Builder builder, @Value("${payflow.farcaster.bot" +
-			".messaging.secret}") String messagingBotSecret) {
-		webClient = builder.baseUrl("https://api.warpcast.com")
+	public FarcasterMessagingService(UpstreamClientRegistry upstreams,
+			@Value("${payflow.warpcast.api.url}") String warpcastApiUrl,
+			@Value("${payflow.farcaster.bot.messaging.secret}") String messagingBotSecret) {
+		webClient = upstreams.webClient(UpstreamClientRegistry.WARPCAST)
+				.baseUrl(warpcastApiUrl)
 				.defaultHeader("Authorization", "Bearer " + messagingBotSecret)
 				.defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
 				.defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
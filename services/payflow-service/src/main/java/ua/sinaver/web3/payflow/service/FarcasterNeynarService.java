@@ -3,6 +3,7 @@ package ua.sinaver.web3.payflow.service;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
@@ -15,6 +16,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.message.farcaster.*;
 import ua.sinaver.web3.payflow.message.farcaster.neynar.NotificationRequest;
 import ua.sinaver.web3.payflow.message.farcaster.neynar.NotificationResponse;
@@ -22,6 +24,7 @@ import ua.sinaver.web3.payflow.message.farcaster.neynar.TrendingCastsResponse;
 import ua.sinaver.web3.payflow.message.subscription.SubscribersMessage;
 import ua.sinaver.web3.payflow.message.subscription.Subscription;
 import ua.sinaver.web3.payflow.message.subscription.SubscriptionsCreatedMessage;
+import ua.sinaver.web3.payflow.service.LookupCacheService.Lookup;
 
 import java.time.Duration;
 import java.util.Collections;
@@ -34,17 +37,24 @@ import static ua.sinaver.web3.payflow.config.CacheConfig.*;
 public class FarcasterNeynarService {
 
 	private final WebClient webClient;
+	@Autowired
+	private CastCacheService castCacheService;
+	@Autowired
+	private LookupCacheService lookupCacheService;
 
-	public FarcasterNeynarService(WebClient.Builder builder,
+	public FarcasterNeynarService(UpstreamClientRegistry upstreams,
+			@Value("${payflow.neynar.api.url}") String neynarApiUrl,
 			@Value("${payflow.hub.api.key}") String hubApiKey) {
-		webClient = builder.baseUrl("https://api.neynar.com/v2/farcaster")
+		webClient = upstreams.webClient(UpstreamClientRegistry.NEYNAR)
+				.baseUrl(neynarApiUrl)
 				.defaultHeader("api_key", hubApiKey)
 				.defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
 				.defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
 				.build();
 	}
 
-	@Cacheable(value = NEYNAR_STORAGE_USAGE_CACHE, unless = "#result==null")
+	// null results are not cached by the single flight cache
+	@Cacheable(value = NEYNAR_STORAGE_USAGE_CACHE, sync = true)
 	public StorageUsage fetchStorageUsage(int fid) {
 		log.debug("Calling Neynar Storage Usage API by fid {}", fid);
 		return webClient.get()
@@ -73,7 +83,7 @@ public class FarcasterNeynarService {
 				.orElse(null);
 	}
 
-	@Cacheable(value = NEYNAR_STORAGE_ALLOCATION_CACHE, unless = "#result==null")
+	@Cacheable(value = NEYNAR_STORAGE_ALLOCATION_CACHE, sync = true)
 	public StorageAllocationsResponse fetchStorageAllocations(int fid) {
 		log.debug("Calling Neynar Storage Allocations API by fid {}", fid);
 		return webClient.get()
@@ -182,6 +192,10 @@ public class FarcasterNeynarService {
 	}
 
 	public Cast fetchCastByHash(String hash) {
+		return castCacheService.cast(hash, this::requestCastByHash);
+	}
+
+	private Cast requestCastByHash(String hash) {
 		log.debug("Calling Neynar Cast API to fetch by hash {}", hash);
 		try {
 			val response = webClient.get()
@@ -234,72 +248,54 @@ public class FarcasterNeynarService {
 				.orElse(Collections.emptyList());
 	}
 
-	@Cacheable(value = NEYNAR_FARCASTER_USER_CACHE, unless = "#result==null")
 	public FarcasterUser fetchFarcasterUser(int fid) {
-		log.debug("Calling Neynar User API to fetch by fid {}", fid);
-		return webClient.get()
-				.uri(uriBuilder -> uriBuilder.path("/user/bulk")
-						.queryParam("fids", fid)
-						.build())
-				.retrieve()
-				.onStatus(HttpStatus.NOT_FOUND::equals, clientResponse -> {
-					log.error("404 error when calling Neynar User API by fid {}", fid);
-					return Mono.empty();
-				})
-				.bodyToMono(FarcasterUsersResponse.class)
-				.onErrorResume(WebClientResponseException.class, e -> {
-					if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
-						log.error("404 error calling Neynar User API by fid {} - {}",
-								fid, e);
-						return Mono.empty();
-					}
-					log.error("Exception calling Neynar User API by fid {} - {}",
-							fid, e);
-					return Mono.error(e);
-				})
-				.onErrorResume(Throwable.class, e -> {
-					log.error("Exception calling Neynar User API by fid {} - {}",
-							fid, e);
-					return Mono.empty();
-				})
-				.blockOptional()
-				.map(FarcasterUsersResponse::users)
-				.filter(users -> !users.isEmpty())
-				.map(List::getFirst) // Get only the first user
-				.orElse(null);
+		return lookupCacheService.get(NEYNAR_FARCASTER_USER_CACHE, fid, () -> {
+			log.debug("Calling Neynar User API to fetch by fid {}", fid);
+			try {
+				return Lookup.of(webClient.get()
+						.uri(uriBuilder -> uriBuilder.path("/user/bulk")
+								.queryParam("fids", fid)
+								.build())
+						.retrieve()
+						.bodyToMono(FarcasterUsersResponse.class)
+						.blockOptional()
+						.map(FarcasterUsersResponse::users)
+						.filter(users -> !users.isEmpty())
+						.map(List::getFirst) // Get only the first user
+						.orElse(null));
+			} catch (WebClientResponseException.NotFound e) {
+				log.error("404 error calling Neynar User API by fid {} - {}", fid, e.getMessage());
+				return Lookup.absent();
+			} catch (RuntimeException e) {
+				log.error("Exception calling Neynar User API by fid {} - {}", fid, e);
+				return Lookup.failed();
+			}
+		});
 	}
 
-	@Cacheable(value = NEYNAR_FARCASTER_USER_CACHE, unless = "#result==null")
 	public FarcasterUser fetchFarcasterUser(String custodyAddress) {
-		log.debug("Calling Neynar User API to fetch by custodyAddress {}", custodyAddress);
-		return webClient.get()
-				.uri(uriBuilder -> uriBuilder.path("/user/custody-address")
-						.queryParam("custody_address", custodyAddress.toLowerCase())
-						.build())
-				.retrieve()
-				.onStatus(HttpStatus.NOT_FOUND::equals, clientResponse -> {
-					log.error("404 error when calling Neynar User API by custodyAddress {}", custodyAddress);
-					return Mono.empty();
-				})
-				.bodyToMono(FarcasterUserResponse.class)
-				.onErrorResume(WebClientResponseException.class, e -> {
-					if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
-						log.error("404 error calling Neynar User API by custodyAddress {} - {}",
-								custodyAddress, e);
-						return Mono.empty();
-					}
-					log.error("Exception calling Neynar User API by custodyAddress {} - {}",
-							custodyAddress, e);
-					return Mono.error(e);
-				})
-				.onErrorResume(Throwable.class, e -> {
-					log.error("Exception calling Neynar User API by custodyAddress {} - {}",
-							custodyAddress, e);
-					return Mono.empty();
-				})
-				.blockOptional()
-				.map(FarcasterUserResponse::user)
-				.orElse(null);
+		return lookupCacheService.get(NEYNAR_FARCASTER_USER_CACHE, custodyAddress, () -> {
+			log.debug("Calling Neynar User API to fetch by custodyAddress {}", custodyAddress);
+			try {
+				return Lookup.of(webClient.get()
+						.uri(uriBuilder -> uriBuilder.path("/user/custody-address")
+								.queryParam("custody_address", custodyAddress.toLowerCase())
+								.build())
+						.retrieve()
+						.bodyToMono(FarcasterUserResponse.class)
+						.blockOptional()
+						.map(FarcasterUserResponse::user)
+						.orElse(null));
+			} catch (WebClientResponseException.NotFound e) {
+				log.error("404 error calling Neynar User API by custodyAddress {} - {}",
+						custodyAddress, e.getMessage());
+				return Lookup.absent();
+			} catch (RuntimeException e) {
+				log.error("Exception calling Neynar User API by custodyAddress {} - {}",
+						custodyAddress, e);
+				return Lookup.failed();
+			}
+		});
 	}
 
 	public List<Subscription> subscriptionsCreated(int fid) {
@@ -45,6 +45,8 @@ public class FarcasterStorageService {
 	@Autowired
 	private NotificationService notificationService;
 	@Autowired
+	private SchedulerShardService schedulerShardService;
+	@Autowired
 	private StorageNotificationRepository storageNotificationRepository;
 
 	private static boolean isShouldNotify(StorageNotification storageNotification,
@@ -69,8 +71,13 @@ public class FarcasterStorageService {
 
 	@Scheduled(cron = "* */15 * * * *")
 	void notifyWithStorageExpiring() {
+		val shards = schedulerShardService.shards();
+		if (shards.isEmpty()) {
+			log.debug("No scheduler shards owned, skipping storage notifications");
+			return;
+		}
 		storageNotificationRepository.findTop10StorageNotifications(Instant.now().minus(7,
-						ChronoUnit.DAYS))
+						ChronoUnit.DAYS), shards.owned())
 				.forEach(storageNotification -> {
 					val fid = storageNotification.getFid();
 					try {
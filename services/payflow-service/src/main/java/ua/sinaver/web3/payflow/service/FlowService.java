@@ -8,9 +8,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.core.task.support.TaskExecutorAdapter;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import ua.sinaver.web3.payflow.config.SecondLevelCacheEvictions;
 import ua.sinaver.web3.payflow.dto.FlowMessage;
 import ua.sinaver.web3.payflow.dto.JarMessage;
 import ua.sinaver.web3.payflow.dto.WalletMessage;
@@ -28,6 +31,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
 
 import static ua.sinaver.web3.payflow.config.CacheConfig.USER_FLOWS_CACHE;
 import static ua.sinaver.web3.payflow.service.TokenService.BASE_CHAIN_ID;
@@ -51,6 +57,20 @@ public class FlowService {
 
 	@Autowired
 	private WalletSessionMapper walletSessionMapper;
+	@Autowired
+	private StateTransitionRunner stateTransitionRunner;
+	@Autowired
+	private SchedulerShardService schedulerShardService;
+	@Autowired
+	private SecondLevelCacheEvictions secondLevelCacheEvictions;
+
+	private final TaskExecutorAdapter discoveryExecutor;
+
+	public FlowService() {
+		// flow discovery only waits on upstreams, it runs on virtual threads with the caller's trace
+		discoveryExecutor = new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+		discoveryExecutor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+	}
 
 	@CacheEvict(value = USER_FLOWS_CACHE, key = "#user.identity")
 	public Jar createJar(String title, String description, String image, String source, User user) {
@@ -96,8 +116,17 @@ public class FlowService {
 		log.debug("Saved flow {}", flow);
 	}
 
-	@Cacheable(value = USER_FLOWS_CACHE, key = "#user.identity")
+	@Cacheable(value = USER_FLOWS_CACHE, key = "#user.identity", sync = true)
 	public List<FlowMessage> getAllFlows(User user) {
+		// external wallets are discovered concurrently, while native flows are converted
+		val identity = user.getIdentity();
+		val verifications = CompletableFuture.supplyAsync(
+				() -> identityService.getFarcasterAddressesByAddress(identity), discoveryExecutor);
+		val bankrWallet = CompletableFuture.supplyAsync(
+				() -> identityService.getBankrWalletByIdentity(identity), discoveryExecutor);
+		val rodeoWallet = CompletableFuture.supplyAsync(
+				() -> identityService.getRodeoWalletByIdentity(identity), discoveryExecutor);
+
 		val flows = new ArrayList<FlowMessage>();
 		if (user.getFlows() != null) {
 			val nativeFlows = user.getFlows().stream()
@@ -106,20 +135,20 @@ public class FlowService {
 			flows.addAll(nativeFlows);
 		}
 
-		val verifications = identityService.getFarcasterAddressesByAddress(user.getIdentity());
-		if (verifications != null && !verifications.isEmpty()) {
-			val verificationFlows = verifications.stream()
+		val verificationAddresses = join(verifications);
+		if (verificationAddresses != null && !verificationAddresses.isEmpty()) {
+			val verificationFlows = verificationAddresses.stream()
 					.map(v -> FlowMessage.convertFarcasterVerification(v, user))
 					.toList();
 			flows.addAll(verificationFlows);
 		}
 
-		val bankrWalletAddress = identityService.getBankrWalletByIdentity(user.getIdentity());
+		val bankrWalletAddress = join(bankrWallet);
 		if (bankrWalletAddress != null) {
 			flows.add(FlowMessage.convertBankrWallet(bankrWalletAddress, user));
 		}
 
-		val rodeoWalletAddress = identityService.getRodeoWalletByIdentity(user.getIdentity());
+		val rodeoWalletAddress = join(rodeoWallet);
 		if (rodeoWalletAddress != null) {
 			flows.add(FlowMessage.convertRodeoWallet(rodeoWalletAddress, user));
 		}
@@ -127,6 +156,17 @@ public class FlowService {
 		return flows;
 	}
 
+	private static <V> V join(CompletableFuture<V> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
 	public FlowMessage findByUUID(String uuid) {
 		val flow = flowRepository.findByUuid(uuid);
 		if (flow != null) {
@@ -176,6 +216,7 @@ public class FlowService {
 		 */
 
 		flow.getWallets().remove(wallet);
+		secondLevelCacheEvictions.evictCollectionAfterCommit(Flow.class, "wallets", flow.getId());
 
 		log.info("Removed wallet {} from flow {}", wallet, flow);
 	}
@@ -192,6 +233,7 @@ public class FlowService {
 
 		wallet.setFlow(flow);
 		flow.getWallets().add(wallet);
+		secondLevelCacheEvictions.evictCollectionAfterCommit(Flow.class, "wallets", flow.getId());
 
 		log.info("Added wallet {} to flow {}", wallet, flow);
 	}
@@ -373,9 +415,18 @@ public class FlowService {
 	}
 
 	@Scheduled(initialDelay = 60_000, fixedRate = 60_000)
+	@Transactional(Transactional.TxType.NOT_SUPPORTED)
 	public void checkAndDeactivateExpiredSessions() {
+		val shards = schedulerShardService.shards();
+		if (shards.isEmpty()) {
+			log.debug("No scheduler shards owned, skipping expired wallet sessions");
+			return;
+		}
 		log.debug("Checking for expired wallet sessions...");
-		walletSessionRepository.deactivateExpiredSessions(Instant.now());
-		log.debug("Completed deactivating expired sessions");
+		val deactivated = stateTransitionRunner.run("sessions_deactivation",
+				limit -> walletSessionRepository.findExpiredSessionIdsForUpdate(Instant.now(),
+						shards.owned(), limit),
+				walletSessionRepository::deactivateByIds);
+		log.debug("Completed deactivating expired sessions: {}", deactivated);
 	}
 }
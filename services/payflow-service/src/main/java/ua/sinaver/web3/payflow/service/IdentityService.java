@@ -5,25 +5,26 @@ import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 import ua.sinaver.web3.payflow.client.NeynarClient;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.entity.User;
 import ua.sinaver.web3.payflow.message.ConnectedAddresses;
+import ua.sinaver.web3.payflow.message.IdentitiesResponseMessage;
 import ua.sinaver.web3.payflow.message.IdentityMessage;
 import ua.sinaver.web3.payflow.message.farcaster.bankr.BankrWalletResponse;
 import ua.sinaver.web3.payflow.message.farcaster.rodeo.RodeoResponse;
 import ua.sinaver.web3.payflow.repository.UserRepository;
+import ua.sinaver.web3.payflow.service.LookupCacheService.Lookup;
 import ua.sinaver.web3.payflow.service.api.IIdentityService;
+import ua.sinaver.web3.payflow.utils.FanOut;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.function.Function;
 
 import static ua.sinaver.web3.payflow.config.CacheConfig.BANKR_WALLETS_CACHE;
 import static ua.sinaver.web3.payflow.config.CacheConfig.RODEO_WALLETS_CACHE;
@@ -32,7 +33,8 @@ import static ua.sinaver.web3.payflow.config.CacheConfig.RODEO_WALLETS_CACHE;
 @Service
 @Transactional
 public class IdentityService implements IIdentityService {
-	private final WebClient webClient;
+	private final WebClient bankrClient;
+	private final WebClient rodeoClient;
 
 	@Autowired
 	private UserRepository userRepository;
@@ -44,9 +46,21 @@ public class IdentityService implements IIdentityService {
 
 	@Autowired
 	private NeynarClient neynarClient;
-
-	public IdentityService(WebClient.Builder webClientBuilder) {
-		this.webClient = webClientBuilder.build();
+	@Autowired
+	private LookupCacheService lookupCacheService;
+
+	@Value("${payflow.identities.fetch.timeout:10s}")
+	private Duration identitiesFetchTimeout;
+	@Value("${payflow.identities.fetch.max-concurrency:16}")
+	private int identitiesMaxConcurrency;
+
+	public IdentityService(UpstreamClientRegistry upstreams,
+			@Value("${payflow.bankr.api.url}") String bankrApiUrl,
+			@Value("${payflow.rodeo.api.url}") String rodeoApiUrl) {
+		this.bankrClient = upstreams.webClient(UpstreamClientRegistry.BANKR)
+				.baseUrl(bankrApiUrl).build();
+		this.rodeoClient = upstreams.webClient(UpstreamClientRegistry.RODEO)
+				.baseUrl(rodeoApiUrl).build();
 	}
 
 	@Override
@@ -89,6 +103,7 @@ public class IdentityService implements IIdentityService {
 	}
 
 	@Override
+	@Transactional(Transactional.TxType.NOT_SUPPORTED)
 	public List<String> getFarcasterAddressesByAddress(String address) {
 		try {
 			val response = neynarClient.getUsersByAddresses(address.toLowerCase());
@@ -160,6 +175,19 @@ public class IdentityService implements IIdentityService {
 				.filter(Objects::nonNull).limit(3).toList();
 	}
 
+	// allowed profiles of the identities with one query, by lower cased identity
+	@Override
+	public Map<String, User> getProfilesByIdentities(Collection<String> identities) {
+		if (identities.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		val profiles = new HashMap<String, User>();
+		userRepository.findAllByIdentityInIgnoreCase(identities.stream().distinct().toList()).stream()
+				.filter(User::isAllowed)
+				.forEach(user -> profiles.putIfAbsent(user.getIdentity().toLowerCase(), user));
+		return profiles;
+	}
+
 	@Override
 	public String getFidFname(int fid) {
 		val farcasterUser = neynarService.fetchFarcasterUser(fid);
@@ -274,6 +302,24 @@ public class IdentityService implements IIdentityService {
 				.map(IdentityMessage::address).orElse(null);
 	}
 
+	// getHighestScoredIdentity of each group, with one profiles query and bulk social metadata
+	// calls for all of them, instead of a fan-out per identity
+	@Override
+	public List<String> getHighestScoredIdentities(List<List<String>> identityGroups) {
+		val identities = identityGroups.stream().flatMap(List::stream).distinct().toList();
+		val profiles = getProfilesByIdentities(identities);
+		val metas = socialGraphService.getSocialMetadata(identities);
+		return identityGroups.stream()
+				.map(group -> group.stream()
+						.filter(metas::containsKey)
+						.map(identity -> IdentityMessage.convert(identity, profiles.get(identity.toLowerCase()),
+								metas.get(identity)))
+						.max(Comparator.comparingInt(IdentityMessage::score))
+						.map(IdentityMessage::address)
+						.orElse(null))
+				.toList();
+	}
+
 	@Override
 	public IdentityMessage getHighestScoredIdentityInfo(List<String> identities) {
 		return getIdentitiesInfo(identities)
@@ -283,132 +329,133 @@ public class IdentityService implements IIdentityService {
 
 	@Override
 	public List<IdentityMessage> getIdentitiesInfo(List<String> identities) {
+		// partial results are still usable for picking the best identity
+		return fetchIdentitiesInfo(identities).identities();
+	}
+
+	// identities without socials are skipped, the ones which failed or didn't make it before the
+	// deadline are returned as missing
+	@Override
+	public IdentitiesResponseMessage fetchIdentitiesInfo(List<String> identities) {
 		log.debug("Fetching {} identities", identities);
-		try {
-			val identityMessages = Flux
-					.fromIterable(identities)
-					.parallel()
-					.runOn(Schedulers.boundedElastic())
-					.flatMap(identity -> Mono.zip(
-							Mono.just(identity),
-							Mono.fromCallable(
-									() -> Optional.ofNullable(
-											userRepository.findByIdentityIgnoreCaseAndAllowedTrue(identity)))
-									.onErrorResume(exception -> {
-										log.error("Error fetching user {} - {}",
-												identity,
-												exception.getMessage());
-										return Mono.empty();
-									}),
-							Mono.fromCallable(
-									() -> socialGraphService.getSocialMetadata(identity))
-									.subscribeOn(Schedulers.boundedElastic())
-									.onErrorResume(exception -> {
-										log.error("Error fetching social graph for {} - " +
-												"{}",
-												identity,
-												exception.getMessage());
-										return Mono.empty();
-									}))
-							.map(tuple -> IdentityMessage.convert(
-									identity,
-									tuple.getT2().orElse(null),
-									tuple.getT3())))
-					.sequential()
-					.timeout(Duration.ofSeconds(10), Mono.empty())
-					.collectList()
-					.block();
-
-			log.debug("Fetched {} identities for list: {}", identityMessages.size(),
-					identities);
-
-			return identityMessages;
-		} catch (Throwable t) {
-			log.error("Failed to fetch contacts", t);
-			return Collections.emptyList();
-		}
+		val fetched = FanOut.run("identities", identities, identity -> {
+			User user = null;
+			try {
+				user = userRepository.findByIdentityIgnoreCaseAndAllowedTrue(identity);
+			} catch (Throwable t) {
+				log.error("Error fetching user {} - {}", identity, t.getMessage());
+			}
+			val meta = socialGraphService.getSocialMetadata(identity);
+			return meta != null ? IdentityMessage.convert(identity, user, meta) : null;
+		}, identitiesFetchTimeout, identitiesMaxConcurrency);
+
+		log.debug("Fetched {} identities for list: {}, missing: {}", fetched.completed().size(),
+				identities, fetched.missing());
+		return new IdentitiesResponseMessage(fetched.completed(), fetched.missing());
 	}
 
-	@Cacheable(value = BANKR_WALLETS_CACHE, key = "#identity", unless = "#result == null")
+	@Transactional(Transactional.TxType.NOT_SUPPORTED)
 	public String getBankrWalletByIdentity(String identity) {
-		val fid = getIdentityFid(identity);
-		if (fid != null) {
-			return getBankrWalletByFid(fid);
-		}
-		return null;
+		return lookupCacheService.get(BANKR_WALLETS_CACHE, identity,
+				() -> byIdentityFid(identity, this::bankrWalletByFid));
 	}
 
-	@Cacheable(value = BANKR_WALLETS_CACHE, key = "#fid", unless = "#result == null")
+	@Transactional(Transactional.TxType.NOT_SUPPORTED)
 	public String getBankrWalletByFid(Integer fid) {
-		log.debug("Calling Bankr API to fetch wallet for FID {}", fid);
-		return webClient
-				.get()
-				.uri("https://api.bankr.bot/trading-wallet/" + fid)
-				.retrieve()
-				.onStatus(HttpStatus.NOT_FOUND::equals, clientResponse -> {
-					log.debug("404 error when calling Bankr API for FID {}", fid);
-					return Mono.empty();
-				})
-				.bodyToMono(BankrWalletResponse.class)
-				.onErrorResume(WebClientResponseException.class, e -> {
-					log.warn("Failed to fetch Bankr wallet for FID {}: {}", fid, e.getMessage());
-					return Mono.empty();
-				})
-				.blockOptional()
-				.map(BankrWalletResponse::getTradingWallet)
-				.orElse(null);
+		return bankrWalletByFid(fid).value();
+	}
+
+	private Lookup<String> bankrWalletByFid(Integer fid) {
+		return lookupCacheService.lookup(BANKR_WALLETS_CACHE, fid, () -> {
+			log.debug("Calling Bankr API to fetch wallet for FID {}", fid);
+			try {
+				return Lookup.of(bankrClient
+						.get()
+						.uri("/trading-wallet/{fid}", fid)
+						.retrieve()
+						.bodyToMono(BankrWalletResponse.class)
+						.blockOptional()
+						.map(BankrWalletResponse::getTradingWallet)
+						.orElse(null));
+			} catch (WebClientResponseException.NotFound e) {
+				log.debug("404 error when calling Bankr API for FID {}", fid);
+				return Lookup.absent();
+			} catch (RuntimeException e) {
+				log.warn("Failed to fetch Bankr wallet for FID {}: {}", fid, e.getMessage());
+				return Lookup.failed();
+			}
+		});
 	}
 
-	@Cacheable(value = RODEO_WALLETS_CACHE, key = "#identity", unless = "#result == null")
+	@Transactional(Transactional.TxType.NOT_SUPPORTED)
 	public String getRodeoWalletByIdentity(String identity) {
-		val fid = getIdentityFid(identity);
-		if (fid != null) {
-			return getRodeoWalletByFid(fid);
-		}
-		return null;
+		return lookupCacheService.get(RODEO_WALLETS_CACHE, identity,
+				() -> byIdentityFid(identity, this::rodeoWalletByFid));
 	}
 
-	@Cacheable(value = RODEO_WALLETS_CACHE, key = "#fid", unless = "#result == null")
+	@Transactional(Transactional.TxType.NOT_SUPPORTED)
 	public String getRodeoWalletByFid(Integer fid) {
-		log.debug("Calling Rodeo API to fetch wallet for FID {}", fid);
-
-		String query = """
-				{
-				  userProfile(by: {fid: "%s"}) {
-					username
-					wallets{
-					  address
-					  connectorType
+		return rodeoWalletByFid(fid).value();
+	}
+
+	private Lookup<String> rodeoWalletByFid(Integer fid) {
+		return lookupCacheService.lookup(RODEO_WALLETS_CACHE, fid, () -> {
+			log.debug("Calling Rodeo API to fetch wallet for FID {}", fid);
+
+			String query = """
+					{
+					  userProfile(by: {fid: "%s"}) {
+						username
+						wallets{
+						  address
+						  connectorType
+						}
+					  }
 					}
-				  }
+					""".formatted(fid);
+
+			try {
+				val result = rodeoClient
+						.post()
+						.uri("/electric/v2/graphql")
+						.bodyValue(Map.of("query", query))
+						.retrieve()
+						.bodyToMono(RodeoResponse.class)
+						.blockOptional();
+				// graphql reports failures with a 200, don't take them for a missing wallet
+				if (result.isPresent() && result.get().getErrors() != null
+						&& !result.get().getErrors().isEmpty()) {
+					log.warn("Failed to fetch Rodeo wallet for FID {}: {}", fid, result.get().getErrors());
+					return Lookup.failed();
 				}
-				""".formatted(fid);
-
-		return webClient
-				.post()
-				.uri("https://api-v2.foundation.app/electric/v2/graphql")
-				.bodyValue(Map.of("query", query))
-				.retrieve()
-				.bodyToMono(RodeoResponse.class)
-				.map(response -> {
-					if (response.getData() != null
-							&& response.getData().getUserProfile() != null
-							&& response.getData().getUserProfile().getWallets() != null) {
-						return response.getData().getUserProfile().getWallets().stream()
+				return Lookup.of(result
+						.filter(response -> response.getData() != null
+								&& response.getData().getUserProfile() != null
+								&& response.getData().getUserProfile().getWallets() != null)
+						.flatMap(response -> response.getData().getUserProfile().getWallets().stream()
 								.filter(w -> w.getAddress() != null
 										&& "smart_wallet".equals(w.getConnectorType()))
-								.findFirst()
-								.map(RodeoResponse.Wallet::getAddress)
-								.map(String::toLowerCase)
-								.orElse(null);
-					}
-					return null;
-				})
-				.onErrorResume(e -> {
-					log.warn("Failed to fetch Rodeo wallet for FID {}: {}", fid, e.getMessage());
-					return Mono.empty();
-				})
-				.block();
+								.findFirst())
+						.map(RodeoResponse.Wallet::getAddress)
+						.map(String::toLowerCase)
+						.orElse(null));
+			} catch (RuntimeException e) {
+				log.warn("Failed to fetch Rodeo wallet for FID {}: {}", fid, e.getMessage());
+				return Lookup.failed();
+			}
+		});
+	}
+
+	// identities without a farcaster account are known absent too
+	private <T> Lookup<T> byIdentityFid(String identity, Function<Integer, Lookup<T>> lookup) {
+		Integer fid;
+		try {
+			fid = getIdentityFid(identity);
+		} catch (RuntimeException e) {
+			log.warn("Failed to fetch fid for {}: {}", identity, e.getMessage());
+			return Lookup.failed();
+		}
+		return fid != null ? lookup.apply(fid) : Lookup.absent();
 	}
 
 	private List<String> verificationsWithoutCustodial(ConnectedAddresses verifications) {
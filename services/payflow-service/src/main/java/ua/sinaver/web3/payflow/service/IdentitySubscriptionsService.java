@@ -11,6 +11,7 @@ import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.config.PayflowConfig;
 import ua.sinaver.web3.payflow.entity.User;
 import ua.sinaver.web3.payflow.message.IdentityMessage;
@@ -45,10 +46,10 @@ public class IdentitySubscriptionsService {
 	@Value("${payflow.paragraph.contacts.limit:10}")
 	private int paragraphContactsLimit;
 
-	public IdentitySubscriptionsService(WebClient.Builder builder,
+	public IdentitySubscriptionsService(UpstreamClientRegistry upstreams,
 			PayflowConfig payflowConfig) {
 
-		onchainServiceClient = builder
+		onchainServiceClient = upstreams.webClient(UpstreamClientRegistry.FRAMES)
 				.baseUrl(payflowConfig.getFramesServiceUrl())
 				.defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
 				.defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
@@ -0,0 +1,132 @@
+package ua.sinaver.web3.payflow.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// cached lookups of external identities and wallets which tell "doesn't exist" apart from
+// "couldn't find out": found values and known absences are cached (absences as the cache's
+// null value, which the negative caches in CacheConfig expire sooner), failures are not.
+// concurrent lookups of the same key share a single upstream call
+@Slf4j
+@Service
+public class LookupCacheService {
+	@Autowired
+	private CacheManager cacheManager;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	public <T> Lookup<T> lookup(String cacheName, Object key, Supplier<Lookup<T>> loader) {
+		val cache = cacheManager.getCache(cacheName);
+		if (cache == null) {
+			return loader.get();
+		}
+
+		try {
+			return Lookup.of(cache.get(key, () -> {
+				val result = loader.get();
+				count(cacheName, result.status().name().toLowerCase());
+				if (result.status() == Lookup.Status.FAILED) {
+					throw new LookupFailedException();
+				}
+				return result.value();
+			}));
+		} catch (Cache.ValueRetrievalException e) {
+			if (e.getCause() instanceof LookupFailedException) {
+				log.debug("Lookup of {} in {} failed, not caching", key, cacheName);
+				return Lookup.failed();
+			}
+			throw e;
+		}
+	}
+
+	// null both for absent and failed lookups
+	public <T> T get(String cacheName, Object key, Supplier<Lookup<T>> loader) {
+		return lookup(cacheName, key, loader).value();
+	}
+
+	// for upstreams which take many keys per call: cached keys are served from the cache, the others
+	// are loaded with one call of the loader. keys the loader returns no lookup for count as failed,
+	// absent and failed keys are left out of the result
+	@SuppressWarnings("unchecked")
+	public <K, T> Map<K, T> getAll(String cacheName, Collection<K> keys,
+			Function<List<K>, Map<K, Lookup<T>>> loader) {
+		val cache = cacheManager.getCache(cacheName);
+		val values = new HashMap<K, T>();
+		val missing = new ArrayList<K>();
+		for (val key : new LinkedHashSet<>(keys)) {
+			val cached = cache != null ? cache.get(key) : null;
+			if (cached == null) {
+				missing.add(key);
+			} else if (cached.get() != null) {
+				values.put(key, (T) cached.get());
+			}
+		}
+		if (missing.isEmpty()) {
+			return values;
+		}
+
+		val loaded = loader.apply(missing);
+		for (val key : missing) {
+			val result = loaded.getOrDefault(key, Lookup.failed());
+			count(cacheName, result.status().name().toLowerCase());
+			if (result.status() == Lookup.Status.FAILED) {
+				continue;
+			}
+			if (cache != null) {
+				cache.put(key, result.value());
+			}
+			if (result.value() != null) {
+				values.put(key, result.value());
+			}
+		}
+		return values;
+	}
+
+	private void count(String cacheName, String outcome) {
+		Counter.builder("payflow.cache.lookups")
+				.tag("cache", cacheName)
+				.tag("outcome", outcome)
+				.register(meterRegistry)
+				.increment();
+	}
+
+	// upstream calls log their own failures
+	private static class LookupFailedException extends RuntimeException {
+		LookupFailedException() {
+			super("lookup failed", null, false, false);
+		}
+	}
+
+	public record Lookup<T>(Status status, T value) {
+		public static <T> Lookup<T> of(T value) {
+			return value != null ? new Lookup<>(Status.FOUND, value) : absent();
+		}
+
+		public static <T> Lookup<T> absent() {
+			return new Lookup<>(Status.ABSENT, null);
+		}
+
+		public static <T> Lookup<T> failed() {
+			return new Lookup<>(Status.FAILED, null);
+		}
+
+		public enum Status {
+			FOUND, ABSENT, FAILED
+		}
+	}
+}
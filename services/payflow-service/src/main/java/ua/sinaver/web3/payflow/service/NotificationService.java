@@ -1,5 +1,7 @@
 package ua.sinaver.web3.payflow.service;
 
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.StringUtils;
@@ -55,6 +57,9 @@ public class NotificationService {
 	@Autowired
 	private LinkService linkService;
 
+	@Autowired
+	private ObservationRegistry observationRegistry;
+
 	public static String formatDouble(Double value) {
 		val df = new DecimalFormat("#.#####");
 		return df.format(value);
@@ -86,6 +91,16 @@ public class NotificationService {
 	}
 
 	public String reply(String text, String parentHash, List<Cast.Embed> embeds) {
+		return notificationObservation("cast_reply").observe(() -> castReply(text, parentHash, embeds));
+	}
+
+	// notification stage of the webhook -> bot job -> payment -> notification trace
+	private Observation notificationObservation(String type) {
+		return Observation.createNotStarted("payflow.pipeline.notification", observationRegistry)
+				.lowCardinalityKeyValue("type", type);
+	}
+
+	private String castReply(String text, String parentHash, List<Cast.Embed> embeds) {
 		if (isBotReplyEnabled) {
 			var response = hubService.cast(botSignerUuid, text, parentHash, embeds);
 			if (response != null && response.success() && response.cast() != null) {
@@ -102,6 +117,12 @@ public class NotificationService {
 	}
 
 	public void notifyPaymentCompletion(Payment payment, User user) {
+		notificationObservation("payment_completion")
+				.highCardinalityKeyValue("payment.reference", String.valueOf(payment.getReferenceId()))
+				.observe(() -> sendPaymentCompletion(payment, user));
+	}
+
+	private void sendPaymentCompletion(Payment payment, User user) {
 		if (!StringUtils.isBlank(payment.getHash()) || !StringUtils.isBlank(payment.getRefundHash())) {
 			val receiverFname = getReceiverUsername(payment);
 			if (StringUtils.isBlank(receiverFname)) {
@@ -6,6 +6,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.message.glide.GlideSessionResponse;
 
 @Service
@@ -14,9 +15,10 @@ public class PayWithGlideService {
 	private final WebClient webClient;
 
 	public PayWithGlideService(
+			UpstreamClientRegistry upstreams,
 			@Value("${payflow.glide.api.url}") String glideApiUrl,
 			@Value("${payflow.glide.api.key}") String apiKey) {
-		this.webClient = WebClient.builder()
+		this.webClient = upstreams.webClient(UpstreamClientRegistry.GLIDE)
 				.baseUrl(glideApiUrl)
 				.defaultHeader("x-glide-project-id", apiKey)
 				.build();
@@ -0,0 +1,77 @@
+package ua.sinaver.web3.payflow.service;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ua.sinaver.web3.payflow.config.ReadOnlyTransactional;
+import ua.sinaver.web3.payflow.dto.CursorPageMessage;
+import ua.sinaver.web3.payflow.dto.PaymentMessage;
+import ua.sinaver.web3.payflow.dto.PaymentRow;
+import ua.sinaver.web3.payflow.dto.WalletMessage;
+import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.repository.PaymentRepository;
+import ua.sinaver.web3.payflow.repository.WalletRepository;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// read path of payment listings: a page costs one query for the flat payment rows and
+// one for the wallets of all flows referenced by them, whatever the page size
+@Service
+@Slf4j
+public class PaymentListingService {
+	@Autowired
+	private PaymentRepository paymentRepository;
+	@Autowired
+	private WalletRepository walletRepository;
+
+	// rows in the order of ids, ids of removed payments are skipped
+	public List<PaymentRow> rows(List<Integer> paymentIds) {
+		if (paymentIds.isEmpty()) {
+			return List.of();
+		}
+		val rowsById = paymentRepository.findRowsByIdIn(paymentIds).stream()
+				.collect(Collectors.toMap(PaymentRow::getId, Function.identity()));
+		return paymentIds.stream()
+				.map(rowsById::get)
+				.filter(Objects::nonNull)
+				.toList();
+	}
+
+	public List<PaymentMessage> findByHashes(List<String> hashes, User senderOrReceiver) {
+		return messages(paymentRepository.findRowsByHashIn(hashes, senderOrReceiver), false, true);
+	}
+
+	@ReadOnlyTransactional
+	public CursorPageMessage<PaymentMessage> messages(CursorPageMessage<PaymentRow> page,
+			boolean includeRef, boolean includeComment) {
+		return new CursorPageMessage<>(messages(page.content(), includeRef, includeComment),
+				page.number(), page.last(), page.nextCursor());
+	}
+
+	public List<PaymentMessage> messages(List<PaymentRow> rows, boolean includeRef, boolean includeComment) {
+		val flowIds = new HashSet<Integer>();
+		rows.forEach(row -> {
+			if (row.getReceiverFlowId() != null) {
+				flowIds.add(row.getReceiverFlowId());
+			}
+			if (row.getReceiverDefaultFlowId() != null) {
+				flowIds.add(row.getReceiverDefaultFlowId());
+			}
+		});
+
+		val flowWallets = flowIds.isEmpty() ? Map.<Integer, List<WalletMessage>>of()
+				: walletRepository.findRowsByFlowIdIn(flowIds).stream()
+				.collect(Collectors.groupingBy(wallet -> wallet.getFlowId(),
+						Collectors.mapping(wallet -> new WalletMessage(wallet.getAddress(),
+										wallet.getNetwork(), wallet.getVersion(), Boolean.TRUE.equals(wallet.getDeployed())),
+								Collectors.toList())));
+
+		log.debug("Mapped {} payment rows with wallets of {} flows", rows.size(), flowIds.size());
+		return rows.stream()
+				.map(row -> PaymentMessage.convert(row, flowWallets, includeRef, includeComment))
+				.toList();
+	}
+}
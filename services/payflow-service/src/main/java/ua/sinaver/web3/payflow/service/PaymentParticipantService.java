@@ -0,0 +1,305 @@
+package ua.sinaver.web3.payflow.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.SessionEventListener;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ua.sinaver.web3.payflow.config.ReadOnlyTransactional;
+import ua.sinaver.web3.payflow.dto.CursorPageMessage;
+import ua.sinaver.web3.payflow.dto.PaymentRow;
+import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.entity.PaymentParticipant;
+import ua.sinaver.web3.payflow.entity.User;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static ua.sinaver.web3.payflow.entity.PaymentParticipant.*;
+
+@Service
+@Slf4j
+public class PaymentParticipantService {
+	private static final String DELETE_SQL = "DELETE FROM payment_participant WHERE payment_id = ?";
+	private static final String INSERT_SQL = "INSERT INTO payment_participant " +
+			"(participant_key, role, payment_id, status, sorted_at) VALUES (?, ?, ?, ?, ?)";
+
+	// one branch per (key, role, status): equality on the index prefix, so each branch is read
+	// in index order and stops at its limit, no temporary table or filesort. a payment has one
+	// sorted_at for all of its rows, the branches are merged and deduplicated by payment below
+	static final String LATEST_SQL = "(SELECT payment_id, sorted_at FROM payment_participant " +
+			"WHERE participant_key = ? AND role = ? AND status = ? " +
+			"ORDER BY sorted_at DESC, payment_id DESC LIMIT ?)";
+	static final String BEFORE_SQL = "(SELECT payment_id, sorted_at FROM payment_participant " +
+			"WHERE participant_key = ? AND role = ? AND status = ? " +
+			"AND (sorted_at < ? OR (sorted_at = ? AND payment_id < ?)) " +
+			"ORDER BY sorted_at DESC, payment_id DESC LIMIT ?)";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@PersistenceContext
+	private EntityManager entityManager;
+	@Autowired
+	private PaymentListingService paymentListingService;
+
+	public static List<PaymentParticipant> participants(Payment payment) {
+		val participants = new LinkedHashMap<String, PaymentParticipant>();
+		if (payment.getSender() != null) {
+			addParticipant(participants, payment, userKey(payment.getSender().getId()), Role.SENDER);
+		}
+		if (StringUtils.isNotBlank(payment.getSenderAddress())) {
+			addParticipant(participants, payment, addressKey(payment.getSenderAddress()), Role.SENDER);
+		}
+		if (payment.getReceiver() != null) {
+			addParticipant(participants, payment, userKey(payment.getReceiver().getId()), Role.RECEIVER);
+		}
+		if (StringUtils.isNotBlank(payment.getReceiverAddress())) {
+			addParticipant(participants, payment, addressKey(payment.getReceiverAddress()), Role.RECEIVER);
+		}
+		if (payment.getReceiverFid() != null) {
+			addParticipant(participants, payment, fidKey(payment.getReceiverFid()), Role.RECEIVER);
+		}
+		return new ArrayList<>(participants.values());
+	}
+
+	private static void addParticipant(Map<String, PaymentParticipant> participants, Payment payment,
+			String key, Role role) {
+		participants.putIfAbsent(role + "/" + key, new PaymentParticipant(key, role, payment.getId(),
+				payment.getStatus(), PaymentParticipant.sortedAt(payment)));
+	}
+
+	// called from the entity listener during flush. rows are collected for the session and
+	// written through plain jdbc on the same transactional connection once the flush ends,
+	// after hibernate executed its own batches, as one batched statement per flush
+	public void sync(Payment payment) {
+		if (payment.getId() == null) {
+			return;
+		}
+		val writes = ledgerWrites();
+		writes.deletes.add(payment.getId());
+		writes.inserts.put(payment.getId(), participants(payment));
+		writes.writeIfUnbound();
+	}
+
+	// new payments have no ledger rows yet, skip the delete
+	public void insert(Payment payment) {
+		if (payment.getId() == null) {
+			return;
+		}
+		val writes = ledgerWrites();
+		writes.inserts.put(payment.getId(), participants(payment));
+		writes.writeIfUnbound();
+	}
+
+	public void remove(Integer paymentId) {
+		if (paymentId == null) {
+			return;
+		}
+		val writes = ledgerWrites();
+		writes.deletes.add(paymentId);
+		writes.inserts.remove(paymentId);
+		writes.writeIfUnbound();
+	}
+
+	// bound to the session of the current transaction, an inner transaction has its own session
+	// and so its own writes. without a transaction rows are written right away
+	private LedgerWrites ledgerWrites() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return new LedgerWrites(false);
+		}
+		val session = entityManager.unwrap(SharedSessionContractImplementor.class);
+		var writes = (LedgerWrites) TransactionSynchronizationManager.getResource(session);
+		if (writes == null) {
+			val bound = new LedgerWrites(true);
+			session.getEventListenerManager().addListener(bound);
+			TransactionSynchronizationManager.bindResource(session, bound);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(session);
+				}
+			});
+			writes = bound;
+		}
+		return writes;
+	}
+
+	private void write(Collection<Integer> deletes, List<PaymentParticipant> participants) {
+		if (!deletes.isEmpty()) {
+			jdbcTemplate.batchUpdate(DELETE_SQL, deletes, deletes.size(),
+					(ps, paymentId) -> ps.setInt(1, paymentId));
+		}
+		if (!participants.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT_SQL, participants, participants.size(), (ps, participant) -> {
+				ps.setString(1, participant.getParticipantKey());
+				ps.setString(2, participant.getRole().name());
+				ps.setInt(3, participant.getPaymentId());
+				ps.setString(4, participant.getStatus().name());
+				ps.setTimestamp(5, Timestamp.from(participant.getSortedAt()));
+			});
+		}
+		log.trace("Wrote ledger rows: {} payments deleted, {} rows inserted", deletes.size(),
+				participants.size());
+	}
+
+	private class LedgerWrites implements SessionEventListener {
+		private final boolean bound;
+		private final Set<Integer> deletes = new LinkedHashSet<>();
+		private final Map<Integer, List<PaymentParticipant>> inserts = new LinkedHashMap<>();
+
+		private LedgerWrites(boolean bound) {
+			this.bound = bound;
+		}
+
+		@Override
+		public void flushEnd(int numberOfEntities, int numberOfCollections) {
+			write();
+		}
+
+		@Override
+		public void partialFlushEnd(int numberOfEntities, int numberOfCollections) {
+			write();
+		}
+
+		private void writeIfUnbound() {
+			if (!bound) {
+				write();
+			}
+		}
+
+		private void write() {
+			if (deletes.isEmpty() && inserts.isEmpty()) {
+				return;
+			}
+			val participants = inserts.values().stream().flatMap(List::stream).toList();
+			val paymentIds = List.copyOf(deletes);
+			deletes.clear();
+			inserts.clear();
+			PaymentParticipantService.this.write(paymentIds, participants);
+		}
+	}
+
+	@ReadOnlyTransactional
+	public CursorPageMessage<PaymentRow> findCompleted(User user, List<String> addresses, Integer fid,
+			String cursor, int page, int size) {
+		val keys = new ArrayList<String>();
+		keys.add(userKey(user.getId()));
+		addresses.forEach(address -> keys.add(addressKey(address)));
+		if (fid != null) {
+			keys.add(fidKey(fid));
+		}
+		return find(keys, List.of(Role.SENDER, Role.RECEIVER),
+				List.of(Payment.PaymentStatus.COMPLETED), cursor, page, size);
+	}
+
+	@ReadOnlyTransactional
+	public CursorPageMessage<PaymentRow> findOutbound(User user, List<String> addresses,
+			List<Payment.PaymentStatus> statuses, String cursor, int page, int size) {
+		val keys = new ArrayList<String>();
+		keys.add(userKey(user.getId()));
+		addresses.forEach(address -> keys.add(addressKey(address)));
+		return find(keys, List.of(Role.SENDER), statuses, cursor, page, size);
+	}
+
+	private CursorPageMessage<PaymentRow> find(List<String> keys, List<Role> roles,
+			List<Payment.PaymentStatus> statuses, String cursor, int page, int size) {
+		if (statuses == null || statuses.isEmpty() || size <= 0) {
+			return CursorPageMessage.empty();
+		}
+
+		val position = decodeCursor(cursor);
+		List<Integer> paymentIds;
+		boolean last;
+		if (position != null || page == 0) {
+			// keyset: fetch one more row to find out whether there is a next page
+			paymentIds = findPaymentIds(keys, roles, statuses, position, 0, size + 1);
+			last = paymentIds.size() <= size;
+			paymentIds = paymentIds.subList(0, Math.min(size, paymentIds.size()));
+		} else {
+			// offset fallback for clients without cursor support, still without count query
+			paymentIds = findPaymentIds(keys, roles, statuses, null, page * size, size);
+			last = paymentIds.size() < size;
+		}
+
+		val payments = paymentListingService.rows(paymentIds);
+
+		val nextCursor = last || payments.isEmpty() ? null : encodeCursor(payments.getLast());
+		log.debug("Fetched {} payments for keys {} with cursor {}, next: {}", payments.size(), keys,
+				cursor, nextCursor);
+		return new CursorPageMessage<>(payments, page, last, nextCursor);
+	}
+
+	// the first offset + limit distinct payments are among the first offset + limit rows of
+	// every branch: rows of a branch above a payment are other payments sorted above it
+	private List<Integer> findPaymentIds(List<String> keys, List<Role> roles,
+			List<Payment.PaymentStatus> statuses, CursorPosition position, int offset, int limit) {
+		val branchLimit = offset + limit;
+		val branches = new ArrayList<String>();
+		val args = new ArrayList<Object>();
+		for (val key : keys) {
+			for (val role : roles) {
+				for (val status : new LinkedHashSet<>(statuses)) {
+					args.add(key);
+					args.add(role.name());
+					args.add(status.name());
+					if (position != null) {
+						val sortedAt = Timestamp.from(position.sortedAt());
+						args.add(sortedAt);
+						args.add(sortedAt);
+						args.add(position.paymentId());
+					}
+					args.add(branchLimit);
+					branches.add(position != null ? BEFORE_SQL : LATEST_SQL);
+				}
+			}
+		}
+
+		val rows = jdbcTemplate.query(String.join(" UNION ALL ", branches),
+				(rs, rowNum) -> new CursorPosition(rs.getTimestamp("sorted_at").toInstant(),
+						rs.getInt("payment_id")),
+				args.toArray());
+		return rows.stream()
+				.sorted(Comparator.comparing(CursorPosition::sortedAt)
+						.thenComparing(CursorPosition::paymentId).reversed())
+				.map(CursorPosition::paymentId)
+				.distinct()
+				.skip(offset)
+				.limit(limit)
+				.toList();
+	}
+
+	// cursor format: <sorted_at epoch micros>_<payment id>
+	private static String encodeCursor(PaymentRow payment) {
+		return String.format("%d_%d",
+				ChronoUnit.MICROS.between(Instant.EPOCH, payment.getCompletedAt() != null
+						? payment.getCompletedAt() : payment.getCreatedAt()),
+				payment.getId());
+	}
+
+	private static CursorPosition decodeCursor(String cursor) {
+		if (StringUtils.isBlank(cursor)) {
+			return null;
+		}
+		try {
+			val parts = cursor.split("_");
+			return new CursorPosition(
+					Instant.EPOCH.plus(Long.parseLong(parts[0]), ChronoUnit.MICROS),
+					Integer.parseInt(parts[1]));
+		} catch (RuntimeException e) {
+			log.warn("Invalid payments cursor: {}", cursor);
+			return null;
+		}
+	}
+
+	private record CursorPosition(Instant sortedAt, Integer paymentId) {
+	}
+}
@@ -1,5 +1,8 @@
 package ua.sinaver.web3.payflow.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
@@ -10,6 +13,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.event.TransactionalEventListener;
 import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.entity.PaymentMetricsListener;
 import ua.sinaver.web3.payflow.entity.User;
 import ua.sinaver.web3.payflow.entity.Wallet;
 import ua.sinaver.web3.payflow.events.CastEvent;
@@ -18,6 +22,7 @@ import ua.sinaver.web3.payflow.message.FramePaymentMessage;
 import ua.sinaver.web3.payflow.message.Token;
 import ua.sinaver.web3.payflow.message.farcaster.Cast;
 import ua.sinaver.web3.payflow.message.glide.GlideSessionResponse;
+import ua.sinaver.web3.payflow.repository.PaymentParticipantRepository;
 import ua.sinaver.web3.payflow.repository.PaymentRepository;
 
 import java.text.DecimalFormat;
@@ -52,6 +57,16 @@ public class PaymentService {
 	private ApplicationEventPublisher eventPublisher;
 	@Autowired
 	private LinkService linkService;
+	@Autowired
+	private PaymentParticipantRepository paymentParticipantRepository;
+	@Autowired
+	private StateTransitionRunner stateTransitionRunner;
+	@Autowired
+	private SchedulerShardService schedulerShardService;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private ObservationRegistry observationRegistry;
 
 	public static String formatNumberWithSuffix(String numberStr) {
 		double number = Double.parseDouble(numberStr);
@@ -81,7 +96,7 @@ public class PaymentService {
 		log.debug("Processing created payments event: {}", event);
 		try {
 			val payments = paymentRepository.findWithLockByIds(event.ids());
-			processBatchSessionIntentPayments(payments);
+			paymentObservation("batch").observe(() -> processBatchSessionIntentPayments(payments));
 		} catch (Exception e) {
 			log.error("Failed to process created payments event: {}", event, e);
 		}
@@ -237,40 +252,53 @@ public class PaymentService {
 
 	@Scheduled(fixedRate = 4 * 60 * 60 * 1000, initialDelay = 5 * 60 * 1000)
 	// Run every 4 hours, with 5 minutes initial delay
+	// no outer transaction, every chunk is committed separately by the runner
+	@Transactional(Transactional.TxType.NOT_SUPPORTED)
 	public void expireOldPayments() {
-		log.info("Starting expiration of old payments");
-		val oneMonthAgo = Instant.now().minus(7, ChronoUnit.DAYS);
-
-		try (val oldPayments = paymentRepository
-				.findExpiredPaymentsWithLock(Payment.PaymentStatus.CREATED, oneMonthAgo)) {
-			val expiredPayments = oldPayments
-					.peek(payment -> {
-						payment.setStatus(Payment.PaymentStatus.EXPIRED);
-						payment.setCompletedAt(Instant.now());
-						log.debug("Expiring old payment: {}", payment.getId());
-					})
-					.toList();
-
-			if (!expiredPayments.isEmpty()) {
-				paymentRepository.saveAll(expiredPayments);
-				log.info("Expired {} old payments", expiredPayments.size());
-			} else {
-				log.info("No old payments to expire");
-			}
+		val shards = schedulerShardService.shards();
+		if (shards.isEmpty()) {
+			log.debug("No scheduler shards owned, skipping expiration of old payments");
+			return;
 		}
+		log.info("Starting expiration of old payments");
+		val createdBefore = Instant.now().minus(7, ChronoUnit.DAYS);
+
+		val expired = stateTransitionRunner.run("payments_expiry",
+				limit -> paymentRepository.findExpiredPaymentIdsForUpdate(
+						Payment.PaymentStatus.CREATED.name(), createdBefore, Instant.now(),
+						shards.owned(), limit),
+				ids -> {
+					val completedAt = Instant.now();
+					val updated = paymentRepository.updateStatusByIds(ids,
+							Payment.PaymentStatus.EXPIRED, completedAt);
+					paymentParticipantRepository.updateStatusByPaymentIds(ids,
+							Payment.PaymentStatus.EXPIRED, completedAt);
+					PaymentMetricsListener.transitioned(meterRegistry, Payment.PaymentStatus.CREATED,
+							Payment.PaymentStatus.EXPIRED, updated);
+					log.debug("Expired old payments: {}", ids);
+					return updated;
+				});
 
-		log.info("Finished expiration process");
+		log.info("Finished expiration process, expired {} old payments", expired);
 	}
 
 	@Scheduled(fixedRate = 15 * 60 * 1000, initialDelay = 15 * 1000)
 	public void scheduledInProgressCheck() {
+		val shards = schedulerShardService.shards();
+		if (shards.isEmpty()) {
+			log.debug("No scheduler shards owned, skipping in-progress and pending_refund payments");
+			return;
+		}
 		log.info("Starting to process in-progress and pending_refund payments");
 		val paymentsToProcess = paymentRepository.findTop5ByStatusInWithLock(
-				List.of(Payment.PaymentStatus.INPROGRESS, Payment.PaymentStatus.PENDING_REFUND));
+				List.of(Payment.PaymentStatus.INPROGRESS, Payment.PaymentStatus.PENDING_REFUND),
+				shards.owned());
 
 		paymentsToProcess.forEach(payment -> {
 			try {
-				updatedPaymentFulfillmentStatus(payment);
+				paymentObservation("fulfillment")
+						.highCardinalityKeyValue("payment.reference", payment.getReferenceId())
+						.observe(() -> updatedPaymentFulfillmentStatus(payment));
 			} catch (Exception e) {
 				log.error("Error processing payment {}", payment.getReferenceId(), e);
 			}
@@ -357,12 +385,19 @@ public class PaymentService {
 	@Scheduled(fixedRate = 30 * 1000, initialDelay = 15 * 1000)
 	// Every 30 seconds, with 15s initial delay
 	public void scheduledSessionIntentsProcessing() {
+		val shards = schedulerShardService.shards();
+		if (shards.isEmpty()) {
+			log.debug("No scheduler shards owned, skipping session intent payments");
+			return;
+		}
 		log.info("Starting to process session intent payments");
-		val paymentsToProcess = paymentRepository.findSessionIntentPaymentsWithLock(10);
+		val paymentsToProcess = paymentRepository.findSessionIntentPaymentsWithLock(shards.owned(), 10);
 
 		paymentsToProcess.forEach(payment -> {
 			try {
-				processSessionIntentPayment(payment);
+				paymentObservation("session_intent")
+						.highCardinalityKeyValue("payment.reference", payment.getReferenceId())
+						.observe(() -> processSessionIntentPayment(payment));
 			} catch (Exception e) {
 				log.error("Error processing session intent payment {}", payment.getReferenceId(), e);
 			}
@@ -399,6 +434,12 @@ public class PaymentService {
 		}
 	}
 
+	// payment execution stage of the webhook -> bot job -> payment -> notification trace
+	private Observation paymentObservation(String flow) {
+		return Observation.createNotStarted("payflow.pipeline.payment", observationRegistry)
+				.lowCardinalityKeyValue("flow", flow);
+	}
+
 	public double getTokenAmount(FramePaymentMessage paymentMessage, TransactionService transactionService) {
 		return paymentMessage.tokenAmount() != null ? paymentMessage.tokenAmount()
 				: paymentMessage.usdAmount() / tokenPriceService.getPrices().get(paymentMessage.token());
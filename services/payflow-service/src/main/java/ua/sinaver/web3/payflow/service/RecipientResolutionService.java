@@ -0,0 +1,73 @@
+package ua.sinaver.web3.payflow.service;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ua.sinaver.web3.payflow.entity.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// receivers of the recipients of a bot payment, resolved together, so a payment to many
+// recipients costs about the same as one to a single recipient: payflow profiles behind all
+// recipients' addresses are read with one query, and the addresses of recipients without a
+// profile are scored with one bulk social metadata call
+@Slf4j
+@Service
+public class RecipientResolutionService {
+	@Autowired
+	private IdentityService identityService;
+	@Autowired
+	private PaymentService paymentService;
+
+	// receivers in the order of the recipients
+	public List<Receiver> resolve(List<Recipient> recipients) {
+		val profiles = identityService.getProfilesByIdentities(recipients.stream()
+				.flatMap(recipient -> recipient.addresses().stream())
+				.toList());
+
+		// the profile of the first address which has one, same as getProfilesByAddresses
+		val recipientProfiles = recipients.stream()
+				.map(recipient -> recipient.addresses().stream()
+						.map(address -> profiles.get(address.toLowerCase()))
+						.filter(Objects::nonNull)
+						.findFirst()
+						.orElse(null))
+				.toList();
+
+		// profiles without a receiving address on the chain fall back to scoring, as without a profile
+		val addresses = new ArrayList<String>(recipients.size());
+		val unresolved = new ArrayList<List<String>>();
+		for (int i = 0; i < recipients.size(); i++) {
+			val profile = recipientProfiles.get(i);
+			val address = profile != null
+					? paymentService.getUserReceiverAddress(profile, recipients.get(i).chainId())
+					: null;
+			addresses.add(address);
+			if (address == null) {
+				unresolved.add(recipients.get(i).addresses());
+			}
+		}
+		val scored = unresolved.isEmpty()
+				? List.<String>of()
+				: identityService.getHighestScoredIdentities(unresolved);
+
+		val receivers = new ArrayList<Receiver>(recipients.size());
+		var next = 0;
+		for (int i = 0; i < recipients.size(); i++) {
+			val address = addresses.get(i) != null ? addresses.get(i) : scored.get(next++);
+			receivers.add(new Receiver(recipientProfiles.get(i), address));
+		}
+		log.debug("Resolved receivers of {} recipients, {} scored", recipients.size(), unresolved.size());
+		return receivers;
+	}
+
+	public record Recipient(List<String> addresses, Integer chainId) {
+	}
+
+	// address is null when none of the recipient's addresses could be scored
+	public record Receiver(User profile, String address) {
+	}
+}
@@ -0,0 +1,74 @@
+package ua.sinaver.web3.payflow.service;
+
+import com.google.common.base.Suppliers;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.entity.bot.PaymentBotJob;
+import ua.sinaver.web3.payflow.repository.PaymentBotJobRepository;
+import ua.sinaver.web3.payflow.repository.PaymentRepository;
+import ua.sinaver.web3.payflow.repository.StorageNotificationRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// backlog of the scheduled jobs as payflow.scheduler.backlog{job}, run durations come from
+// the built-in tasks.scheduled.execution observation. counts hit the database, so they are
+// cached between scrapes
+@Slf4j
+@Component
+public class SchedulerMetrics {
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private PaymentRepository paymentRepository;
+	@Autowired
+	private PaymentBotJobRepository paymentBotJobRepository;
+	@Autowired
+	private StorageNotificationRepository storageNotificationRepository;
+	@Autowired
+	private TokenPriceService tokenPriceService;
+
+	@Value("${payflow.metrics.scheduler.backlog-refresh:1m}")
+	private Duration backlogRefresh;
+
+	@PostConstruct
+	void registerBacklogGauges() {
+		backlog("payments_session_intents", () -> paymentRepository.countByStatusInAndTypeIn(
+				List.of(Payment.PaymentStatus.CREATED), List.of(Payment.PaymentType.SESSION_INTENT)));
+		backlog("payments_fulfillment", () -> paymentRepository.countByStatusIn(
+				List.of(Payment.PaymentStatus.INPROGRESS, Payment.PaymentStatus.PENDING_REFUND)));
+		backlog("payments_expiry", () -> paymentRepository.countExpiredPayments(
+				Payment.PaymentStatus.CREATED.name(), Instant.now().minus(7, ChronoUnit.DAYS), Instant.now()));
+		backlog("bot_jobs", () -> paymentBotJobRepository.countByStatus(PaymentBotJob.Status.CREATED));
+		backlog("storage_notifications", () -> storageNotificationRepository.countDueStorageNotifications(
+				Instant.now().minus(7, ChronoUnit.DAYS)));
+		backlog("token_prices", tokenPriceService::countMissingPrices);
+	}
+
+	private void backlog(String job, Supplier<Long> count) {
+		val cached = Suppliers.memoizeWithExpiration(() -> {
+			try {
+				return count.get().doubleValue();
+			} catch (RuntimeException e) {
+				log.warn("Failed to count {} backlog: {}", job, e.getMessage());
+				return Double.NaN;
+			}
+		}, backlogRefresh.toMillis(), TimeUnit.MILLISECONDS);
+
+		Gauge.builder("payflow.scheduler.backlog", cached, Supplier::get)
+				.tag("job", job)
+				.strongReference(true)
+				.register(meterRegistry);
+	}
+}
@@ -0,0 +1,134 @@
+package ua.sinaver.web3.payflow.service;
+
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.sinaver.web3.payflow.repository.SchedulerInstanceRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+// partitions the work of the scheduled jobs between the running instances: rows are split into
+// SHARDS shards by their stored shard column, MOD(id, 16) (of fid for storage notifications),
+// indexed after the columns each job filters on, so the jobs' locking reads only scan and lock
+// rows of the shards they own. each shard is owned by one live instance,
+// picked by rendezvous hashing of shard and instance id, so an instance joining or leaving
+// only moves the shards it gains or loses. membership is a heartbeat row per instance, those
+// which missed heartbeats for the instance ttl are gone. views of the membership may differ
+// for up to a heartbeat interval, in which two instances can own the same shard - the jobs'
+// SKIP LOCKED row locks keep them from processing the same rows
+@Slf4j
+@Service
+public class SchedulerShardService {
+	// part of the schema: the generated shard columns of the sharded tables use the same modulus
+	public static final int SHARDS = 16;
+
+	@Autowired
+	private SchedulerInstanceRepository schedulerInstanceRepository;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${payflow.scheduler.instance-ttl:PT30S}")
+	private Duration instanceTtl;
+
+	private final String instanceId = UUID.randomUUID().toString();
+
+	private volatile Shards shards = new Shards(List.of());
+	private volatile int instances;
+	private volatile long heartbeatAtNanos;
+
+	@PostConstruct
+	void registerGauges() {
+		Gauge.builder("payflow.scheduler.shards", this, service -> service.shards().owned().size())
+				.register(meterRegistry);
+		Gauge.builder("payflow.scheduler.instances", this, service -> service.instances)
+				.register(meterRegistry);
+	}
+
+	@Scheduled(initialDelay = 0, fixedDelayString = "${payflow.scheduler.heartbeat-interval:PT10S}")
+	public void heartbeat() {
+		val template = new TransactionTemplate(transactionManager);
+		try {
+			val live = template.execute(status -> {
+				schedulerInstanceRepository.heartbeat(instanceId);
+				schedulerInstanceRepository.deleteExpired(instanceTtl.toSeconds() * 10);
+				return schedulerInstanceRepository.findLiveInstanceIds(instanceTtl.toSeconds());
+			});
+			if (live == null) {
+				return;
+			}
+
+			val owned = assign(instanceId, live, SHARDS);
+			if (!owned.equals(shards.owned()) || live.size() != instances) {
+				log.info("Scheduler instance {} owns shards {} of {}, {} live instances", instanceId, owned,
+						SHARDS, live.size());
+			}
+			shards = new Shards(owned);
+			instances = live.size();
+			heartbeatAtNanos = System.nanoTime();
+		} catch (RuntimeException e) {
+			log.warn("Scheduler heartbeat of {} failed: {}", instanceId, e.getMessage());
+		}
+	}
+
+	// others take over the shards on their next heartbeat instead of after the ttl
+	@PreDestroy
+	void leave() {
+		try {
+			schedulerInstanceRepository.deleteById(instanceId);
+		} catch (RuntimeException e) {
+			log.warn("Failed to remove scheduler instance {}: {}", instanceId, e.getMessage());
+		}
+	}
+
+	// shards of this instance, none before the first heartbeat or when heartbeats failed for the
+	// ttl, as the others consider it gone by then
+	public Shards shards() {
+		if (shards.owned().isEmpty() || System.nanoTime() - heartbeatAtNanos > instanceTtl.toNanos()) {
+			return new Shards(List.of());
+		}
+		return shards;
+	}
+
+	static List<Integer> assign(String instanceId, List<String> instances, int shardCount) {
+		return IntStream.range(0, shardCount)
+				.filter(shard -> instances.stream()
+						.max(Comparator.comparingLong((String instance) -> weight(instance, shard))
+								.thenComparing(Comparator.naturalOrder()))
+						.map(instanceId::equals)
+						.orElse(false))
+				.boxed()
+				.toList();
+	}
+
+	private static long weight(String instance, int shard) {
+		return Hashing.murmur3_128().newHasher()
+				.putString(instance, StandardCharsets.UTF_8)
+				.putInt(shard)
+				.hash()
+				.asLong();
+	}
+
+	// rows of a job belong to the owned shards when shard IN owned
+	public record Shards(List<Integer> owned) {
+		public boolean isEmpty() {
+			return owned.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package ua.sinaver.web3.payflow.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.transaction.Transactional;
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.entity.Wallet;
+import ua.sinaver.web3.payflow.repository.PaymentRepository;
+import ua.sinaver.web3.payflow.repository.WalletRepository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+// funds checks of session funded bot payments: token balances of session wallets are cached for a
+// short while, and what the wallet's session intents still hold is taken off them. held are the
+// intents which aren't sent yet, and the ones sent after the balance was fetched, both read from
+// the database, so every instance sees the same and an intent stops holding funds as soon as it's
+// sent, fails, expires or is cancelled. checks of the same wallet wait on a lock of its row until
+// the transaction which creates the intent ends
+@Service
+public class SessionBalanceService {
+	private final Cache<BalanceKey, Balance> balances;
+
+	@Autowired
+	private WalletService walletService;
+	@Autowired
+	private TokenPriceService tokenPriceService;
+	@Autowired
+	private PaymentRepository paymentRepository;
+	@Autowired
+	private WalletRepository walletRepository;
+
+	public SessionBalanceService(@Value("${payflow.session.balance.ttl:PT15S}") Duration balanceTtl) {
+		this.balances = Caffeine.newBuilder()
+				.expireAfterWrite(balanceTtl)
+				.maximumSize(10_000)
+				.build();
+	}
+
+	// whether the wallet's balance, less what its session intents hold, covers the amount of the
+	// payment. the payment holds it once it's saved as a session intent in the same transaction.
+	// available is what was left before, null when the balance isn't known
+	@Transactional(Transactional.TxType.MANDATORY)
+	public Funds tryReserve(Payment payment, Wallet wallet, String tokenAddress, BigDecimal amount) {
+		return tryReserve(payment, List.of(), wallet, tokenAddress, amount);
+	}
+
+	// unsaved are session intents of the same command which are saved together with the payment
+	@Transactional(Transactional.TxType.MANDATORY)
+	public Funds tryReserve(Payment payment, List<Payment> unsaved, Wallet wallet, String tokenAddress,
+			BigDecimal amount) {
+		val key = new BalanceKey(wallet.getAddress().toLowerCase(), payment.getNetwork(),
+				tokenAddress != null ? tokenAddress.toLowerCase() : null);
+		val balance = balance(key);
+		if (balance == null) {
+			return new Funds(false, null);
+		}
+
+		walletRepository.findWithLockById(wallet.getId());
+		val held = Stream.concat(paymentRepository.findSessionIntentsHoldingFunds(wallet,
+								payment.getNetwork(), payment.getToken(), balance.fetchedAt()).stream()
+						.filter(intent -> !intent.getId().equals(payment.getId())),
+				unsaved.stream()
+						.filter(intent -> intent != payment
+								&& intent.getType() == Payment.PaymentType.SESSION_INTENT
+								&& intent.getNetwork().equals(payment.getNetwork())
+								&& intent.getToken().equals(payment.getToken())))
+				.map(this::tokenAmount)
+				.reduce(BigDecimal.ZERO, BigDecimal::add);
+		val available = balance.amount().subtract(held);
+		if (available.compareTo(amount) < 0) {
+			return new Funds(false, available.max(BigDecimal.ZERO));
+		}
+		return new Funds(true, available);
+	}
+
+	private Balance balance(BalanceKey key) {
+		return balances.get(key, k -> {
+			val fetchedAt = Instant.now();
+			val balance = walletService.getTokenBalance(k.walletAddress(), k.chainId(), k.tokenAddress());
+			return balance != null ? new Balance(new BigDecimal(balance.formatted()), fetchedAt) : null;
+		});
+	}
+
+	private BigDecimal tokenAmount(Payment payment) {
+		return StringUtils.isNotBlank(payment.getTokenAmount()) ? new BigDecimal(payment.getTokenAmount())
+				: BigDecimal.valueOf(Double.parseDouble(payment.getUsdAmount())
+						/ tokenPriceService.getPrices().get(payment.getToken()));
+	}
+
+	public record Funds(boolean reserved, BigDecimal available) {
+	}
+
+	private record BalanceKey(String walletAddress, Integer chainId, String tokenAddress) {
+	}
+
+	private record Balance(BigDecimal amount, Instant fetchedAt) {
+	}
+}
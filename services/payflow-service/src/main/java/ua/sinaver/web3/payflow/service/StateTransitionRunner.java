@@ -0,0 +1,111 @@
+package ua.sinaver.web3.payflow.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.sinaver.web3.payflow.events.StateTransitionEvent;
+
+import java.util.List;
+
+// runs set-based state transitions in bounded chunks: each chunk selects ids
+// with SKIP LOCKED and updates them in its own short transaction, so a large
+// backlog never hydrates entities or holds row locks for the whole pass
+@Service
+@Slf4j
+public class StateTransitionRunner {
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${payflow.transitions.chunk-size:500}")
+	private int chunkSize;
+
+	@Value("${payflow.transitions.max-chunks:100}")
+	private int maxChunks;
+
+	public int run(String job, ChunkSelector selector, ChunkUpdater updater) {
+		val template = new TransactionTemplate(transactionManager);
+		template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		val chunkTimer = Timer.builder("payflow.transitions.chunk")
+				.tag("job", job)
+				.register(meterRegistry);
+		val rowsCounter = Counter.builder("payflow.transitions.rows")
+				.tag("job", job)
+				.register(meterRegistry);
+		val failuresCounter = Counter.builder("payflow.transitions.failures")
+				.tag("job", job)
+				.register(meterRegistry);
+
+		int total = 0;
+		int chunks = 0;
+		while (chunks < maxChunks) {
+			ChunkResult result;
+			try {
+				result = chunkTimer.record(() -> template.execute(status -> {
+					val ids = selector.select(chunkSize);
+					if (ids.isEmpty()) {
+						return new ChunkResult(0, 0);
+					}
+					val updated = updater.update(ids);
+					// published inside the chunk transaction, so transactional
+					// listeners only see ids of committed chunks
+					eventPublisher.publishEvent(new StateTransitionEvent(job, ids));
+					return new ChunkResult(ids.size(), updated);
+				}));
+			} catch (RuntimeException e) {
+				failuresCounter.increment();
+				log.error("Transition job {} failed on chunk {}, stopping after {} rows", job, chunks + 1,
+						total, e);
+				break;
+			}
+
+			if (result == null || result.selected() == 0) {
+				break;
+			}
+
+			chunks++;
+			total += result.updated();
+			rowsCounter.increment(result.updated());
+			log.debug("Transition job {} chunk {}: selected {}, updated {}", job, chunks,
+					result.selected(), result.updated());
+
+			if (result.selected() < chunkSize) {
+				break;
+			}
+		}
+
+		if (chunks == maxChunks) {
+			log.warn("Transition job {} reached max chunks {}, remaining rows are left for the next run",
+					job, maxChunks);
+		}
+		log.info("Transition job {} updated {} rows in {} chunks", job, total, chunks);
+		return total;
+	}
+
+	@FunctionalInterface
+	public interface ChunkSelector {
+		// must lock the returned rows, e.g. FOR UPDATE SKIP LOCKED
+		List<Integer> select(int limit);
+	}
+
+	@FunctionalInterface
+	public interface ChunkUpdater {
+		int update(List<Integer> ids);
+	}
+
+	private record ChunkResult(int selected, int updated) {
+	}
+}
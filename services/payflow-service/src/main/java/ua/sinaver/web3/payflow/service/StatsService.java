@@ -9,6 +9,7 @@ import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import ua.sinaver.web3.payflow.config.ReadOnlyTransactional;
 import ua.sinaver.web3.payflow.entity.ActiveUsersStats;
 import ua.sinaver.web3.payflow.message.DailyStats;
 import ua.sinaver.web3.payflow.repository.ActiveUsersStatsRepository;
@@ -61,7 +62,8 @@ public class StatsService {
 		log.info("Hyper Subscriptions: {}", stats.hypersubMonthsSubscribed());
 	}
 
-	@Cacheable(value = DAILY_STATS_CACHE, key = "'current'")
+	@Cacheable(value = DAILY_STATS_CACHE, key = "'current'", sync = true)
+	@ReadOnlyTransactional
 	public DailyStats fetchDailyStats() {
 		log.debug("Fetching daily stats from database");
 		val numberOfUsers = userRepository.count();
@@ -90,6 +92,7 @@ public class StatsService {
 				hyperSubscriptions);
 	}
 
+	@ReadOnlyTransactional
 	public List<ActiveUsersStats> fetchActiveUsersStats() {
 		return activeUsersStatsRepository.findAll();
 	}
@@ -4,10 +4,12 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.message.CryptoPrice;
 import ua.sinaver.web3.payflow.message.Token;
 import ua.sinaver.web3.payflow.message.TokenPriceResponse;
@@ -34,9 +36,13 @@ public class TokenPriceService {
 	@Autowired
 	private TokenService tokenService;
 
-	public TokenPriceService(WebClient.Builder webClientBuilder) {
-		coinGeckoWebClient = webClientBuilder.baseUrl("https://api.coingecko.com/api/v3").build();
-		geckoTerminalWebClient = webClientBuilder.baseUrl("https://api.geckoterminal.com/api/v2").build();
+	public TokenPriceService(UpstreamClientRegistry upstreams,
+			@Value("${payflow.coingecko.api.url}") String coinGeckoApiUrl,
+			@Value("${payflow.geckoterminal.api.url}") String geckoTerminalApiUrl) {
+		coinGeckoWebClient = upstreams.webClient(UpstreamClientRegistry.COINGECKO)
+				.baseUrl(coinGeckoApiUrl).build();
+		geckoTerminalWebClient = upstreams.webClient(UpstreamClientRegistry.GECKOTERMINAL)
+				.baseUrl(geckoTerminalApiUrl).build();
 
 	}
 
@@ -44,6 +50,13 @@ public class TokenPriceService {
 		return PRICE_CHAIN_NAMES.getOrDefault(chainId, chainName);
 	}
 
+	// tokens still waiting for their first price, reported as the scheduler backlog
+	public long countMissingPrices() {
+		return tokenService.getTokens().stream()
+				.filter(token -> token.tokenAddress() != null && !prices.containsKey(token.id()))
+				.count();
+	}
+
 	@Scheduled(initialDelay = 0, fixedRate = 60 * 1000)
 	public void fetchPrices() {
 		val ethereum = "ethereum";
@@ -11,6 +11,7 @@ import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
 import org.web3j.crypto.WalletUtils;
 import ua.sinaver.web3.payflow.config.PayflowConfig;
+import ua.sinaver.web3.payflow.config.SecondLevelCacheEvictions;
 import ua.sinaver.web3.payflow.entity.Invitation;
 import ua.sinaver.web3.payflow.entity.User;
 import ua.sinaver.web3.payflow.dto.FlowMessage;
@@ -18,6 +19,8 @@ import ua.sinaver.web3.payflow.message.IdentityMessage;
 import ua.sinaver.web3.payflow.dto.ProfileMessage;
 import ua.sinaver.web3.payflow.message.WalletProfileRequestMessage;
 import ua.sinaver.web3.payflow.message.farcaster.FarcasterUser;
+import ua.sinaver.web3.payflow.quota.QuotaProperties;
+import ua.sinaver.web3.payflow.quota.QuotaService;
 import ua.sinaver.web3.payflow.repository.InvitationRepository;
 import ua.sinaver.web3.payflow.repository.UserRepository;
 import ua.sinaver.web3.payflow.service.api.IUserService;
@@ -36,9 +39,6 @@ import static ua.sinaver.web3.payflow.config.CacheConfig.USER_FLOWS_CACHE;
 public class UserService implements IUserService {
 
 	private static final Pattern USERNAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_-]*$");
-	private static final List<String> EARLY_FEATURE_ACCESS_USERS = Arrays.asList(
-			"sinaver", "konrad", "kurtlarsen",
-			"pirosb3", "pembe", "haole", "cashlessman", "accountless", "deodad", "skllzrmy", "amet");
 	private static final List<String> PRO_FEATURE_ACCESS_USERS = Arrays.asList(
 			"sinaver", "pembe", "haole");
 	@Autowired
@@ -56,8 +56,15 @@ public class UserService implements IUserService {
 	@Autowired
 	private PayflowConfig payflowConfig;
 
-	public List<String> getEarlyFeatureAccessUsers() {
-		return EARLY_FEATURE_ACCESS_USERS;
+	@Autowired
+	private SecondLevelCacheEvictions secondLevelCacheEvictions;
+
+	@Autowired
+	private QuotaProperties quotaProperties;
+
+	// early access users are the ones without a limit on agent attempts
+	public Set<String> getEarlyFeatureAccessUsers() {
+		return quotaProperties.get(QuotaService.AGENT_ATTEMPTS).getUnlimited();
 	}
 
 	public List<String> getProFeatureAccessUsers() {
@@ -87,7 +94,14 @@ public class UserService implements IUserService {
 				.stream().findFirst().orElse(null);
 		if (profile == null && (forceWhitelist || farcasterUser.fid() <= payflowConfig.getWhitelistedFidUpperRange()
 				|| farcasterUser.username().endsWith(".eth"))) {
-			val identityToCreateProfile = identityService.getIdentitiesInfo(verifications)
+			// the profile keeps the identity picked here, don't pick it from a partial result
+			val fetched = identityService.fetchIdentitiesInfo(verifications);
+			if (!fetched.missing().isEmpty()) {
+				throw new IllegalStateException(String.format(
+						"Can't create profile for: %s - identities not fetched: %s",
+						farcasterUser.username(), fetched.missing()));
+			}
+			val identityToCreateProfile = fetched.identities()
 					.stream().max(Comparator.comparingInt(IdentityMessage::score))
 					.orElse(null);
 			if (identityToCreateProfile == null) {
@@ -184,6 +198,7 @@ public class UserService implements IUserService {
 				user.setSigner(profile.signer());
 			}
 		}
+		secondLevelCacheEvictions.evictAfterCommit(User.class, user.getId());
 	}
 
 	private void allowUser(User user, Invitation invitation) {
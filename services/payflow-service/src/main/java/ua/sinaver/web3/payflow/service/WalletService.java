@@ -9,6 +9,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.client.WalletClient;
 import ua.sinaver.web3.payflow.dto.WalletMessage;
 import ua.sinaver.web3.payflow.entity.Payment;
@@ -25,11 +26,12 @@ public class WalletService {
 	@Autowired
 	private WalletClient walletClient;
 
-	public WalletService(WebClient.Builder builder,
+	public WalletService(UpstreamClientRegistry upstreams,
 			@Value("${payflow.onchain.url}") String onchainApiUrl) {
 
 		log.debug("Onchain API url: {}", onchainApiUrl);
-		webClient = builder.baseUrl(String.format("%s/api/wallet", onchainApiUrl))
+		webClient = upstreams.webClient(UpstreamClientRegistry.WALLET)
+				.baseUrl(String.format("%s/api/wallet", onchainApiUrl))
 				.defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
 				.defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
 				.build();
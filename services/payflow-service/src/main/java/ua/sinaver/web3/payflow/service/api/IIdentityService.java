@@ -1,9 +1,12 @@
 package ua.sinaver.web3.payflow.service.api;
 
 import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.message.IdentitiesResponseMessage;
 import ua.sinaver.web3.payflow.message.IdentityMessage;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface IIdentityService {
 	User getProfileByFid(int fid, String identity);
@@ -24,6 +27,8 @@ public interface IIdentityService {
 
 	List<User> getProfilesByAddresses(List<String> addresses);
 
+	Map<String, User> getProfilesByIdentities(Collection<String> identities);
+
 	String getFidFname(int fid);
 
 	String getFarcasterUsernameByAddress(String identity);
@@ -34,11 +39,16 @@ public interface IIdentityService {
 
 	IdentityMessage getIdentityInfo(String identity);
 
+	// identities which failed or didn't load in time are left out, see fetchIdentitiesInfo
 	List<IdentityMessage> getIdentitiesInfo(List<String> identities);
 
+	IdentitiesResponseMessage fetchIdentitiesInfo(List<String> identities);
+
 	List<IdentityMessage> getIdentitiesInfo(int fid);
 
 	String getHighestScoredIdentity(List<String> identities);
 
+	List<String> getHighestScoredIdentities(List<List<String>> identityGroups);
+
 	IdentityMessage getHighestScoredIdentityInfo(List<String> identities);
 }
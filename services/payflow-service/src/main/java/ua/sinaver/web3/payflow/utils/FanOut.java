@@ -0,0 +1,95 @@
+package ua.sinaver.web3.payflow.utils;
+
+import io.micrometer.context.ContextSnapshotFactory;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+// deadline bounded fan-out of blocking calls, scoped to a single request: every task gets its own
+// virtual thread, at most maxConcurrency of them run at once, tasks still running when the
+// deadline passes are interrupted, and the caller gets the completed results in input order
+// together with the inputs which failed or didn't make it in time
+@Slf4j
+public class FanOut {
+
+	public static <T, R> Result<T, R> run(String name, Collection<T> inputs, Function<T, R> task,
+			Duration deadline, int maxConcurrency) {
+		val deadlineNanos = System.nanoTime() + deadline.toNanos();
+		val permits = new Semaphore(maxConcurrency);
+		// tasks run in the caller's observation (trace) context
+		val context = ContextSnapshotFactory.builder().build().captureAll();
+		val futures = new LinkedHashMap<T, Future<R>>();
+		val missing = new ArrayList<T>();
+
+		val executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+		try {
+			for (val input : inputs) {
+				val remaining = deadlineNanos - System.nanoTime();
+				if (remaining <= 0 || !permits.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+					break;
+				}
+				futures.put(input, executor.submit(context.wrap(() -> {
+					try {
+						return task.apply(input);
+					} finally {
+						permits.release();
+					}
+				})));
+			}
+
+			val completed = new ArrayList<R>(futures.size());
+			for (val input : inputs) {
+				val future = futures.get(input);
+				if (future == null) {
+					missing.add(input);
+					continue;
+				}
+				try {
+					val result = future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+					if (result != null) {
+						completed.add(result);
+					}
+				} catch (TimeoutException e) {
+					missing.add(input);
+				} catch (ExecutionException e) {
+					log.debug("{} task failed for {} - {}", name, input, e.getCause().getMessage());
+					missing.add(input);
+				}
+			}
+
+			if (!missing.isEmpty()) {
+				log.warn("{} fan-out returned {} of {} results within {}", name, completed.size(),
+						inputs.size(), deadline);
+			}
+			return new Result<>(completed, missing);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Result<>(futures.values().stream()
+					.filter(future -> future.state() == Future.State.SUCCESS && future.resultNow() != null)
+					.map(Future::resultNow)
+					.toList(),
+					inputs.stream()
+							.filter(input -> !futures.containsKey(input)
+									|| futures.get(input).state() != Future.State.SUCCESS)
+							.toList());
+		} finally {
+			// tasks which missed the deadline are interrupted, they are not waited for
+			executor.shutdownNow();
+		}
+	}
+
+	public record Result<T, R>(List<R> completed, List<T> missing) {
+	}
+}
@@ -0,0 +1,31 @@
+CREATE TABLE payment_participant (
+    participant_key VARCHAR(255) NOT NULL,
+    role VARCHAR(32) NOT NULL,
+    payment_id INTEGER NOT NULL,
+    status VARCHAR(255) NOT NULL,
+    sorted_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (participant_key, role, payment_id),
+    INDEX idx_payment_participant_key_role_status_sorted_at (participant_key, role, status, sorted_at DESC, payment_id DESC),
+    INDEX idx_payment_participant_payment_id (payment_id)
+) engine = InnoDB;
+
+-- backfill ledger from existing payments
+INSERT IGNORE INTO payment_participant (participant_key, role, payment_id, status, sorted_at)
+SELECT CONCAT('user:', sender_user_id), 'SENDER', id, status, COALESCE(completed_at, created_at)
+FROM payment WHERE sender_user_id IS NOT NULL;
+
+INSERT IGNORE INTO payment_participant (participant_key, role, payment_id, status, sorted_at)
+SELECT CONCAT('address:', LOWER(sender_address)), 'SENDER', id, status, COALESCE(completed_at, created_at)
+FROM payment WHERE sender_address IS NOT NULL;
+
+INSERT IGNORE INTO payment_participant (participant_key, role, payment_id, status, sorted_at)
+SELECT CONCAT('user:', receiver_user_id), 'RECEIVER', id, status, COALESCE(completed_at, created_at)
+FROM payment WHERE receiver_user_id IS NOT NULL;
+
+INSERT IGNORE INTO payment_participant (participant_key, role, payment_id, status, sorted_at)
+SELECT CONCAT('address:', LOWER(receiver_address)), 'RECEIVER', id, status, COALESCE(completed_at, created_at)
+FROM payment WHERE receiver_address IS NOT NULL;
+
+INSERT IGNORE INTO payment_participant (participant_key, role, payment_id, status, sorted_at)
+SELECT CONCAT('fid:', receiver_fid), 'RECEIVER', id, status, COALESCE(completed_at, created_at)
+FROM payment WHERE receiver_fid IS NOT NULL;
@@ -0,0 +1,7 @@
+CREATE TABLE scheduler_instance (
+    instance_id VARCHAR(64) NOT NULL,
+    started_at DATETIME(6) NOT NULL,
+    heartbeat_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (instance_id),
+    INDEX idx_scheduler_instance_heartbeat_at (heartbeat_at)
+) engine = InnoDB;
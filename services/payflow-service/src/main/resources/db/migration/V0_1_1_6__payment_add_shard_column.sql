@@ -0,0 +1,5 @@
+-- scheduler shards (SchedulerShardService.SHARDS), the jobs' locking reads range scan this index
+-- only, instead of locking every row matching the status while evaluating MOD(id, ...)
+ALTER TABLE payment
+    ADD COLUMN shard INTEGER AS (MOD(id, 16)) STORED NOT NULL,
+    ADD INDEX idx_payment_status_shard_created_at (status, shard, created_at);
@@ -0,0 +1,4 @@
+ALTER TABLE payment_bot_job
+    ADD COLUMN shard INTEGER AS (MOD(id, 16)) STORED NOT NULL,
+    ADD INDEX idx_payment_bot_job_status_shard_casted_date (status, shard, casted_date ASC),
+    DROP INDEX idx_payment_bot_job_status_casted_date_asc;
@@ -0,0 +1,3 @@
+ALTER TABLE wallet_session
+    ADD COLUMN shard INTEGER AS (MOD(id, 16)) STORED NOT NULL,
+    ADD INDEX idx_wallet_session_active_shard_expires_at (active, shard, expires_at);
@@ -0,0 +1,3 @@
+ALTER TABLE storage_notification
+    ADD COLUMN shard INTEGER AS (MOD(fid, 16)) STORED NOT NULL,
+    ADD INDEX idx_storage_notification_enabled_shard_last_checked_at (enabled, shard, last_checked_at);
@@ -7,6 +7,8 @@ import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.junit.jupiter.api.Test;
@@ -23,10 +25,13 @@ import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.cloud.openfeign.FeignAutoConfiguration;
 import org.springframework.cloud.openfeign.FeignClientsConfiguration;
 import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 
 import ua.sinaver.web3.payflow.client.NeynarClient;
 import ua.sinaver.web3.payflow.client.NeynarClientConfig;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
+import ua.sinaver.web3.payflow.client.UpstreamProperties;
 import ua.sinaver.web3.payflow.message.agent.AgentMessage;
 import ua.sinaver.web3.payflow.message.farcaster.CastConversationData;
 import ua.sinaver.web3.payflow.service.AnthropicAgentService;
@@ -44,6 +49,8 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 @SpringJUnitConfig(classes = {
 		AnthropicAgentService.class,
 		TokenService.class,
+		UpstreamClientRegistry.class,
+		UpstreamProperties.class,
 		AnthropicApiTest.TestConfig.class,
 		NeynarClientConfig.class,
 		FeignAutoConfiguration.class,
@@ -969,8 +976,14 @@ public class AnthropicApiTest {
 	}
 
 	@Configuration
+	@EnableConfigurationProperties
 	static class TestConfig {
 
+		@Bean
+		public MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
 		@Bean
 		public ObjectMapper objectMapper() {
 			return JsonMapper.builder()
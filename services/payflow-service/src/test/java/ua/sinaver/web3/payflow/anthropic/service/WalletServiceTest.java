@@ -18,10 +18,14 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
 import ua.sinaver.web3.payflow.client.WalletClient;
 import ua.sinaver.web3.payflow.service.WalletService;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static ua.sinaver.web3.payflow.service.TokenService.ZERO_ADDRESS;
 
 @Disabled
@@ -46,8 +50,10 @@ public class WalletServiceTest {
 	@Configuration
 	static class TestConfig {
 		@Bean
-		public WebClient.Builder webClientBuilder() {
-			return WebClient.builder();
+		public UpstreamClientRegistry upstreamClientRegistry() {
+			val upstreams = mock(UpstreamClientRegistry.class);
+			when(upstreams.webClient(anyString())).thenReturn(WebClient.builder());
+			return upstreams;
 		}
 
 		@Bean
@@ -0,0 +1,91 @@
+package ua.sinaver.web3.payflow.auth;
+
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// redis itself is mocked, the tests cover the keys used and the local deny-list copy
+@SuppressWarnings("unchecked")
+public class RedisAuthStateStoreTest {
+
+	private ValueOperations<String, String> values;
+	private ZSetOperations<String, String> zset;
+	private RedisAuthStateStore store;
+
+	@BeforeEach
+	public void setUp() {
+		val redisTemplate = mock(StringRedisTemplate.class);
+		values = mock(ValueOperations.class);
+		zset = mock(ZSetOperations.class);
+		when(redisTemplate.opsForValue()).thenReturn(values);
+		when(redisTemplate.opsForZSet()).thenReturn(zset);
+		store = new RedisAuthStateStore();
+		ReflectionTestUtils.setField(store, "redisTemplate", redisTemplate);
+	}
+
+	@Test
+	public void testNonceIsSavedWithTtl() {
+		store.saveNonce("nonce", Duration.ofMinutes(10));
+		verify(values).set("auth:nonce:nonce", "", Duration.ofMinutes(10));
+	}
+
+	@Test
+	public void testNonceIsConsumedOnce() {
+		when(values.getAndDelete("auth:nonce:nonce")).thenReturn("", (String) null);
+
+		assertTrue(store.consumeNonce("nonce"));
+		assertFalse(store.consumeNonce("nonce"));
+		assertFalse(store.consumeNonce("unknown"));
+	}
+
+	@Test
+	public void testDeniedSessionIsSharedAndDeniedLocally() {
+		val expiresAt = Instant.now().plusSeconds(600);
+		store.deny("session", expiresAt);
+
+		verify(zset).add("auth:denied-sessions", "session", expiresAt.getEpochSecond());
+		assertTrue(store.isDenied("session"));
+		assertFalse(store.isDenied("other"));
+	}
+
+	@Test
+	public void testRefreshMirrorsSessionsDeniedByOtherInstances() {
+		store.deny("expired", Instant.now().plusSeconds(1));
+		when(zset.rangeByScore(eq("auth:denied-sessions"), anyDouble(), eq(Double.POSITIVE_INFINITY)))
+				.thenReturn(Set.of("remote"));
+
+		store.refreshDeniedSessions();
+
+		verify(zset).removeRangeByScore(eq("auth:denied-sessions"), eq(0d), anyDouble());
+		assertTrue(store.isDenied("remote"));
+		// gone from redis once expired, so gone locally too
+		assertFalse(store.isDenied("expired"));
+	}
+
+	@Test
+	public void testFailedRefreshKeepsKnownSessions() {
+		store.deny("session", Instant.now().plusSeconds(600));
+		when(zset.removeRangeByScore(anyString(), anyDouble(), anyDouble()))
+				.thenThrow(new RedisConnectionFailureException("down"));
+
+		store.refreshDeniedSessions();
+
+		assertTrue(store.isDenied("session"));
+	}
+}
@@ -0,0 +1,86 @@
+package ua.sinaver.web3.payflow.auth;
+
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SignedSessionAuthenticationFilterTest {
+	private static final String IDENTITY = "0x0000000000000000000000000000000000000001";
+
+	private SignedSessionService signedSessionService;
+	private SignedSessionAuthenticationFilter filter;
+	private MockFilterChain chain;
+
+	@BeforeEach
+	public void setUp() {
+		signedSessionService = mock(SignedSessionService.class);
+		filter = new SignedSessionAuthenticationFilter();
+		ReflectionTestUtils.setField(filter, "signedSessionService", signedSessionService);
+		chain = new MockFilterChain();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		SecurityContextHolder.clearContext();
+	}
+
+	private void filter() throws Exception {
+		filter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), chain);
+	}
+
+	@Test
+	public void testValidSessionAuthenticatesRequest() throws Exception {
+		when(signedSessionService.isEnabled()).thenReturn(true);
+		when(signedSessionService.authenticate(any())).thenReturn(IDENTITY);
+
+		filter();
+
+		val authentication = SecurityContextHolder.getContext().getAuthentication();
+		assertNotNull(authentication);
+		assertTrue(authentication.isAuthenticated());
+		assertEquals(IDENTITY, authentication.getPrincipal());
+		assertNotNull(chain.getRequest());
+	}
+
+	@Test
+	public void testInvalidSessionPassesUnauthenticated() throws Exception {
+		when(signedSessionService.isEnabled()).thenReturn(true);
+
+		filter();
+
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+		assertNotNull(chain.getRequest());
+	}
+
+	@Test
+	public void testJdbcModeIsLeftToHttpSessions() throws Exception {
+		filter();
+
+		verify(signedSessionService, never()).authenticate(any());
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+		assertNotNull(chain.getRequest());
+	}
+
+	@Test
+	public void testExistingAuthenticationIsKept() throws Exception {
+		val existing = new Web3Authentication("0x0000000000000000000000000000000000000002", null, null);
+		existing.setAuthenticated(true);
+		SecurityContextHolder.getContext().setAuthentication(existing);
+		when(signedSessionService.isEnabled()).thenReturn(true);
+
+		filter();
+
+		verify(signedSessionService, never()).authenticate(any());
+		assertSame(existing, SecurityContextHolder.getContext().getAuthentication());
+	}
+}
@@ -0,0 +1,153 @@
+package ua.sinaver.web3.payflow.auth;
+
+import jakarta.servlet.http.Cookie;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SignedSessionServiceTest {
+	private static final String SECRET = "0123456789abcdef0123456789abcdef";
+	private static final String IDENTITY = "0x0000000000000000000000000000000000000001";
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	private SignedSessionService signedSessionService;
+
+	@BeforeEach
+	public void setUp() {
+		signedSessionService = service(SECRET, Duration.ofMinutes(30));
+	}
+
+	private static SignedSessionService service(String secret, Duration timeout) {
+		val service = new SignedSessionService();
+		ReflectionTestUtils.setField(service, "mode", "signed");
+		ReflectionTestUtils.setField(service, "secret", secret);
+		ReflectionTestUtils.setField(service, "timeout", timeout);
+		ReflectionTestUtils.setField(service, "cookieName", "sessionId");
+		ReflectionTestUtils.setField(service, "cookieDomain", "");
+		ReflectionTestUtils.setField(service, "authStateStore", new InMemoryAuthStateStore(100));
+		ReflectionTestUtils.invokeMethod(service, "initialize");
+		return service;
+	}
+
+	private static MockHttpServletRequest request(String token) {
+		val request = new MockHttpServletRequest();
+		request.setCookies(new Cookie("sessionId", token));
+		return request;
+	}
+
+	private String issue() {
+		return signedSessionService.issue(IDENTITY).getValue();
+	}
+
+	// signs like the service, to build tokens which are signed but malformed
+	private static String signed(String payload) throws Exception {
+		val mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+		return payload + "." + ENCODER.encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String encode(String value) {
+		return ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testIssuedSessionAuthenticates() {
+		val cookie = signedSessionService.issue(IDENTITY);
+		assertEquals("sessionId", cookie.getName());
+		assertTrue(cookie.isHttpOnly());
+		assertTrue(cookie.isSecure());
+		assertEquals(Duration.ofMinutes(30), cookie.getMaxAge());
+
+		assertEquals(IDENTITY, signedSessionService.authenticate(request(cookie.getValue())));
+	}
+
+	@Test
+	public void testMissingSessionIsNotAuthenticated() {
+		assertNull(signedSessionService.authenticate(new MockHttpServletRequest()));
+		assertNull(signedSessionService.authenticate(request("")));
+	}
+
+	@Test
+	public void testTamperedIdentityIsRejected() {
+		val parts = issue().split("\\.");
+		parts[1] = encode("0x0000000000000000000000000000000000000002");
+		assertNull(signedSessionService.authenticate(request(String.join(".", parts))));
+	}
+
+	@Test
+	public void testTamperedExpiryIsRejected() {
+		val parts = issue().split("\\.");
+		parts[2] = String.valueOf(Long.parseLong(parts[2]) + 3600);
+		assertNull(signedSessionService.authenticate(request(String.join(".", parts))));
+	}
+
+	@Test
+	public void testTamperedSignatureIsRejected() {
+		val parts = issue().split("\\.");
+		parts[3] = (parts[3].charAt(0) == 'A' ? "B" : "A") + parts[3].substring(1);
+		assertNull(signedSessionService.authenticate(request(String.join(".", parts))));
+	}
+
+	@Test
+	public void testSessionOfOtherSecretIsRejected() {
+		val other = service("fedcba9876543210fedcba9876543210", Duration.ofMinutes(30));
+		assertNull(signedSessionService.authenticate(request(other.issue(IDENTITY).getValue())));
+	}
+
+	@Test
+	public void testExpiredSessionIsRejected() throws Exception {
+		val expired = service(SECRET, Duration.ofSeconds(-1));
+		assertNull(expired.authenticate(request(expired.issue(IDENTITY).getValue())));
+
+		val expiresAt = Instant.now().minusSeconds(1).getEpochSecond();
+		assertNull(signedSessionService.authenticate(request(signed(
+				String.join(".", encode("session"), encode(IDENTITY), String.valueOf(expiresAt))))));
+	}
+
+	@Test
+	public void testMalformedSessionsAreRejected() throws Exception {
+		val parts = issue().split("\\.");
+		val expiresAt = String.valueOf(Instant.now().plusSeconds(60).getEpochSecond());
+
+		// wrong number of segments
+		assertNull(signedSessionService.authenticate(request(String.join(".", parts[0], parts[1], parts[3]))));
+		assertNull(signedSessionService.authenticate(request(String.join(".", parts) + ".extra")));
+		assertNull(signedSessionService.authenticate(request("no-separator")));
+		// signature isn't base64url
+		assertNull(signedSessionService.authenticate(request(String.join(".", parts[0], parts[1], parts[2], "%%%"))));
+		// signed, but the identity isn't base64url or the expiry isn't a number
+		assertNull(signedSessionService.authenticate(request(signed(
+				String.join(".", encode("session"), "%%%", expiresAt)))));
+		assertNull(signedSessionService.authenticate(request(signed(
+				String.join(".", encode("session"), encode(IDENTITY), "soon")))));
+	}
+
+	@Test
+	public void testRevokedSessionIsRejected() {
+		val revoked = issue();
+		val other = issue();
+
+		val cookie = signedSessionService.revoke(request(revoked));
+		assertEquals("", cookie.getValue());
+		assertEquals(Duration.ZERO, cookie.getMaxAge());
+
+		assertNull(signedSessionService.authenticate(request(revoked)));
+		assertEquals(IDENTITY, signedSessionService.authenticate(request(other)));
+	}
+
+	@Test
+	public void testShortSecretFailsStartup() {
+		assertThrows(IllegalStateException.class, () -> service("too short", Duration.ofMinutes(30)));
+	}
+}
@@ -0,0 +1,101 @@
+package ua.sinaver.web3.payflow.config;
+
+import jakarta.persistence.EntityManager;
+import lombok.val;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// primary and replica are two separate in-memory h2 databases, each tells which one it is,
+// so routing is checked on the connections actually used
+public class DataSourceConfigTest {
+
+	private DataSource routing;
+	private JdbcTemplate jdbcTemplate;
+	private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+
+	private static DataSource database(String name) {
+		val dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+		val jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("CREATE TABLE IF NOT EXISTS marker (name VARCHAR(16))");
+		jdbc.execute("DELETE FROM marker");
+		jdbc.update("INSERT INTO marker VALUES (?)", name);
+		return dataSource;
+	}
+
+	@BeforeEach
+	public void setUp() {
+		routing = DataSourceConfig.routingDataSource(database("primary"), database("replica"));
+		jdbcTemplate = new JdbcTemplate(routing);
+
+		entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+		entityManagerFactory.setDataSource(routing);
+		entityManagerFactory.setPackagesToScan(DataSourceConfigTest.class.getPackageName());
+		entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		entityManagerFactory.setJpaPropertyMap(Map.of(AvailableSettings.HBM2DDL_AUTO, "none"));
+		entityManagerFactory.afterPropertiesSet();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		entityManagerFactory.destroy();
+	}
+
+	private String marker() {
+		return jdbcTemplate.queryForObject("SELECT name FROM marker", String.class);
+	}
+
+	private TransactionTemplate jdbcTransaction(boolean readOnly) {
+		val template = new TransactionTemplate(new DataSourceTransactionManager(routing));
+		template.setReadOnly(readOnly);
+		return template;
+	}
+
+	private TransactionTemplate jpaTransaction(boolean readOnly) {
+		val template = new TransactionTemplate(new JpaTransactionManager(entityManagerFactory.getObject()));
+		template.setReadOnly(readOnly);
+		return template;
+	}
+
+	private String jpaMarker() {
+		EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(
+				entityManagerFactory.getObject());
+		return (String) entityManager.createNativeQuery("SELECT name FROM marker").getSingleResult();
+	}
+
+	@Test
+	public void testReadOnlyTransactionUsesReplica() {
+		assertEquals("replica", jdbcTransaction(true).execute(status -> marker()));
+	}
+
+	@Test
+	public void testReadWriteTransactionUsesPrimary() {
+		assertEquals("primary", jdbcTransaction(false).execute(status -> marker()));
+	}
+
+	@Test
+	public void testNonTransactionalAccessUsesPrimary() {
+		assertEquals("primary", marker());
+	}
+
+	@Test
+	public void testReadOnlyJpaTransactionUsesReplica() {
+		assertEquals("replica", jpaTransaction(true).execute(status -> jpaMarker()));
+		assertEquals("primary", jpaTransaction(false).execute(status -> jpaMarker()));
+	}
+}
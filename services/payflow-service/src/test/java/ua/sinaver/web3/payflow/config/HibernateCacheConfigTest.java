@@ -0,0 +1,381 @@
+package ua.sinaver.web3.payflow.config;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.val;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.sinaver.web3.payflow.entity.Flow;
+import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.entity.Wallet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// regions from hibernate-jcache.conf on an in-memory h2 schema, the redis channel is mocked
+public class HibernateCacheConfigTest {
+	private static final String FLOW_WALLETS = Flow.class.getName() + ".wallets";
+
+	private LocalContainerEntityManagerFactoryBean factoryBean;
+	private EntityManagerFactory entityManagerFactory;
+	private JpaTransactionManager transactionManager;
+	private Statistics statistics;
+	private StringRedisTemplate redisTemplate;
+	private SecondLevelCacheInvalidation invalidation;
+	private Integer userId;
+	private Integer flowId;
+
+	@BeforeEach
+	public void setUp() {
+		factoryBean = new LocalContainerEntityManagerFactoryBean();
+		factoryBean.setDataSource(new DriverManagerDataSource(
+				"jdbc:h2:mem:l2;MODE=MySQL;NON_KEYWORDS=USER,VALUE;DB_CLOSE_DELAY=-1"));
+		factoryBean.setPackagesToScan("ua.sinaver.web3.payflow.entity");
+		factoryBean.setJpaVendorAdapter(new HibernateCacheConfig().jpaVendorAdapter(new JpaProperties()));
+		factoryBean.setJpaPropertyMap(Map.ofEntries(
+				Map.entry(AvailableSettings.HBM2DDL_AUTO, "create-drop"),
+				Map.entry(AvailableSettings.PHYSICAL_NAMING_STRATEGY,
+						CamelCaseToUnderscoresNamingStrategy.class.getName()),
+				Map.entry(AvailableSettings.USE_SECOND_LEVEL_CACHE, true),
+				Map.entry(AvailableSettings.USE_QUERY_CACHE, true),
+				Map.entry(AvailableSettings.AUTO_EVICT_COLLECTION_CACHE, true),
+				// as set up by the redis profile
+				Map.entry(AvailableSettings.CACHE_REGION_FACTORY,
+						new SecondLevelCacheInvalidation.AnnouncingRegionFactory(() -> invalidation)),
+				Map.entry(AvailableSettings.QUERY_CACHE_FACTORY,
+						new SecondLevelCacheInvalidation.AnnouncingTimestampsCacheFactory(() -> invalidation)),
+				Map.entry("hibernate.javax.cache.provider",
+						"com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider"),
+				Map.entry("hibernate.javax.cache.uri", "hibernate-jcache.conf"),
+				// every cached entity has its region configured
+				Map.entry("hibernate.javax.cache.missing_cache_strategy", "fail"),
+				Map.entry(AvailableSettings.GENERATE_STATISTICS, true)));
+		factoryBean.afterPropertiesSet();
+		entityManagerFactory = factoryBean.getObject();
+		transactionManager = new JpaTransactionManager(entityManagerFactory);
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		redisTemplate = mock(StringRedisTemplate.class);
+		invalidation = new SecondLevelCacheInvalidation();
+		ReflectionTestUtils.setField(invalidation, "redisTemplate", redisTemplate);
+		ReflectionTestUtils.setField(invalidation, "entityManagerFactory", entityManagerFactory);
+		invalidation.register();
+
+		userId = inTransaction(false, entityManager -> {
+			val user = new User(String.format("0x%040d", System.nanoTime()));
+			entityManager.persist(user);
+			return user.getId();
+		});
+		flowId = inTransaction(false, entityManager -> {
+			val flow = new Flow(userId, "flow", null, null, null, null, "safe", null);
+			flow.setWallets(new ArrayList<>(List.of(wallet(flow))));
+			entityManager.persist(flow);
+			return flow.getId();
+		});
+		entityManagerFactory.getCache().evictAll();
+		statistics.clear();
+		clearInvocations(redisTemplate);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		factoryBean.destroy();
+	}
+
+	private <T> T inTransaction(boolean readOnly, Function<EntityManager, T> action) {
+		val template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(readOnly);
+		return template.execute(status -> action.apply(
+				EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory)));
+	}
+
+	private static Wallet wallet(Flow flow) {
+		val wallet = new Wallet(String.format("0x%040d", System.nanoTime()), 8453, "1.4.1", false);
+		wallet.setFlow(flow);
+		return wallet;
+	}
+
+	private User find(boolean readOnly) {
+		return inTransaction(readOnly, entityManager -> entityManager.find(User.class, userId));
+	}
+
+	private boolean cached() {
+		return entityManagerFactory.getCache().contains(User.class, userId);
+	}
+
+	// loads the flow with its wallets into the cache
+	private int loadWallets() {
+		return inTransaction(false, entityManager -> entityManager.find(Flow.class, flowId).getWallets().size());
+	}
+
+	private boolean walletsCached() {
+		return entityManagerFactory.unwrap(SessionFactory.class).getCache().containsCollection(FLOW_WALLETS, flowId);
+	}
+
+	private User findByIdentity(String identity) {
+		return inTransaction(false, entityManager -> entityManager
+				.createQuery("SELECT u FROM User u WHERE u.identity = :identity", User.class)
+				.setParameter("identity", identity)
+				.setHint(HibernateHints.HINT_CACHEABLE, true)
+				.getResultList().stream().findFirst().orElse(null));
+	}
+
+	@Test
+	public void testReadOnlyTransactionDoesntPopulateCache() {
+		find(true);
+		assertFalse(cached());
+		assertEquals(0, statistics.getSecondLevelCachePutCount());
+
+		find(false);
+		assertTrue(cached());
+		assertEquals(1, statistics.getSecondLevelCachePutCount());
+	}
+
+	@Test
+	public void testReadOnlyTransactionReadsCache() {
+		find(false);
+		statistics.clear();
+
+		find(true);
+		assertEquals(1, statistics.getSecondLevelCacheHitCount());
+		assertEquals(0, statistics.getSecondLevelCacheMissCount());
+	}
+
+	@Test
+	public void testCommittedUpdateIsAnnounced() {
+		inTransaction(false, entityManager -> {
+			entityManager.find(User.class, userId).setUsername("updated");
+			entityManager.flush();
+			entityManager.find(User.class, userId).setDisplayName("updated");
+			return null;
+		});
+
+		val announced = announced();
+		assertTrue(announced.contains("entity " + User.class.getName() + " " + userId), announced::toString);
+		// spaces written by the transaction are announced once
+		assertEquals(1, announced.stream().filter("spaces user"::equals).count(), announced::toString);
+	}
+
+	@Test
+	public void testRolledBackUpdateIsNotAnnounced() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			val entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+			entityManager.find(User.class, userId).setUsername("updated");
+			entityManager.find(Flow.class, flowId).getWallets().add(wallet(entityManager.find(Flow.class, flowId)));
+			entityManager.flush();
+			status.setRollbackOnly();
+		});
+
+		verify(redisTemplate, never()).convertAndSend(anyString(), anyString());
+	}
+
+	@Test
+	public void testAnnouncedEvictionOfOtherInstanceEvicts() {
+		find(false);
+		assertTrue(cached());
+
+		invalidation.onMessage(message("other entity " + User.class.getName() + " " + userId), null);
+		assertFalse(cached());
+	}
+
+	@Test
+	public void testOwnAnnouncementIsIgnored() {
+		inTransaction(false, entityManager -> {
+			entityManager.find(User.class, userId).setUsername("updated");
+			return null;
+		});
+		find(false);
+		assertTrue(cached());
+
+		// the instance which committed the update keeps its fresh entry
+		published().forEach(published -> invalidation.onMessage(message(published), null));
+		assertTrue(cached());
+	}
+
+	@Test
+	public void testWalletsAreCached() {
+		assertEquals(1, loadWallets());
+		assertTrue(walletsCached());
+		assertTrue(entityManagerFactory.getCache().contains(Flow.class, flowId));
+		statistics.clear();
+
+		assertEquals(1, loadWallets());
+		assertEquals(0, statistics.getSecondLevelCacheMissCount());
+	}
+
+	@Test
+	public void testWalletAddedThroughFlowIsAnnounced() {
+		loadWallets();
+		inTransaction(false, entityManager -> {
+			val flow = entityManager.find(Flow.class, flowId);
+			flow.getWallets().add(wallet(flow));
+			return null;
+		});
+
+		assertTrue(announced().contains(collection(flowId)));
+		assertEquals(2, loadWallets());
+	}
+
+	@Test
+	public void testWalletAddedThroughOwningSideIsAnnounced() {
+		loadWallets();
+		inTransaction(false, entityManager -> {
+			entityManager.persist(wallet(entityManager.getReference(Flow.class, flowId)));
+			return null;
+		});
+
+		assertTrue(announced().contains(collection(flowId)));
+		assertEquals(2, loadWallets());
+	}
+
+	@Test
+	public void testWalletMovedToOtherFlowIsAnnouncedForBoth() {
+		val otherFlowId = inTransaction(false, entityManager -> {
+			val flow = new Flow(userId, "other", null, null, null, null, "safe", null);
+			entityManager.persist(flow);
+			return flow.getId();
+		});
+		clearInvocations(redisTemplate);
+
+		inTransaction(false, entityManager -> {
+			val wallet = entityManager.find(Flow.class, flowId).getWallets().getFirst();
+			wallet.setFlow(entityManager.getReference(Flow.class, otherFlowId));
+			return null;
+		});
+
+		val announced = announced();
+		assertTrue(announced.contains(collection(flowId)), announced::toString);
+		assertTrue(announced.contains(collection(otherFlowId)), announced::toString);
+	}
+
+	@Test
+	public void testAnnouncedCollectionEvictionOfOtherInstanceEvicts() {
+		loadWallets();
+		assertTrue(walletsCached());
+
+		invalidation.onMessage(message("other " + collection(flowId)), null);
+		assertFalse(walletsCached());
+		assertTrue(entityManagerFactory.getCache().contains(Flow.class, flowId));
+	}
+
+	@Test
+	public void testBulkUpdateAnnouncesClearedRegions() {
+		loadWallets();
+		inTransaction(false, entityManager -> entityManager
+				.createQuery("UPDATE Wallet w SET w.deployed = true").executeUpdate());
+
+		val announced = announced();
+		assertTrue(announced.contains("region wallet"), announced::toString);
+		assertTrue(announced.contains("region flow_wallets"), announced::toString);
+		assertTrue(announced.contains("spaces wallet"), announced::toString);
+	}
+
+	@Test
+	public void testAnnouncedRegionEvictionOfOtherInstanceEvicts() {
+		find(false);
+		loadWallets();
+		val walletId = inTransaction(false, entityManager -> entityManager.find(Flow.class, flowId).getWallets()
+				.getFirst().getId());
+		assertTrue(entityManagerFactory.getCache().contains(Wallet.class, walletId));
+
+		invalidation.onMessage(message("other region wallet"), null);
+		assertFalse(entityManagerFactory.getCache().contains(Wallet.class, walletId));
+		assertTrue(entityManagerFactory.getCache().contains(Flow.class, flowId));
+		assertTrue(cached());
+	}
+
+	@Test
+	public void testQueryCacheIsInvalidatedByOtherInstance() throws InterruptedException {
+		val identity = find(false).getIdentity();
+		assertEquals(userId, findByIdentity(identity).getId());
+		assertEquals(userId, findByIdentity(identity).getId());
+		assertEquals(1, statistics.getQueryCacheHitCount());
+
+		Thread.sleep(1);
+		invalidation.onMessage(message("other spaces user"), null);
+		assertEquals(userId, findByIdentity(identity).getId());
+		assertEquals(1, statistics.getQueryCacheHitCount());
+		assertEquals(2, statistics.getQueryCacheMissCount());
+	}
+
+	@Test
+	public void testQueryOfOtherSpacesStaysCached() throws InterruptedException {
+		val identity = find(false).getIdentity();
+		findByIdentity(identity);
+
+		Thread.sleep(1);
+		invalidation.onMessage(message("other spaces flow,wallet"), null);
+		findByIdentity(identity);
+		assertEquals(1, statistics.getQueryCacheHitCount());
+	}
+
+	@Test
+	public void testExplicitEvictionsWaitForCommit() {
+		val evictions = new SecondLevelCacheEvictions();
+		ReflectionTestUtils.setField(evictions, "entityManagerFactory", entityManagerFactory);
+		ReflectionTestUtils.setField(evictions, "invalidation", new StaticListableBeanFactory(
+				Map.of("invalidation", invalidation)).getBeanProvider(SecondLevelCacheInvalidation.class));
+		find(false);
+		loadWallets();
+
+		inTransaction(false, entityManager -> {
+			evictions.evictAfterCommit(User.class, userId);
+			evictions.evictCollectionAfterCommit(Flow.class, "wallets", flowId);
+			assertTrue(cached());
+			assertTrue(walletsCached());
+			return null;
+		});
+
+		assertFalse(cached());
+		assertFalse(walletsCached());
+		val announced = announced();
+		assertTrue(announced.contains("entity " + User.class.getName() + " " + userId), announced::toString);
+		assertTrue(announced.contains(collection(flowId)), announced::toString);
+	}
+
+	private List<String> published() {
+		val captor = ArgumentCaptor.forClass(String.class);
+		verify(redisTemplate, atLeastOnce()).convertAndSend(eq(SecondLevelCacheInvalidation.CHANNEL),
+				captor.capture());
+		return captor.getAllValues();
+	}
+
+	private static String collection(Object flowId) {
+		return "collection " + FLOW_WALLETS + " " + flowId;
+	}
+
+	// published messages without the instance
+	private List<String> announced() {
+		return published().stream().map(message -> message.substring(message.indexOf(' ') + 1)).toList();
+	}
+
+	private static DefaultMessage message(String body) {
+		return new DefaultMessage(SecondLevelCacheInvalidation.CHANNEL.getBytes(StandardCharsets.UTF_8),
+				body.getBytes(StandardCharsets.UTF_8));
+	}
+}
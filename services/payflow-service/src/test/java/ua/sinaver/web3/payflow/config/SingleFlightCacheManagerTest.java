@@ -0,0 +1,80 @@
+package ua.sinaver.web3.payflow.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SingleFlightCacheManagerTest {
+
+	private final AtomicInteger decorated = new AtomicInteger();
+	private ConcurrentMapCacheManager delegate;
+	private SingleFlightCacheManager cacheManager;
+
+	@BeforeEach
+	public void setUp() {
+		delegate = new ConcurrentMapCacheManager("users", "contacts");
+		cacheManager = new SingleFlightCacheManager(delegate, cache -> {
+			decorated.incrementAndGet();
+			return new SingleFlightCache(cache, false, null, null, 1.0, Runnable::run, new SimpleMeterRegistry());
+		});
+	}
+
+	@Test
+	public void testCachesAreDecoratedOnce() throws Exception {
+		val start = new CountDownLatch(1);
+		val results = new ArrayList<Future<Object>>();
+		try (val executor = Executors.newFixedThreadPool(8)) {
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return cacheManager.getCache("users");
+				}));
+			}
+			start.countDown();
+		}
+
+		val cache = assertInstanceOf(SingleFlightCache.class, cacheManager.getCache("users"));
+		assertSame(delegate.getCache("users"), cache.getDelegate());
+		for (val result : results) {
+			assertSame(cache, result.get());
+		}
+		assertEquals(1, decorated.get());
+	}
+
+	@Test
+	public void testCachesShareTheDelegateEntries() {
+		val cache = cacheManager.getCache("contacts");
+		assertNotNull(cache);
+		cache.put("key", "value");
+		assertEquals("value", delegate.getCache("contacts").get("key", String.class));
+	}
+
+	@Test
+	public void testUnknownCacheIsNull() {
+		assertNull(cacheManager.getCache("unknown"));
+		assertEquals(0, decorated.get());
+		assertEquals(List.of("contacts", "users"), delegate.getCacheNames().stream().sorted().toList());
+		assertEquals(delegate.getCacheNames(), cacheManager.getCacheNames());
+	}
+
+	@Test
+	public void testDelegateIsInitialized() throws Exception {
+		val initializing = mock(CacheManager.class, withSettings().extraInterfaces(InitializingBean.class));
+		new SingleFlightCacheManager(initializing, cache -> null).afterPropertiesSet();
+		verify((InitializingBean) initializing).afterPropertiesSet();
+	}
+}
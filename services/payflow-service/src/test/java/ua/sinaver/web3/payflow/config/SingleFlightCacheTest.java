@@ -0,0 +1,191 @@
+package ua.sinaver.web3.payflow.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// loaders block on latches to hold a load open while other callers come in
+public class SingleFlightCacheTest {
+	private static final int CALLERS = 8;
+
+	private SimpleMeterRegistry meterRegistry;
+	private ConcurrentMapCache delegate;
+	private SingleFlightCache cache;
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@BeforeEach
+	public void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		delegate = new ConcurrentMapCache("test");
+		cache = new SingleFlightCache(delegate, false, null, null, 1.0, Runnable::run, meterRegistry);
+	}
+
+	private double coalesced() {
+		return meterRegistry.get("payflow.cache.loads").tag("outcome", "coalesced").counter().count();
+	}
+
+	private void awaitCoalesced(int callers) throws InterruptedException {
+		val deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (coalesced() < callers) {
+			assertTrue(System.nanoTime() < deadline, "callers didn't join the load");
+			Thread.sleep(1);
+		}
+	}
+
+	private <T> List<Future<T>> callConcurrently(ExecutorService executor, Callable<T> call) {
+		val results = new ArrayList<Future<T>>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(executor.submit(call));
+		}
+		return results;
+	}
+
+	@Test
+	public void testConcurrentMissesLoadOnce() throws Exception {
+		val release = new CountDownLatch(1);
+		Callable<String> loader = () -> {
+			loads.incrementAndGet();
+			release.await();
+			return "value";
+		};
+
+		try (val executor = Executors.newFixedThreadPool(CALLERS)) {
+			val results = callConcurrently(executor, () -> cache.get("key", loader));
+			awaitCoalesced(CALLERS - 1);
+			release.countDown();
+			for (val result : results) {
+				assertEquals("value", result.get(5, TimeUnit.SECONDS));
+			}
+		}
+
+		assertEquals(1, loads.get());
+		assertEquals("value", delegate.get("key", String.class));
+	}
+
+	@Test
+	public void testFailedLoadReachesAllCallersAndIsNotCached() throws Exception {
+		val release = new CountDownLatch(1);
+		val failure = new IllegalStateException("upstream down");
+		Callable<String> loader = () -> {
+			loads.incrementAndGet();
+			release.await();
+			throw failure;
+		};
+
+		try (val executor = Executors.newFixedThreadPool(CALLERS)) {
+			val results = callConcurrently(executor, () -> cache.get("key", loader));
+			awaitCoalesced(CALLERS - 1);
+			release.countDown();
+			for (val result : results) {
+				val e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+				assertInstanceOf(Cache.ValueRetrievalException.class, e.getCause());
+				assertSame(failure, e.getCause().getCause());
+			}
+		}
+		assertEquals(1, loads.get());
+		assertNull(delegate.get("key"));
+
+		// the next miss loads again
+		assertEquals("value", cache.get("key", () -> {
+			loads.incrementAndGet();
+			return "value";
+		}));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testNullIsNotCached() {
+		assertNull(cache.get("key", () -> {
+			loads.incrementAndGet();
+			return null;
+		}));
+		assertNull(delegate.get("key"));
+	}
+
+	@Test
+	public void testEarlyRefreshServesOldValue() throws Exception {
+		val refreshes = new LinkedBlockingQueue<Runnable>();
+		// a huge beta refreshes on every hit
+		cache = new SingleFlightCache(delegate, false, Duration.ofMinutes(1), null, 1e12, refreshes::add,
+				meterRegistry);
+		Callable<String> loader = () -> {
+			Thread.sleep(1);
+			return "v" + loads.incrementAndGet();
+		};
+
+		assertEquals("v1", cache.get("key", loader));
+		assertEquals("v1", cache.get("key", loader));
+		// hits while a refresh is pending don't start another one
+		assertEquals("v1", cache.get("key", loader));
+		assertEquals(1, refreshes.size());
+		assertEquals(1, loads.get());
+
+		refreshes.take().run();
+		assertEquals(2, loads.get());
+		assertEquals("v2", delegate.get("key", String.class));
+		assertEquals("v2", cache.get("key", loader));
+	}
+
+	@Test
+	public void testFailedRefreshKeepsOldValue() {
+		val refreshes = new LinkedBlockingQueue<Runnable>();
+		cache = new SingleFlightCache(delegate, false, Duration.ofMinutes(1), null, 1e12, refreshes::add,
+				meterRegistry);
+		assertEquals("v1", cache.get("key", () -> {
+			Thread.sleep(1);
+			return "v1";
+		}));
+
+		assertEquals("v1", cache.get("key", () -> {
+			throw new IllegalStateException("upstream down");
+		}));
+		refreshes.remove().run();
+		assertEquals("v1", delegate.get("key", String.class));
+		assertEquals(1, meterRegistry.get("payflow.cache.loads").tag("outcome", "refresh_failed").counter().count());
+	}
+
+	@Test
+	public void testEvictDuringLoadIsNotOverwritten() throws Exception {
+		assertStaleLoadIsDropped(() -> cache.evict("key"), null);
+	}
+
+	@Test
+	public void testPutDuringLoadIsNotOverwritten() throws Exception {
+		assertStaleLoadIsDropped(() -> cache.put("key", "new"), "new");
+	}
+
+	private void assertStaleLoadIsDropped(Runnable write, String expected) throws Exception {
+		val loading = new CountDownLatch(1);
+		val release = new CountDownLatch(1);
+		try (val executor = Executors.newSingleThreadExecutor()) {
+			val result = executor.submit(() -> cache.get("key", () -> {
+				loading.countDown();
+				release.await();
+				return "stale";
+			}));
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+			write.run();
+			release.countDown();
+
+			// the caller still gets what it loaded
+			assertEquals("stale", result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(expected, delegate.get("key", String.class));
+
+		// and the next miss loads again instead of joining the dropped load
+		if (expected == null) {
+			assertEquals("fresh", cache.get("key", () -> "fresh"));
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package ua.sinaver.web3.payflow.controller;
+
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.sinaver.web3.payflow.auth.InMemoryAuthStateStore;
+import ua.sinaver.web3.payflow.auth.SignedSessionService;
+import ua.sinaver.web3.payflow.auth.Web3Authentication;
+import ua.sinaver.web3.payflow.message.SiweChallengeMessage;
+import ua.sinaver.web3.payflow.message.SiweMessage;
+import ua.sinaver.web3.payflow.service.api.IUserService;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// siwe signatures are checked by the authentication manager, mocked here
+public class AuthControllerTest {
+	private static final String IDENTITY = "0x0000000000000000000000000000000000000001";
+	private static final String DAPP_URL = "https://app.payflow.me";
+
+	private AuthenticationManager authManager;
+	private AuthController authController;
+
+	@BeforeEach
+	public void setUp() {
+		authManager = mock(AuthenticationManager.class);
+		when(authManager.authenticate(any())).thenAnswer(invocation -> {
+			val authentication = new Web3Authentication(IDENTITY, null, null);
+			authentication.setAuthenticated(true);
+			return authentication;
+		});
+
+		authController = new AuthController();
+		ReflectionTestUtils.setField(authController, "authManager", authManager);
+		ReflectionTestUtils.setField(authController, "userService", mock(IUserService.class));
+		ReflectionTestUtils.setField(authController, "authStateStore", new InMemoryAuthStateStore(100));
+		ReflectionTestUtils.setField(authController, "signedSessionService", mock(SignedSessionService.class));
+		ReflectionTestUtils.setField(authController, "dappUri", DAPP_URL);
+		ReflectionTestUtils.setField(authController, "nonceTtl", Duration.ofMinutes(10));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		SecurityContextHolder.clearContext();
+	}
+
+	private static SiweChallengeMessage challenge(String nonce) {
+		return new SiweChallengeMessage(new SiweMessage("app.payflow.me", IDENTITY, null, DAPP_URL, "1", 8453,
+				nonce, null, null, null, null, null), "0xsignature");
+	}
+
+	@Test
+	public void testNonceIsUsedOnce() {
+		val nonce = authController.nonce();
+
+		assertEquals(HttpStatus.OK, authController.verify(IDENTITY, challenge(nonce)).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, authController.verify(IDENTITY, challenge(nonce)).getStatusCode());
+		verify(authManager, times(1)).authenticate(any());
+	}
+
+	@Test
+	public void testUnknownNonceIsRejected() {
+		authController.nonce();
+
+		assertEquals(HttpStatus.BAD_REQUEST, authController.verify(IDENTITY, challenge("unknown")).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, authController.verify(IDENTITY, challenge(null)).getStatusCode());
+		verify(authManager, never()).authenticate(any());
+	}
+
+	@Test
+	public void testNonceIsUsedUpByRejectedChallenge() {
+		val nonce = authController.nonce();
+		val otherDapp = new SiweChallengeMessage(new SiweMessage("evil.app", IDENTITY, null, "https://evil.app",
+				"1", 8453, nonce, null, null, null, null, null), "0xsignature");
+
+		assertEquals(HttpStatus.BAD_REQUEST, authController.verify(IDENTITY, otherDapp).getStatusCode());
+		assertEquals(HttpStatus.BAD_REQUEST, authController.verify(IDENTITY, challenge(nonce)).getStatusCode());
+		verify(authManager, never()).authenticate(any());
+	}
+}
@@ -0,0 +1,113 @@
+package ua.sinaver.web3.payflow.quota;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// windows run on the system clock, the expiry tests use short windows
+public class InMemoryQuotaStoreTest {
+	private static final Duration DAY = Duration.ofDays(1);
+
+	private final InMemoryQuotaStore store = new InMemoryQuotaStore(1000);
+
+	@Test
+	public void testConcurrentUsesDontGoOverLimit() throws Exception {
+		for (val policy : QuotaPolicy.values()) {
+			val key = "concurrent:" + policy;
+			val start = new CountDownLatch(1);
+			val tasks = new ArrayList<Callable<Boolean>>();
+			for (int i = 0; i < 64; i++) {
+				tasks.add(() -> {
+					start.await();
+					return store.tryAcquire(key, 10, DAY, policy).granted();
+				});
+			}
+
+			try (val executor = Executors.newFixedThreadPool(16)) {
+				val results = new ArrayList<Future<Boolean>>();
+				tasks.forEach(task -> results.add(executor.submit(task)));
+				start.countDown();
+				var granted = 0;
+				for (val result : results) {
+					granted += result.get() ? 1 : 0;
+				}
+				assertEquals(10, granted, policy.name());
+			}
+			assertEquals(10, store.used(key, DAY, policy), policy.name());
+		}
+	}
+
+	@Test
+	public void testDeniedUseIsNotCounted() {
+		assertTrue(store.tryAcquire("denied", 1, DAY, QuotaPolicy.FIXED_WINDOW).granted());
+		val denied = store.tryAcquire("denied", 1, DAY, QuotaPolicy.FIXED_WINDOW);
+		assertFalse(denied.granted());
+		assertEquals(1, denied.used());
+
+		// releasing a denied use doesn't free the granted one
+		store.release(denied);
+		assertEquals(1, store.used("denied", DAY, QuotaPolicy.FIXED_WINDOW));
+	}
+
+	@Test
+	public void testFixedWindowReleaseGivesUseBack() {
+		val first = store.tryAcquire("fixed", 2, DAY, QuotaPolicy.FIXED_WINDOW);
+		assertTrue(store.tryAcquire("fixed", 2, DAY, QuotaPolicy.FIXED_WINDOW).granted());
+		assertFalse(store.tryAcquire("fixed", 2, DAY, QuotaPolicy.FIXED_WINDOW).granted());
+
+		store.release(first);
+		assertEquals(1, store.used("fixed", DAY, QuotaPolicy.FIXED_WINDOW));
+		assertTrue(store.tryAcquire("fixed", 2, DAY, QuotaPolicy.FIXED_WINDOW).granted());
+	}
+
+	@Test
+	public void testFixedWindowReleaseAfterResetIsIgnored() throws InterruptedException {
+		val window = Duration.ofMillis(200);
+		val previous = store.tryAcquire("reset", 1, window, QuotaPolicy.FIXED_WINDOW);
+		assertTrue(previous.granted());
+		// windows are aligned to the epoch, wait for the next one
+		Thread.sleep(window.toMillis() - System.currentTimeMillis() % window.toMillis() + 10);
+
+		assertTrue(store.tryAcquire("reset", 1, window, QuotaPolicy.FIXED_WINDOW).granted());
+		store.release(previous);
+		assertEquals(1, store.used("reset", window, QuotaPolicy.FIXED_WINDOW));
+	}
+
+	@Test
+	public void testSlidingWindowReleaseGivesBackThatUse() {
+		val first = store.tryAcquire("sliding", 2, DAY, QuotaPolicy.SLIDING_WINDOW);
+		val second = store.tryAcquire("sliding", 2, DAY, QuotaPolicy.SLIDING_WINDOW);
+		assertFalse(store.tryAcquire("sliding", 2, DAY, QuotaPolicy.SLIDING_WINDOW).granted());
+
+		store.release(first);
+		// a use is only released once
+		store.release(first);
+		assertEquals(1, store.used("sliding", DAY, QuotaPolicy.SLIDING_WINDOW));
+
+		store.release(second);
+		assertEquals(0, store.used("sliding", DAY, QuotaPolicy.SLIDING_WINDOW));
+	}
+
+	@Test
+	public void testSlidingWindowUsesExpireOneByOne() throws InterruptedException {
+		val window = Duration.ofMillis(400);
+		assertTrue(store.tryAcquire("expiry", 2, window, QuotaPolicy.SLIDING_WINDOW).granted());
+		Thread.sleep(250);
+		assertTrue(store.tryAcquire("expiry", 2, window, QuotaPolicy.SLIDING_WINDOW).granted());
+		assertFalse(store.tryAcquire("expiry", 2, window, QuotaPolicy.SLIDING_WINDOW).granted());
+
+		// only the first use is out of the window
+		Thread.sleep(200);
+		assertEquals(1, store.used("expiry", window, QuotaPolicy.SLIDING_WINDOW));
+		assertTrue(store.tryAcquire("expiry", 2, window, QuotaPolicy.SLIDING_WINDOW).granted());
+		assertFalse(store.tryAcquire("expiry", 2, window, QuotaPolicy.SLIDING_WINDOW).granted());
+	}
+}
@@ -0,0 +1,109 @@
+package ua.sinaver.web3.payflow.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import ua.sinaver.web3.payflow.client.NeynarClient;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
+import ua.sinaver.web3.payflow.config.CacheConfig;
+import ua.sinaver.web3.payflow.message.farcaster.FarcasterUser;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// bulk socials lookups through the lookup cache, neynar is stubbed
+public class AirstackSocialGraphServiceTest {
+	private NeynarClient neynarClient;
+	private AirstackSocialGraphService socialGraphService;
+
+	@BeforeEach
+	public void setUp() {
+		val lookupCacheService = new LookupCacheService();
+		ReflectionTestUtils.setField(lookupCacheService, "cacheManager",
+				new ConcurrentMapCacheManager(CacheConfig.SOCIALS_CACHE_NAME));
+		ReflectionTestUtils.setField(lookupCacheService, "meterRegistry", new SimpleMeterRegistry());
+
+		val upstreams = mock(UpstreamClientRegistry.class);
+		when(upstreams.webClient(anyString())).thenReturn(WebClient.builder());
+		neynarClient = mock(NeynarClient.class);
+		socialGraphService = new AirstackSocialGraphService(upstreams, "http://localhost", "key");
+		ReflectionTestUtils.setField(socialGraphService, "neynarClient", neynarClient);
+		ReflectionTestUtils.setField(socialGraphService, "lookupCacheService", lookupCacheService);
+	}
+
+	private static FarcasterUser user(String username) {
+		return new FarcasterUser("user", 1, null, username, username, null, null, 10, 0,
+				List.of(), null, null, null);
+	}
+
+	// neynar only answers for the addresses it has users for
+	private void stubUsers(Set<String> withUsers) {
+		when(neynarClient.getUsersByAddresses(anyList())).thenAnswer(invocation -> {
+			val users = new HashMap<String, List<FarcasterUser>>();
+			invocation.<List<String>>getArgument(0).stream()
+					.filter(withUsers::contains)
+					.forEach(address -> users.put(address, List.of(user(address))));
+			return users;
+		});
+	}
+
+	private static String address(int i) {
+		return String.format("0x%040d", i);
+	}
+
+	@Test
+	public void testOnlyUncachedAddressesAreLoaded() {
+		stubUsers(Set.of("0x1", "0x3"));
+
+		assertEquals(Set.of("0x1"), socialGraphService.getSocialMetadata(List.of("0x1", "0x2", "0x1")).keySet());
+		verify(neynarClient).getUsersByAddresses(List.of("0x1", "0x2"));
+
+		// found and absent addresses are both served from the cache
+		val metas = socialGraphService.getSocialMetadata(List.of("0x1", "0x2", "0x3"));
+		assertEquals(Set.of("0x1", "0x3"), metas.keySet());
+		assertEquals("0x3", metas.get("0x3").socials().getFirst().profileName());
+		verify(neynarClient).getUsersByAddresses(List.of("0x3"));
+		verifyNoMoreInteractions(neynarClient);
+	}
+
+	@Test
+	public void testFailedBatchIsNotCached() {
+		// more addresses than fit in one bulk call, the first batch fails
+		val addresses = IntStream.range(0, 351).mapToObj(AirstackSocialGraphServiceTest::address).toList();
+		val firstBatch = addresses.subList(0, 350);
+		stubUsers(Set.copyOf(addresses));
+		when(neynarClient.getUsersByAddresses(firstBatch)).thenThrow(new IllegalStateException("upstream down"));
+
+		assertEquals(Set.of(address(350)), socialGraphService.getSocialMetadata(addresses).keySet());
+
+		// the failed addresses are loaded again, the rest of the call is cached
+		reset(neynarClient);
+		stubUsers(Set.copyOf(addresses));
+		assertEquals(Set.copyOf(addresses), socialGraphService.getSocialMetadata(addresses).keySet());
+		verify(neynarClient).getUsersByAddresses(firstBatch);
+		verifyNoMoreInteractions(neynarClient);
+	}
+
+	@Test
+	public void testCachedAddressesSkipTheLoader() {
+		stubUsers(Set.of("0x1"));
+		socialGraphService.getSocialMetadata(List.of("0x1", "0x2"));
+		reset(neynarClient);
+
+		assertEquals(Map.of("0x1", socialGraphService.getSocialMetadata("0x1")),
+				socialGraphService.getSocialMetadata(List.of("0x1", "0x2")));
+		verifyNoInteractions(neynarClient);
+	}
+}
@@ -0,0 +1,103 @@
+package ua.sinaver.web3.payflow.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
+import ua.sinaver.web3.payflow.message.farcaster.CastConversationData;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// history trimming only, requests to the api aren't made
+public class AnthropicAgentServiceTest {
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private AnthropicAgentService anthropicAgentService;
+
+	@BeforeEach
+	public void setUp() {
+		val upstreams = mock(UpstreamClientRegistry.class);
+		when(upstreams.webClient(anyString())).thenReturn(WebClient.builder());
+		anthropicAgentService = new AnthropicAgentService("key", "http://localhost", upstreams);
+		ReflectionTestUtils.setField(anthropicAgentService, "objectMapper", objectMapper);
+	}
+
+	private void budget(int tokens) {
+		ReflectionTestUtils.setField(anthropicAgentService, "historyTokenBudget", tokens);
+	}
+
+	private static CastConversationData.Cast cast(String text) {
+		return new CastConversationData.Cast(null, "2024-01-01T00:00:00Z", text, List.of(), List.of());
+	}
+
+	// same estimate as the service, ~4 characters of serialized cast per token
+	private int tokens(CastConversationData.Cast cast) throws Exception {
+		return objectMapper.writeValueAsString(cast).length() / 4 + 1;
+	}
+
+	private static CastConversationData conversation(CastConversationData.Cast cast,
+			List<CastConversationData.Cast> parents) {
+		return new CastConversationData(new CastConversationData.Conversation(cast, parents));
+	}
+
+	private List<CastConversationData.Cast> trimmedParents(CastConversationData.Cast cast,
+			List<CastConversationData.Cast> parents) {
+		val trimmed = anthropicAgentService.trimToBudget(conversation(cast, parents));
+		assertSame(cast, trimmed.conversation().cast());
+		return trimmed.conversation().chronologicalParentCasts();
+	}
+
+	@Test
+	public void testConversationWithoutParentsIsKept() {
+		budget(1);
+		val conversation = conversation(cast("@payflow send 5 usdc to @alice"), List.of());
+		assertSame(conversation, anthropicAgentService.trimToBudget(conversation));
+
+		val noParents = conversation(cast("@payflow send 5 usdc to @alice"), null);
+		assertSame(noParents, anthropicAgentService.trimToBudget(noParents));
+	}
+
+	@Test
+	public void testParentsWithinBudgetAreKept() {
+		budget(50_000);
+		val parents = List.of(cast("first"), cast("second"), cast("third"));
+		assertEquals(parents, trimmedParents(cast("@payflow pay them"), parents));
+	}
+
+	@Test
+	public void testOldestParentsAreDroppedFirst() throws Exception {
+		val cast = cast("@payflow pay them");
+		val parents = List.of(cast("first ".repeat(20)), cast("second ".repeat(20)), cast("third ".repeat(20)));
+
+		// exactly the cast and the two latest parents
+		budget(tokens(cast) + tokens(parents.get(2)) + tokens(parents.get(1)));
+		assertEquals(parents.subList(1, 3), trimmedParents(cast, parents));
+
+		budget(tokens(cast) + tokens(parents.get(2)) + tokens(parents.get(1)) - 1);
+		assertEquals(parents.subList(2, 3), trimmedParents(cast, parents));
+	}
+
+	@Test
+	public void testTrimmingDoesntSkipOverLargeParent() throws Exception {
+		val cast = cast("@payflow pay them");
+		val parents = List.of(cast("small"), cast("large ".repeat(200)), cast("latest"));
+
+		// the oldest would fit on its own, but the history stays contiguous
+		budget(tokens(cast) + tokens(parents.get(2)) + tokens(parents.get(0)));
+		assertEquals(List.of(parents.get(2)), trimmedParents(cast, parents));
+	}
+
+	@Test
+	public void testCastOverBudgetKeepsNoParents() throws Exception {
+		val cast = cast("@payflow " + "pay them ".repeat(100));
+		budget(tokens(cast) - 1);
+		assertEquals(List.of(), trimmedParents(cast, List.of(cast("first"), cast("second"))));
+	}
+}
@@ -0,0 +1,80 @@
+package ua.sinaver.web3.payflow.service;
+
+import io.micrometer.observation.ObservationRegistry;
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.sinaver.web3.payflow.entity.bot.PaymentBotJob;
+import ua.sinaver.web3.payflow.events.PaymentBotJobEvent;
+import ua.sinaver.web3.payflow.repository.PaymentBotJobRepository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+// a bot job reaches processing from the webhook event and from the scheduled run, processing
+// itself is stubbed, only which of the paths gets to run it is checked
+public class FarcasterBotServiceTest {
+
+	private PaymentBotJobRepository paymentBotJobRepository;
+	private FarcasterBotService farcasterBotService;
+	private PaymentBotJob job;
+
+	@BeforeEach
+	public void setUp() {
+		paymentBotJobRepository = mock(PaymentBotJobRepository.class);
+		val schedulerShardService = mock(SchedulerShardService.class);
+		when(schedulerShardService.shards()).thenReturn(new SchedulerShardService.Shards(List.of(0)));
+
+		val service = new FarcasterBotService();
+		ReflectionTestUtils.setField(service, "isBotEnabled", true);
+		ReflectionTestUtils.setField(service, "paymentBotJobRepository", paymentBotJobRepository);
+		ReflectionTestUtils.setField(service, "schedulerShardService", schedulerShardService);
+		ReflectionTestUtils.setField(service, "observationRegistry", ObservationRegistry.NOOP);
+		farcasterBotService = spy(service);
+		doAnswer(invocation -> {
+			invocation.<PaymentBotJob>getArgument(0).setStatus(PaymentBotJob.Status.PROCESSED);
+			return null;
+		}).when(farcasterBotService).processBotJob(any());
+
+		job = new PaymentBotJob("0xcast", 1, Instant.now(), null);
+		job.setId(1);
+		when(paymentBotJobRepository.findWithLockById(1)).thenReturn(Optional.of(job));
+		when(paymentBotJobRepository.findTop10ByStatusWithLock(eq(PaymentBotJob.Status.CREATED), anyList()))
+				.thenAnswer(invocation -> Stream.of(job)
+						.filter(j -> j.getStatus() == PaymentBotJob.Status.CREATED));
+	}
+
+	@Test
+	public void testEventAfterScheduledRunIsNoOp() {
+		farcasterBotService.castBotMessage();
+		farcasterBotService.handleBotJob(new PaymentBotJobEvent(job.getId()));
+
+		verify(farcasterBotService, times(1)).processBotJob(job);
+		assertEquals(PaymentBotJob.Status.PROCESSED, job.getStatus());
+		verify(paymentBotJobRepository, never()).save(any());
+	}
+
+	@Test
+	public void testScheduledRunAfterEventIsNoOp() {
+		farcasterBotService.handleBotJob(new PaymentBotJobEvent(job.getId()));
+		farcasterBotService.castBotMessage();
+
+		verify(farcasterBotService, times(1)).processBotJob(job);
+	}
+
+	@Test
+	public void testRepeatedEventIsNoOp() {
+		farcasterBotService.handleBotJob(new PaymentBotJobEvent(job.getId()));
+		farcasterBotService.handleBotJob(new PaymentBotJobEvent(job.getId()));
+
+		verify(farcasterBotService, times(1)).processBotJob(job);
+	}
+}
@@ -0,0 +1,236 @@
+package ua.sinaver.web3.payflow.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import lombok.val;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.sinaver.web3.payflow.dto.PaymentMessage;
+import ua.sinaver.web3.payflow.entity.Flow;
+import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.entity.Wallet;
+import ua.sinaver.web3.payflow.repository.PaymentRepository;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// listings run against an in-memory h2 schema generated from the entities, statements are
+// counted with hibernate statistics
+@SpringJUnitConfig(PaymentListingServiceTest.Config.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class PaymentListingServiceTest {
+
+	@Autowired
+	private PaymentListingService paymentListingService;
+	@Autowired
+	private PaymentRepository paymentRepository;
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final List<Integer> paymentIds = new ArrayList<>();
+	private final List<String> hashes = new ArrayList<>();
+	private final List<User> users = new ArrayList<>();
+
+	@BeforeAll
+	public void setUp() {
+		// generated schema makes @OneToOne join columns unique, migrated one doesn't. foreign keys
+		// go first, h2 keeps the unique index alive while a foreign key uses it
+		jdbcTemplate.queryForList("SELECT constraint_name FROM information_schema.table_constraints " +
+						"WHERE table_name = 'PAYMENT' AND constraint_type IN ('FOREIGN KEY', 'UNIQUE') " +
+						"ORDER BY constraint_type", String.class)
+				.forEach(constraint -> jdbcTemplate.execute("ALTER TABLE payment DROP CONSTRAINT " + constraint));
+
+		val now = Instant.now();
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			for (int i = 0; i < 4; i++) {
+				val user = new User(String.format("0x%040d", i));
+				user.setUsername("user" + i);
+				user.setDisplayName("User " + i);
+				user.setProfileImage("https://img/" + i);
+				// mysql keeps microseconds
+				user.setCreatedDate(now.truncatedTo(ChronoUnit.MICROS));
+				// user0 falls back to the verification address, user3 has no receiving flow at all
+				if (i == 3) {
+					user.setDefaultReceivingAddress(null);
+				}
+				entityManager.persist(user);
+				if (i == 1 || i == 2) {
+					user.setDefaultFlow(flow(user, "default " + i, null, 2));
+				}
+				users.add(user);
+			}
+			val jar = flow(users.get(1), "jar", Flow.FlowType.JAR, 1);
+			entityManager.persist(jar);
+
+			for (int i = 0; i < 25; i++) {
+				val payment = new Payment(Payment.PaymentType.APP, i % 3 == 0 ? null : users.get((i + 1) % 4),
+						8453, "usdc");
+				payment.setSender(users.get(i % 4));
+				payment.setReceiverFlow(i % 5 == 0 ? jar : null);
+				payment.setReceiverAddress(String.format("0x%040d", 100 + i));
+				payment.setTokenAmount("1.5");
+				payment.setUsdAmount(i % 2 == 0 ? "1.5" : null);
+				payment.setHash("0xhash" + i);
+				payment.setComment("comment " + i);
+				payment.setStatus(Payment.PaymentStatus.COMPLETED);
+				payment.setCreatedAt(now.minus(i + 1, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MICROS));
+				payment.setCompletedAt(now.minus(i, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MICROS));
+				entityManager.persist(payment);
+				paymentIds.add(payment.getId());
+				hashes.add(payment.getHash());
+			}
+		});
+	}
+
+	private Flow flow(User user, String title, Flow.FlowType type, int wallets) {
+		val flow = new Flow(user.getId(), title, null, null, null, null, "safe", null);
+		flow.setType(type);
+		val flowWallets = new ArrayList<Wallet>();
+		for (int i = 0; i < wallets; i++) {
+			val wallet = new Wallet(String.format("0x%s%038d", title.hashCode() & 0xff, i), 8453 + i,
+					"1.4.1", i == 0);
+			wallet.setFlow(flow);
+			flowWallets.add(wallet);
+		}
+		flow.setWallets(flowWallets);
+		return flow;
+	}
+
+	private <T> long statements(Supplier<T> listing, List<T> result) {
+		val statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		val template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		statistics.clear();
+		result.add(template.execute(status -> listing.get()));
+		return statistics.getPrepareStatementCount();
+	}
+
+	@Test
+	public void testListingQueryCountDoesNotDependOnPageSize() {
+		val small = new ArrayList<List<PaymentMessage>>();
+		val large = new ArrayList<List<PaymentMessage>>();
+
+		assertEquals(2, statements(() -> paymentListingService.messages(
+				paymentListingService.rows(paymentIds.subList(0, 5)), true, true), small));
+		assertEquals(2, statements(() -> paymentListingService.messages(
+				paymentListingService.rows(paymentIds), true, true), large));
+		assertEquals(5, small.getFirst().size());
+		assertEquals(25, large.getFirst().size());
+	}
+
+	@Test
+	public void testRowsMapToSameMessagesAsEntities() {
+		val rowMessages = new ArrayList<List<PaymentMessage>>();
+		val entityMessages = new ArrayList<List<PaymentMessage>>();
+
+		val rowStatements = statements(() -> paymentListingService.messages(
+				paymentListingService.rows(paymentIds), true, false), rowMessages);
+		val entityStatements = statements(() -> paymentRepository.findAllById(paymentIds).stream()
+				.sorted(Comparator.comparingInt(payment -> paymentIds.indexOf(payment.getId())))
+				.map(payment -> PaymentMessage.convert(payment, true, false))
+				.toList(), entityMessages);
+
+		assertEquals(entityMessages.getFirst(), rowMessages.getFirst());
+		assertTrue(entityStatements > rowStatements,
+				String.format("entity path %d statements, rows %d", entityStatements, rowStatements));
+	}
+
+	@Test
+	public void testFindByHashesOnlyReturnsParticipantOrJarPayments() {
+		val result = new ArrayList<List<PaymentMessage>>();
+		val user = users.get(1);
+
+		assertEquals(2, statements(() -> paymentListingService.findByHashes(hashes, user), result));
+
+		val payments = result.getFirst();
+		assertFalse(payments.isEmpty());
+		assertTrue(payments.size() < hashes.size());
+		payments.forEach(payment -> assertTrue(
+				(payment.sender() != null && user.getIdentity().equals(payment.sender().identity()))
+						|| (payment.receiver() != null && user.getIdentity().equals(payment.receiver().identity()))
+						|| (payment.receiverFlow() != null && "JAR".equals(payment.receiverFlow().type())),
+				payment.hash()));
+	}
+
+	@Configuration
+	@EnableJpaRepositories(basePackageClasses = PaymentRepository.class)
+	@Import({ PaymentListingService.class, PaymentParticipantService.class })
+	static class Config {
+		@Bean
+		DataSource dataSource() {
+			return new DriverManagerDataSource("jdbc:h2:mem:payments;MODE=MySQL;NON_KEYWORDS=USER,VALUE;DB_CLOSE_DELAY=-1");
+		}
+
+		@Bean
+		LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource,
+				ConfigurableListableBeanFactory beanFactory) {
+			val factory = new LocalContainerEntityManagerFactoryBean();
+			factory.setDataSource(dataSource);
+			factory.setPackagesToScan("ua.sinaver.web3.payflow.entity");
+			factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			// same naming as spring boot, entity listeners are autowired like in the service
+			factory.setJpaPropertyMap(Map.of(
+					AvailableSettings.HBM2DDL_AUTO, "create-drop",
+					AvailableSettings.PHYSICAL_NAMING_STRATEGY, CamelCaseToUnderscoresNamingStrategy.class.getName(),
+					// regions of the default jcache manager are shared by every context of the jvm
+					AvailableSettings.USE_SECOND_LEVEL_CACHE, false,
+					AvailableSettings.GENERATE_STATISTICS, true,
+					AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory)));
+			return factory;
+		}
+
+		@Bean
+		JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+			return new JpaTransactionManager(entityManagerFactory);
+		}
+
+		@Bean
+		JdbcTemplate jdbcTemplate(DataSource dataSource) {
+			return new JdbcTemplate(dataSource);
+		}
+
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package ua.sinaver.web3.payflow.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.sinaver.web3.payflow.dto.CursorPageMessage;
+import ua.sinaver.web3.payflow.dto.PaymentRow;
+import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.repository.PaymentRepository;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// ledger rows of payments flushed together are written as one batch per flush, the jdbc
+// template is spied to count the statements. feeds are read back from the ledger
+@SpringJUnitConfig(PaymentParticipantServiceTest.Config.class)
+public class PaymentParticipantServiceTest {
+
+	@Autowired
+	private PaymentParticipantService paymentParticipantService;
+	@Autowired
+	private PaymentRepository paymentRepository;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private User sender;
+
+	@BeforeEach
+	public void setUp() {
+		// generated schema makes @OneToOne join columns unique, migrated one doesn't
+		jdbcTemplate.queryForList("SELECT constraint_name FROM information_schema.table_constraints " +
+						"WHERE table_name = 'PAYMENT' AND constraint_type IN ('FOREIGN KEY', 'UNIQUE') " +
+						"ORDER BY constraint_type", String.class)
+				.forEach(constraint -> jdbcTemplate.execute("ALTER TABLE payment DROP CONSTRAINT " + constraint));
+
+		sender = inTransaction(() -> {
+			val user = new User(String.format("0x%040d", System.nanoTime()));
+			entityManager.persist(user);
+			return user;
+		});
+		clearInvocations(jdbcTemplate);
+	}
+
+	private <T> T inTransaction(Supplier<T> action) {
+		return new TransactionTemplate(transactionManager).execute(status -> action.get());
+	}
+
+	private Payment payment(int i) {
+		val payment = new Payment(Payment.PaymentType.APP, null, 8453, "usdc");
+		payment.setSender(sender);
+		payment.setReceiverAddress(String.format("0x%040d", i));
+		payment.setTokenAmount("1");
+		return payment;
+	}
+
+	private List<String> rows(Payment payment) {
+		return jdbcTemplate.queryForList("SELECT CONCAT(role, '/', status) FROM payment_participant " +
+				"WHERE payment_id = ? ORDER BY role", String.class, payment.getId());
+	}
+
+	private void verifyBatches(String sql, int batches) {
+		verify(jdbcTemplate, times(batches)).batchUpdate(startsWith(sql), any(Collection.class), anyInt(),
+				any(ParameterizedPreparedStatementSetter.class));
+	}
+
+	@Test
+	public void testSavedPaymentsAreWrittenAsOneBatch() {
+		val payments = new ArrayList<Payment>();
+		for (int i = 0; i < 20; i++) {
+			payments.add(payment(i));
+		}
+		inTransaction(() -> paymentRepository.saveAll(payments));
+
+		verifyBatches("INSERT", 1);
+		verifyBatches("DELETE", 0);
+		verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+		payments.forEach(payment -> assertEquals(List.of("RECEIVER/CREATED", "SENDER/CREATED"), rows(payment)));
+	}
+
+	@Test
+	public void testRowsAreVisibleToQueriesOfTheSameTransaction() {
+		inTransaction(() -> {
+			val payment = paymentRepository.save(payment(1));
+			// the query flushes the payment, the ledger rows follow at the end of that flush
+			paymentRepository.findByReferenceId(payment.getReferenceId());
+			assertEquals(2, rows(payment).size());
+			return payment;
+		});
+	}
+
+	@Test
+	public void testUpdatesAndRemovalsAreSynced() {
+		val payments = inTransaction(() -> paymentRepository.saveAll(List.of(payment(1), payment(2))));
+		clearInvocations(jdbcTemplate);
+
+		inTransaction(() -> {
+			paymentRepository.findAllById(payments.stream().map(Payment::getId).toList())
+					.forEach(payment -> {
+						payment.setStatus(Payment.PaymentStatus.COMPLETED);
+						payment.setCompletedAt(Instant.now());
+					});
+			return null;
+		});
+		verifyBatches("DELETE", 1);
+		verifyBatches("INSERT", 1);
+		payments.forEach(payment -> assertEquals(List.of("RECEIVER/COMPLETED", "SENDER/COMPLETED"),
+				rows(payment)));
+
+		inTransaction(() -> {
+			paymentRepository.deleteById(payments.getFirst().getId());
+			return null;
+		});
+		assertEquals(List.of(), rows(payments.getFirst()));
+		assertEquals(2, rows(payments.getLast()).size());
+	}
+
+	@Test
+	public void testRolledBackPaymentLeavesNoRows() {
+		val payment = payment(1);
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			paymentRepository.save(payment);
+			paymentRepository.flush();
+			status.setRollbackOnly();
+		});
+
+		assertEquals(List.of(), rows(payment));
+	}
+
+	@Test
+	public void testInnerTransactionWritesItsOwnRows() {
+		val inner = new TransactionTemplate(transactionManager);
+		inner.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		val outerPayment = payment(1);
+		val innerPayment = payment(2);
+
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			paymentRepository.save(outerPayment);
+			inner.executeWithoutResult(innerStatus -> paymentRepository.save(innerPayment));
+			// committed on its own, before the outer payment is flushed
+			assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payment_participant " +
+					"WHERE payment_id = ?", Integer.class, innerPayment.getId()));
+			status.setRollbackOnly();
+		});
+
+		assertEquals(List.of(), rows(outerPayment));
+		assertEquals(2, rows(innerPayment).size());
+	}
+
+	@Test
+	public void testFeedMergesParticipantKeysByPayment() {
+		val address = String.format("0x%040d", 999);
+		val expected = inTransaction(() -> {
+			val other = new User(String.format("0x%040d", System.nanoTime()));
+			entityManager.persist(other);
+			val completedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+			val payments = new ArrayList<Payment>();
+			for (int i = 0; i < 8; i++) {
+				val payment = payment(i);
+				switch (i % 3) {
+					// sender by user and by address
+					case 0 -> payment.setSenderAddress(address);
+					// received by address only
+					case 1 -> {
+						payment.setSender(other);
+						payment.setReceiverAddress(address);
+					}
+					// sender by user, receiver by address
+					default -> payment.setReceiverAddress(address);
+				}
+				payment.setStatus(Payment.PaymentStatus.COMPLETED);
+				// two payments completed at the same time, ordered by id
+				payment.setCompletedAt(completedAt.minus(Math.min(i, 6), ChronoUnit.MINUTES));
+				payments.add(payment);
+			}
+			paymentRepository.saveAll(payments);
+
+			val unrelated = payment(100);
+			unrelated.setSender(other);
+			unrelated.setStatus(Payment.PaymentStatus.COMPLETED);
+			unrelated.setCompletedAt(completedAt);
+			val pending = payment(101);
+			paymentRepository.saveAll(List.of(unrelated, pending));
+
+			return payments.stream()
+					.sorted(Comparator.comparing(Payment::getCompletedAt).thenComparing(Payment::getId).reversed())
+					.map(Payment::getId)
+					.toList();
+		});
+
+		val ids = new ArrayList<Integer>();
+		String cursor = null;
+		CursorPageMessage<PaymentRow> page;
+		do {
+			page = paymentParticipantService.findCompleted(sender, List.of(address), null, cursor, 0, 3);
+			page.content().forEach(row -> ids.add(row.getId()));
+			cursor = page.nextCursor();
+		} while (!page.last());
+		assertEquals(expected, ids);
+
+		// offset fallback
+		val second = paymentParticipantService.findCompleted(sender, List.of(address), null, null, 1, 3);
+		assertEquals(expected.subList(3, 6), second.content().stream().map(PaymentRow::getId).toList());
+		assertFalse(second.last());
+	}
+
+	// h2 doesn't report whether the index order replaces the sort when the leading index columns
+	// are bound by equality (mysql does and reads the branch in index order), the plan is checked
+	// for the index lookup on the full prefix and for the per-branch limit without grouping
+	@Test
+	public void testFeedBranchesAreIndexLookups() {
+		for (val sql : List.of(PaymentParticipantService.LATEST_SQL, PaymentParticipantService.BEFORE_SQL)) {
+			val parameters = new Object[(int) sql.chars().filter(c -> c == '?').count() * 2];
+			val plan = jdbcTemplate.queryForObject("EXPLAIN " + sql + " UNION ALL " + sql, String.class,
+					parameters);
+
+			assertEquals(2, StringUtils.countMatches(plan,
+					"/* PUBLIC.IDX_PAYMENT_PARTICIPANT_KEY_ROLE_STATUS_SORTED_AT: "), plan);
+			assertEquals(2, StringUtils.countMatches(plan, "FETCH FIRST"), plan);
+			for (val column : List.of("PARTICIPANT_KEY = ?", "ROLE = ?", "STATUS = ?")) {
+				assertEquals(2, StringUtils.countMatches(plan, column), plan);
+			}
+			assertFalse(plan.contains("GROUP BY"), plan);
+			assertFalse(plan.contains(" IN("), plan);
+		}
+	}
+
+	@Configuration
+	@EnableJpaRepositories(basePackageClasses = PaymentRepository.class)
+	@Import({ PaymentListingService.class, PaymentParticipantService.class })
+	static class Config {
+		@Bean
+		DataSource dataSource() {
+			return new DriverManagerDataSource("jdbc:h2:mem:participants;MODE=MySQL;NON_KEYWORDS=USER,VALUE;DB_CLOSE_DELAY=-1");
+		}
+
+		@Bean
+		LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource,
+				ConfigurableListableBeanFactory beanFactory) {
+			val factory = new LocalContainerEntityManagerFactoryBean();
+			factory.setDataSource(dataSource);
+			factory.setPackagesToScan("ua.sinaver.web3.payflow.entity");
+			factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			factory.setJpaPropertyMap(Map.of(
+					AvailableSettings.HBM2DDL_AUTO, "create-drop",
+					AvailableSettings.PHYSICAL_NAMING_STRATEGY, CamelCaseToUnderscoresNamingStrategy.class.getName(),
+					// regions of the default jcache manager are shared by every context of the jvm
+					AvailableSettings.USE_SECOND_LEVEL_CACHE, false,
+					AvailableSettings.STATEMENT_BATCH_SIZE, 50,
+					AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory)));
+			return factory;
+		}
+
+		@Bean
+		JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+			return new JpaTransactionManager(entityManagerFactory);
+		}
+
+		@Bean
+		JdbcTemplate jdbcTemplate(DataSource dataSource) {
+			return spy(new JdbcTemplate(dataSource));
+		}
+
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package ua.sinaver.web3.payflow.service;
+
+import lombok.val;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import ua.sinaver.web3.payflow.client.UpstreamClientRegistry;
+import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.message.SocialInfo;
+import ua.sinaver.web3.payflow.message.SocialMetadata;
+import ua.sinaver.web3.payflow.repository.UserRepository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// profiles and socials are stubbed, the service and the identity scoring behind it are real
+public class RecipientResolutionServiceTest {
+	private static final int CHAIN_ID = 8453;
+	private static final String ALICE = "0xa100000000000000000000000000000000000000";
+	private static final String BOB = "0xb100000000000000000000000000000000000000";
+	private static final String BOB_2 = "0xb200000000000000000000000000000000000000";
+	private static final String CAROL = "0xc100000000000000000000000000000000000000";
+	private static final String CAROL_2 = "0xc200000000000000000000000000000000000000";
+	private static final String DAVE = "0xd100000000000000000000000000000000000000";
+	private static final String DAVE_2 = "0xd200000000000000000000000000000000000000";
+	private static final String ALICE_FLOW = "0xaf00000000000000000000000000000000000000";
+	private static final SocialMetadata NO_SOCIALS = new SocialMetadata(null, null, List.of());
+	private static final SocialMetadata FARCASTER = new SocialMetadata(null, null,
+			List.of(new SocialInfo("farcaster", "carol", null, 1, null, 10)));
+	private static final SocialMetadata ENS_AND_FARCASTER = new SocialMetadata("carol.eth", null,
+			List.of(new SocialInfo("farcaster", "carol", null, 1, null, 10)));
+
+	private AirstackSocialGraphService socialGraphService;
+	private PaymentService paymentService;
+	private RecipientResolutionService recipientResolutionService;
+
+	private final User alice = profile(ALICE);
+	private final User bob = profile(BOB);
+
+	private static User profile(String identity) {
+		val user = new User(identity);
+		user.setAllowed(true);
+		return user;
+	}
+
+	@BeforeEach
+	public void setUp() {
+		val userRepository = mock(UserRepository.class);
+		when(userRepository.findAllByIdentityInIgnoreCase(anyList())).thenAnswer(invocation -> {
+			val identities = invocation.<List<String>>getArgument(0).stream().map(String::toLowerCase).toList();
+			return List.of(alice, bob).stream().filter(user -> identities.contains(user.getIdentity())).toList();
+		});
+		socialGraphService = mock(AirstackSocialGraphService.class);
+		paymentService = mock(PaymentService.class);
+		when(paymentService.getUserReceiverAddress(alice, CHAIN_ID)).thenReturn(ALICE_FLOW);
+
+		val upstreams = mock(UpstreamClientRegistry.class);
+		when(upstreams.webClient(anyString())).thenReturn(WebClient.builder());
+		val identityService = new IdentityService(upstreams, "http://localhost", "http://localhost");
+		ReflectionTestUtils.setField(identityService, "userRepository", userRepository);
+		ReflectionTestUtils.setField(identityService, "socialGraphService", socialGraphService);
+
+		recipientResolutionService = new RecipientResolutionService();
+		ReflectionTestUtils.setField(recipientResolutionService, "identityService", identityService);
+		ReflectionTestUtils.setField(recipientResolutionService, "paymentService", paymentService);
+	}
+
+	private static RecipientResolutionService.Recipient recipient(String... addresses) {
+		return new RecipientResolutionService.Recipient(List.of(addresses), CHAIN_ID);
+	}
+
+	@Test
+	public void testReceiversKeepRecipientOrder() {
+		when(socialGraphService.getSocialMetadata(anyCollection())).thenReturn(Map.of(
+				BOB, NO_SOCIALS,
+				BOB_2, FARCASTER,
+				CAROL, FARCASTER,
+				CAROL_2, ENS_AND_FARCASTER));
+
+		val receivers = recipientResolutionService.resolve(List.of(
+				// no profile, the best scored address
+				recipient(CAROL, CAROL_2),
+				// profile receiving on the chain, matched regardless of the address case
+				recipient(ALICE.toUpperCase().replace("0X", "0x")),
+				// no profile and no socials
+				recipient(DAVE),
+				// profile without an address on the chain is scored, its profile outweighs the socials
+				recipient(BOB_2, BOB)));
+
+		assertEquals(List.of(
+				new RecipientResolutionService.Receiver(null, CAROL_2),
+				new RecipientResolutionService.Receiver(alice, ALICE_FLOW),
+				new RecipientResolutionService.Receiver(null, null),
+				new RecipientResolutionService.Receiver(bob, BOB)), receivers);
+
+		// one bulk call for the addresses of all scored recipients
+		verify(socialGraphService).getSocialMetadata(argThat((Collection<String> identities) ->
+				Set.copyOf(identities).equals(Set.of(CAROL, CAROL_2, DAVE, BOB_2, BOB))));
+	}
+
+	@Test
+	public void testGroupWithoutSocialsHasNoAddress() {
+		when(socialGraphService.getSocialMetadata(anyCollection())).thenReturn(Map.of(CAROL, FARCASTER));
+
+		val receivers = recipientResolutionService.resolve(List.of(
+				recipient(DAVE, DAVE_2),
+				recipient(CAROL)));
+
+		assertNull(receivers.get(0).address());
+		assertEquals(CAROL, receivers.get(1).address());
+	}
+
+	@Test
+	public void testProfilesOnChainAreNotScored() {
+		val receivers = recipientResolutionService.resolve(List.of(recipient(ALICE), recipient(ALICE)));
+
+		assertEquals(List.of(ALICE_FLOW, ALICE_FLOW),
+				receivers.stream().map(RecipientResolutionService.Receiver::address).toList());
+		verify(socialGraphService, never()).getSocialMetadata(anyCollection());
+	}
+}
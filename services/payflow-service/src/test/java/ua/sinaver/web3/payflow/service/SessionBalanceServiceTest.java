@@ -0,0 +1,327 @@
+package ua.sinaver.web3.payflow.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import lombok.val;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+import ua.sinaver.web3.payflow.entity.Flow;
+import ua.sinaver.web3.payflow.entity.Payment;
+import ua.sinaver.web3.payflow.entity.User;
+import ua.sinaver.web3.payflow.entity.Wallet;
+import ua.sinaver.web3.payflow.entity.WalletSession;
+import ua.sinaver.web3.payflow.repository.PaymentRepository;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// pending session intents are read from an in-memory h2 schema, the wallet balance is stubbed
+@SpringJUnitConfig(SessionBalanceServiceTest.Config.class)
+public class SessionBalanceServiceTest {
+	private static final Duration BALANCE_TTL = Duration.ofMillis(300);
+	private static final String TOKEN_ADDRESS = "0x833589fcd6edb6e08f4c7c32d4f71b54bda02913";
+
+	@Autowired
+	private SessionBalanceService sessionBalanceService;
+	@MockitoBean
+	private WalletService walletService;
+	@MockitoBean
+	private TokenPriceService tokenPriceService;
+	@Autowired
+	private PaymentRepository paymentRepository;
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private WalletSession session;
+
+	@BeforeEach
+	public void setUp() {
+		balance("10");
+		session = inTransaction(() -> {
+			val user = new User(String.format("0x%040d", System.nanoTime()));
+			entityManager.persist(user);
+			val flow = new Flow(user.getId(), "session", null, null, null, null, "safe", null);
+			val wallet = new Wallet(String.format("0x%040d", System.nanoTime()), 8453, "1.4.1", true);
+			wallet.setFlow(flow);
+			flow.setWallets(List.of(wallet));
+			entityManager.persist(flow);
+			val walletSession = new WalletSession();
+			walletSession.setSessionId(UUID.randomUUID().toString());
+			walletSession.setSessionKey("key");
+			walletSession.setWallet(wallet);
+			entityManager.persist(walletSession);
+			return walletSession;
+		});
+	}
+
+	private void balance(String formatted) {
+		when(walletService.getTokenBalance(any(), any(), any()))
+				.thenReturn(new WalletService.TokenBalance(formatted, formatted, "USDC", 6));
+	}
+
+	private <T> T inTransaction(Supplier<T> action) {
+		return new TransactionTemplate(transactionManager).execute(status -> action.get());
+	}
+
+	private Payment payment(String amount) {
+		val payment = new Payment(Payment.PaymentType.INTENT, null, 8453, "usdc");
+		payment.setTokenAmount(amount);
+		return payment;
+	}
+
+	// what the bot does: check the funds, then save the payment as a session intent
+	private SessionBalanceService.Funds reserve(String amount) {
+		return inTransaction(() -> {
+			val payment = payment(amount);
+			val funds = sessionBalanceService.tryReserve(payment, session.getWallet(), TOKEN_ADDRESS,
+					new BigDecimal(amount));
+			if (funds.reserved()) {
+				payment.setType(Payment.PaymentType.SESSION_INTENT);
+				payment.setWalletSession(session);
+			}
+			paymentRepository.save(payment);
+			return funds;
+		});
+	}
+
+	private Payment intent(String amount) {
+		return inTransaction(() -> {
+			val payment = payment(amount);
+			payment.setType(Payment.PaymentType.SESSION_INTENT);
+			payment.setWalletSession(session);
+			return paymentRepository.save(payment);
+		});
+	}
+
+	private void transition(Payment payment, Payment.PaymentStatus status) {
+		inTransaction(() -> paymentRepository.updateStatusByIds(List.of(payment.getId()), status, Instant.now()));
+	}
+
+	@Test
+	public void testReserveWithinBalance() {
+		val funds = reserve("4");
+
+		assertTrue(funds.reserved());
+		assertEquals(0, new BigDecimal("10").compareTo(funds.available()));
+	}
+
+	@Test
+	public void testPendingIntentsHoldFunds() {
+		assertTrue(reserve("4").reserved());
+		assertTrue(reserve("5").reserved());
+
+		val funds = reserve("2");
+		assertFalse(funds.reserved());
+		assertEquals(0, BigDecimal.ONE.compareTo(funds.available()));
+		// checked against the cached balance
+		verify(walletService, times(1)).getTokenBalance(any(), any(), any());
+	}
+
+	@Test
+	public void testConcurrentChecksOfWalletDontOverspend() throws Exception {
+		// stands in for bot jobs of the same wallet on several instances, only the database is shared
+		try (val executor = Executors.newFixedThreadPool(8)) {
+			val start = new CountDownLatch(1);
+			val results = new ArrayList<Future<SessionBalanceService.Funds>>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return reserve("3");
+				}));
+			}
+			start.countDown();
+
+			var reserved = 0;
+			for (val result : results) {
+				reserved += result.get().reserved() ? 1 : 0;
+			}
+			assertEquals(3, reserved);
+		}
+	}
+
+	@Test
+	public void testUnsavedIntentsOfCommandHoldFunds() {
+		// recipients of one command are saved together after all of them are checked
+		val results = inTransaction(() -> {
+			val unsaved = new ArrayList<Payment>();
+			val reserved = new ArrayList<Boolean>();
+			for (val amount : List.of("4", "5", "2")) {
+				val payment = payment(amount);
+				val funds = sessionBalanceService.tryReserve(payment, unsaved, session.getWallet(),
+						TOKEN_ADDRESS, new BigDecimal(amount));
+				if (funds.reserved()) {
+					payment.setType(Payment.PaymentType.SESSION_INTENT);
+					payment.setWalletSession(session);
+				}
+				unsaved.add(payment);
+				reserved.add(funds.reserved());
+			}
+			paymentRepository.saveAll(unsaved);
+			return reserved;
+		});
+
+		assertEquals(List.of(true, true, false), results);
+		assertFalse(reserve("2").reserved());
+	}
+
+	@Test
+	public void testIntentsOfOtherTokensDontHoldFunds() {
+		inTransaction(() -> {
+			val payment = new Payment(Payment.PaymentType.SESSION_INTENT, null, 8453, "eth");
+			payment.setTokenAmount("9");
+			payment.setWalletSession(session);
+			return paymentRepository.save(payment);
+		});
+
+		assertTrue(reserve("9").reserved());
+	}
+
+	@Test
+	public void testSentIntentHoldsFundsUntilBalanceIsFetchedAgain() throws InterruptedException {
+		val sent = intent("8");
+		assertFalse(reserve("4").reserved());
+
+		// sent after the cached balance was fetched, it's still in there
+		transition(sent, Payment.PaymentStatus.COMPLETED);
+		assertFalse(reserve("4").reserved());
+
+		balance("2");
+		Thread.sleep(BALANCE_TTL.toMillis() + 100);
+		val funds = reserve("2");
+		assertTrue(funds.reserved());
+		assertEquals(0, new BigDecimal("2").compareTo(funds.available()));
+	}
+
+	@Test
+	public void testFailedExpiredAndCancelledIntentsReleaseFunds() {
+		for (val status : List.of(Payment.PaymentStatus.FAILED, Payment.PaymentStatus.EXPIRED,
+				Payment.PaymentStatus.CANCELLED)) {
+			val intent = intent("8");
+			assertFalse(reserve("4").reserved(), status.name());
+
+			transition(intent, status);
+			assertTrue(reserve("4").reserved(), status.name());
+			// leave the full balance for the next status
+			inTransaction(() -> paymentRepository.updateStatusByIds(
+					paymentRepository.findSessionIntentsHoldingFunds(session.getWallet(), 8453, "usdc",
+							Instant.now()).stream().map(Payment::getId).toList(),
+					Payment.PaymentStatus.CANCELLED, Instant.now()));
+		}
+	}
+
+	@Test
+	public void testRolledBackIntentDoesntHoldFunds() {
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			val payment = payment("8");
+			assertTrue(sessionBalanceService.tryReserve(payment, session.getWallet(), TOKEN_ADDRESS,
+					new BigDecimal("8")).reserved());
+			payment.setType(Payment.PaymentType.SESSION_INTENT);
+			payment.setWalletSession(session);
+			paymentRepository.save(payment);
+			status.setRollbackOnly();
+		});
+
+		assertTrue(reserve("8").reserved());
+	}
+
+	@Test
+	public void testUnknownBalanceIsNotReserved() {
+		when(walletService.getTokenBalance(any(), any(), any())).thenReturn(null);
+
+		val funds = reserve("1");
+		assertFalse(funds.reserved());
+		assertNull(funds.available());
+	}
+
+	@Test
+	public void testRequiresTransaction() {
+		assertThrows(IllegalTransactionStateException.class, () -> sessionBalanceService.tryReserve(
+				payment("1"), session.getWallet(), TOKEN_ADDRESS, BigDecimal.ONE));
+	}
+
+	@Configuration
+	@EnableTransactionManagement
+	@EnableJpaRepositories(basePackageClasses = PaymentRepository.class)
+	@Import({ PaymentListingService.class, PaymentParticipantService.class })
+	static class Config {
+		@Bean
+		DataSource dataSource() {
+			return new DriverManagerDataSource("jdbc:h2:mem:balances;MODE=MySQL;NON_KEYWORDS=USER,VALUE;DB_CLOSE_DELAY=-1");
+		}
+
+		@Bean
+		LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource,
+				ConfigurableListableBeanFactory beanFactory) {
+			val factory = new LocalContainerEntityManagerFactoryBean();
+			factory.setDataSource(dataSource);
+			factory.setPackagesToScan("ua.sinaver.web3.payflow.entity");
+			factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			factory.setJpaPropertyMap(Map.of(
+					AvailableSettings.HBM2DDL_AUTO, "create-drop",
+					AvailableSettings.PHYSICAL_NAMING_STRATEGY, CamelCaseToUnderscoresNamingStrategy.class.getName(),
+					// regions of the default jcache manager are shared by every context of the jvm
+					AvailableSettings.USE_SECOND_LEVEL_CACHE, false,
+					AvailableSettings.BEAN_CONTAINER, new SpringBeanContainer(beanFactory)));
+			return factory;
+		}
+
+		@Bean
+		JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+			return new JpaTransactionManager(entityManagerFactory);
+		}
+
+		@Bean
+		JdbcTemplate jdbcTemplate(DataSource dataSource) {
+			return new JdbcTemplate(dataSource);
+		}
+
+		@Bean
+		SessionBalanceService sessionBalanceService() {
+			return new SessionBalanceService(BALANCE_TTL);
+		}
+
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+	}
+}
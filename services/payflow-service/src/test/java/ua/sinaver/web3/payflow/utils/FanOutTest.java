@@ -0,0 +1,126 @@
+package ua.sinaver.web3.payflow.utils;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FanOutTest {
+	private static final Duration LONG = Duration.ofSeconds(5);
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void testResultsKeepInputOrder() {
+		val result = FanOut.run("order", List.of(30, 0, 20, 10), delay -> {
+			sleep(delay);
+			return "r" + delay;
+		}, LONG, 4);
+
+		assertEquals(List.of("r30", "r0", "r20", "r10"), result.completed());
+		assertEquals(List.of(), result.missing());
+	}
+
+	@Test
+	public void testFailedInputsAreMissingAndNullsSkipped() {
+		val result = FanOut.run("failures", List.of(1, 2, 3), input -> {
+			if (input == 2) {
+				throw new IllegalStateException("upstream down");
+			}
+			return input == 3 ? null : "r" + input;
+		}, LONG, 4);
+
+		assertEquals(List.of("r1"), result.completed());
+		assertEquals(List.of(2), result.missing());
+	}
+
+	@Test
+	public void testSlowInputsMissTheDeadline() {
+		val start = System.nanoTime();
+		val result = FanOut.run("deadline", List.of(0, 2000, 0), delay -> {
+			sleep(delay);
+			return "r" + delay;
+		}, Duration.ofMillis(200), 4);
+		val elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+		assertEquals(List.of("r0", "r0"), result.completed());
+		assertEquals(List.of(2000), result.missing());
+		assertTrue(elapsed.compareTo(Duration.ofSeconds(1)) < 0, "waited " + elapsed);
+	}
+
+	@Test
+	public void testConcurrencyIsLimited() {
+		val running = new AtomicInteger();
+		val maxRunning = new AtomicInteger();
+		val inputs = List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+
+		val result = FanOut.run("concurrency", inputs, input -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			sleep(20);
+			running.decrementAndGet();
+			return input;
+		}, LONG, 3);
+
+		assertEquals(inputs, result.completed());
+		assertEquals(3, maxRunning.get());
+	}
+
+	@Test
+	public void testInputsWaitingForPermitAfterDeadlineAreNotStarted() {
+		val started = ConcurrentHashMap.<Integer>newKeySet();
+		val result = FanOut.run("permits", List.of(1, 2, 3), input -> {
+			started.add(input);
+			sleep(500);
+			return input;
+		}, Duration.ofMillis(100), 1);
+
+		assertEquals(List.of(), result.completed());
+		assertEquals(List.of(1, 2, 3), result.missing());
+		assertEquals(Set.of(1), started);
+	}
+
+	@Test
+	public void testRunningTasksAreInterruptedAtDeadline() throws InterruptedException {
+		val interrupted = new CountDownLatch(2);
+		val result = FanOut.run("cancel", List.of(1, 2), input -> {
+			try {
+				Thread.sleep(LONG.toMillis());
+				return input;
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+				return null;
+			}
+		}, Duration.ofMillis(100), 2);
+
+		assertEquals(List.of(1, 2), result.missing());
+		assertTrue(interrupted.await(1, TimeUnit.SECONDS), "tasks kept running after the deadline");
+	}
+
+	@Test
+	public void testInterruptedCallerGetsWhatCompleted() {
+		Thread.currentThread().interrupt();
+		try {
+			val result = FanOut.run("interrupted", List.of(1, 2), input -> input, LONG, 2);
+
+			assertEquals(List.of(), result.completed());
+			assertEquals(List.of(1, 2), result.missing());
+		} finally {
+			// the interrupt is kept for the caller
+			assertTrue(Thread.interrupted());
+		}
+	}
+}